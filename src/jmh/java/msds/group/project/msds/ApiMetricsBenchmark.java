@@ -0,0 +1,53 @@
+package msds.group.project.msds;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the cost of recording one call in the ApiMetrics, which must stay well under a
+ * microsecond, from one thread and from four threads recording the same endpoint at once.
+ * Run with -prof gc to check that recording does not allocate.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ApiMetricsBenchmark
+{
+    private ApiMetrics.Endpoint endpoint;
+    private long callNumber;
+
+    @Setup
+    public void createMetrics()
+    {
+        endpoint = new ApiMetrics(MsdsApi.SUBMIT_LOG).forEndpoint(MsdsApi.GET_INVENTORY);
+    }
+
+    @Benchmark
+    public void record()
+    {
+        long nanos = 1000000 + (callNumber++ & 0xFFFFF) * 97;
+        endpoint.record(200, nanos / 10, nanos / 2, nanos, 64, 4096);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void recordContended()
+    {
+        long nanos = 1000000 + (System.nanoTime() & 0xFFFFF) * 97;
+        endpoint.record(200, nanos / 10, nanos / 2, nanos, 64, 4096);
+    }
+}
@@ -0,0 +1,44 @@
+package msds.group.project.msds;
+
+/**
+ * Builds synthetic payloads shaped like the ones the MSDS web service returns.
+ */
+final class BenchmarkData
+{
+    private BenchmarkData()
+    {
+    }
+
+    /**
+     * @param itemCount number of items in the inventory.
+     * @return returns a GetInventory.php response with quantities sent as strings.
+     */
+    static String inventoryResponse(int itemCount)
+    {
+        StringBuilder names = new StringBuilder();
+        StringBuilder quantities = new StringBuilder();
+
+        for(int i = 0; i < itemCount; i++)
+        {
+            if(i > 0)
+            {
+                names.append(',');
+                quantities.append(',');
+            }
+            names.append("\"").append(itemName(i)).append("\"");
+            quantities.append("\"").append(i % 50).append("\"");
+        }
+
+        return "{\"success\":true,\"version\":\"v" + itemCount + "\",\"itemName\":[" + names + "],\"quantity\":[" + quantities + "]}";
+    }
+
+    /**
+     * @param index position of the item.
+     * @return returns a realistic item name, unique for every index.
+     */
+    static String itemName(int index)
+    {
+        String[] kinds = {"Field Dressing", "Radio Battery", "Ration Pack", "Helmet Cover", "Water Bottle", "Torch"};
+        return kinds[index % kinds.length] + " Mk" + (index / kinds.length);
+    }
+}
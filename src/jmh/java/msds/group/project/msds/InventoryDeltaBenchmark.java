@@ -0,0 +1,84 @@
+package msds.group.project.msds;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.charset.Charset;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares revalidating a saved inventory by downloading the whole of it again with fetching
+ * a delta of a few changed items and merging it into the saved snapshot. The response sizes
+ * are printed once at setup. Run with -prof gc to compare allocation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InventoryDeltaBenchmark
+{
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    @Param({"1000", "10000", "100000"})
+    public int itemCount;
+
+    @Param({"10"})
+    public int changedCount;
+
+    private byte[] wholeBody;
+    private byte[] deltaBody;
+    private InventorySnapshot saved;
+
+    @Setup
+    public void createResponses() throws Exception
+    {
+        wholeBody = BenchmarkData.inventoryResponse(itemCount).getBytes(UTF_8);
+        saved = InventoryResponseParser.parse(wholeBody, null, null, InventoryResponseParser.DEFAULT_CHUNK_SIZE).getItems();
+
+        StringBuilder delta = new StringBuilder("{\"success\":true,\"delta\":true,\"baseVersion\":\"")
+                .append(saved.getVersion()).append("\",\"version\":\"next\",\"itemName\":[");
+
+        // Half the changes are new quantities for existing items, half are new items.
+        for(int i = 0; i < changedCount; i++)
+        {
+            int index = i % 2 == 0 ? i * (itemCount / changedCount) : itemCount + i;
+            delta.append(i > 0 ? "," : "").append('"').append(BenchmarkData.itemName(index)).append('"');
+        }
+
+        delta.append("],\"quantity\":[");
+
+        for(int i = 0; i < changedCount; i++)
+        {
+            delta.append(i > 0 ? "," : "").append(i + 100);
+        }
+
+        delta.append("],\"removed\":[\"").append(BenchmarkData.itemName(1)).append("\"]}");
+        deltaBody = delta.toString().getBytes(UTF_8);
+
+        System.out.println();
+        System.out.println("whole response: " + wholeBody.length + " bytes, delta response: " + deltaBody.length + " bytes");
+    }
+
+    @Benchmark
+    public InventoryResponseParser.Result wholeInventory() throws Exception
+    {
+        return InventoryResponseParser.parse(wholeBody, saved, null, InventoryResponseParser.DEFAULT_CHUNK_SIZE);
+    }
+
+    @Benchmark
+    public InventoryResponseParser.Result deltaMerged() throws Exception
+    {
+        return InventoryResponseParser.parseDelta(deltaBody, saved);
+    }
+}
@@ -0,0 +1,162 @@
+package msds.group.project.msds;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Compares reading a GetInventory.php response as JSON with the InventoryBinaryCodec, each
+ * with and without gzip, and measures encoding a response into pooled buffers and gzipping a
+ * batch of log events. The body sizes are printed once at setup. Run with -prof gc to compare
+ * allocation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InventoryEncodingBenchmark
+{
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final int EVENTS_PER_BATCH = 20;
+
+    @Param({"1000", "10000"})
+    public int itemCount;
+
+    private final BufferPool bufferPool = new BufferPool(1 << 22, 2);
+
+    private InventoryResponseParser.Result parsed;
+    private byte[] json;
+    private byte[] gzippedJson;
+    private byte[] binary;
+    private byte[] gzippedBinary;
+    private byte[] logBatch;
+
+    @Setup
+    public void createBodies() throws Exception
+    {
+        json = BenchmarkData.inventoryResponse(itemCount).getBytes(UTF_8);
+        parsed = InventoryResponseParser.parse(json, null, null, InventoryResponseParser.DEFAULT_CHUNK_SIZE);
+
+        InventoryBinaryCodec.Encoder encoder = new InventoryBinaryCodec.Encoder(bufferPool).writeResult(parsed);
+        binary = encoder.toByteArray();
+        encoder.release();
+
+        gzippedJson = MsdsApi.gzip(json);
+        gzippedBinary = MsdsApi.gzip(binary);
+        logBatch = logBatch();
+
+        System.out.println();
+        System.out.println("json: " + json.length + " bytes, gzipped json: " + gzippedJson.length
+                + " bytes, binary: " + binary.length + " bytes, gzipped binary: " + gzippedBinary.length + " bytes");
+        System.out.println("log batch of " + EVENTS_PER_BATCH + ": " + logBatch.length + " bytes, gzipped: "
+                + MsdsApi.gzip(logBatch).length + " bytes");
+    }
+
+    /**
+     * Builds a batch of log events the way the Logger does.
+     */
+    private static byte[] logBatch() throws InterruptedException
+    {
+        final byte[][] batch = new byte[1][];
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        LogBatcher logBatcher = new LogBatcher(new LogBatcher.Transport()
+        {
+            @Override
+            public void send(byte[] batchBody)
+            {
+                batch[0] = batchBody;
+            }
+        }, scheduler, EVENTS_PER_BATCH, TimeUnit.HOURS.toMillis(1));
+
+        for(int i = 0; i < EVENTS_PER_BATCH; i++)
+        {
+            logBatcher.add("j.woodhouse", "3f2504e0-4f89-11d3-9a0c-0305e82c3301",
+                    "Inventory page loaded with data (itemCount=1000, totalQuantity=24500)", 1500000000L + i);
+        }
+
+        scheduler.shutdownNow();
+        return batch[0];
+    }
+
+    @TearDown
+    public void checkPool()
+    {
+        System.out.println("free pooled buffers: " + bufferPool.getFreeCount());
+    }
+
+    @Benchmark
+    public InventoryResponseParser.Result parseJson() throws Exception
+    {
+        return InventoryResponseParser.parse(json, null, null, InventoryResponseParser.DEFAULT_CHUNK_SIZE);
+    }
+
+    @Benchmark
+    public InventoryResponseParser.Result parseGzippedJson() throws Exception
+    {
+        return InventoryResponseParser.parse(gunzip(gzippedJson), null, null, InventoryResponseParser.DEFAULT_CHUNK_SIZE);
+    }
+
+    @Benchmark
+    public InventoryResponseParser.Result decodeBinary() throws Exception
+    {
+        return InventoryBinaryCodec.decode(binary, 0, binary.length, null, null, InventoryResponseParser.DEFAULT_CHUNK_SIZE);
+    }
+
+    @Benchmark
+    public InventoryResponseParser.Result decodeGzippedBinary() throws Exception
+    {
+        byte[] data = gunzip(gzippedBinary);
+        return InventoryBinaryCodec.decode(data, 0, data.length, null, null, InventoryResponseParser.DEFAULT_CHUNK_SIZE);
+    }
+
+    @Benchmark
+    public int encodeBinary()
+    {
+        InventoryBinaryCodec.Encoder encoder = new InventoryBinaryCodec.Encoder(bufferPool).writeResult(parsed);
+        int length = encoder.getLength();
+        encoder.release();
+        return length;
+    }
+
+    @Benchmark
+    public byte[] gzipLogBatch()
+    {
+        return MsdsApi.gzip(logBatch);
+    }
+
+    private static byte[] gunzip(byte[] data) throws IOException
+    {
+        InputStream in = new GZIPInputStream(new ByteArrayInputStream(data));
+        ByteArrayOutputStream out = new ByteArrayOutputStream(data.length * 4);
+        byte[] buffer = new byte[8192];
+        int read;
+
+        while((read = in.read(buffer)) != -1)
+        {
+            out.write(buffer, 0, read);
+        }
+
+        return out.toByteArray();
+    }
+}
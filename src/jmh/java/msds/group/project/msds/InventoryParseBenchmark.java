@@ -0,0 +1,85 @@
+package msds.group.project.msds;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares parsing a GetInventory.php response through org.json, as Inventory_Page used to,
+ * with the streaming InventoryResponseParser. Run with -prof gc to compare allocation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InventoryParseBenchmark
+{
+    @Param({"10", "1000", "100000"})
+    public int itemCount;
+
+    private byte[] responseBody;
+
+    @Setup
+    public void createResponse()
+    {
+        responseBody = BenchmarkData.inventoryResponse(itemCount).getBytes(Charset.forName("UTF-8"));
+    }
+
+    @Benchmark
+    public List<String[]> jsonObject() throws Exception
+    {
+        JSONObject response = new JSONObject(new String(responseBody, "UTF-8"));
+        response.getBoolean("success");
+
+        JSONArray itemNames = response.getJSONArray("itemName");
+        JSONArray quantities = response.getJSONArray("quantity");
+        List<String[]> inventory = new ArrayList<>();
+
+        for(int i = 0; i < itemNames.length(); i++)
+        {
+            inventory.add(new String[] {itemNames.getString(i), quantities.getString(i)});
+        }
+
+        return inventory;
+    }
+
+    @Benchmark
+    public InventoryResponseParser.Result streaming() throws Exception
+    {
+        return InventoryResponseParser.parse(responseBody, null, null, InventoryResponseParser.DEFAULT_CHUNK_SIZE);
+    }
+
+    @Benchmark
+    public int streamingWithChunks() throws Exception
+    {
+        final int[] delivered = new int[1];
+
+        InventoryResponseParser.parse(responseBody, null, new InventoryResponseParser.ChunkListener()
+        {
+            @Override
+            public void onChunk(InventorySnapshot items, int from, int to)
+            {
+                delivered[0] += to - from;
+            }
+        }, InventoryResponseParser.DEFAULT_CHUNK_SIZE);
+
+        return delivered[0];
+    }
+}
@@ -0,0 +1,91 @@
+package msds.group.project.msds;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the Inventory Page search. A keystroke should take well under 5 ms at 100k items,
+ * compared here with scanning every name via InventorySnapshot.filterByName.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InventorySearchBenchmark
+{
+    private static final String TYPED = "radio battery mk123";
+
+    @Param({"10000", "100000"})
+    public int itemCount;
+
+    @Param({"r", "ba", "mk1", "battery mk12"})
+    public String query;
+
+    private InventorySnapshot snapshot;
+    private InventorySearchIndex index;
+    private int[] rows;
+
+    @Setup
+    public void createIndex()
+    {
+        InventorySnapshot.Builder builder = new InventorySnapshot.Builder();
+
+        for(int i = 0; i < itemCount; i++)
+        {
+            builder.add(BenchmarkData.itemName(i), i % 50);
+        }
+
+        snapshot = builder.build();
+        index = InventorySearchIndex.build(snapshot);
+        rows = new int[itemCount];
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public InventorySearchIndex buildIndex()
+    {
+        return InventorySearchIndex.build(snapshot);
+    }
+
+    @Benchmark
+    public InventorySearchIndex.Result search()
+    {
+        return index.search(query, null);
+    }
+
+    @Benchmark
+    public int scan()
+    {
+        return snapshot.filterByName(query, rows);
+    }
+
+    /**
+     * Types TYPED one character at a time, each search narrowing the last.
+     */
+    @Benchmark
+    public InventorySearchIndex.Result typeQuery()
+    {
+        InventorySearchIndex.Result result = null;
+
+        for(int i = 1; i <= TYPED.length(); i++)
+        {
+            result = index.search(TYPED.substring(0, i), result);
+        }
+
+        return result;
+    }
+}
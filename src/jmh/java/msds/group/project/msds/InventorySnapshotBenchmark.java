@@ -0,0 +1,199 @@
+package msds.group.project.msds;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the columnar InventorySnapshot with the list of per-item objects Inventory_Page used to keep.
+ *
+ * The build benchmarks, run with -prof gc, report bytes allocated per inventory in gc.alloc.rate.norm.
+ * The trial tear down also prints the heap retained by each model, measured after a full GC, as
+ * the footprint of one inventory. The sort, filter and total benchmarks should show no
+ * allocation for the snapshot.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InventorySnapshotBenchmark
+{
+    @Param({"10000", "100000"})
+    public int itemCount;
+
+    private String[] names;
+    private String[] quantities;
+    private List<InventoryItem> itemList;
+    private InventorySnapshot snapshot;
+    private int[] rows;
+
+    /**
+     * The row object used before InventorySnapshot, minus the Activity reference it also held.
+     */
+    static class InventoryItem
+    {
+        final String name;
+        final String quantity;
+
+        InventoryItem(String name, String quantity)
+        {
+            this.name = name;
+            this.quantity = quantity;
+        }
+    }
+
+    @Setup
+    public void createInventory()
+    {
+        names = new String[itemCount];
+        quantities = new String[itemCount];
+
+        for(int i = 0; i < itemCount; i++)
+        {
+            names[i] = BenchmarkData.itemName(i);
+            quantities[i] = String.valueOf(i % 50);
+        }
+
+        itemList = buildItemList();
+        snapshot = buildSnapshot();
+        rows = new int[itemCount];
+    }
+
+    @TearDown(Level.Trial)
+    public void printFootprint()
+    {
+        long before = usedHeap();
+        Object keptList = buildItemList();
+        long listBytes = usedHeap() - before;
+
+        before = usedHeap();
+        Object keptSnapshot = buildSnapshot();
+        long snapshotBytes = usedHeap() - before;
+
+        System.out.println("Retained by " + itemCount + " items: ArrayList<InventoryItem> " + listBytes
+                + " bytes, InventorySnapshot " + snapshotBytes + " bytes ("
+                + (keptList.hashCode() ^ keptSnapshot.hashCode()) + ")");
+    }
+
+    @Benchmark
+    public List<InventoryItem> buildList()
+    {
+        return buildItemList();
+    }
+
+    @Benchmark
+    public InventorySnapshot buildColumns()
+    {
+        return buildSnapshot();
+    }
+
+    @Benchmark
+    public List<InventoryItem> sortListByName()
+    {
+        List<InventoryItem> sorted = new ArrayList<>(itemList);
+
+        Collections.sort(sorted, new Comparator<InventoryItem>()
+        {
+            @Override
+            public int compare(InventoryItem a, InventoryItem b)
+            {
+                return a.name.compareToIgnoreCase(b.name);
+            }
+        });
+
+        return sorted;
+    }
+
+    @Benchmark
+    public int[] sortColumnsByName()
+    {
+        snapshot.sortByName(rows);
+        return rows;
+    }
+
+    @Benchmark
+    public int[] sortColumnsByQuantity()
+    {
+        snapshot.sortByQuantity(rows);
+        return rows;
+    }
+
+    @Benchmark
+    public int filterColumnsByName()
+    {
+        return snapshot.filterByName("battery", rows);
+    }
+
+    @Benchmark
+    public long totalList()
+    {
+        long total = 0;
+
+        for(InventoryItem item : itemList)
+        {
+            total += Integer.parseInt(item.quantity);
+        }
+
+        return total;
+    }
+
+    @Benchmark
+    public long totalColumns()
+    {
+        return snapshot.totalQuantity();
+    }
+
+    private List<InventoryItem> buildItemList()
+    {
+        List<InventoryItem> list = new ArrayList<>();
+
+        for(int i = 0; i < itemCount; i++)
+        {
+            list.add(new InventoryItem(new String(names[i]), new String(quantities[i])));
+        }
+
+        return list;
+    }
+
+    private InventorySnapshot buildSnapshot()
+    {
+        InventorySnapshot.Builder builder = new InventorySnapshot.Builder();
+
+        for(int i = 0; i < itemCount; i++)
+        {
+            builder.add(new String(names[i]), Integer.parseInt(quantities[i]));
+        }
+
+        return builder.build();
+    }
+
+    private static long usedHeap()
+    {
+        Runtime runtime = Runtime.getRuntime();
+
+        for(int i = 0; i < 3; i++)
+        {
+            System.gc();
+        }
+
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
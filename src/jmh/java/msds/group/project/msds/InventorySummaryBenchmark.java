@@ -0,0 +1,96 @@
+package msds.group.project.msds;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the inventory string Inventory_Page used to log, built with += for every item,
+ * with a StringBuilder and with the bounded LogEvent summary it logs now. The += version is
+ * quadratic, so the sizes stop at 10000 items, as 100000 takes minutes per call.
+ * Run with -prof gc to compare allocation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InventorySummaryBenchmark
+{
+    private static final int SAMPLE_ROWS = 5;
+
+    @Param({"10", "1000", "10000"})
+    public int itemCount;
+
+    private InventorySnapshot snapshot;
+    private final LogEvent.Builder summaryBuilder = new LogEvent.Builder();
+
+    @Setup
+    public void createSnapshot()
+    {
+        InventorySnapshot.Builder builder = new InventorySnapshot.Builder();
+
+        for(int i = 0; i < itemCount; i++)
+        {
+            builder.add(BenchmarkData.itemName(i), i % 50);
+        }
+
+        snapshot = builder.build();
+    }
+
+    @Benchmark
+    public String concatenation()
+    {
+        String inventoryToString = "";
+
+        for(int i = 0; i < snapshot.size(); i++)
+        {
+            inventoryToString = inventoryToString + snapshot.getName(i) + ":" + snapshot.getQuantity(i) + " ";
+        }
+
+        return "Inventory page loaded with data: " + inventoryToString;
+    }
+
+    @Benchmark
+    public String stringBuilder()
+    {
+        StringBuilder inventoryToString = new StringBuilder("Inventory page loaded with data: ");
+
+        for(int i = 0; i < snapshot.size(); i++)
+        {
+            inventoryToString.append(snapshot.getName(i)).append(':').append(snapshot.getQuantity(i)).append(' ');
+        }
+
+        return inventoryToString.toString();
+    }
+
+    @Benchmark
+    public LogEvent boundedSummary()
+    {
+        StringBuilder sample = new StringBuilder();
+        int sampleRows = Math.min(snapshot.size(), SAMPLE_ROWS);
+
+        for(int i = 0; i < sampleRows; i++)
+        {
+            sample.append(i > 0 ? ", " : "").append(snapshot.getName(i)).append(':').append(snapshot.getQuantity(i));
+        }
+
+        return summaryBuilder.begin("Inventory page loaded with data")
+                .add("itemCount", snapshot.size())
+                .add("totalQuantity", snapshot.totalQuantity())
+                .add("contentHash", Long.toHexString(snapshot.contentHash()))
+                .add("sample", sample)
+                .build();
+    }
+}
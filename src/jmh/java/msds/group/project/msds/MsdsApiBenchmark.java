@@ -0,0 +1,143 @@
+package msds.group.project.msds;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures round trips through the MsdsApi and PooledHttpEngine against the in-process
+ * StubMsdsServer from the test sources, so the numbers are the client's own cost plus loopback.
+ * Sample time mode reports latency percentiles, and running with -t 8 shows the throughput
+ * of the connection pool under load. Run with -prof gc to compare allocation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.SampleTime, Mode.Throughput})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(4)
+public class MsdsApiBenchmark
+{
+    @Param({"10", "1000", "10000"})
+    public int itemCount;
+
+    @Param({"4"})
+    public int maxConnections;
+
+    private StubMsdsServer stubServer;
+    private PooledHttpEngine httpEngine;
+    private MsdsApi api;
+    private ApiMetrics apiMetrics;
+
+    /**
+     * Gives each benchmark thread its own authToken, so calls from different threads are not coalesced.
+     */
+    @State(Scope.Thread)
+    public static class Session
+    {
+        private static int nextSession;
+
+        public String authToken;
+        public int loginCount;
+
+        @Setup
+        public void createToken()
+        {
+            synchronized(Session.class)
+            {
+                authToken = "token-" + nextSession++;
+            }
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void startStubServer() throws Exception
+    {
+        stubServer = new StubMsdsServer(itemCount, maxConnections);
+        apiMetrics = new ApiMetrics(MsdsApi.SUBMIT_LOG);
+        httpEngine = new PooledHttpEngine(maxConnections, 5000, 5000);
+        api = new MsdsApi(stubServer.baseUrl(), httpEngine, new Executor()
+        {
+            @Override
+            public void execute(Runnable runnable)
+            {
+                runnable.run();
+            }
+        }, apiMetrics);
+    }
+
+    @TearDown(Level.Trial)
+    public void stopStubServer()
+    {
+        System.out.println();
+        System.out.println("requests: " + stubServer.requestCount() + ", connections opened: " + stubServer.connectionCount());
+
+        httpEngine.shutdown();
+        stubServer.stop();
+    }
+
+    @Benchmark
+    public Boolean login(Session session) throws Exception
+    {
+        return await(api.login().call(session.authToken + "-" + session.loginCount++, "pw", session.authToken, 0));
+    }
+
+    @Benchmark
+    public MsdsApi.UserInfo getUserInfo(Session session) throws Exception
+    {
+        return await(api.getUserInfo().call("user", session.authToken));
+    }
+
+    @Benchmark
+    public InventoryResponseParser.Result getInventory(Session session) throws Exception
+    {
+        return await(api.getInventory().call("user", session.authToken, null, null, null));
+    }
+
+    private static <T> T await(RequestCoalescer.Call<T> call) throws Exception
+    {
+        final LinkedBlockingQueue<Object> outcome = new LinkedBlockingQueue<>();
+
+        call.subscribe(new RequestCoalescer.Callback<T>()
+        {
+            @Override
+            public void onSuccess(T result)
+            {
+                outcome.add(result);
+            }
+
+            @Override
+            public void onFailure(Exception error)
+            {
+                outcome.add(error);
+            }
+        });
+
+        Object result = outcome.take();
+
+        if(result instanceof Exception)
+        {
+            throw (Exception) result;
+        }
+
+        @SuppressWarnings("unchecked")
+        T typed = (T) result;
+        return typed;
+    }
+}
@@ -0,0 +1,134 @@
+package msds.group.project.msds;
+
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares building request bodies the way MainActivity.sendLoginRequest and Logger.sendLog
+ * used to, a HashMap copied into a JSONObject, with the MsdsApi, the LogBatcher and a reused
+ * RequestBodyWriter. The log benchmarks report the cost per event. Run with -prof gc to compare
+ * allocation: logBatched should only allocate its share of the finished batch body, and
+ * loginSchemaWriter nothing at all.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RequestBodyBenchmark
+{
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final int EVENTS_PER_BATCH = 20;
+    private static final RequestBodyWriter.Schema LOGIN = new RequestBodyWriter.Schema("username", "password", "authToken", "timestamp");
+
+    private final String username = "j.woodhouse";
+    private final String password = "correct horse battery staple";
+    private final String authToken = "3f2504e0-4f89-11d3-9a0c-0305e82c3301";
+    private final String description = "Inventory page loaded with data (itemCount=1000, totalQuantity=24500)";
+
+    private ScheduledExecutorService scheduler;
+    private LogBatcher logBatcher;
+    private final RequestBodyWriter writer = new RequestBodyWriter(new BufferPool(64 * 1024, 2));
+    private byte[] lastBatch;
+
+    @Setup
+    public void createBatcher()
+    {
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+        logBatcher = new LogBatcher(new LogBatcher.Transport()
+        {
+            @Override
+            public void send(byte[] batchBody)
+            {
+                lastBatch = batchBody;
+            }
+        }, scheduler, EVENTS_PER_BATCH, TimeUnit.HOURS.toMillis(1));
+    }
+
+    @TearDown
+    public void stopScheduler()
+    {
+        scheduler.shutdownNow();
+    }
+
+    @Benchmark
+    public byte[] loginJsonObject()
+    {
+        HashMap<String, String> postData = new HashMap<>();
+        postData.put("username", username);
+        postData.put("password", password);
+        postData.put("authToken", authToken);
+        postData.put("timestamp", String.valueOf(1500000000L));
+
+        return new JSONObject(postData).toString().getBytes(UTF_8);
+    }
+
+    @Benchmark
+    public byte[] loginMsdsApi()
+    {
+        LinkedHashMap<String, String> params = new LinkedHashMap<>();
+        params.put("username", username);
+        params.put("password", password);
+        params.put("authToken", authToken);
+        params.put("timestamp", String.valueOf(1500000000L));
+
+        return MsdsApi.jsonBody(params);
+    }
+
+    @Benchmark
+    public int loginSchemaWriter()
+    {
+        writer.reset().beginObject(LOGIN).field(username).field(password).field(authToken).field(1500000000L).endObject();
+        return writer.getLength();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(EVENTS_PER_BATCH)
+    public int logJsonObjectPerEvent()
+    {
+        int length = 0;
+
+        for(int i = 0; i < EVENTS_PER_BATCH; i++)
+        {
+            HashMap<String, String> postData = new HashMap<>();
+            postData.put("username", username);
+            postData.put("authToken", authToken);
+            postData.put("activityDescription", description);
+
+            length += new JSONObject(postData).toString().getBytes(UTF_8).length;
+        }
+
+        return length;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(EVENTS_PER_BATCH)
+    public int logBatched()
+    {
+        for(int i = 0; i < EVENTS_PER_BATCH; i++)
+        {
+            logBatcher.add(username, authToken, description, 1500000000L + i);
+        }
+
+        return lastBatch.length;
+    }
+}
@@ -0,0 +1,80 @@
+package msds.group.project.msds;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+
+/**
+ * Measures restoring a saved session at startup: mapping the SessionStore file, decrypting it and
+ * reading the authToken, as a new process does once. Run with -bm ss -wi 0 -i 1 -f 20 to time the
+ * first restore in a JVM, which also loads the cipher classes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SessionStoreBenchmark
+{
+    private final Executor inline = new Executor()
+    {
+        @Override
+        public void execute(Runnable runnable)
+        {
+            runnable.run();
+        }
+    };
+
+    private File directory;
+    private File file;
+    private SecretKey key;
+
+    @Setup
+    public void saveSession() throws Exception
+    {
+        directory = Files.createTempDirectory("session-store").toFile();
+        file = new File(directory, "session");
+
+        KeyGenerator generator = KeyGenerator.getInstance("AES");
+        generator.init(128);
+        key = generator.generateKey();
+
+        Map<String, String> session = new LinkedHashMap<>();
+        session.put("username", "alice");
+        session.put("authToken", "3f2504e0-4f89-11d3-9a0c-0305e82c3301");
+        session.put("timestamp", "1500000000");
+        new SessionStore(file, key, inline).putAll(session);
+    }
+
+    @TearDown
+    public void deleteSession()
+    {
+        file.delete();
+        directory.delete();
+    }
+
+    @Benchmark
+    public String restore()
+    {
+        return new SessionStore(file, key, inline).get("authToken");
+    }
+}
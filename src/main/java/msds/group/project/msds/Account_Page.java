@@ -1,8 +1,15 @@
 /**
  * The Account Page class is used to present a user's account details.
  *
+ * The GetUserInfo.php call is kept across configuration changes, so rotating the
+ * device shows the result that was already received instead of asking again.
+ *
+ * Account details prefetched after login are shown from the SessionCache without a request.
+ *
+ * The page reports itself to the StartupTracer as interactive once the call has finished.
+ *
  * @author  J.Woodhouse, D.B.Dawson, I.J.Atienza, M.J.T.Makunda
- * @version 1.07
+ * @version 1.13
  */
 
 package msds.group.project.msds;
@@ -13,22 +20,10 @@ import android.support.v7.app.AppCompatActivity;
 import android.widget.TextView;
 import android.widget.Toast;
 
-import com.android.volley.Request;
-import com.android.volley.RequestQueue;
-import com.android.volley.Response;
-import com.android.volley.VolleyError;
-import com.android.volley.toolbox.JsonObjectRequest;
-import com.android.volley.toolbox.Volley;
-
-import org.json.JSONException;
-import org.json.JSONObject;
-
-
-import java.util.HashMap;
-
-public class Account_Page extends AppCompatActivity
+public class Account_Page extends AppCompatActivity implements StartupTracer.ReportsInteractive
 {
-    private RequestQueue volleyQueue;
+    private MsdsApi msdsApi;
+    private SessionCache sessionCache;
     private SharedVariables sharedVariables;
     private String username;
     private String authToken;
@@ -40,15 +35,16 @@ public class Account_Page extends AppCompatActivity
     private TextView tvAddress;
 
     private Logger logger;
+    private RequestCoalescer.Call<MsdsApi.UserInfo> userInfoCall;
 
     /**
      * This method is executed upon loading of the Account Page.
      * It creates a JSON object consisting of the following inputs:
      *
-     * username - retrieved using the getter method from the sharedVariables instance.
-     * authToken - retrieved using the getter method from the sharedVariables instance.
+     * username - retrieved from the session held by the sharedVariables instance.
+     * authToken - retrieved from the session held by the sharedVariables instance.
      *
-     * The above JSON object is sent in a POST request to the postURL URL.
+     * The above JSON object is sent in a POST request to GetUserInfo.php using the MsdsApi.
      *
      * The return from the POST request is a JSON object with 7 fields:
      *
@@ -65,18 +61,27 @@ public class Account_Page extends AppCompatActivity
      *
      * tvName, tvGender, tvDOB, tvRank, tvEmail, tvAddress are set to the above received values.
      *
+     * After a configuration change the call made by the previous instance is reused, and its
+     * result is shown without another request. Identical calls already in flight are joined.
+     *
+     * If the account details for this session are already in the SessionCache they are shown
+     * straight away and no request is sent.
+     *
      * @param savedInstanceState
      */
     @Override
+    @SuppressWarnings("unchecked")
     protected void onCreate(Bundle savedInstanceState)
     {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_account__page);
 
-        volleyQueue = Volley.newRequestQueue(this);
+        msdsApi = MsdsApplication.getInstance().getMsdsApi();
+        sessionCache = MsdsApplication.getInstance().getSessionCache();
         sharedVariables = SharedVariables.getInstance();
-        username = sharedVariables.getUsername();
-        authToken = sharedVariables.getToken();
+        SessionSnapshot session = sharedVariables.getSession();
+        username = session.getUsername();
+        authToken = session.getAuthToken();
 
         tvName = findViewById(R.id.tvName);
         tvGender = findViewById(R.id.tvGender);
@@ -85,63 +90,105 @@ public class Account_Page extends AppCompatActivity
         tvEmail = findViewById(R.id.tvEmail);
         tvAddress = findViewById(R.id.tvAddress);
 
-        logger = new Logger(volleyQueue);
+        logger = new Logger(MsdsApplication.getInstance().getLogBatcher());
 
-        HashMap<String, String> postData = new HashMap<>();
-        postData.put("username", username);
-        postData.put("authToken", authToken);
+        userInfoCall = (RequestCoalescer.Call<MsdsApi.UserInfo>) getLastCustomNonConfigurationInstance();
 
-        String postURL = "https://msdsdb.000webhostapp.com/android_webservice/GetUserInfo.php";
+        if(userInfoCall == null)
+        {
+            MsdsApi.UserInfo cachedUserInfo = sessionCache.getUserInfo(username, authToken);
 
-        JsonObjectRequest request = new JsonObjectRequest(Request.Method.POST, postURL, new JSONObject(postData), new Response.Listener<JSONObject>()
+            if(cachedUserInfo != null)
+            {
+                userInfoCallback.onSuccess(cachedUserInfo);
+                return;
+            }
+
+            userInfoCall = msdsApi.getUserInfo().call(username, authToken);
+        }
+
+        userInfoCall.subscribe(userInfoCallback);
+    }
+
+    /**
+     * Receives the GetUserInfo.php response, either from the network or kept from a previous instance.
+     */
+    private final RequestCoalescer.Callback<MsdsApi.UserInfo> userInfoCallback = new RequestCoalescer.Callback<MsdsApi.UserInfo>()
+    {
+        @Override
+        public void onSuccess(MsdsApi.UserInfo response)
         {
-            @Override
-            public void onResponse(JSONObject response)
+            MsdsApplication.getInstance().getStartupTracer().reportInteractive(Account_Page.this);
+
+            if(response.isSuccess())
+            {
+                sessionCache.putUserInfo(username, authToken, response);
+
+                tvName.setText(response.getFirstName() + " " + response.getLastName());
+                tvGender.setText(response.getGender());
+                tvDOB.setText(response.getDOB());
+                tvRank.setText(response.getRank());
+                tvEmail.setText(response.getContact());
+                tvAddress.setText(response.getAddress());
+
+                logger.sendLog("Account page loaded with data: " + response.getFirstName() + " " + response.getLastName()
+                + " " + response.getGender() + " " + response.getDOB() + " " + response.getRank() + " " + response.getContact()
+                + " " + response.getAddress());
+            }
+            else
             {
-                try
-                {
-                    Boolean getPersonnelSuccess = response.getBoolean("success");
-
-                    if(getPersonnelSuccess)
-                    {
-                        tvName.setText(response.getString("firstName") + " " + response.getString("lastName"));
-                        tvGender.setText(response.getString("gender"));
-                        tvDOB.setText(response.getString("DOB"));
-                        tvRank.setText(response.getString("rank"));
-                        tvEmail.setText(response.getString("contact"));
-                        tvAddress.setText(response.getString("address"));
-
-                        logger.sendLog("Account page loaded with data: " + response.getString("firstName") + " " + response.getString("lastName")
-                        + " " + response.getString("gender") + " " + response.getString("DOB") + " " + response.getString("rank") + " " + response.getString("contact")
-                        + " " + response.getString("address"));
-                    }
-                    else
-                    {
-                        showToast("Failed to retrieve account data");
-                        logger.sendLog("Failed to retrieve account data");
-                        Intent intent = new Intent(Account_Page.this, MainActivity.class);
-                        intent.setFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
-                        startActivity(intent);
-                    }
-                }
-                catch (JSONException ex)
-                {
-                    showToast("JSON Exception: " + ex.getMessage());
-                    logger.sendLog("JSON Exception encountered: " + ex.getMessage());
-
-                }
+                showToast("Failed to retrieve account data");
+                logger.sendLog("Failed to retrieve account data");
+                Intent intent = new Intent(Account_Page.this, MainActivity.class);
+                intent.setFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
+                startActivity(intent);
             }
-        }, new Response.ErrorListener()
+        }
+
+        @Override
+        public void onFailure(Exception error)
         {
-            @Override
-            public void onErrorResponse(VolleyError error)
+            MsdsApplication.getInstance().getStartupTracer().reportInteractive(Account_Page.this);
+
+            if(error instanceof ApiException && ((ApiException) error).isParseError())
             {
-                showToast("Volley error: " + error.toString());
-                logger.sendLog("Volley Error encountered: " + error.toString());
+                showToast("JSON Exception: " + error.getMessage());
+                logger.sendLog("JSON Exception encountered: " + error.getMessage());
+                return;
             }
-        });
 
-        volleyQueue.add(request);
+            showToast("Volley error: " + error.toString());
+            logger.sendLog("Volley Error encountered: " + error.toString());
+        }
+    };
+
+    /**
+     * Keeps the GetUserInfo.php call for the instance that replaces this one after a configuration change.
+     * @return returns the call.
+     */
+    @Override
+    public Object onRetainCustomNonConfigurationInstance()
+    {
+        return userInfoCall;
+    }
+
+    /**
+     * Stops waiting for GetUserInfo.php. The request is only cancelled if the page is closing,
+     * while it is being recreated the new instance takes over the call.
+     */
+    @Override
+    protected void onDestroy()
+    {
+        super.onDestroy();
+
+        if(isChangingConfigurations())
+        {
+            userInfoCall.detach(userInfoCallback);
+        }
+        else
+        {
+            userInfoCall.unsubscribe(userInfoCallback);
+        }
     }
 
     /**
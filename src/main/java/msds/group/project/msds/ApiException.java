@@ -0,0 +1,97 @@
+/**
+ * The ApiException class is the error given to an MsdsApi callback when a call fails.
+ *
+ * It says whether the server never answered, answered with an error status, or answered
+ * with a body that could not be parsed, so callers do not need to know which HttpEngine
+ * sent the request.
+ *
+ * This class has no Android dependencies so that it can be tested on the development machine.
+ *
+ * @author  J.Woodhouse, D.B.Dawson, I.J.Atienza, M.J.T.Makunda
+ * @version 1.02
+ */
+
+package msds.group.project.msds;
+
+import java.io.IOException;
+
+public class ApiException extends IOException
+{
+    private static final long serialVersionUID = 1L;
+
+    public static final int NO_RESPONSE = 0;
+
+    private final int statusCode;
+    private final boolean parseError;
+
+    private ApiException(String message, Throwable cause, int statusCode, boolean parseError)
+    {
+        super(message, cause);
+        this.statusCode = statusCode;
+        this.parseError = parseError;
+    }
+
+    /**
+     * Creates the error for a request that never received a response.
+     * @param cause the network error.
+     * @return returns the error.
+     */
+    public static ApiException noResponse(IOException cause)
+    {
+        return new ApiException("No response: " + cause, cause, NO_RESPONSE, false);
+    }
+
+    /**
+     * Creates the error for a response with a status code outside 200-299.
+     * @param statusCode the HTTP status code.
+     * @return returns the error.
+     */
+    public static ApiException httpError(int statusCode)
+    {
+        return new ApiException("HTTP " + statusCode, null, statusCode, false);
+    }
+
+    /**
+     * Creates the error for a successful response whose body could not be parsed.
+     * @param statusCode the HTTP status code.
+     * @param cause the parse error.
+     * @return returns the error.
+     */
+    public static ApiException parseError(int statusCode, IOException cause)
+    {
+        return new ApiException("Unable to parse response: " + cause.getMessage(), cause, statusCode, true);
+    }
+
+    /**
+     * Getter method for the statusCode variable
+     * @return the HTTP status code, or NO_RESPONSE if the server never answered
+     */
+    public int getStatusCode()
+    {
+        return statusCode;
+    }
+
+    /**
+     * @return true if the response body could not be parsed
+     */
+    public boolean isParseError()
+    {
+        return parseError;
+    }
+
+    /**
+     * @return true if the server answered with a 4xx status, so sending the same request again will not help
+     */
+    public boolean isRejected()
+    {
+        return statusCode >= 400 && statusCode < 500;
+    }
+
+    /**
+     * @return true if the server answered 401, as it does to a request whose authToken has expired
+     */
+    public boolean isAuthFailure()
+    {
+        return statusCode == 401;
+    }
+}
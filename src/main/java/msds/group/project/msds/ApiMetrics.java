@@ -0,0 +1,350 @@
+/**
+ * The ApiMetrics class counts every call the MsdsApi makes, per endpoint.
+ *
+ * For each endpoint it keeps the number of calls, how they ended, the bytes sent and
+ * received, and latency histograms for the time to connect, the time to the first byte
+ * of the response and the total time. Recording a call is a handful of atomic increments
+ * with no locks and no allocation, so it can be done on every request.
+ *
+ * The histograms are log-linear, like HdrHistogram: values under 16 microseconds have a
+ * bucket each, and every power of two above that is split into 8 buckets, so a percentile
+ * is never more than 12.5% above the true value. Values are capped at about 35 minutes.
+ *
+ * The counts only ever grow. export works out what changed since the last export and
+ * sends it as one LogEvent per endpoint, so recording never waits for an export.
+ *
+ * This class has no Android dependencies so that it can be tested on the development machine.
+ *
+ * @author  J.Woodhouse, D.B.Dawson, I.J.Atienza, M.J.T.Makunda
+ * @version 1.00
+ */
+
+package msds.group.project.msds;
+
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+public class ApiMetrics
+{
+    public static final long NOT_MEASURED = -1;
+
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int LINEAR_LIMIT = SUB_BUCKETS * 2;
+    private static final long MAX_MICROS = Integer.MAX_VALUE;
+    static final int BUCKET_COUNT = bucketOf(MAX_MICROS) + 1;
+
+    private static final int CALLS = 0;
+    private static final int NO_RESPONSE = 1;
+    private static final int STATUS_2XX = 2;
+    private static final int STATUS_3XX = 3;
+    private static final int STATUS_4XX = 4;
+    private static final int STATUS_5XX = 5;
+    private static final int BYTES_OUT = 6;
+    private static final int BYTES_IN = 7;
+    private static final int COUNTER_COUNT = 8;
+
+    /**
+     * The Sink interface receives the LogEvents made by export.
+     */
+    public interface Sink
+    {
+        void send(LogEvent event);
+    }
+
+    private final ConcurrentHashMap<String, Endpoint> endpoints = new ConcurrentHashMap<>();
+    private final String exportEndpoint;
+    private final LogEvent.Builder eventBuilder = new LogEvent.Builder();
+
+    /**
+     * @param exportEndpoint the endpoint exported events are sent through, SubmitLog.php in the App.
+     */
+    public ApiMetrics(String exportEndpoint)
+    {
+        this.exportEndpoint = exportEndpoint;
+    }
+
+    /**
+     * Getter method for an endpoint's metrics, creating them on first use.
+     * @param name the endpoint, such as MsdsApi.LOGIN.
+     * @return returns the metrics for the endpoint.
+     */
+    public Endpoint forEndpoint(String name)
+    {
+        Endpoint endpoint = endpoints.get(name);
+
+        if(endpoint == null)
+        {
+            Endpoint created = new Endpoint(name);
+            endpoint = endpoints.putIfAbsent(name, created);
+
+            if(endpoint == null)
+            {
+                endpoint = created;
+            }
+        }
+
+        return endpoint;
+    }
+
+    /**
+     * This method sends one LogEvent for every endpoint called since the last export.
+     *
+     * Sending the events makes calls to the export endpoint, so when it is the only endpoint
+     * with new calls nothing is sent and its calls are carried into the next export. An idle
+     * App therefore stops exporting rather than reporting its own exports forever.
+     *
+     * @param sink receives the events.
+     * @return returns the number of events sent.
+     */
+    public synchronized int export(Sink sink)
+    {
+        ArrayList<Endpoint> changed = new ArrayList<>();
+        boolean othersChanged = false;
+
+        for(Endpoint endpoint : endpoints.values())
+        {
+            if(endpoint.counters.get(CALLS) != endpoint.exported[CALLS])
+            {
+                changed.add(endpoint);
+                othersChanged |= !endpoint.name.equals(exportEndpoint);
+            }
+        }
+
+        if(!othersChanged)
+        {
+            return 0;
+        }
+
+        for(Endpoint endpoint : changed)
+        {
+            sink.send(endpoint.exportInterval(eventBuilder));
+        }
+
+        return changed.size();
+    }
+
+    /**
+     * This method finds the histogram bucket of a value.
+     * @param micros the value in microseconds, at least 0.
+     * @return returns the bucket.
+     */
+    static int bucketOf(long micros)
+    {
+        long value = Math.min(micros, MAX_MICROS);
+
+        if(value < LINEAR_LIMIT)
+        {
+            return (int) value;
+        }
+
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+
+        return (exponent - SUB_BUCKET_BITS) * SUB_BUCKETS + subBucket + SUB_BUCKETS;
+    }
+
+    /**
+     * This method finds the largest value that falls in a bucket.
+     * @param bucket the bucket.
+     * @return returns the value in microseconds.
+     */
+    static long highestValueOf(int bucket)
+    {
+        if(bucket < LINEAR_LIMIT)
+        {
+            return bucket;
+        }
+
+        int exponent = (bucket - SUB_BUCKETS) / SUB_BUCKETS + SUB_BUCKET_BITS;
+        long subBucket = (bucket - SUB_BUCKETS) % SUB_BUCKETS;
+        long width = 1L << (exponent - SUB_BUCKET_BITS);
+
+        return ((SUB_BUCKETS + subBucket) << (exponent - SUB_BUCKET_BITS)) + width - 1;
+    }
+
+    /**
+     * This method finds a percentile of a histogram.
+     * @param counts the count in each bucket.
+     * @param percentile the percentile, from 0 to 100.
+     * @return returns the value in microseconds, or NOT_MEASURED if the histogram is empty.
+     */
+    static long percentile(long[] counts, double percentile)
+    {
+        long total = 0;
+
+        for(long count : counts)
+        {
+            total += count;
+        }
+
+        if(total == 0)
+        {
+            return NOT_MEASURED;
+        }
+
+        long rank = Math.max(1, (long) Math.ceil(total * percentile / 100));
+        long seen = 0;
+
+        for(int bucket = 0; bucket < counts.length; bucket++)
+        {
+            seen += counts[bucket];
+
+            if(seen >= rank)
+            {
+                return highestValueOf(bucket);
+            }
+        }
+
+        return highestValueOf(counts.length - 1);
+    }
+
+    /**
+     * The Endpoint class holds the counts for one endpoint.
+     */
+    public static class Endpoint
+    {
+        private final String name;
+        private final AtomicLongArray counters = new AtomicLongArray(COUNTER_COUNT);
+        private final AtomicLongArray connectHistogram = new AtomicLongArray(BUCKET_COUNT);
+        private final AtomicLongArray firstByteHistogram = new AtomicLongArray(BUCKET_COUNT);
+        private final AtomicLongArray totalHistogram = new AtomicLongArray(BUCKET_COUNT);
+
+        // The counts at the last export, only used by export.
+        private final long[] exported = new long[COUNTER_COUNT];
+        private final long[] exportedConnect = new long[BUCKET_COUNT];
+        private final long[] exportedFirstByte = new long[BUCKET_COUNT];
+        private final long[] exportedTotal = new long[BUCKET_COUNT];
+        private final long[] interval = new long[BUCKET_COUNT];
+
+        private Endpoint(String name)
+        {
+            this.name = name;
+        }
+
+        /**
+         * This method records one finished call. It may be called from any thread.
+         * @param statusCode the HTTP status code, or ApiException.NO_RESPONSE.
+         * @param connectNanos time taken to connect, or NOT_MEASURED.
+         * @param firstByteNanos time until the response headers arrived, or NOT_MEASURED.
+         * @param totalNanos time from sending the request to having the whole response.
+         * @param bytesOut size of the request body.
+         * @param bytesIn size of the response body.
+         */
+        public void record(int statusCode, long connectNanos, long firstByteNanos, long totalNanos, long bytesOut, long bytesIn)
+        {
+            counters.incrementAndGet(CALLS);
+            counters.incrementAndGet(statusCode == ApiException.NO_RESPONSE ? NO_RESPONSE
+                    : Math.max(STATUS_2XX, Math.min(STATUS_5XX, statusCode / 100)));
+            counters.addAndGet(BYTES_OUT, bytesOut);
+            counters.addAndGet(BYTES_IN, bytesIn);
+
+            if(connectNanos != NOT_MEASURED)
+            {
+                connectHistogram.incrementAndGet(bucketOf(connectNanos / 1000));
+            }
+            if(firstByteNanos != NOT_MEASURED)
+            {
+                firstByteHistogram.incrementAndGet(bucketOf(firstByteNanos / 1000));
+            }
+            totalHistogram.incrementAndGet(bucketOf(totalNanos / 1000));
+        }
+
+        /**
+         * Getter method for the number of calls recorded since the App started.
+         * @return returns the number of calls.
+         */
+        public long getCallCount()
+        {
+            return counters.get(CALLS);
+        }
+
+        /**
+         * This method finds a percentile of the total time of every call recorded since the App started.
+         * @param percentile the percentile, from 0 to 100.
+         * @return returns the time in microseconds, or NOT_MEASURED if there have been no calls.
+         */
+        public long totalPercentile(double percentile)
+        {
+            long[] counts = new long[BUCKET_COUNT];
+
+            for(int i = 0; i < BUCKET_COUNT; i++)
+            {
+                counts[i] = totalHistogram.get(i);
+            }
+
+            return ApiMetrics.percentile(counts, percentile);
+        }
+
+        /**
+         * Builds the event for everything recorded since the last export. Only called by export.
+         */
+        private LogEvent exportInterval(LogEvent.Builder builder)
+        {
+            builder.begin("API metrics").add("endpoint", name);
+
+            long calls = 0;
+            long noResponse = 0;
+            long errors = 0;
+            long bytesOut = 0;
+            long bytesIn = 0;
+
+            for(int i = 0; i < COUNTER_COUNT; i++)
+            {
+                long count = counters.get(i);
+                long delta = count - exported[i];
+                exported[i] = count;
+
+                if(i == CALLS)
+                {
+                    calls = delta;
+                }
+                else if(i == NO_RESPONSE)
+                {
+                    noResponse = delta;
+                    errors += delta;
+                }
+                else if(i == STATUS_4XX || i == STATUS_5XX)
+                {
+                    errors += delta;
+                }
+                else if(i == BYTES_OUT)
+                {
+                    bytesOut = delta;
+                }
+                else if(i == BYTES_IN)
+                {
+                    bytesIn = delta;
+                }
+            }
+
+            builder.add("calls", calls).add("errors", errors).add("noResponse", noResponse);
+
+            takeInterval(totalHistogram, exportedTotal);
+            builder.add("p50Us", percentile(interval, 50)).add("p90Us", percentile(interval, 90))
+                    .add("p99Us", percentile(interval, 99)).add("maxUs", percentile(interval, 100));
+
+            takeInterval(firstByteHistogram, exportedFirstByte);
+            builder.add("ttfbP50Us", percentile(interval, 50)).add("ttfbP99Us", percentile(interval, 99));
+
+            takeInterval(connectHistogram, exportedConnect);
+            builder.add("connectP50Us", percentile(interval, 50)).add("connectP99Us", percentile(interval, 99));
+
+            return builder.add("bytesOut", bytesOut).add("bytesIn", bytesIn).build();
+        }
+
+        /**
+         * Writes the counts added to a histogram since the last export into interval.
+         */
+        private void takeInterval(AtomicLongArray histogram, long[] exportedCounts)
+        {
+            for(int i = 0; i < BUCKET_COUNT; i++)
+            {
+                long count = histogram.get(i);
+                interval[i] = count - exportedCounts[i];
+                exportedCounts[i] = count;
+            }
+        }
+    }
+}
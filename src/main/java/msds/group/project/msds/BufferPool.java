@@ -0,0 +1,112 @@
+/**
+ * The BufferPool class keeps byte arrays that have been used for request and response bodies
+ * so that the next body can be written into one of them instead of a new array.
+ *
+ * Buffers are handed out in powers of two from MIN_BUFFER_SIZE up to the pool's largest size,
+ * and each size keeps at most a few free buffers, so the pool never holds more memory than
+ * a handful of bodies. A buffer larger than the largest size is allocated as usual and dropped
+ * when it is released.
+ *
+ * This class has no Android dependencies so that it can be tested on the development machine.
+ *
+ * @author  J.Woodhouse, D.B.Dawson, I.J.Atienza, M.J.T.Makunda
+ * @version 1.01
+ */
+
+package msds.group.project.msds;
+
+import java.util.ArrayDeque;
+
+public class BufferPool
+{
+    public static final int MIN_BUFFER_SIZE = 1024;
+
+    private static final int MIN_SHIFT = 10;
+
+    private final int maxBufferSize;
+    private final int buffersPerSize;
+    private final ArrayDeque<byte[]>[] free;
+
+    /**
+     * @param maxBufferSize the largest buffer kept, rounded up to a power of two.
+     * @param buffersPerSize the number of free buffers kept of each size.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public BufferPool(int maxBufferSize, int buffersPerSize)
+    {
+        this.maxBufferSize = roundUp(maxBufferSize);
+        this.buffersPerSize = buffersPerSize;
+
+        free = new ArrayDeque[sizeClass(this.maxBufferSize) + 1];
+
+        for(int i = 0; i < free.length; i++)
+        {
+            free[i] = new ArrayDeque<>(buffersPerSize);
+        }
+    }
+
+    /**
+     * This method takes a free buffer of at least the given size, or allocates one.
+     * @param minimumSize the number of bytes needed.
+     * @return returns a buffer whose length is a power of two no smaller than minimumSize,
+     * or exactly minimumSize if that is larger than the pool's largest size. Its contents are undefined.
+     */
+    public synchronized byte[] acquire(int minimumSize)
+    {
+        if(minimumSize > maxBufferSize)
+        {
+            return new byte[minimumSize];
+        }
+
+        int size = roundUp(minimumSize);
+        byte[] buffer = free[sizeClass(size)].pollFirst();
+
+        return buffer != null ? buffer : new byte[size];
+    }
+
+    /**
+     * This method returns a buffer to the pool. The caller must not use it afterwards.
+     * @param buffer a buffer from acquire, may be null.
+     */
+    public synchronized void release(byte[] buffer)
+    {
+        if(buffer == null || buffer.length < MIN_BUFFER_SIZE || buffer.length > maxBufferSize
+                || Integer.bitCount(buffer.length) != 1)
+        {
+            return;
+        }
+
+        ArrayDeque<byte[]> buffers = free[sizeClass(buffer.length)];
+
+        if(buffers.size() < buffersPerSize)
+        {
+            buffers.addFirst(buffer);
+        }
+    }
+
+    /**
+     * Getter method for the number of free buffers held
+     * @return returns the number of buffers waiting to be reused.
+     */
+    public synchronized int getFreeCount()
+    {
+        int count = 0;
+
+        for(ArrayDeque<byte[]> buffers : free)
+        {
+            count += buffers.size();
+        }
+
+        return count;
+    }
+
+    private static int roundUp(int size)
+    {
+        return size <= MIN_BUFFER_SIZE ? MIN_BUFFER_SIZE : Integer.highestOneBit(size - 1) << 1;
+    }
+
+    private static int sizeClass(int size)
+    {
+        return Integer.numberOfTrailingZeros(size) - MIN_SHIFT;
+    }
+}
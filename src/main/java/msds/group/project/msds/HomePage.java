@@ -3,33 +3,19 @@
  * This is where the bulk of user navigation takes place.
  *
  * @author  J.Woodhouse, D.B.Dawson, I.J.Atienza, M.J.T.Makunda
- * @version 1.04
+ * @version 1.10
  */
 
 package msds.group.project.msds;
 
 import android.content.Intent;
 import android.os.Bundle;
-import android.os.CountDownTimer;
 import android.support.v7.app.AppCompatActivity;
 import android.view.View;
 import android.widget.TextView;
-import android.widget.Toast;
-
-import com.android.volley.RequestQueue;
-import com.android.volley.toolbox.Volley;
-
-import java.util.concurrent.TimeUnit;
-
 
 public class HomePage extends AppCompatActivity
 {
-    private Long currentTimeStamp;
-    private Long tokenTimeStamp;
-
-    private SharedVariables sharedVariables;
-    private RequestQueue volleyQueue;
-
     private TextView tvSessionTimer;
 
     private Logger logger;
@@ -40,16 +26,10 @@ public class HomePage extends AppCompatActivity
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_home_page);
 
-        currentTimeStamp = TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis());
-
-        sharedVariables = SharedVariables.getInstance();
-        volleyQueue = Volley.newRequestQueue(this);
-        tokenTimeStamp = sharedVariables.getSessionTimeStamp();
         tvSessionTimer = findViewById(R.id.tvSessionTimer);
 
-        logger = new Logger(volleyQueue);
+        logger = new Logger(MsdsApplication.getInstance().getLogBatcher());
         logger.sendLog("Accessed home page");
-        sessionTimeout();
     }
 
     /**
@@ -78,47 +58,42 @@ public class HomePage extends AppCompatActivity
         startActivity(intent);
     }
 
-    /**
-     * This function is used to automatically log the user out of the Application
-     * after the session time limit is met.
-     *
-     * The current session length is set to 30 minutes.
-     *
-     * The remaining session time is calculated each time the user is returned to the
-     * home page.
-     */
-    private void sessionTimeout()
+    @Override
+    protected void onStart()
     {
-        Long timerValue = (tokenTimeStamp + 1800 - currentTimeStamp) * 1000;
-
-
-        CountDownTimer sessionTimer = new CountDownTimer(timerValue, 1000) {
-            @Override
-            public void onTick(long millisUntilFinished) {
-            tvSessionTimer.setText("Session ends in: " + millisUntilFinished / 60000 + ":" + millisUntilFinished / 1000 % 60);
-
-            }
-
-            @Override
-            public void onFinish() {
-                showToast("Session Ended");
-                logger.sendLog("Session timed out, Logged Out");
-                Intent intent = new Intent(HomePage.this, MainActivity.class);
-                intent.setFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
-                startActivity(intent);
-            }
-        };
+        super.onStart();
+        MsdsApplication.getInstance().getSessionClock().subscribe(sessionClockListener);
+    }
 
-        sessionTimer.start();
+    @Override
+    protected void onStop()
+    {
+        MsdsApplication.getInstance().getSessionClock().unsubscribe(sessionClockListener);
+        super.onStop();
     }
 
     /**
-     * Method used to show an android style Toast notification.
-     * @param text text parameter, this is what will be shown in the Toast notification.
+     * This listener is used to show the remaining session time.
+     *
+     * The current session length is set to 30 minutes. The SessionManager renews the session
+     * before it ends, so the user is only logged out if the session could not be renewed. The
+     * MsdsApplication logs the user out when that happens, on whichever page is showing.
+     *
+     * It is subscribed to the process-wide SessionClock only while the page is visible, so home
+     * pages left behind in the back stack do not tick.
      */
-    private void showToast(String text)
+    private final SessionClock.Listener sessionClockListener = new SessionClock.Listener()
     {
-        Toast toast = Toast.makeText(this, text, Toast.LENGTH_SHORT);
-        toast.show();
-    }
+        @Override
+        public void onTick(long remainingMillis)
+        {
+            tvSessionTimer.setText("Session ends in: " + remainingMillis / 60000 + ":" + remainingMillis / 1000 % 60);
+        }
+
+        @Override
+        public void onSessionEnded()
+        {
+            tvSessionTimer.setText("Session ended");
+        }
+    };
 }
@@ -0,0 +1,68 @@
+/**
+ * The HttpEngine interface sends the POST requests made by the MsdsApi.
+ *
+ * The MsdsApi only builds request bodies and parses response bodies, an HttpEngine is what
+ * moves the bytes. The App uses the VolleyHttpEngine, while the PooledHttpEngine can be used
+ * on the development machine to load test the API against a stub server.
+ *
+ * Engines that can see inside the exchange also report how long connecting and waiting
+ * for the first byte took, for the ApiMetrics.
+ *
+ * Engines ask for gzip responses and hand the Handler the body already decompressed. A request
+ * body is sent as it is given, so a caller that compressed it sets its Content-Encoding header.
+ *
+ * @author  J.Woodhouse, D.B.Dawson, I.J.Atienza, M.J.T.Makunda
+ * @version 1.02
+ */
+
+package msds.group.project.msds;
+
+import java.io.IOException;
+import java.util.Map;
+
+public interface HttpEngine
+{
+    /**
+     * The Handler interface receives the outcome of one request. Exactly one of its methods
+     * is called, on any thread, unless the request is cancelled first.
+     */
+    interface Handler
+    {
+        /**
+         * Called when the server answers, whatever the status code.
+         * @param statusCode the HTTP status code.
+         * @param headers the response headers, with names in lower case and repeated headers joined by commas.
+         * @param body the response body, empty if there was none.
+         * @param connectNanos time from the engine starting the request until it was connected,
+         *                     including DNS and TLS, or ApiMetrics.NOT_MEASURED.
+         * @param firstByteNanos time from the engine starting the request until the response
+         *                       headers arrived, or ApiMetrics.NOT_MEASURED.
+         */
+        void onResponse(int statusCode, Map<String, String> headers, byte[] body, long connectNanos, long firstByteNanos);
+
+        /**
+         * Called when no response was received.
+         * @param error the network error.
+         */
+        void onFailure(IOException error);
+    }
+
+    /**
+     * The Pending interface is a request that has been handed to the engine.
+     */
+    interface Pending
+    {
+        void cancel();
+    }
+
+    /**
+     * This method sends a POST request.
+     * @param url the URL of the endpoint.
+     * @param contentType the Content-Type of the body.
+     * @param headers any extra request headers, may be empty.
+     * @param body the request body.
+     * @param handler the handler for the response.
+     * @return returns the pending request, used to cancel it.
+     */
+    Pending post(String url, String contentType, Map<String, String> headers, byte[] body, Handler handler);
+}
@@ -0,0 +1,279 @@
+/**
+ * The InventoryAdapter class supplies the rows of the Inventory Page's RecyclerView.
+ *
+ * Only enough rows to fill the screen are ever inflated, they are recycled as the list
+ * scrolls, so memory use does not grow with the size of the inventory. Every row shares
+ * a single click listener, and each row's stable ID is its name's index in the snapshot's
+ * string table, so that RecyclerView can animate and reuse rows across inventory updates.
+ *
+ * While the user is searching, the adapter shows only the rows listed in a filter, the
+ * snapshot itself is not copied.
+ *
+ * Requests for more of an item that the server has not yet accepted are shown as a pending
+ * badge on the item's row.
+ *
+ * @author  J.Woodhouse, D.B.Dawson, I.J.Atienza, M.J.T.Makunda
+ * @version 1.04
+ */
+
+package msds.group.project.msds;
+
+import android.support.v7.util.DiffUtil;
+import android.support.v7.widget.RecyclerView;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.TextView;
+
+import java.util.Collections;
+import java.util.Map;
+
+public class InventoryAdapter extends RecyclerView.Adapter<InventoryAdapter.ViewHolder>
+{
+    /**
+     * The OnItemClickListener interface is used to report which item a user tapped.
+     */
+    public interface OnItemClickListener
+    {
+        void onItemClick(String itemName);
+    }
+
+    private final OnItemClickListener onItemClickListener;
+    private InventorySnapshot snapshot;
+    private int[] filterRows;
+    private int filterCount;
+    private Map<String, Integer> pendingQuantities = Collections.emptyMap();
+
+    private final View.OnClickListener rowClickListener = new View.OnClickListener()
+    {
+        @Override
+        public void onClick(View view)
+        {
+            ViewHolder holder = (ViewHolder) view.getTag();
+            int position = holder.getAdapterPosition();
+
+            if(position != RecyclerView.NO_POSITION)
+            {
+                onItemClickListener.onItemClick(snapshot.getName(rowAt(position)));
+            }
+        }
+    };
+
+    public InventoryAdapter(OnItemClickListener onItemClickListener)
+    {
+        this.onItemClickListener = onItemClickListener;
+        setHasStableIds(true);
+    }
+
+    /**
+     * Getter method for the snapshot currently shown.
+     * @return returns the snapshot, or null if nothing has been shown yet.
+     */
+    public InventorySnapshot getSnapshot()
+    {
+        return snapshot;
+    }
+
+    /**
+     * This method replaces the snapshot shown by the list.
+     *
+     * If a DiffResult is given only the changed rows are rebound, otherwise every row is.
+     * Any filter is removed, as its rows belong to the old snapshot.
+     *
+     * @param newSnapshot the inventory to show.
+     * @param diffResult the differences between the current and new snapshot, may be null.
+     */
+    public void setSnapshot(InventorySnapshot newSnapshot, DiffUtil.DiffResult diffResult)
+    {
+        snapshot = newSnapshot;
+        filterRows = null;
+
+        if(diffResult != null)
+        {
+            diffResult.dispatchUpdatesTo(this);
+        }
+        else
+        {
+            notifyDataSetChanged();
+        }
+    }
+
+    /**
+     * This method shows more rows of a response that is still being parsed.
+     * @param partialSnapshot the rows parsed so far.
+     * @param from the first row not shown before.
+     * @param to one past the last row of partialSnapshot.
+     */
+    public void showPartialSnapshot(InventorySnapshot partialSnapshot, int from, int to)
+    {
+        snapshot = partialSnapshot;
+
+        if(filterRows == null)
+        {
+            notifyItemRangeInserted(from, to - from);
+        }
+    }
+
+    /**
+     * This method shows only some rows of the current snapshot. The rows are rebound in
+     * place, no new row views are created.
+     * @param rows array whose first count elements are the rows to show, in display order.
+     * @param count the number of rows to show.
+     */
+    public void setFilter(int[] rows, int count)
+    {
+        filterRows = rows;
+        filterCount = count;
+        notifyDataSetChanged();
+    }
+
+    /**
+     * This method shows every row of the current snapshot again.
+     */
+    public void clearFilter()
+    {
+        if(filterRows != null)
+        {
+            filterRows = null;
+            notifyDataSetChanged();
+        }
+    }
+
+    /**
+     * This method shows the quantities requested but not yet accepted against their rows.
+     * @param newPendingQuantities the pending quantity of each item name, may be empty.
+     */
+    public void setPendingQuantities(Map<String, Integer> newPendingQuantities)
+    {
+        if(!pendingQuantities.equals(newPendingQuantities))
+        {
+            pendingQuantities = newPendingQuantities;
+            notifyDataSetChanged();
+        }
+    }
+
+    /**
+     * @return true if only some rows are being shown
+     */
+    public boolean isFiltered()
+    {
+        return filterRows != null;
+    }
+
+    private int rowAt(int position)
+    {
+        return filterRows == null ? position : filterRows[position];
+    }
+
+    @Override
+    public ViewHolder onCreateViewHolder(ViewGroup parent, int viewType)
+    {
+        View row = LayoutInflater.from(parent.getContext()).inflate(R.layout.inventory_row, parent, false);
+        ViewHolder holder = new ViewHolder(row);
+
+        row.setTag(holder);
+        row.setOnClickListener(rowClickListener);
+
+        return holder;
+    }
+
+    @Override
+    public void onBindViewHolder(ViewHolder holder, int position)
+    {
+        int row = rowAt(position);
+
+        String name = snapshot.getName(row);
+        Integer pendingQuantity = pendingQuantities.get(name);
+
+        holder.tvName.setText(name);
+        holder.tvQuantity.setText(String.valueOf(snapshot.getQuantity(row)));
+
+        if(pendingQuantity != null)
+        {
+            holder.tvPending.setText("+" + pendingQuantity + " pending");
+            holder.tvPending.setVisibility(View.VISIBLE);
+        }
+        else
+        {
+            holder.tvPending.setVisibility(View.GONE);
+        }
+    }
+
+    @Override
+    public int getItemCount()
+    {
+        if(snapshot == null)
+        {
+            return 0;
+        }
+
+        return filterRows == null ? snapshot.size() : filterCount;
+    }
+
+    /**
+     * Each item name keeps the same ID across snapshots that were seeded from one another.
+     */
+    @Override
+    public long getItemId(int position)
+    {
+        return snapshot.getNameId(rowAt(position));
+    }
+
+    /**
+     * The ViewHolder class keeps references to a row's TextViews so they are only looked up once.
+     */
+    static class ViewHolder extends RecyclerView.ViewHolder
+    {
+        private final TextView tvName;
+        private final TextView tvQuantity;
+        private final TextView tvPending;
+
+        ViewHolder(View row)
+        {
+            super(row);
+            tvName = row.findViewById(R.id.tvRowName);
+            tvQuantity = row.findViewById(R.id.tvRowQuantity);
+            tvPending = row.findViewById(R.id.tvRowPending);
+        }
+    }
+
+    /**
+     * The SnapshotDiff class tells DiffUtil how two snapshots differ, items are matched by name.
+     * It can be run on a background thread.
+     */
+    public static class SnapshotDiff extends DiffUtil.Callback
+    {
+        private final InventorySnapshot oldSnapshot;
+        private final InventorySnapshot newSnapshot;
+
+        public SnapshotDiff(InventorySnapshot oldSnapshot, InventorySnapshot newSnapshot)
+        {
+            this.oldSnapshot = oldSnapshot;
+            this.newSnapshot = newSnapshot;
+        }
+
+        @Override
+        public int getOldListSize()
+        {
+            return oldSnapshot.size();
+        }
+
+        @Override
+        public int getNewListSize()
+        {
+            return newSnapshot.size();
+        }
+
+        @Override
+        public boolean areItemsTheSame(int oldItemPosition, int newItemPosition)
+        {
+            return oldSnapshot.getName(oldItemPosition).equals(newSnapshot.getName(newItemPosition));
+        }
+
+        @Override
+        public boolean areContentsTheSame(int oldItemPosition, int newItemPosition)
+        {
+            return oldSnapshot.getQuantity(oldItemPosition) == newSnapshot.getQuantity(newItemPosition);
+        }
+    }
+}
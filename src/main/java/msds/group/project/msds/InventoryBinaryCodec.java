@@ -0,0 +1,446 @@
+/**
+ * The InventoryBinaryCodec class reads and writes GetInventory.php responses in a compact
+ * binary encoding, an alternative to JSON that the client asks for with an Accept header
+ * and the server may answer with the CONTENT_TYPE.
+ *
+ * In JSON every quantity travels as a quoted string and every name is escaped and quoted.
+ * The binary encoding sends the same fields with length prefixes instead:
+ *
+ * header : the bytes 'M' 'I' and the format version, 1
+ * flags : one byte, 1 for success, 2 for notModified and 4 for delta
+ * version, baseVersion : strings
+ * items : a count followed by each item's name as a string and its quantity
+ * removed : a count followed by each removed name as a string
+ *
+ * Counts and lengths are unsigned varints, seven bits to a byte with the high bit set on
+ * every byte but the last. Quantities are zigzag varints, so a small quantity, the usual
+ * case, takes a single byte. A string is a varint of its UTF-8 length plus one followed by
+ * the UTF-8 bytes, and a length of 0 is a null string.
+ *
+ * The Encoder writes a response an item at a time into buffers taken from a BufferPool, and
+ * decode reads one a row at a time straight into an InventorySnapshot.Builder, giving the same
+ * Result as the JSON parser.
+ *
+ * This class has no Android dependencies so that it can be benchmarked on the development machine.
+ *
+ * @author  J.Woodhouse, D.B.Dawson, I.J.Atienza, M.J.T.Makunda
+ * @version 1.00
+ */
+
+package msds.group.project.msds;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+public class InventoryBinaryCodec
+{
+    public static final String CONTENT_TYPE = "application/x-msds-inventory";
+
+    private static final int FORMAT_VERSION = 1;
+    private static final int FLAG_SUCCESS = 1;
+    private static final int FLAG_NOT_MODIFIED = 2;
+    private static final int FLAG_DELTA = 4;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private InventoryBinaryCodec()
+    {
+    }
+
+    /**
+     * This method checks whether a response is in the binary encoding.
+     * @param contentType the Content-Type of the response, may be null.
+     * @return returns true if the media type is CONTENT_TYPE, whatever its parameters.
+     */
+    public static boolean isBinary(String contentType)
+    {
+        if(contentType == null)
+        {
+            return false;
+        }
+
+        int end = contentType.indexOf(';');
+        String mediaType = (end < 0 ? contentType : contentType.substring(0, end)).trim();
+
+        return mediaType.equalsIgnoreCase(CONTENT_TYPE);
+    }
+
+    /**
+     * This method decodes a whole response.
+     * @param data the buffer holding the response.
+     * @param offset the position of the response in data.
+     * @param length the length of the response.
+     * @param seed the snapshot currently shown, its names keep their name IDs, may be null.
+     * @param chunkListener listener for groups of rows, may be null.
+     * @param chunkSize the number of rows in each chunk.
+     * @return returns the decoded response. As with the JSON parser, the items of a delta are only the changed rows.
+     * @throws IOException if the response is truncated or is not in the binary encoding.
+     */
+    public static InventoryResponseParser.Result decode(byte[] data, int offset, int length, InventorySnapshot seed,
+                                                        InventoryResponseParser.ChunkListener chunkListener, int chunkSize) throws IOException
+    {
+        Decoder decoder = new Decoder(data, offset, length);
+
+        if(decoder.readByte() != 'M' || decoder.readByte() != 'I' || decoder.readByte() != FORMAT_VERSION)
+        {
+            throw new IOException("Not a binary inventory");
+        }
+
+        int flags = decoder.readByte();
+        String version = decoder.readString();
+        String baseVersion = decoder.readString();
+        int itemCount = decoder.readCount();
+        InventorySnapshot.Builder builder = new InventorySnapshot.Builder(seed).setVersion(version);
+        int emitted = 0;
+
+        for(int i = 0; i < itemCount; i++)
+        {
+            builder.add(decoder.readString(), decoder.readQuantity());
+
+            if(chunkListener != null && builder.size() - emitted == chunkSize)
+            {
+                chunkListener.onChunk(builder.build(), emitted, builder.size());
+                emitted = builder.size();
+            }
+        }
+
+        if(chunkListener != null && builder.size() > emitted)
+        {
+            chunkListener.onChunk(builder.build(), emitted, builder.size());
+        }
+
+        String[] removed = new String[decoder.readCount()];
+
+        for(int i = 0; i < removed.length; i++)
+        {
+            removed[i] = decoder.readString();
+        }
+
+        return new InventoryResponseParser.Result((flags & FLAG_SUCCESS) != 0, (flags & FLAG_NOT_MODIFIED) != 0,
+                (flags & FLAG_DELTA) != 0, version, baseVersion, removed, builder.build());
+    }
+
+    /**
+     * The Decoder class reads the values of a response in order, checking each one fits.
+     */
+    private static class Decoder
+    {
+        private final byte[] data;
+        private final int end;
+        private int position;
+
+        private Decoder(byte[] data, int offset, int length)
+        {
+            this.data = data;
+            this.position = offset;
+            this.end = offset + length;
+        }
+
+        private int readByte() throws IOException
+        {
+            if(position >= end)
+            {
+                throw new IOException("Binary inventory ends early");
+            }
+
+            return data[position++] & 0xFF;
+        }
+
+        private int readVarint() throws IOException
+        {
+            int value = 0;
+
+            for(int shift = 0; shift < 35; shift += 7)
+            {
+                int b = readByte();
+                value |= (b & 0x7F) << shift;
+
+                if((b & 0x80) == 0)
+                {
+                    return value;
+                }
+            }
+
+            throw new IOException("Varint too long at byte " + position);
+        }
+
+        /**
+         * Reads a count, which can be no more than the bytes left as every element takes at least one.
+         */
+        private int readCount() throws IOException
+        {
+            int count = readVarint();
+
+            if(count < 0 || count > end - position)
+            {
+                throw new IOException("Bad count " + count + " at byte " + position);
+            }
+
+            return count;
+        }
+
+        private int readQuantity() throws IOException
+        {
+            int zigzag = readVarint();
+            return (zigzag >>> 1) ^ -(zigzag & 1);
+        }
+
+        private String readString() throws IOException
+        {
+            int length = readVarint() - 1;
+
+            if(length == -1)
+            {
+                return null;
+            }
+
+            if(length < 0 || length > end - position)
+            {
+                throw new IOException("Bad string length " + length + " at byte " + position);
+            }
+
+            String value = new String(data, position, length, UTF_8);
+            position += length;
+            return value;
+        }
+    }
+
+    /**
+     * The Encoder class writes one response into a buffer from a BufferPool, growing it into a
+     * larger pooled buffer when it is full. Write the header, then the item count followed by
+     * that many items, then the removed names. Release the Encoder once the bytes have been sent.
+     */
+    public static class Encoder
+    {
+        private final BufferPool bufferPool;
+        private byte[] buffer;
+        private int length;
+
+        public Encoder(BufferPool bufferPool)
+        {
+            this.bufferPool = bufferPool;
+            this.buffer = bufferPool.acquire(BufferPool.MIN_BUFFER_SIZE);
+        }
+
+        /**
+         * @param success the success field.
+         * @param notModified the notModified field.
+         * @param delta true if the items are only the changes since baseVersion.
+         * @param version the version of the inventory, may be null.
+         * @param baseVersion the version a delta was calculated from, may be null.
+         * @return returns this Encoder.
+         */
+        public Encoder writeHeader(boolean success, boolean notModified, boolean delta, String version, String baseVersion)
+        {
+            ensureCapacity(4);
+            buffer[length++] = 'M';
+            buffer[length++] = 'I';
+            buffer[length++] = FORMAT_VERSION;
+            buffer[length++] = (byte) ((success ? FLAG_SUCCESS : 0) | (notModified ? FLAG_NOT_MODIFIED : 0) | (delta ? FLAG_DELTA : 0));
+
+            writeString(version);
+            writeString(baseVersion);
+            return this;
+        }
+
+        public Encoder writeItemCount(int count)
+        {
+            writeVarint(count);
+            return this;
+        }
+
+        public Encoder writeItem(String name, int quantity)
+        {
+            writeString(name);
+            writeVarint((quantity << 1) ^ (quantity >> 31));
+            return this;
+        }
+
+        public Encoder writeRemoved(String[] names)
+        {
+            writeVarint(names.length);
+
+            for(String name : names)
+            {
+                writeString(name);
+            }
+
+            return this;
+        }
+
+        /**
+         * This method writes a whole parsed response, as the stub server and benchmarks do.
+         * @param result the response.
+         * @return returns this Encoder.
+         */
+        public Encoder writeResult(InventoryResponseParser.Result result)
+        {
+            InventorySnapshot items = result.getItems();
+
+            writeHeader(result.isSuccess(), result.isNotModified(), result.isDelta(), result.getVersion(), result.getBaseVersion());
+            writeItemCount(items.size());
+
+            for(int i = 0; i < items.size(); i++)
+            {
+                writeItem(items.getName(i), items.getQuantity(i));
+            }
+
+            return writeRemoved(result.getRemoved());
+        }
+
+        /**
+         * Getter method for the buffer variable
+         * @return returns the pooled buffer, whose first getLength bytes are the response.
+         */
+        public byte[] getBuffer()
+        {
+            return buffer;
+        }
+
+        public int getLength()
+        {
+            return length;
+        }
+
+        public void writeTo(OutputStream out) throws IOException
+        {
+            out.write(buffer, 0, length);
+        }
+
+        public byte[] toByteArray()
+        {
+            return Arrays.copyOf(buffer, length);
+        }
+
+        /**
+         * This method gives the buffer back to the pool. The Encoder must not be used afterwards.
+         */
+        public void release()
+        {
+            bufferPool.release(buffer);
+            buffer = null;
+        }
+
+        private void writeVarint(int value)
+        {
+            ensureCapacity(5);
+
+            while((value & ~0x7F) != 0)
+            {
+                buffer[length++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+
+            buffer[length++] = (byte) value;
+        }
+
+        /**
+         * Writes a string as UTF-8 without encoding it into a temporary array first. As with
+         * String.getBytes, an unpaired surrogate is written as '?'.
+         */
+        private void writeString(String value)
+        {
+            if(value == null)
+            {
+                writeVarint(0);
+                return;
+            }
+
+            int byteLength = utf8Length(value);
+
+            writeVarint(byteLength + 1);
+            ensureCapacity(byteLength);
+
+            for(int i = 0; i < value.length(); i++)
+            {
+                char c = value.charAt(i);
+
+                if(c < 0x80)
+                {
+                    buffer[length++] = (byte) c;
+                }
+                else if(c < 0x800)
+                {
+                    buffer[length++] = (byte) (0xC0 | (c >> 6));
+                    buffer[length++] = (byte) (0x80 | (c & 0x3F));
+                }
+                else if(Character.isSurrogate(c))
+                {
+                    if(Character.isHighSurrogate(c) && i + 1 < value.length() && Character.isLowSurrogate(value.charAt(i + 1)))
+                    {
+                        int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                        buffer[length++] = (byte) (0xF0 | (codePoint >> 18));
+                        buffer[length++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                        buffer[length++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                        buffer[length++] = (byte) (0x80 | (codePoint & 0x3F));
+                    }
+                    else
+                    {
+                        buffer[length++] = '?';
+                    }
+                }
+                else
+                {
+                    buffer[length++] = (byte) (0xE0 | (c >> 12));
+                    buffer[length++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                    buffer[length++] = (byte) (0x80 | (c & 0x3F));
+                }
+            }
+        }
+
+        private static int utf8Length(String value)
+        {
+            int byteLength = 0;
+
+            for(int i = 0; i < value.length(); i++)
+            {
+                char c = value.charAt(i);
+
+                if(c < 0x80)
+                {
+                    byteLength += 1;
+                }
+                else if(c < 0x800)
+                {
+                    byteLength += 2;
+                }
+                else if(Character.isSurrogate(c))
+                {
+                    if(Character.isHighSurrogate(c) && i + 1 < value.length() && Character.isLowSurrogate(value.charAt(i + 1)))
+                    {
+                        byteLength += 4;
+                        i++;
+                    }
+                    else
+                    {
+                        byteLength += 1;
+                    }
+                }
+                else
+                {
+                    byteLength += 3;
+                }
+            }
+
+            return byteLength;
+        }
+
+        /**
+         * Moves the response into a pooled buffer at least twice the size when the next value may not fit.
+         */
+        private void ensureCapacity(int needed)
+        {
+            if(length + needed <= buffer.length)
+            {
+                return;
+            }
+
+            byte[] larger = bufferPool.acquire(Math.max(buffer.length * 2, length + needed));
+            System.arraycopy(buffer, 0, larger, 0, length);
+            bufferPool.release(buffer);
+            buffer = larger;
+        }
+    }
+}
@@ -0,0 +1,108 @@
+/**
+ * The InventoryDelta class holds the changes to a user's inventory since a given version,
+ * as returned by the delta variant of GetInventory.php, and merges them into the snapshot
+ * the client already holds.
+ *
+ * Items are identified by name. A delta has two parts:
+ *
+ * changes : the items added or whose quantity changed, with their new quantity.
+ * removed : the names of the items no longer in the inventory.
+ *
+ * Merging keeps the order of the snapshot. Changed items keep their row, removed items lose
+ * theirs, and new items are added at the end in the order the server sent them. An item in
+ * both parts is treated as changed, as the changes describe the item as it is now.
+ *
+ * The merged snapshot is built from a Builder seeded with the old snapshot, so items that are
+ * still there keep their name IDs and only the changed rows need to be rebound.
+ *
+ * This class has no Android dependencies so that it can be tested on the development machine.
+ *
+ * @author  J.Woodhouse, D.B.Dawson, I.J.Atienza, M.J.T.Makunda
+ * @version 1.00
+ */
+
+package msds.group.project.msds;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+
+public class InventoryDelta
+{
+    private final InventorySnapshot changes;
+    private final String[] removed;
+
+    /**
+     * @param changes the added and changed items, its version is the version after the delta.
+     * @param removed the names of the removed items.
+     */
+    public InventoryDelta(InventorySnapshot changes, String[] removed)
+    {
+        this.changes = changes;
+        this.removed = removed;
+    }
+
+    /**
+     * Getter method for the changes variable
+     * @return the added and changed items
+     */
+    public InventorySnapshot getChanges()
+    {
+        return changes;
+    }
+
+    /**
+     * Getter method for the removed variable
+     * @return the names of the removed items
+     */
+    public String[] getRemoved()
+    {
+        return removed.clone();
+    }
+
+    /**
+     * This method merges the delta into a snapshot.
+     * @param base the snapshot the delta was requested for.
+     * @return returns the merged snapshot, with the delta's version and a fetchedAt of 0.
+     */
+    public InventorySnapshot applyTo(InventorySnapshot base)
+    {
+        // Later rows for the same item win.
+        HashMap<String, Integer> changedRows = new HashMap<>(changes.size() * 2);
+
+        for(int i = 0; i < changes.size(); i++)
+        {
+            changedRows.put(changes.getName(i), i);
+        }
+
+        HashSet<String> removedNames = new HashSet<>(Arrays.asList(removed));
+        boolean[] merged = new boolean[changes.size()];
+        InventorySnapshot.Builder builder = new InventorySnapshot.Builder(base).setVersion(changes.getVersion());
+
+        for(int row = 0; row < base.size(); row++)
+        {
+            String name = base.getName(row);
+            Integer changedRow = changedRows.get(name);
+
+            if(changedRow != null)
+            {
+                builder.add(name, changes.getQuantity(changedRow));
+                merged[changedRow] = true;
+            }
+            else if(!removedNames.contains(name))
+            {
+                builder.add(name, base.getQuantity(row));
+            }
+        }
+
+        for(int i = 0; i < changes.size(); i++)
+        {
+            if(!merged[i] && changedRows.get(changes.getName(i)) == i)
+            {
+                builder.add(changes.getName(i), changes.getQuantity(i));
+            }
+        }
+
+        return builder.build();
+    }
+}
@@ -0,0 +1,303 @@
+/**
+ * The InventoryRequests class sends the inventory update requests made on the Inventory Page
+ * Requests page in the background, so the user does not wait for NewRequest.php.
+ *
+ * A request is written to the WriteAheadQueue and counted as pending straight away, so the
+ * Inventory Page can show it against the item before the server has answered. When the server
+ * accepts it the quantity is added to the inventory in the SessionCache and InventoryStore, so
+ * the page shows it without waiting for a download. The patched inventory has no version, so the
+ * next check with the server downloads it in full and corrects it. Only an inventory fetched before
+ * the request was made is patched, as one downloaded since may already hold it. Such a saved
+ * inventory is deleted instead, so the next download replaces it, and a cached one is left as it
+ * is. When the server refuses it the pending quantity is taken away again. A request that cannot be sent stays pending while the
+ * WriteAheadQueue retries it.
+ *
+ * Pending requests are only counted in memory. A request still queued when the process is killed
+ * is sent after the restart, but is no longer shown as pending, and the next inventory download
+ * shows its result.
+ *
+ * Listeners are told about every change on the thread that made it, which is not normally the UI thread.
+ *
+ * This class has no Android dependencies so that it can be tested on the development machine.
+ *
+ * @author  J.Woodhouse, D.B.Dawson, I.J.Atienza, M.J.T.Makunda
+ * @version 1.02
+ */
+
+package msds.group.project.msds;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+
+public class InventoryRequests
+{
+    /**
+     * The Listener interface is told how each request is getting on.
+     */
+    public interface Listener
+    {
+        /**
+         * Called when a request has been queued and counted as pending.
+         * @param username the user the request was made for.
+         * @param itemName the item requested.
+         * @param quantity the amount requested.
+         */
+        void onRequestQueued(String username, String itemName, int quantity);
+
+        /**
+         * Called when the server has accepted a request.
+         * @param username the user the request was made for.
+         * @param itemName the item requested.
+         * @param quantity the amount requested.
+         * @param inventory the cached inventory, which holds the request, or null if none is cached.
+         */
+        void onRequestConfirmed(String username, String itemName, int quantity, InventorySnapshot inventory);
+
+        /**
+         * Called when the server has refused a request, or its answer could not be read.
+         * @param username the user the request was made for.
+         * @param itemName the item requested.
+         * @param quantity the amount requested.
+         * @param error the reason the request was not accepted.
+         */
+        void onRequestRolledBack(String username, String itemName, int quantity, Exception error);
+    }
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final WriteAheadQueue writeAheadQueue;
+    private final SessionCache sessionCache;
+    private final InventoryStore inventoryStore;
+    private final Executor backgroundExecutor;
+    private final RequestBodyWriter bodyWriter = new RequestBodyWriter(new BufferPool(BufferPool.MIN_BUFFER_SIZE, 1));
+
+    private final HashMap<String, HashMap<String, Integer>> pending = new HashMap<>();
+    private final CopyOnWriteArrayList<Listener> listeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * @param writeAheadQueue the queue requests are written to and sent from.
+     * @param sessionCache the cache whose inventory accepted requests are added to.
+     * @param inventoryStore the store whose saved inventory accepted requests are added to.
+     * @param backgroundExecutor the thread the InventoryStore is updated on.
+     */
+    public InventoryRequests(WriteAheadQueue writeAheadQueue, SessionCache sessionCache, InventoryStore inventoryStore,
+                             Executor backgroundExecutor)
+    {
+        this.writeAheadQueue = writeAheadQueue;
+        this.sessionCache = sessionCache;
+        this.inventoryStore = inventoryStore;
+        this.backgroundExecutor = backgroundExecutor;
+    }
+
+    /**
+     * This method queues a request for more of an item and returns without waiting for the server.
+     *
+     * It writes a JSON object consisting of the following inputs to the WriteAheadQueue, which sends it
+     * in a POST request to NewRequest.php:
+     *
+     * username - the user the request is made for.
+     * authToken - the token of the session making the request.
+     * itemName - the name of the item being requested.
+     * quantity - the amount of the item being requested.
+     *
+     * The returned JSON object has 1 field:
+     *
+     * success : boolean
+     *
+     * @param username the user the request is made for.
+     * @param authToken the token of the session making the request.
+     * @param itemName the item requested.
+     * @param quantity the amount requested.
+     * @throws IOException if the request could not be written to disk, in which case it is rolled back.
+     */
+    public void submit(final String username, String authToken, final String itemName, final int quantity) throws IOException
+    {
+        byte[] body;
+
+        synchronized(bodyWriter)
+        {
+            bodyWriter.reset().beginObject()
+                    .name("username").value(username)
+                    .name("authToken").value(authToken)
+                    .name("itemName").value(itemName)
+                    .name("quantity").value(Integer.toString(quantity))
+                    .endObject();
+            body = bodyWriter.toByteArray();
+        }
+
+        final long requestedAt = System.currentTimeMillis();
+        addPending(username, itemName, quantity);
+
+        WriteAheadQueue.Callback callback = new WriteAheadQueue.Callback()
+        {
+            @Override
+            public void onDelivered(String response)
+            {
+                try
+                {
+                    if(MsdsApi.readBoolean(response.getBytes(UTF_8), "success"))
+                    {
+                        confirm(username, itemName, quantity, requestedAt);
+                    }
+                    else
+                    {
+                        rollBack(username, itemName, quantity, new IOException("Request refused by the server"));
+                    }
+                }
+                catch (IOException ex)
+                {
+                    rollBack(username, itemName, quantity, ex);
+                }
+            }
+
+            @Override
+            public void onFailed(Exception error, boolean retryable)
+            {
+                // A retryable failure stays pending, the WriteAheadQueue reports the final result later.
+                if(!retryable)
+                {
+                    rollBack(username, itemName, quantity, error);
+                }
+            }
+        };
+
+        try
+        {
+            writeAheadQueue.enqueue(WriteAheadQueue.KIND_NEW_REQUEST, body, callback);
+        }
+        catch (IOException ex)
+        {
+            rollBack(username, itemName, quantity, ex);
+            throw ex;
+        }
+    }
+
+    /**
+     * Getter method for the quantities requested but not yet accepted.
+     * @param username the user asking.
+     * @return returns a copy of the pending quantity of each item, empty if there are none.
+     */
+    public synchronized Map<String, Integer> getPendingQuantities(String username)
+    {
+        HashMap<String, Integer> quantities = pending.get(username);
+        return quantities == null ? new HashMap<String, Integer>() : new HashMap<>(quantities);
+    }
+
+    public void addListener(Listener listener)
+    {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener)
+    {
+        listeners.remove(listener);
+    }
+
+    private void addPending(String username, String itemName, int quantity)
+    {
+        synchronized(this)
+        {
+            HashMap<String, Integer> quantities = pending.get(username);
+
+            if(quantities == null)
+            {
+                quantities = new HashMap<>();
+                pending.put(username, quantities);
+            }
+
+            Integer current = quantities.get(itemName);
+            quantities.put(itemName, current == null ? quantity : current + quantity);
+        }
+
+        for(Listener listener : listeners)
+        {
+            listener.onRequestQueued(username, itemName, quantity);
+        }
+    }
+
+    /**
+     * Takes a request out of the pending quantities.
+     */
+    private synchronized void removePending(String username, String itemName, int quantity)
+    {
+        HashMap<String, Integer> quantities = pending.get(username);
+        Integer current = quantities == null ? null : quantities.get(itemName);
+
+        if(current == null)
+        {
+            return;
+        }
+
+        if(current - quantity > 0)
+        {
+            quantities.put(itemName, current - quantity);
+        }
+        else
+        {
+            quantities.remove(itemName);
+
+            if(quantities.isEmpty())
+            {
+                pending.remove(username);
+            }
+        }
+    }
+
+    /**
+     * Adds an accepted request to the cached inventory straight away and to the saved one on the
+     * background thread, then tells the listeners.
+     */
+    private void confirm(final String username, final String itemName, final int quantity, final long requestedAt)
+    {
+        removePending(username, itemName, quantity);
+        InventorySnapshot inventory = sessionCache.addToInventory(username, itemName, quantity, requestedAt);
+
+        backgroundExecutor.execute(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                InventorySnapshot saved = inventoryStore.load(username);
+
+                if(saved == null)
+                {
+                    return;
+                }
+
+                if(saved.getFetchedAt() >= requestedAt)
+                {
+                    inventoryStore.delete(username);
+                    return;
+                }
+
+                try
+                {
+                    inventoryStore.save(username, saved.withAddedQuantity(itemName, quantity));
+                }
+                catch (IOException ex)
+                {
+                    // The saved inventory is left as it was, and is replaced by the next download.
+                }
+            }
+        });
+
+        for(Listener listener : listeners)
+        {
+            listener.onRequestConfirmed(username, itemName, quantity, inventory);
+        }
+    }
+
+    private void rollBack(String username, String itemName, int quantity, Exception error)
+    {
+        removePending(username, itemName, quantity);
+
+        for(Listener listener : listeners)
+        {
+            listener.onRequestRolledBack(username, itemName, quantity, error);
+        }
+    }
+}
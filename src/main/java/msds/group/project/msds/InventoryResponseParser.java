@@ -0,0 +1,295 @@
+/**
+ * The InventoryResponseParser class reads a GetInventory.php response with a
+ * JsonStreamReader, so the items go straight from the response bytes into the columns
+ * of an InventorySnapshot without an intermediate JSONObject.
+ *
+ * While the second of the itemName and quantity arrays is being read, completed
+ * rows are passed to a ChunkListener in groups, so that a caller can start showing
+ * a large inventory before the whole response has been parsed.
+ *
+ * A response to the delta variant of GetInventory.php only holds the items that changed
+ * since the version the client sent, and the names of those removed:
+ *
+ * delta : boolean, true if the response is a delta rather than the whole inventory
+ * baseVersion : string, the version the delta was calculated from
+ * removed : array of the names of removed items
+ *
+ * parseDelta merges such a response into the client's snapshot with an InventoryDelta.
+ * applyDelta does the same for a response decoded by the InventoryBinaryCodec.
+ *
+ * This class has no Android dependencies so that it can be benchmarked on the development machine.
+ *
+ * @author  J.Woodhouse, D.B.Dawson, I.J.Atienza, M.J.T.Makunda
+ * @version 1.03
+ */
+
+package msds.group.project.msds;
+
+import java.io.IOException;
+import java.util.ArrayList;
+
+public class InventoryResponseParser
+{
+    public static final int DEFAULT_CHUNK_SIZE = 256;
+
+    /**
+     * The ChunkListener interface receives rows as soon as both their name and quantity have been read.
+     */
+    public interface ChunkListener
+    {
+        /**
+         * Called each time a group of rows is complete, in order. The snapshot holds every
+         * row read so far and is not changed by later parsing.
+         * @param items the rows read so far.
+         * @param from the first row of this chunk.
+         * @param to one past the last row of this chunk.
+         */
+        void onChunk(InventorySnapshot items, int from, int to);
+    }
+
+    private InventoryResponseParser()
+    {
+    }
+
+    /**
+     * This method parses a whole GetInventory.php response. Unknown fields are skipped.
+     * @param data the response body.
+     * @param seed the snapshot currently shown, its names keep their name IDs, may be null.
+     * @param chunkListener listener for groups of rows, may be null.
+     * @param chunkSize the number of rows in each chunk.
+     * @return returns the parsed response.
+     * @throws IOException if the body is not valid JSON, a quantity is not a number, or success is missing.
+     */
+    public static Result parse(byte[] data, InventorySnapshot seed, ChunkListener chunkListener, int chunkSize) throws IOException
+    {
+        JsonStreamReader reader = new JsonStreamReader(data);
+        InventorySnapshot.Builder builder = new InventorySnapshot.Builder(seed);
+        Result result = new Result();
+        boolean hasSuccess = false;
+        boolean readFirstArray = false;
+
+        reader.beginObject();
+
+        while(reader.hasNext())
+        {
+            String name = reader.nextName();
+
+            if(name.equals("success"))
+            {
+                result.success = reader.nextBoolean();
+                hasSuccess = true;
+            }
+            else if(name.equals("notModified"))
+            {
+                result.notModified = reader.nextBoolean();
+            }
+            else if(name.equals("delta"))
+            {
+                result.delta = reader.nextBoolean();
+            }
+            else if(name.equals("baseVersion") && reader.peek() != JsonStreamReader.NULL)
+            {
+                result.baseVersion = reader.nextString();
+            }
+            else if(name.equals("removed"))
+            {
+                result.removed = readNames(reader);
+            }
+            else if(name.equals("version") && reader.peek() != JsonStreamReader.NULL)
+            {
+                result.version = reader.nextString();
+            }
+            else if(name.equals("itemName") || name.equals("quantity"))
+            {
+                readArray(reader, builder, name.equals("itemName"), readFirstArray ? chunkListener : null, chunkSize);
+                readFirstArray = true;
+            }
+            else
+            {
+                reader.skipValue();
+            }
+        }
+
+        reader.endObject();
+
+        if(!hasSuccess)
+        {
+            throw new IOException("No value for success");
+        }
+
+        result.items = builder.setVersion(result.version).build();
+        return result;
+    }
+
+    /**
+     * This method parses a response to the delta variant of GetInventory.php. If the server
+     * sent a delta it is merged into the base snapshot, otherwise the response is the whole
+     * inventory and is parsed as usual. Either way the items of the result are the whole inventory.
+     * @param data the response body.
+     * @param base the snapshot whose version was sent to the server.
+     * @return returns the parsed response.
+     * @throws IOException if the body cannot be parsed, or the delta was calculated from a different version.
+     */
+    public static Result parseDelta(byte[] data, InventorySnapshot base) throws IOException
+    {
+        return applyDelta(parse(data, base, null, DEFAULT_CHUNK_SIZE), base);
+    }
+
+    /**
+     * This method merges a parsed delta response into the snapshot it was requested for.
+     * A response that is not a delta is returned as it is.
+     * @param result the parsed response, its items are replaced by the merged inventory.
+     * @param base the snapshot whose version was sent to the server.
+     * @return returns the result.
+     * @throws IOException if the delta was calculated from a different version.
+     */
+    public static Result applyDelta(Result result, InventorySnapshot base) throws IOException
+    {
+        if(result.delta && result.success && !result.notModified)
+        {
+            if(result.baseVersion != null && !result.baseVersion.equals(base.getVersion()))
+            {
+                throw new IOException("Delta from version " + result.baseVersion + " cannot be applied to version " + base.getVersion());
+            }
+
+            result.items = new InventoryDelta(result.items, result.removed).applyTo(base);
+        }
+
+        return result;
+    }
+
+    private static String[] readNames(JsonStreamReader reader) throws IOException
+    {
+        ArrayList<String> names = new ArrayList<>();
+
+        reader.beginArray();
+
+        while(reader.hasNext())
+        {
+            names.add(reader.nextString());
+        }
+
+        reader.endArray();
+        return names.toArray(new String[names.size()]);
+    }
+
+    /**
+     * Reads one of the two item arrays into its column. When the other column has already
+     * been read, completed rows are handed to the listener every chunkSize elements.
+     */
+    private static void readArray(JsonStreamReader reader, InventorySnapshot.Builder builder, boolean isItemNames,
+                                  ChunkListener chunkListener, int chunkSize) throws IOException
+    {
+        int emitted = 0;
+
+        reader.beginArray();
+
+        while(reader.hasNext())
+        {
+            if(isItemNames)
+            {
+                builder.appendName(reader.nextString());
+            }
+            else
+            {
+                builder.appendQuantity(reader.nextInt());
+            }
+
+            if(chunkListener != null && builder.size() - emitted == chunkSize)
+            {
+                chunkListener.onChunk(builder.build(), emitted, builder.size());
+                emitted = builder.size();
+            }
+        }
+
+        reader.endArray();
+
+        if(chunkListener != null && builder.size() > emitted)
+        {
+            chunkListener.onChunk(builder.build(), emitted, builder.size());
+        }
+    }
+
+    /**
+     * The Result class holds the fields of a GetInventory.php response.
+     */
+    public static class Result
+    {
+        private boolean success;
+        private boolean notModified;
+        private boolean delta;
+        private String version;
+        private String baseVersion;
+        private String[] removed = new String[0];
+        private InventorySnapshot items = InventorySnapshot.EMPTY;
+
+        Result()
+        {
+        }
+
+        /**
+         * Creates a Result read by a decoder other than this parser.
+         */
+        Result(boolean success, boolean notModified, boolean delta, String version, String baseVersion,
+               String[] removed, InventorySnapshot items)
+        {
+            this.success = success;
+            this.notModified = notModified;
+            this.delta = delta;
+            this.version = version;
+            this.baseVersion = baseVersion;
+            this.removed = removed;
+            this.items = items;
+        }
+
+        public boolean isSuccess()
+        {
+            return success;
+        }
+
+        public boolean isNotModified()
+        {
+            return notModified;
+        }
+
+        public String getVersion()
+        {
+            return version;
+        }
+
+        /**
+         * @return true if the server sent only the changes since the version the client holds
+         */
+        public boolean isDelta()
+        {
+            return delta;
+        }
+
+        /**
+         * @return the version a delta was calculated from, or null
+         */
+        public String getBaseVersion()
+        {
+            return baseVersion;
+        }
+
+        /**
+         * Getter method for the removed variable
+         * @return the names of the items removed since the base version, empty unless isDelta
+         */
+        public String[] getRemoved()
+        {
+            return removed.clone();
+        }
+
+        /**
+         * Getter method for the items variable
+         * @return the rows of the response, with fetchedAt left at 0. For a delta read by parse
+         * these are only the changed rows, parseDelta gives the merged inventory.
+         */
+        public InventorySnapshot getItems()
+        {
+            return items;
+        }
+    }
+}
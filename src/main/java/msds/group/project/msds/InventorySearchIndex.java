@@ -0,0 +1,416 @@
+/**
+ * The InventorySearchIndex class finds the rows of an InventorySnapshot whose item name matches
+ * what the user has typed into the Inventory Page's search box, without scanning every row.
+ *
+ * Matching ignores case. Queries of one or two characters match the start of any word in a
+ * name, longer queries match anywhere in a name. The index is built once per snapshot and holds:
+ *
+ * word prefixes : the first one and first two characters of every word, with the rows they start.
+ * trigrams : every run of three characters, with the rows that contain it.
+ *
+ * A short query is answered straight from its prefix's row list. A longer query only checks the
+ * rows listed under its rarest trigram. When the new query can only match rows that the previous
+ * query matched, such as after typing another character, only those rows are checked.
+ *
+ * Building the index can take a noticeable time for a large inventory, so it should be done on a
+ * background thread. Searching is fast enough to run on the main thread for every keystroke.
+ *
+ * This class has no Android dependencies so that it can be tested/benchmarked on the development machine.
+ *
+ * @author  J.Woodhouse, D.B.Dawson, I.J.Atienza, M.J.T.Makunda
+ * @version 1.00
+ */
+
+package msds.group.project.msds;
+
+import java.util.Arrays;
+
+public class InventorySearchIndex
+{
+    private static final long ONE_CHAR_PREFIX = 1L << 48;
+    private static final long TWO_CHAR_PREFIX = 2L << 48;
+    private static final long TRIGRAM = 3L << 48;
+
+    private final InventorySnapshot snapshot;
+
+    private long[] keys;
+    private int[] counts;
+    private int[] starts;
+    private int keyCount;
+    private int[] postings;
+
+    private InventorySearchIndex(InventorySnapshot snapshot)
+    {
+        this.snapshot = snapshot;
+        keys = new long[1024];
+        counts = new int[1024];
+    }
+
+    /**
+     * This method builds the index for a snapshot.
+     * @param snapshot the snapshot to index.
+     * @return returns the index.
+     */
+    public static InventorySearchIndex build(InventorySnapshot snapshot)
+    {
+        InventorySearchIndex index = new InventorySearchIndex(snapshot);
+        index.fill();
+        return index;
+    }
+
+    /**
+     * Getter method for the snapshot variable
+     * @return the snapshot this index was built from
+     */
+    public InventorySnapshot getSnapshot()
+    {
+        return snapshot;
+    }
+
+    /**
+     * This method finds every row whose name matches a query.
+     * @param query the text typed by the user, must not be empty.
+     * @param previous the result of the last search on this index, may be null.
+     * @return returns the matching rows in display order.
+     */
+    public Result search(String query, Result previous)
+    {
+        String lowerQuery = toLowerCase(query);
+        boolean prefixOnly = lowerQuery.length() < 3;
+
+        if(previous != null && previous.index == this && narrows(previous.query, lowerQuery))
+        {
+            return verify(lowerQuery, prefixOnly, previous.rows, 0, previous.count);
+        }
+
+        if(prefixOnly)
+        {
+            long key = lowerQuery.length() == 1 ? ONE_CHAR_PREFIX | lowerQuery.charAt(0)
+                    : TWO_CHAR_PREFIX | ((long) lowerQuery.charAt(0) << 16) | lowerQuery.charAt(1);
+            int slot = find(key);
+
+            if(slot < 0)
+            {
+                return new Result(this, lowerQuery, new int[0], 0);
+            }
+
+            int[] rows = Arrays.copyOfRange(postings, starts[slot], starts[slot] + counts[slot]);
+            return new Result(this, lowerQuery, rows, rows.length);
+        }
+
+        int rarestSlot = -1;
+
+        for(int i = 0; i + 3 <= lowerQuery.length(); i++)
+        {
+            int slot = find(trigram(lowerQuery, i));
+
+            if(slot < 0)
+            {
+                return new Result(this, lowerQuery, new int[0], 0);
+            }
+            if(rarestSlot < 0 || counts[slot] < counts[rarestSlot])
+            {
+                rarestSlot = slot;
+            }
+        }
+
+        return verify(lowerQuery, false, postings, starts[rarestSlot], starts[rarestSlot] + counts[rarestSlot]);
+    }
+
+    /**
+     * A new query can only match rows the previous one matched if both are answered the same way
+     * and the new query contains the previous one, at its start for prefix queries.
+     */
+    private static boolean narrows(String previousQuery, String lowerQuery)
+    {
+        boolean previousPrefixOnly = previousQuery.length() < 3;
+
+        if(previousPrefixOnly != lowerQuery.length() < 3)
+        {
+            return false;
+        }
+
+        return previousPrefixOnly ? lowerQuery.startsWith(previousQuery) : lowerQuery.contains(previousQuery);
+    }
+
+    private Result verify(String lowerQuery, boolean prefixOnly, int[] candidates, int from, int to)
+    {
+        int[] rows = new int[to - from];
+        int count = 0;
+
+        for(int i = from; i < to; i++)
+        {
+            String name = snapshot.getName(candidates[i]);
+
+            if(prefixOnly ? matchesWordStart(name, lowerQuery) : contains(name, lowerQuery))
+            {
+                rows[count++] = candidates[i];
+            }
+        }
+
+        return new Result(this, lowerQuery, rows, count);
+    }
+
+    static boolean isWordStart(String name, int i)
+    {
+        return Character.isLetterOrDigit(name.charAt(i)) && (i == 0 || !Character.isLetterOrDigit(name.charAt(i - 1)));
+    }
+
+    private static boolean matchesWordStart(String name, String lowerQuery)
+    {
+        for(int i = 0; i + lowerQuery.length() <= name.length(); i++)
+        {
+            if(isWordStart(name, i) && regionMatches(name, i, lowerQuery))
+            {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private static boolean contains(String name, String lowerQuery)
+    {
+        for(int i = 0; i + lowerQuery.length() <= name.length(); i++)
+        {
+            if(regionMatches(name, i, lowerQuery))
+            {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private static boolean regionMatches(String name, int offset, String lowerQuery)
+    {
+        for(int j = 0; j < lowerQuery.length(); j++)
+        {
+            if(Character.toLowerCase(name.charAt(offset + j)) != lowerQuery.charAt(j))
+            {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private static String toLowerCase(String text)
+    {
+        char[] chars = new char[text.length()];
+
+        for(int i = 0; i < chars.length; i++)
+        {
+            chars[i] = Character.toLowerCase(text.charAt(i));
+        }
+
+        return new String(chars);
+    }
+
+    private static long trigram(CharSequence lower, int i)
+    {
+        return TRIGRAM | ((long) lower.charAt(i) << 32) | ((long) lower.charAt(i + 1) << 16) | lower.charAt(i + 2);
+    }
+
+    /**
+     * Builds the row lists in two passes over the names. The first counts the rows under each key,
+     * the second writes the rows into one shared array, so each list comes out in row order.
+     */
+    private void fill()
+    {
+        StringBuilder lower = new StringBuilder();
+        long[] rowKeys = new long[64];
+
+        for(int row = 0; row < snapshot.size(); row++)
+        {
+            rowKeys = collectKeys(snapshot.getName(row), lower, rowKeys);
+
+            for(int i = 1; i <= (int) rowKeys[0]; i++)
+            {
+                int slot = insert(rowKeys[i]);
+                counts[slot]++;
+            }
+        }
+
+        starts = new int[keys.length];
+        int total = 0;
+
+        for(int slot = 0; slot < keys.length; slot++)
+        {
+            starts[slot] = total;
+            total += counts[slot];
+        }
+
+        postings = new int[total];
+        int[] written = new int[keys.length];
+
+        for(int row = 0; row < snapshot.size(); row++)
+        {
+            rowKeys = collectKeys(snapshot.getName(row), lower, rowKeys);
+
+            for(int i = 1; i <= (int) rowKeys[0]; i++)
+            {
+                int slot = find(rowKeys[i]);
+                postings[starts[slot] + written[slot]++] = row;
+            }
+        }
+    }
+
+    /**
+     * Lists the distinct keys of one name. The count is kept in element 0 and the keys follow it.
+     */
+    private static long[] collectKeys(String name, StringBuilder lower, long[] rowKeys)
+    {
+        lower.setLength(0);
+
+        for(int i = 0; i < name.length(); i++)
+        {
+            lower.append(Character.toLowerCase(name.charAt(i)));
+        }
+
+        int needed = 1 + 3 * name.length();
+
+        if(rowKeys.length < needed)
+        {
+            rowKeys = new long[needed];
+        }
+
+        int count = 0;
+
+        for(int i = 0; i < lower.length(); i++)
+        {
+            if(isWordStart(name, i))
+            {
+                rowKeys[1 + count++] = ONE_CHAR_PREFIX | lower.charAt(i);
+
+                if(i + 1 < lower.length())
+                {
+                    rowKeys[1 + count++] = TWO_CHAR_PREFIX | ((long) lower.charAt(i) << 16) | lower.charAt(i + 1);
+                }
+            }
+            if(i + 3 <= lower.length())
+            {
+                rowKeys[1 + count++] = trigram(lower, i);
+            }
+        }
+
+        Arrays.sort(rowKeys, 1, 1 + count);
+
+        int distinct = 0;
+
+        for(int i = 1; i <= count; i++)
+        {
+            if(distinct == 0 || rowKeys[distinct] != rowKeys[i])
+            {
+                rowKeys[++distinct] = rowKeys[i];
+            }
+        }
+
+        rowKeys[0] = distinct;
+        return rowKeys;
+    }
+
+    /**
+     * Finds a key in the open addressing table. Keys are never 0, so 0 marks an empty slot.
+     */
+    private int find(long key)
+    {
+        int mask = keys.length - 1;
+        int slot = hash(key) & mask;
+
+        while(keys[slot] != 0)
+        {
+            if(keys[slot] == key)
+            {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        return -1;
+    }
+
+    private int insert(long key)
+    {
+        if(keyCount * 2 >= keys.length)
+        {
+            rehash();
+        }
+
+        int mask = keys.length - 1;
+        int slot = hash(key) & mask;
+
+        while(keys[slot] != 0)
+        {
+            if(keys[slot] == key)
+            {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        keys[slot] = key;
+        keyCount++;
+        return slot;
+    }
+
+    private void rehash()
+    {
+        long[] oldKeys = keys;
+        int[] oldCounts = counts;
+
+        keys = new long[oldKeys.length * 2];
+        counts = new int[oldKeys.length * 2];
+        keyCount = 0;
+
+        for(int i = 0; i < oldKeys.length; i++)
+        {
+            if(oldKeys[i] != 0)
+            {
+                counts[insert(oldKeys[i])] = oldCounts[i];
+            }
+        }
+    }
+
+    private static int hash(long key)
+    {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    /**
+     * The Result class holds the rows matched by one search, in display order.
+     */
+    public static class Result
+    {
+        private final InventorySearchIndex index;
+        private final String query;
+        private final int[] rows;
+        private final int count;
+
+        private Result(InventorySearchIndex index, String query, int[] rows, int count)
+        {
+            this.index = index;
+            this.query = query;
+            this.rows = rows;
+            this.count = count;
+        }
+
+        /**
+         * Getter method for the rows variable
+         * @return array whose first size() elements are the matching rows
+         */
+        public int[] getRows()
+        {
+            return rows;
+        }
+
+        /**
+         * @return the number of matching rows
+         */
+        public int size()
+        {
+            return count;
+        }
+    }
+}
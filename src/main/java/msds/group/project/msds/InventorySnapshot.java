@@ -0,0 +1,534 @@
+/**
+ * The InventorySnapshot class holds one copy of a user's inventory in columns.
+ *
+ * Item names are kept once each in a string table, and each row stores the index of its
+ * name and its quantity in int arrays. A row is therefore two ints rather than an object
+ * holding two Strings, and sorting, filtering and totalling only touch primitive arrays.
+ *
+ * A snapshot never changes once built. A Builder may keep appending to the arrays a
+ * snapshot was built from, but only past the end of that snapshot, so snapshots of a
+ * partly parsed response can safely be handed to another thread.
+ *
+ * This class has no Android dependencies so that it can be benchmarked on the development machine.
+ *
+ * @author  J.Woodhouse, D.B.Dawson, I.J.Atienza, M.J.T.Makunda
+ * @version 1.03
+ */
+
+package msds.group.project.msds;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+public class InventorySnapshot
+{
+    public static final InventorySnapshot EMPTY = new Builder().build();
+
+    private final String version;
+    private final long fetchedAt;
+    private final String[] nameTable;
+    private final int[] nameIds;
+    private final int[] quantities;
+    private final int size;
+
+    private InventorySnapshot(String version, long fetchedAt, String[] nameTable, int[] nameIds, int[] quantities, int size)
+    {
+        this.version = version;
+        this.fetchedAt = fetchedAt;
+        this.nameTable = nameTable;
+        this.nameIds = nameIds;
+        this.quantities = quantities;
+        this.size = size;
+    }
+
+    /**
+     * Getter method for the version variable
+     * @return String of the version returned by the server, or null if it did not send one
+     */
+    public String getVersion()
+    {
+        return version;
+    }
+
+    /**
+     * Getter method for the fetchedAt variable
+     * @return time the server last confirmed this snapshot, in milliseconds
+     */
+    public long getFetchedAt()
+    {
+        return fetchedAt;
+    }
+
+    /**
+     * @return the number of rows in the snapshot
+     */
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * @param row the row to read.
+     * @return the item name of the row
+     */
+    public String getName(int row)
+    {
+        return nameTable[nameIds[checkRow(row)]];
+    }
+
+    /**
+     * The name ID is the row's index into the string table. Snapshots built from a Builder
+     * seeded with an earlier snapshot give the same name the same ID.
+     * @param row the row to read.
+     * @return the name ID of the row
+     */
+    public int getNameId(int row)
+    {
+        return nameIds[checkRow(row)];
+    }
+
+    /**
+     * @param row the row to read.
+     * @return the quantity of the row
+     */
+    public int getQuantity(int row)
+    {
+        return quantities[checkRow(row)];
+    }
+
+    /**
+     * @return the sum of every row's quantity
+     */
+    public long totalQuantity()
+    {
+        long total = 0;
+
+        for(int i = 0; i < size; i++)
+        {
+            total += quantities[i];
+        }
+
+        return total;
+    }
+
+    /**
+     * This method calculates a 64 bit FNV-1a hash of every row's name and quantity, in order.
+     * Two snapshots with the same hash almost certainly hold the same inventory.
+     * @return returns the hash.
+     */
+    public long contentHash()
+    {
+        long hash = 0xcbf29ce484222325L;
+
+        for(int i = 0; i < size; i++)
+        {
+            String name = nameTable[nameIds[i]];
+
+            for(int j = 0; j < name.length(); j++)
+            {
+                hash = (hash ^ name.charAt(j)) * 0x100000001b3L;
+            }
+
+            hash = (hash ^ 0xFFFF) * 0x100000001b3L;
+
+            for(int shift = 0; shift < 32; shift += 8)
+            {
+                hash = (hash ^ ((quantities[i] >>> shift) & 0xFF)) * 0x100000001b3L;
+            }
+        }
+
+        return hash;
+    }
+
+    /**
+     * This method finds the first row holding an item.
+     * @param name the item name to look for.
+     * @return returns the row, or -1 if the item is not in the snapshot.
+     */
+    public int indexOf(String name)
+    {
+        for(int i = 0; i < size; i++)
+        {
+            if(nameTable[nameIds[i]].equals(name))
+            {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Creates a copy of this snapshot with a new fetchedAt time, used when the server
+     * reports that the inventory has not changed. The arrays are shared, not copied.
+     * @param fetchedAt the new time in milliseconds.
+     * @return returns the refreshed snapshot.
+     */
+    public InventorySnapshot confirmedAt(long fetchedAt)
+    {
+        return new InventorySnapshot(version, fetchedAt, nameTable, nameIds, quantities, size);
+    }
+
+    /**
+     * Creates a copy of this snapshot with one row's quantity changed.
+     * @param row the row to change.
+     * @param quantity the new quantity.
+     * @return returns the new snapshot, this snapshot is left unchanged.
+     */
+    public InventorySnapshot withQuantity(int row, int quantity)
+    {
+        int[] newQuantities = Arrays.copyOf(quantities, size);
+        newQuantities[checkRow(row)] = quantity;
+        return new InventorySnapshot(version, fetchedAt, nameTable, nameIds, newQuantities, size);
+    }
+
+    /**
+     * Creates a copy of this snapshot with a quantity added to an item, used when a request for more
+     * of it has been accepted. An item not in the snapshot is added as a new last row. The copy has no
+     * version, as it is no longer the inventory the server knows by that version, so the next check
+     * with the server downloads the whole inventory instead of being told it has not changed.
+     * The fetchedAt is kept.
+     * @param name the item name.
+     * @param quantity the amount to add.
+     * @return returns the new snapshot, this snapshot is left unchanged.
+     */
+    public InventorySnapshot withAddedQuantity(String name, int quantity)
+    {
+        int row = indexOf(name);
+
+        if(row != -1)
+        {
+            int[] newQuantities = Arrays.copyOf(quantities, size);
+            newQuantities[row] += quantity;
+            return new InventorySnapshot(null, fetchedAt, nameTable, nameIds, newQuantities, size);
+        }
+
+        Builder builder = new Builder(this).setVersion(null).setFetchedAt(fetchedAt);
+
+        for(int i = 0; i < size; i++)
+        {
+            builder.add(nameTable[nameIds[i]], quantities[i]);
+        }
+
+        return builder.add(name, quantity).build();
+    }
+
+    /**
+     * This method writes the rows in name order, ignoring case, into an array.
+     * @param order array of at least size() elements to receive the row numbers.
+     */
+    public void sortByName(int[] order)
+    {
+        fillRows(order);
+        quickSort(order, 0, size - 1, true);
+    }
+
+    /**
+     * This method writes the rows in order of increasing quantity into an array.
+     * @param order array of at least size() elements to receive the row numbers.
+     */
+    public void sortByQuantity(int[] order)
+    {
+        fillRows(order);
+        quickSort(order, 0, size - 1, false);
+    }
+
+    /**
+     * This method writes the rows whose name contains the query, ignoring case, into an array.
+     * @param query the text to look for.
+     * @param matches array of at least size() elements to receive the row numbers.
+     * @return returns the number of matching rows.
+     */
+    public int filterByName(String query, int[] matches)
+    {
+        int count = 0;
+
+        for(int i = 0; i < size; i++)
+        {
+            if(containsIgnoreCase(nameTable[nameIds[i]], query))
+            {
+                matches[count++] = i;
+            }
+        }
+
+        return count;
+    }
+
+    /**
+     * This method writes the rows with at least the given quantity into an array.
+     * @param minimumQuantity the smallest quantity to include.
+     * @param matches array of at least size() elements to receive the row numbers.
+     * @return returns the number of matching rows.
+     */
+    public int filterByMinimumQuantity(int minimumQuantity, int[] matches)
+    {
+        int count = 0;
+
+        for(int i = 0; i < size; i++)
+        {
+            if(quantities[i] >= minimumQuantity)
+            {
+                matches[count++] = i;
+            }
+        }
+
+        return count;
+    }
+
+    static boolean containsIgnoreCase(String text, String query)
+    {
+        int last = text.length() - query.length();
+
+        for(int i = 0; i <= last; i++)
+        {
+            if(text.regionMatches(true, i, query, 0, query.length()))
+            {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private int checkRow(int row)
+    {
+        if(row < 0 || row >= size)
+        {
+            throw new IndexOutOfBoundsException("Row " + row + " of " + size);
+        }
+
+        return row;
+    }
+
+    private void fillRows(int[] order)
+    {
+        for(int i = 0; i < size; i++)
+        {
+            order[i] = i;
+        }
+    }
+
+    private int compareRows(int a, int b, boolean byName)
+    {
+        if(byName)
+        {
+            return String.CASE_INSENSITIVE_ORDER.compare(nameTable[nameIds[a]], nameTable[nameIds[b]]);
+        }
+
+        return quantities[a] < quantities[b] ? -1 : (quantities[a] == quantities[b] ? 0 : 1);
+    }
+
+    /**
+     * Sorts a range of row numbers in place, recursing into the smaller half so the stack stays shallow.
+     */
+    private void quickSort(int[] order, int low, int high, boolean byName)
+    {
+        while(high - low > 16)
+        {
+            int middle = (low + high) >>> 1;
+
+            if(compareRows(order[middle], order[low], byName) < 0)
+            {
+                swap(order, middle, low);
+            }
+            if(compareRows(order[high], order[low], byName) < 0)
+            {
+                swap(order, high, low);
+            }
+            if(compareRows(order[high], order[middle], byName) < 0)
+            {
+                swap(order, high, middle);
+            }
+
+            int pivot = order[middle];
+            int i = low;
+            int j = high;
+
+            while(i <= j)
+            {
+                while(compareRows(order[i], pivot, byName) < 0)
+                {
+                    i++;
+                }
+                while(compareRows(order[j], pivot, byName) > 0)
+                {
+                    j--;
+                }
+                if(i <= j)
+                {
+                    swap(order, i++, j--);
+                }
+            }
+
+            if(j - low < high - i)
+            {
+                quickSort(order, low, j, byName);
+                low = i;
+            }
+            else
+            {
+                quickSort(order, i, high, byName);
+                high = j;
+            }
+        }
+
+        for(int i = low + 1; i <= high; i++)
+        {
+            int row = order[i];
+            int j = i - 1;
+
+            while(j >= low && compareRows(order[j], row, byName) > 0)
+            {
+                order[j + 1] = order[j];
+                j--;
+            }
+
+            order[j + 1] = row;
+        }
+    }
+
+    private static void swap(int[] order, int a, int b)
+    {
+        int row = order[a];
+        order[a] = order[b];
+        order[b] = row;
+    }
+
+    /**
+     * The Builder class creates InventorySnapshots, either a row at a time or a column at a time
+     * as the itemName and quantity arrays of a response are read.
+     */
+    public static class Builder
+    {
+        private String version;
+        private long fetchedAt;
+
+        private final HashMap<String, Integer> nameIndex = new HashMap<>();
+        private String[] nameTable;
+        private int nameTableSize;
+
+        private int[] nameIds = new int[16];
+        private int nameCount;
+        private int[] quantities = new int[16];
+        private int quantityCount;
+
+        public Builder()
+        {
+            nameTable = new String[16];
+        }
+
+        /**
+         * Creates a Builder whose string table starts with every name in an earlier snapshot,
+         * so those names keep their name IDs.
+         * @param seed the earlier snapshot, may be null.
+         */
+        public Builder(InventorySnapshot seed)
+        {
+            this();
+
+            if(seed != null)
+            {
+                for(int i = 0; i < seed.size; i++)
+                {
+                    putName(seed.nameTable[seed.nameIds[i]], seed.nameIds[i]);
+                }
+            }
+        }
+
+        public Builder setVersion(String version)
+        {
+            this.version = version;
+            return this;
+        }
+
+        public Builder setFetchedAt(long fetchedAt)
+        {
+            this.fetchedAt = fetchedAt;
+            return this;
+        }
+
+        /**
+         * Adds a whole row.
+         * @param name the item name.
+         * @param quantity the item quantity.
+         * @return returns this Builder.
+         */
+        public Builder add(String name, int quantity)
+        {
+            appendName(name);
+            appendQuantity(quantity);
+            return this;
+        }
+
+        /**
+         * Adds the name of the next row in the name column.
+         * @param name the item name.
+         */
+        public void appendName(String name)
+        {
+            Integer id = nameIndex.get(name);
+
+            if(id == null)
+            {
+                id = putName(name, nameTableSize);
+            }
+
+            if(nameCount == nameIds.length)
+            {
+                nameIds = Arrays.copyOf(nameIds, nameCount * 2);
+            }
+
+            nameIds[nameCount++] = id;
+        }
+
+        /**
+         * Adds the quantity of the next row in the quantity column.
+         * @param quantity the item quantity.
+         */
+        public void appendQuantity(int quantity)
+        {
+            if(quantityCount == quantities.length)
+            {
+                quantities = Arrays.copyOf(quantities, quantityCount * 2);
+            }
+
+            quantities[quantityCount++] = quantity;
+        }
+
+        /**
+         * @return the number of complete rows, those with both a name and a quantity
+         */
+        public int size()
+        {
+            return Math.min(nameCount, quantityCount);
+        }
+
+        /**
+         * Creates a snapshot of the complete rows added so far. The arrays are shared with the
+         * Builder rather than copied, which is safe because the Builder only ever appends.
+         * @return returns the new snapshot.
+         */
+        public InventorySnapshot build()
+        {
+            return new InventorySnapshot(version, fetchedAt, nameTable, nameIds, quantities, size());
+        }
+
+        /**
+         * Adds a name to the string table under the given ID. Seeding happens before any new
+         * names are added, so new names are always given IDs after the seeded ones.
+         */
+        private int putName(String name, int id)
+        {
+            if(id >= nameTable.length)
+            {
+                nameTable = Arrays.copyOf(nameTable, Math.max(nameTable.length * 2, id + 1));
+            }
+
+            nameTable[id] = name;
+            nameIndex.put(name, id);
+            nameTableSize = Math.max(nameTableSize, id + 1);
+
+            return id;
+        }
+    }
+}
@@ -0,0 +1,171 @@
+/**
+ * The InventoryStore class keeps the last inventory downloaded for each user on disk,
+ * so that the Inventory Page can be drawn before GetInventory.php has answered.
+ *
+ * Each user has one file, named after their username, holding:
+ *
+ * version : the version string returned by the server, sent back to ask for changes only.
+ * fetchedAt : when the snapshot was last confirmed by the server, in milliseconds.
+ * items : the item names and integer quantities in display order.
+ *
+ * This class has no Android dependencies so that it can be tested on the development machine.
+ *
+ * @author  J.Woodhouse, D.B.Dawson, I.J.Atienza, M.J.T.Makunda
+ * @version 1.02
+ */
+
+package msds.group.project.msds;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+
+public class InventoryStore
+{
+    private static final int FILE_FORMAT = 2;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final File directory;
+    private final long timeToLiveMillis;
+
+    public InventoryStore(File directory, long timeToLiveMillis)
+    {
+        this.directory = directory;
+        this.timeToLiveMillis = timeToLiveMillis;
+    }
+
+    /**
+     * This method reads the saved snapshot for a user.
+     * @param username the user the inventory belongs to.
+     * @return returns the snapshot, or null if there is none or it cannot be read.
+     */
+    public InventorySnapshot load(String username)
+    {
+        File file = fileFor(username);
+
+        if(!file.isFile())
+        {
+            return null;
+        }
+
+        try
+        {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+
+            try
+            {
+                if(in.readInt() != FILE_FORMAT)
+                {
+                    return null;
+                }
+
+                String version = in.readUTF();
+                long fetchedAt = in.readLong();
+                int count = in.readInt();
+
+                InventorySnapshot.Builder builder = new InventorySnapshot.Builder()
+                        .setVersion(version.isEmpty() ? null : version)
+                        .setFetchedAt(fetchedAt);
+
+                for(int i = 0; i < count; i++)
+                {
+                    builder.add(in.readUTF(), in.readInt());
+                }
+
+                return builder.build();
+            }
+            finally
+            {
+                in.close();
+            }
+        }
+        catch (IOException ex)
+        {
+            return null;
+        }
+    }
+
+    /**
+     * This method saves a snapshot for a user, replacing any previous one.
+     * The file is written to a temporary file first so a failed write never corrupts the old snapshot.
+     * @param username the user the inventory belongs to.
+     * @param snapshot the snapshot to save.
+     * @throws IOException if the file could not be written.
+     */
+    public void save(String username, InventorySnapshot snapshot) throws IOException
+    {
+        if(!directory.isDirectory() && !directory.mkdirs())
+        {
+            throw new IOException("Unable to create " + directory);
+        }
+
+        File file = fileFor(username);
+        File temporaryFile = new File(directory, file.getName() + ".tmp");
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporaryFile)));
+
+        try
+        {
+            out.writeInt(FILE_FORMAT);
+            out.writeUTF(snapshot.getVersion() == null ? "" : snapshot.getVersion());
+            out.writeLong(snapshot.getFetchedAt());
+            out.writeInt(snapshot.size());
+
+            for(int i = 0; i < snapshot.size(); i++)
+            {
+                out.writeUTF(snapshot.getName(i));
+                out.writeInt(snapshot.getQuantity(i));
+            }
+        }
+        finally
+        {
+            out.close();
+        }
+
+        if(!temporaryFile.renameTo(file))
+        {
+            temporaryFile.delete();
+            throw new IOException("Unable to replace " + file);
+        }
+    }
+
+    /**
+     * This method deletes the saved snapshot for a user, so the next download replaces it.
+     * @param username the user the inventory belongs to.
+     */
+    public void delete(String username)
+    {
+        fileFor(username).delete();
+    }
+
+    /**
+     * This method checks whether a snapshot is recent enough to be shown without asking the server.
+     * @param snapshot the snapshot to check, may be null.
+     * @param now the current time in milliseconds.
+     * @return returns true if the snapshot was confirmed within the time to live.
+     */
+    public boolean isFresh(InventorySnapshot snapshot, long now)
+    {
+        return snapshot != null && now - snapshot.getFetchedAt() < timeToLiveMillis;
+    }
+
+    /**
+     * Builds the file name from the hex encoded username, so any username gives a safe file name.
+     */
+    private File fileFor(String username)
+    {
+        StringBuilder name = new StringBuilder("inventory-");
+
+        for(byte b : String.valueOf(username).getBytes(UTF_8))
+        {
+            name.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+
+        return new File(directory, name.toString());
+    }
+}
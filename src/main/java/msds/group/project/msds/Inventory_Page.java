@@ -4,70 +4,83 @@
  *
  * Also allows interaction to request more equipment.
  *
+ * The last inventory downloaded is saved by the InventoryStore and shown straight away,
+ * it is then checked against the server in the background. An inventory already in the
+ * SessionCache, such as one prefetched after login, is shown without reading the store.
+ *
+ * The search box filters the list as the user types, using an InventorySearchIndex that is
+ * rebuilt on a background thread whenever a new snapshot is shown.
+ *
+ * Requests made on the Inventory Page Requests page are shown as pending against their items
+ * while InventoryRequests sends them. Once one is accepted the inventory it patched in the
+ * SessionCache is shown, rather than asking the server for the whole inventory again.
+ *
+ * The snapshot shown and the GetInventory.php call are kept in a RetainedState across
+ * configuration changes, so rotating the device neither reloads the inventory nor asks
+ * the server for it again.
+ *
  * @author  J.Woodhouse, D.B.Dawson, I.J.Atienza, M.J.T.Makunda
- * @version 1.10
+ * @version 1.25
  */
 
 package msds.group.project.msds;
 
 import android.content.Intent;
-import android.graphics.Color;
-import android.graphics.Typeface;
 import android.os.Bundle;
 import android.support.v7.app.AppCompatActivity;
-import android.util.TypedValue;
-import android.view.View;
-import android.widget.ScrollView;
-import android.widget.TableLayout;
-import android.widget.TableRow;
-import android.widget.TextView;
+import android.support.v7.util.DiffUtil;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
+import android.text.Editable;
+import android.text.TextWatcher;
+import android.widget.EditText;
 import android.widget.Toast;
 
-import com.android.volley.Request;
-import com.android.volley.RequestQueue;
-import com.android.volley.Response;
-import com.android.volley.VolleyError;
-import com.android.volley.toolbox.JsonObjectRequest;
-import com.android.volley.toolbox.Volley;
-
-import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONObject;
+import java.io.IOException;
+import java.util.concurrent.Executor;
 
-import java.util.ArrayList;
-import java.util.HashMap;
-
-public class Inventory_Page extends AppCompatActivity
+public class Inventory_Page extends AppCompatActivity implements InventoryAdapter.OnItemClickListener, StartupTracer.ReportsInteractive
     {
-        private RequestQueue volleyQueue;
+        private static final int SUMMARY_SAMPLE_ROWS = 5;
+
+        private MsdsApi msdsApi;
         private SharedVariables sharedVariables;
         private String username;
         private String authToken;
 
+        private InventoryStore inventoryStore;
+        private SessionCache sessionCache;
+        private InventoryRequests inventoryRequests;
+        private boolean started;
+        private Executor backgroundExecutor;
+        private StartupTracer startupTracer;
+        private InventorySnapshot currentSnapshot;
+
+        private InventoryAdapter inventoryAdapter;
+        private boolean showingPartialInventory;
+
+        private InventorySearchIndex searchIndex;
+        private InventorySearchIndex.Result searchResult;
+        private String searchQuery = "";
+
         private Logger logger;
+        private final LogEvent.Builder summaryBuilder = new LogEvent.Builder();
+
+        private RetainedState retainedState;
 
         /**
          * This method is executed upon creation of an instance of this class. This occurs anytime the class is loaded
          * through an activity change.
          *
-         * It creates a JSON object consisting of the following inputs:
-         *
-         * username - retrieved using the getter method from the sharedVariables instance.
-         * authToken - retrieved using the getter method from the sharedVariables instance.
-         *
-         * The above JSON object is sent in a POST request to the postURL URL.
-         *
-         * The returned JSON object has 3 fields:
-         *
-         * success : boolean
-         * itemName : array
-         * quantity : array
-         *
-         * An ArrayList of custom objects is created, which holds the values of itemName and quantity.
+         * The inventory list is created empty, then the user's saved inventory snapshot is read from the
+         * InventoryStore on a background thread and shown as soon as it is available. If the SessionCache
+         * already holds the inventory for this session it is shown straight away instead.
          *
-         * A two row table is then created, which is populated with the data held within the inventory ArrayList.
+         * If there is no snapshot, or it is older than the store's time to live, it is revalidated
+         * using requestInventory.
          *
-         * An onClick listener is attached to each table row, which allows for intuitive transitioning to the Inventory_Page_Requests class.
+         * After a configuration change the previous instance's snapshot is shown instead, and its
+         * GetInventory.php call, if any, is subscribed to rather than sent again.
          *
          * @param savedInstanceState
          */
@@ -77,183 +90,663 @@ public class Inventory_Page extends AppCompatActivity
             super.onCreate(savedInstanceState);
             setContentView(R.layout.activity_inventory_page);
 
-            volleyQueue = Volley.newRequestQueue(this);
+            msdsApi = MsdsApplication.getInstance().getMsdsApi();
+            inventoryStore = MsdsApplication.getInstance().getInventoryStore();
+            sessionCache = MsdsApplication.getInstance().getSessionCache();
+            backgroundExecutor = MsdsApplication.getInstance().getBackgroundExecutor();
+            startupTracer = MsdsApplication.getInstance().getStartupTracer();
             sharedVariables = SharedVariables.getInstance();
-            username = sharedVariables.getUsername();
-            authToken = sharedVariables.getToken();
+            SessionSnapshot session = sharedVariables.getSession();
+            username = session.getUsername();
+            authToken = session.getAuthToken();
 
-            logger = new Logger(volleyQueue);
+            logger = new Logger(MsdsApplication.getInstance().getLogBatcher());
 
-            HashMap<String, String> postData = new HashMap<>();
-            postData.put("username", username);
-            postData.put("authToken", authToken);
+            inventoryAdapter = new InventoryAdapter(this);
+            MsdsApplication.getInstance().loadInventoryRequests(inventoryRequestsCallback);
 
-            String postURL = "https://msdsdb.000webhostapp.com/android_webservice/GetInventory.php";
+            RecyclerView inventoryList = findViewById(R.id.inventoryList);
+            inventoryList.setLayoutManager(new LinearLayoutManager(this));
+            inventoryList.setHasFixedSize(true);
+            inventoryList.setAdapter(inventoryAdapter);
 
-            JsonObjectRequest request = new JsonObjectRequest(Request.Method.POST, postURL, new JSONObject(postData), new Response.Listener<JSONObject>()
+            EditText etSearch = findViewById(R.id.etSearch);
+            etSearch.addTextChangedListener(new TextWatcher()
             {
                 @Override
-                public void onResponse(JSONObject response)
+                public void beforeTextChanged(CharSequence s, int start, int count, int after)
                 {
-                    try
-                    {
-                        Boolean getInventorySuccess = response.getBoolean("success");
+                }
 
-                        if(getInventorySuccess)
-                        {
-                            JSONArray itemNames = response.getJSONArray("itemName");
-                            JSONArray quantities = response.getJSONArray("quantity");
+                @Override
+                public void onTextChanged(CharSequence s, int start, int before, int count)
+                {
+                }
 
-                            ArrayList<InventoryItem> inventory = new ArrayList<>();
-                            String inventoryToString = "";
+                @Override
+                public void afterTextChanged(Editable s)
+                {
+                    searchQuery = s.toString().trim();
+                    runSearch();
+                }
+            });
 
-                            for(int i = 0; i < itemNames.length(); i++)
-                            {
-                                inventory.add(new InventoryItem(itemNames.getString(i), quantities.getString(i)));
-                            }
+            retainedState = (RetainedState) getLastCustomNonConfigurationInstance();
 
-                            ScrollView scrollView = new ScrollView(Inventory_Page.this);
-                            TableLayout inventoryTable = new TableLayout(Inventory_Page.this);
+            if(retainedState == null)
+            {
+                retainedState = new RetainedState();
+            }
 
-                            inventoryTable.setStretchAllColumns(true);
-                            inventoryTable.setShrinkAllColumns(true);
+            retainedState.page = this;
 
-                            //Title
-                            TableRow titleRow = new TableRow(Inventory_Page.this);
-                            TextView titleName = new TextView(Inventory_Page.this);
-                            TextView titleQuantity = new TextView(Inventory_Page.this);
+            if(retainedState.snapshot == null && retainedState.inventoryCall == null)
+            {
+                InventorySnapshot cachedSnapshot = sessionCache.getInventory(username, authToken);
 
-                            titleName.setTypeface(Typeface.DEFAULT_BOLD);
-                            titleName.setTextSize(TypedValue.COMPLEX_UNIT_DIP, 18);
-                            titleName.setPadding(20, 20, 20, 20);
-                            titleName.setText("Name");
+                if(cachedSnapshot != null)
+                {
+                    showSavedInventory(cachedSnapshot);
+                }
+                else
+                {
+                    loadSavedInventory();
+                }
+                return;
+            }
 
-                            titleQuantity.setTypeface(Typeface.DEFAULT_BOLD);
-                            titleQuantity.setTextSize(TypedValue.COMPLEX_UNIT_DIP, 18);
-                            titleQuantity.setPadding(20, 20, 20, 20);
-                            titleQuantity.setText("Quantity");
+            currentSnapshot = retainedState.snapshot;
 
-                            titleRow.addView(titleName);
-                            titleRow.addView(titleQuantity);
+            if(currentSnapshot != null)
+            {
+                applyInventory(currentSnapshot);
+            }
+            else if(retainedState.partialSnapshot != null)
+            {
+                showChunk(retainedState.partialSnapshot, 0, retainedState.partialSnapshot.size());
+            }
 
-                            inventoryTable.addView(titleRow);
+            if(retainedState.inventoryCall != null)
+            {
+                retainedState.inventoryCall.subscribe(inventoryCallback);
+            }
+        }
 
-                            //Body
-                            for(InventoryItem item : inventory)
+        /**
+         * Reads the user's saved inventory snapshot on the background thread, shows it, and asks
+         * the server for the inventory if it is missing or out of date.
+         */
+        private void loadSavedInventory()
+        {
+            backgroundExecutor.execute(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    final InventorySnapshot snapshot = inventoryStore.load(username);
+
+                    runOnUiThread(new Runnable()
+                    {
+                        @Override
+                        public void run()
+                        {
+                            // The page was closed or replaced while the snapshot was being read.
+                            if(retainedState.page != Inventory_Page.this)
                             {
-                                TableRow tableRow = new TableRow(Inventory_Page.this);
-                                tableRow.setClickable(true);
+                                return;
+                            }
 
-                                tableRow.setOnClickListener(new View.OnClickListener() {
-                                    public void onClick(View view) {
-                                        TableRow tablerow = (TableRow) view;
-                                        TextView tv = (TextView) tablerow.getChildAt(0);
-                                        String itemName = tv.getText().toString();
+                            showSavedInventory(snapshot);
+                        }
+                    });
+                }
+            });
+        }
 
-                                        Intent intent = new Intent(Inventory_Page.this, Inventory_Page_Requests.class);
-                                        intent.putExtra("ItemName",itemName);
-                                        startActivity(intent);
-                                    }
-                                });
+        /**
+         * Shows a saved snapshot, and asks the server for the inventory if it is missing or out of date.
+         * @param snapshot the snapshot from the SessionCache or InventoryStore, or null if there is none.
+         */
+        private void showSavedInventory(InventorySnapshot snapshot)
+        {
+            if(snapshot != null)
+            {
+                currentSnapshot = snapshot;
+                sessionCache.putInventory(username, authToken, snapshot);
+                applyInventory(snapshot);
+                logInventorySummary("Inventory page loaded from saved data", snapshot);
+            }
 
-                                TextView tvName = new TextView(Inventory_Page.this);
-                                TextView tvQuantity = new TextView(Inventory_Page.this);
+            if(!inventoryStore.isFresh(snapshot, System.currentTimeMillis()))
+            {
+                requestInventory(snapshot == null ? null : snapshot.getVersion());
+            }
+        }
 
-                                tvName.setPadding(20, 20, 20, 20);
-                                tvName.setText(item.getItemName());
+        /**
+         * Starts showing pending requests, and shows any request accepted while the page was hidden.
+         */
+        @Override
+        protected void onStart()
+        {
+            super.onStart();
+            started = true;
 
+            if(inventoryRequests != null)
+            {
+                inventoryRequests.addListener(requestsListener);
+                showPendingRequests();
+            }
 
-                                tvQuantity.setPadding(20, 20, 20, 20);
-                                tvQuantity.setText(item.getQuantity());
+            showCachedInventory();
+        }
 
-                                tableRow.addView(tvName);
-                                tableRow.addView(tvQuantity);
+        @Override
+        protected void onStop()
+        {
+            super.onStop();
+            started = false;
 
-                                inventoryTable.addView(tableRow);
+            if(inventoryRequests != null)
+            {
+                inventoryRequests.removeListener(requestsListener);
+            }
+        }
 
-                                View rowStyling = new View(Inventory_Page.this);
-                                rowStyling.setLayoutParams(new TableRow.LayoutParams(TableRow.LayoutParams.MATCH_PARENT, 1));
-                                rowStyling.setBackgroundColor(Color.rgb(51, 51, 51));
-                                inventoryTable.addView(rowStyling);
+        /**
+         * Receives the InventoryRequests once it has been created on the background thread, and starts
+         * showing pending requests if the page is visible.
+         */
+        private final RequestCoalescer.Callback<InventoryRequests> inventoryRequestsCallback = new RequestCoalescer.Callback<InventoryRequests>()
+        {
+            @Override
+            public void onSuccess(InventoryRequests requests)
+            {
+                inventoryRequests = requests;
 
-                                inventoryToString = inventoryToString + item.getItemName() + ":" + item.getQuantity() + " ";
-                            }
+                if(started)
+                {
+                    inventoryRequests.addListener(requestsListener);
+                    showPendingRequests();
+                }
+            }
 
-                                scrollView.addView(inventoryTable);
-                                setContentView(scrollView);
+            @Override
+            public void onFailure(Exception error)
+            {
+                // The inventory is still shown, only the pending requests are not.
+                logger.sendLog("Unable to show pending requests: " + error.getMessage());
+            }
+        };
 
-                                logger.sendLog("Inventory page loaded with data: " + inventoryToString);
+        /**
+         * Receives the progress of inventory update requests from InventoryRequests, on the thread that sent them.
+         */
+        private final InventoryRequests.Listener requestsListener = new InventoryRequests.Listener()
+        {
+            @Override
+            public void onRequestQueued(final String requestUsername, String itemName, int quantity)
+            {
+                runOnUiThread(new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        if(!requestUsername.equals(username))
+                        {
+                            return;
                         }
-                        else
+
+                        showPendingRequests();
+                    }
+                });
+            }
+
+            @Override
+            public void onRequestConfirmed(final String requestUsername, final String itemName, final int quantity, InventorySnapshot inventory)
+            {
+                runOnUiThread(new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        if(!requestUsername.equals(username))
                         {
-                            showToast("Failed to load inventory data");
-                            logger.sendLog("Failed to load inventory data");
+                            return;
+                        }
 
-                            Intent intent = new Intent(Inventory_Page.this, MainActivity.class);
-                            intent.setFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
-                            startActivity(intent);
+                        showPendingRequests();
+                        showCachedInventory();
+                        logger.sendLog("Inventory update request confirmed with data: " + itemName + ":" + Integer.toString(quantity));
+                    }
+                });
+            }
+
+            @Override
+            public void onRequestRolledBack(final String requestUsername, final String itemName, final int quantity, final Exception error)
+            {
+                runOnUiThread(new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        if(!requestUsername.equals(username))
+                        {
+                            return;
                         }
+
+                        showPendingRequests();
+                        showToast("Request for " + itemName + " was not accepted");
+                        logger.sendLog("Inventory update request rolled back with data: " + itemName + ":" + Integer.toString(quantity)
+                                + ", " + error.toString());
+                    }
+                });
+            }
+        };
+
+        /**
+         * Shows the user's pending requests against their rows.
+         */
+        private void showPendingRequests()
+        {
+            inventoryAdapter.setPendingQuantities(inventoryRequests.getPendingQuantities(username));
+        }
+
+        /**
+         * Shows the inventory in the SessionCache if it has been patched since the current snapshot was
+         * shown. While GetInventory.php is being waited for its answer is shown instead.
+         */
+        private void showCachedInventory()
+        {
+            InventorySnapshot cachedSnapshot = sessionCache.getInventory(username, authToken);
+
+            if(cachedSnapshot != null && currentSnapshot != null && cachedSnapshot != currentSnapshot
+                    && retainedState.inventoryCall == null)
+            {
+                currentSnapshot = cachedSnapshot;
+                applyInventory(cachedSnapshot);
+            }
+        }
+
+        /**
+         * Hands the snapshot and any GetInventory.php call to the instance that replaces this one
+         * after a configuration change.
+         * @return returns the RetainedState.
+         */
+        @Override
+        public Object onRetainCustomNonConfigurationInstance()
+        {
+            retainedState.snapshot = currentSnapshot;
+            return retainedState;
+        }
+
+        /**
+         * Stops waiting for GetInventory.php. The request is only cancelled if the page is closing,
+         * while it is being recreated the new instance takes over the call.
+         */
+        @Override
+        protected void onDestroy()
+        {
+            super.onDestroy();
+            retainedState.page = null;
+
+            if(retainedState.inventoryCall == null)
+            {
+                return;
+            }
+
+            if(isChangingConfigurations())
+            {
+                retainedState.inventoryCall.detach(inventoryCallback);
+            }
+            else
+            {
+                retainedState.inventoryCall.unsubscribe(inventoryCallback);
+            }
+        }
+
+        /**
+         * This method asks the server for the user's inventory.
+         *
+         * It creates a JSON object consisting of the following inputs:
+         *
+         * username - retrieved from the session held by the sharedVariables instance.
+         * authToken - retrieved from the session held by the sharedVariables instance.
+         * version - the version of the saved snapshot, only sent if there is one.
+         * delta - true, only sent with a version.
+         *
+         * The above JSON object is sent in a POST request to GetInventory.php using the MsdsApi.
+         *
+         * The returned JSON object has up to 8 fields:
+         *
+         * success : boolean
+         * notModified : boolean, true if the inventory still matches version, in which case the arrays are left out
+         * version : string, identifies this copy of the inventory
+         * itemName : array
+         * quantity : array
+         * delta : boolean, true if itemName and quantity only hold the items changed since version
+         * baseVersion : string, the version the delta was calculated from
+         * removed : array, the names of the items removed since version
+         *
+         * When a version is sent the GetInventoryDelta call is used, which merges a delta into the
+         * current snapshot, so the page always receives the whole inventory.
+         *
+         * The response is parsed on the HttpEngine's thread by the MsdsApi. When there is no
+         * saved snapshot on screen, items are shown in chunks while the response is still being parsed.
+         * The current snapshot seeds the parser's string table so names already shown keep their row IDs.
+         *
+         * The new snapshot is saved to the InventoryStore and only the rows that changed are rebound.
+         *
+         * @param version version of the snapshot currently shown, or null.
+         */
+        private void requestInventory(String version)
+        {
+            if(version != null && currentSnapshot != null)
+            {
+                retainedState.inventoryCall = msdsApi.getInventoryDelta().call(username, authToken, currentSnapshot);
+            }
+            else
+            {
+                InventoryResponseParser.ChunkListener chunkListener = currentSnapshot == null ? retainedState : null;
+
+                retainedState.inventoryCall = msdsApi.getInventory().call(username, authToken, version, currentSnapshot, chunkListener);
+            }
+
+            retainedState.inventoryCall.subscribe(inventoryCallback);
+        }
+
+        /**
+         * Receives the GetInventory.php response, either from the network or kept from a previous instance.
+         */
+        private final RequestCoalescer.Callback<InventoryResponseParser.Result> inventoryCallback = new RequestCoalescer.Callback<InventoryResponseParser.Result>()
+        {
+            @Override
+            public void onSuccess(InventoryResponseParser.Result response)
+            {
+                retainedState.inventoryCall = null;
+                retainedState.partialSnapshot = null;
+
+                if(response.isSuccess() && currentSnapshot != null && response.isNotModified())
+                {
+                    saveSnapshot(currentSnapshot.confirmedAt(System.currentTimeMillis()));
+                }
+                else if(response.isSuccess())
+                {
+                    InventorySnapshot snapshot = response.getItems().confirmedAt(System.currentTimeMillis());
+
+                    if(showingPartialInventory)
+                    {
+                        showingPartialInventory = false;
+                        inventoryAdapter.setSnapshot(snapshot, null);
+                        indexSnapshot(snapshot);
                     }
-                    catch (JSONException ex)
+                    else
                     {
-                        showToast("JSON Exception: " + ex.getMessage());
-                        logger.sendLog("JSON Exception encountered: " + ex.getMessage());
+                        applyInventory(snapshot);
                     }
+                    saveSnapshot(snapshot);
+                    logInventorySummary("Inventory page loaded with data", snapshot);
                 }
-            }, new Response.ErrorListener()
+                else
+                {
+                    showToast("Failed to load inventory data");
+                    logger.sendLog("Failed to load inventory data");
+
+                    Intent intent = new Intent(Inventory_Page.this, MainActivity.class);
+                    intent.setFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
+                    startActivity(intent);
+                }
+            }
+
+            @Override
+            public void onFailure(Exception error)
             {
-                @Override
-                public void onErrorResponse(VolleyError error)
+                retainedState.inventoryCall = null;
+                retainedState.partialSnapshot = null;
+                startupTracer.reportInteractive(Inventory_Page.this);
+
+                if(error instanceof ApiException && ((ApiException) error).isParseError())
+                {
+                    showToast("JSON Exception: " + error.getMessage());
+                    logger.sendLog("JSON Exception encountered: " + error.getMessage());
+                    return;
+                }
+
+                if(currentSnapshot != null)
+                {
+                    showToast("Showing saved inventory, unable to refresh");
+                }
+                else
                 {
                     showToast("Volley error: " + error.toString());
-                    logger.sendLog("Volley Error encountered: " + error.toString());
+                }
+                logger.sendLog("Volley Error encountered: " + error.toString());
+            }
+        };
+
+        /**
+         * Shows the rows of a response that is still being parsed.
+         * @param items the rows parsed so far.
+         * @param from the first row not shown before.
+         * @param to one past the last row of items.
+         */
+        private void showChunk(InventorySnapshot items, int from, int to)
+        {
+            startupTracer.reportInteractive(this);
+            showingPartialInventory = true;
+            inventoryAdapter.showPartialSnapshot(items, from, to);
+        }
+
+        /**
+         * Saves a snapshot to the InventoryStore on the background thread, and to the SessionCache.
+         * @param snapshot the snapshot to save, also becomes the current snapshot.
+         */
+        private void saveSnapshot(final InventorySnapshot snapshot)
+        {
+            currentSnapshot = snapshot;
+            sessionCache.putInventory(username, authToken, snapshot);
+
+            backgroundExecutor.execute(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    try
+                    {
+                        inventoryStore.save(username, snapshot);
+                    }
+                    catch (IOException ex)
+                    {
+                        logger.sendLog("IO Exception encountered: " + ex.getMessage());
+                    }
                 }
             });
+        }
 
-            volleyQueue.add(request);
+        /**
+         * Logs a bounded summary of a snapshot instead of every item: the item count, total quantity,
+         * content hash and the first few items. It is built on the background thread, using the
+         * summaryBuilder that is only ever touched there.
+         * @param message short text describing the event.
+         * @param snapshot the snapshot to summarise.
+         */
+        private void logInventorySummary(final String message, final InventorySnapshot snapshot)
+        {
+            backgroundExecutor.execute(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    StringBuilder sample = new StringBuilder();
+                    int sampleRows = Math.min(snapshot.size(), SUMMARY_SAMPLE_ROWS);
+
+                    for(int i = 0; i < sampleRows; i++)
+                    {
+                        sample.append(i > 0 ? ", " : "").append(snapshot.getName(i)).append(':').append(snapshot.getQuantity(i));
+                    }
+
+                    logger.sendLog(summaryBuilder.begin(message)
+                            .add("itemCount", snapshot.size())
+                            .add("totalQuantity", snapshot.totalQuantity())
+                            .add("contentHash", Long.toHexString(snapshot.contentHash()))
+                            .add("sample", sample)
+                            .build());
+                }
+            });
         }
 
         /**
-         * Method used to show an android style Toast notification.
-         * @param text text parameter, this is what will be shown in the Toast notification.
+         * Shows a snapshot in the inventory list, only rebinding the rows that changed.
+         *
+         * The differences between the shown snapshot and the new one, and the new search index, are
+         * calculated on the background thread. If the list changed or was filtered in the meantime,
+         * every row is rebound instead.
+         *
+         * The first snapshot shown, or the first chunk, makes the page interactive for the StartupTracer.
+         *
+         * @param snapshot the inventory to show.
          */
-        private void showToast(String text)
+        private void applyInventory(final InventorySnapshot snapshot)
         {
-            Toast toast = Toast.makeText(this, text, Toast.LENGTH_SHORT);
-            toast.show();
+            startupTracer.reportInteractive(this);
+
+            final InventorySnapshot shownSnapshot = inventoryAdapter.getSnapshot();
+
+            if(shownSnapshot == null)
+            {
+                inventoryAdapter.setSnapshot(snapshot, null);
+                indexSnapshot(snapshot);
+                return;
+            }
+
+            backgroundExecutor.execute(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    final DiffUtil.DiffResult diffResult = DiffUtil.calculateDiff(new InventoryAdapter.SnapshotDiff(shownSnapshot, snapshot));
+                    final InventorySearchIndex index = InventorySearchIndex.build(snapshot);
+
+                    runOnUiThread(new Runnable()
+                    {
+                        @Override
+                        public void run()
+                        {
+                            boolean unchanged = inventoryAdapter.getSnapshot() == shownSnapshot && !inventoryAdapter.isFiltered();
+
+                            inventoryAdapter.setSnapshot(snapshot, unchanged ? diffResult : null);
+                            setSearchIndex(index);
+                        }
+                    });
+                }
+            });
+        }
+
+        /**
+         * Builds the search index for a snapshot on the background thread.
+         * @param snapshot the snapshot now shown in the list.
+         */
+        private void indexSnapshot(final InventorySnapshot snapshot)
+        {
+            backgroundExecutor.execute(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    final InventorySearchIndex index = InventorySearchIndex.build(snapshot);
+
+                    runOnUiThread(new Runnable()
+                    {
+                        @Override
+                        public void run()
+                        {
+                            if(inventoryAdapter.getSnapshot() == snapshot)
+                            {
+                                setSearchIndex(index);
+                            }
+                        }
+                    });
+                }
+            });
         }
 
         /**
-         * The InventoryItem class is used to make handling inventory objects
-         * easier when used within data structures.
+         * Starts using a new search index, and searches it for anything typed while it was being built.
+         * @param index the index of the snapshot now shown in the list.
          */
-        private class InventoryItem
+        private void setSearchIndex(InventorySearchIndex index)
         {
-            private String itemName;
-            private String quantity;
+            searchIndex = index;
+            searchResult = null;
+            runSearch();
+        }
 
-            public InventoryItem(String itemName, String quantity)
+        /**
+         * Filters the inventory list by the text in the search box. Each search starts from the
+         * previous result where it can, so typing another character only checks the rows already shown.
+         */
+        private void runSearch()
+        {
+            if(searchQuery.isEmpty())
             {
-                this.itemName = itemName;
-                this.quantity = quantity;
+                searchResult = null;
+                inventoryAdapter.clearFilter();
+                return;
             }
 
-            /**
-             * Getter method for the itemName variable
-             * @return String of the itemName
-             */
-            public String getItemName()
+            if(searchIndex == null || searchIndex.getSnapshot() != inventoryAdapter.getSnapshot())
             {
-                return itemName;
+                return;
             }
 
-            /**
-             * Getter method for the quantity variable
-             * @return String of the quantity
-             */
-            public String getQuantity()
+            searchResult = searchIndex.search(searchQuery, searchResult);
+            inventoryAdapter.setFilter(searchResult.getRows(), searchResult.size());
+        }
+
+        /**
+         * This method is executed when a row of the inventory list is tapped,
+         * it transitions to the Inventory_Page_Requests class for that item.
+         * @param itemName the name of the tapped item.
+         */
+        @Override
+        public void onItemClick(String itemName)
+        {
+            Intent intent = new Intent(Inventory_Page.this, Inventory_Page_Requests.class);
+            intent.putExtra("ItemName",itemName);
+            startActivity(intent);
+        }
+
+        /**
+         * The RetainedState class holds what an Inventory Page hands to the instance that replaces it
+         * after a configuration change. It also receives streamed chunks of the response and passes
+         * them to whichever instance is currently shown.
+         */
+        static class RetainedState implements InventoryResponseParser.ChunkListener
+        {
+            private Inventory_Page page;
+            private InventorySnapshot snapshot;
+            private InventorySnapshot partialSnapshot;
+            private RequestCoalescer.Call<InventoryResponseParser.Result> inventoryCall;
+
+            @Override
+            public void onChunk(InventorySnapshot items, int from, int to)
             {
-                return quantity;
+                partialSnapshot = items;
+
+                if(page != null)
+                {
+                    page.showChunk(items, from, to);
+                }
             }
         }
+
+        /**
+         * Method used to show an android style Toast notification.
+         * @param text text parameter, this is what will be shown in the Toast notification.
+         */
+        private void showToast(String text)
+        {
+            Toast toast = Toast.makeText(this, text, Toast.LENGTH_SHORT);
+            toast.show();
+        }
 }
@@ -3,12 +3,11 @@
  * items to be placed into their inventory.
  *
  * @author  J.Woodhouse, D.B.Dawson, I.J.Atienza, M.J.T.Makunda
- * @version 1.03
+ * @version 1.08
  */
 
 package msds.group.project.msds;
 
-import android.content.Intent;
 import android.support.v7.app.AppCompatActivity;
 import android.os.Bundle;
 import android.view.View;
@@ -17,17 +16,7 @@ import android.widget.NumberPicker;
 import android.widget.TextView;
 import android.widget.Toast;
 
-import com.android.volley.Request;
-import com.android.volley.RequestQueue;
-import com.android.volley.Response;
-import com.android.volley.VolleyError;
-import com.android.volley.toolbox.JsonObjectRequest;
-import com.android.volley.toolbox.Volley;
-
-import org.json.JSONException;
-import org.json.JSONObject;
-
-import java.util.HashMap;
+import java.io.IOException;
 
 public class Inventory_Page_Requests extends AppCompatActivity {
 
@@ -36,7 +25,6 @@ public class Inventory_Page_Requests extends AppCompatActivity {
     private TextView tvItemName;
     private String itemName;
     private int quantity;
-    private RequestQueue volleyQueue;
     private SharedVariables sharedVariables;
     private String username;
     private String authToken;
@@ -48,10 +36,10 @@ public class Inventory_Page_Requests extends AppCompatActivity {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_inventory__page__requests);
 
-        volleyQueue = Volley.newRequestQueue(this);
         sharedVariables = SharedVariables.getInstance();
-        username = sharedVariables.getUsername();
-        authToken = sharedVariables.getToken();
+        SessionSnapshot session = sharedVariables.getSession();
+        username = session.getUsername();
+        authToken = session.getAuthToken();
 
         numPicker = findViewById(R.id.numpicker);
         tvItemName = findViewById(R.id.tvItemName);
@@ -68,27 +56,17 @@ public class Inventory_Page_Requests extends AppCompatActivity {
 
         quantity = 0;
 
-        logger = new Logger(volleyQueue);
+        logger = new Logger(MsdsApplication.getInstance().getLogBatcher());
         logger.sendLog("Inventory requests page loaded with data: " + itemName);
     }
 
     /**
      * This method is executed upon clicking the Confirmation button within the GUI.
      *
-     * It creates a JSON object consisting of the following inputs:
-     *
-     * username - retrieved using the getter method from the sharedVariables instance.
-     * authToken - retrieved using the getter method from the sharedVariables instance.
-     * itemName - the name of the current item being requested.
-     * quantity - the amount of the current item that the user wants to request.
-     *
-     * The above JSON object is sent in a POST request to the postURL URL.
-     *
-     * The returned JSON object has 1 field:
-     *
-     * success : boolean
-     *
-     * On success, the user will be returned back to their Inventory page.
+     * The request for the current item and the quantity picked is handed to InventoryRequests, which
+     * writes it to the WriteAheadQueue and sends it to NewRequest.php in the background. The user is
+     * returned to their Inventory page straight away, where the request is shown as pending until the
+     * server accepts or refuses it.
      *
      * @param view
      */
@@ -96,55 +74,49 @@ public class Inventory_Page_Requests extends AppCompatActivity {
     {
         quantity = numPicker.getValue();
 
-        HashMap<String, String> postData = new HashMap<>();
-        postData.put("username", username);
-        postData.put("authToken", authToken);
-        postData.put("itemName", itemName);
-        postData.put("quantity", Integer.toString(quantity));
-
-        String postURL = "https://msdsdb.000webhostapp.com/android_webservice/NewRequest.php";
-
-        JsonObjectRequest request = new JsonObjectRequest(Request.Method.POST, postURL, new JSONObject(postData), new Response.Listener<JSONObject>()
+        // The InventoryRequests may still be opening the WriteAheadQueue, the button waits for it.
+        pickerButton.setEnabled(false);
+        MsdsApplication.getInstance().loadInventoryRequests(new RequestCoalescer.Callback<InventoryRequests>()
         {
             @Override
-            public void onResponse(JSONObject response)
+            public void onSuccess(InventoryRequests inventoryRequests)
             {
-                try
-                {
-                    Boolean newRequestSuccess = response.getBoolean("success");
-
-                    if(newRequestSuccess)
-                    {
-                        showToast("Request Sent Successfully");
-                        logger.sendLog("Inventory update request created with data: " + itemName + ":" + Integer.toString(quantity));
-
-                        Intent intent = new Intent(Inventory_Page_Requests.this, Inventory_Page.class);
-                        intent.setFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
-                        startActivity(intent);
-                    }
-                    else
-                    {
-                        showToast("Error submitting request");
-                        logger.sendLog("Failed to submit inventory update request");
-                    }
-                }
-                catch (JSONException ex)
-                {
-                    showToast("JSON Exception: " + ex.getMessage());
-                    logger.sendLog("JSON Exception encountered: " + ex.getMessage());
-                }
+                submitRequest(inventoryRequests);
             }
-        }, new Response.ErrorListener()
-        {
+
             @Override
-            public void onErrorResponse(VolleyError error)
+            public void onFailure(Exception error)
             {
-                showToast("Volley error: " + error.toString());
-                logger.sendLog("Volley Error encountered: " + error.toString());
+                pickerButton.setEnabled(true);
+                showToast("Unable to save request: " + error.getMessage());
+                logger.sendLog("Write-ahead queue unavailable: " + error.getMessage());
             }
         });
+    }
+
+    /**
+     * Queues the request and returns to the Inventory page.
+     * @param inventoryRequests the process-wide InventoryRequests.
+     */
+    private void submitRequest(InventoryRequests inventoryRequests)
+    {
+        try
+        {
+            inventoryRequests.submit(username, authToken, itemName, quantity);
+        }
+        catch (IOException ex)
+        {
+            pickerButton.setEnabled(true);
+            showToast("Unable to save request: " + ex.getMessage());
+            logger.sendLog("IO Exception encountered: " + ex.getMessage());
+            return;
+        }
+
+        showToast("Request queued");
+        logger.sendLog("Inventory update request queued with data: " + itemName + ":" + Integer.toString(quantity));
 
-        volleyQueue.add(request);
+        // The Inventory page this one was opened from is still in the back stack, and shows the pending request.
+        finish();
     }
 
     /**
@@ -0,0 +1,603 @@
+/**
+ * The JsonStreamReader class reads a UTF-8 JSON document one token at a time,
+ * without building a tree of JSONObjects and JSONArrays first.
+ *
+ * It follows the same pull style as android.util.JsonReader: call peek() to see what
+ * comes next, then the matching begin, end or next method to consume it.
+ *
+ * This class has no Android dependencies so that it can be benchmarked on the development machine.
+ *
+ * @author  J.Woodhouse, D.B.Dawson, I.J.Atienza, M.J.T.Makunda
+ * @version 1.01
+ */
+
+package msds.group.project.msds;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+public class JsonStreamReader
+{
+    public static final int BEGIN_OBJECT = 1;
+    public static final int END_OBJECT = 2;
+    public static final int BEGIN_ARRAY = 3;
+    public static final int END_ARRAY = 4;
+    public static final int NAME = 5;
+    public static final int STRING = 6;
+    public static final int NUMBER = 7;
+    public static final int BOOLEAN = 8;
+    public static final int NULL = 9;
+    public static final int END_DOCUMENT = 10;
+
+    private static final int PEEKED_NONE = 0;
+    private static final int PEEKED_TRUE = 11;
+    private static final int PEEKED_FALSE = 12;
+
+    private static final int SCOPE_EMPTY_ARRAY = 1;
+    private static final int SCOPE_NONEMPTY_ARRAY = 2;
+    private static final int SCOPE_EMPTY_OBJECT = 3;
+    private static final int SCOPE_DANGLING_NAME = 4;
+    private static final int SCOPE_NONEMPTY_OBJECT = 5;
+    private static final int SCOPE_EMPTY_DOCUMENT = 6;
+    private static final int SCOPE_NONEMPTY_DOCUMENT = 7;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final byte[] data;
+    private final int limit;
+    private int position;
+
+    private int[] scopes = new int[16];
+    private int depth;
+    private int peeked = PEEKED_NONE;
+
+    private final StringBuilder builder = new StringBuilder();
+
+    public JsonStreamReader(byte[] data)
+    {
+        this(data, 0, data.length);
+    }
+
+    public JsonStreamReader(byte[] data, int offset, int length)
+    {
+        this.data = data;
+        this.position = offset;
+        this.limit = offset + length;
+        scopes[depth++] = SCOPE_EMPTY_DOCUMENT;
+    }
+
+    /**
+     * This method returns the type of the next token without consuming it.
+     * @return returns one of the token constants, BOOLEAN is returned for both true and false.
+     * @throws IOException if the document is not valid JSON.
+     */
+    public int peek() throws IOException
+    {
+        if(peeked == PEEKED_NONE)
+        {
+            peeked = doPeek();
+        }
+
+        return peeked == PEEKED_TRUE || peeked == PEEKED_FALSE ? BOOLEAN : peeked;
+    }
+
+    /**
+     * @return returns true if the current array or object has another element.
+     * @throws IOException if the document is not valid JSON.
+     */
+    public boolean hasNext() throws IOException
+    {
+        int token = peek();
+        return token != END_OBJECT && token != END_ARRAY && token != END_DOCUMENT;
+    }
+
+    public void beginObject() throws IOException
+    {
+        expect(BEGIN_OBJECT);
+        push(SCOPE_EMPTY_OBJECT);
+    }
+
+    public void endObject() throws IOException
+    {
+        expect(END_OBJECT);
+        depth--;
+    }
+
+    public void beginArray() throws IOException
+    {
+        expect(BEGIN_ARRAY);
+        push(SCOPE_EMPTY_ARRAY);
+    }
+
+    public void endArray() throws IOException
+    {
+        expect(END_ARRAY);
+        depth--;
+    }
+
+    /**
+     * @return returns the next property name.
+     * @throws IOException if the next token is not a name.
+     */
+    public String nextName() throws IOException
+    {
+        expect(NAME);
+        return readString();
+    }
+
+    /**
+     * This method returns the next value as text. Numbers and booleans are returned as they appear in the document.
+     * @return returns the next value as a String.
+     * @throws IOException if the next token is not a string, number or boolean.
+     */
+    public String nextString() throws IOException
+    {
+        int token = peek();
+        int peekedLiteral = peeked;
+        peeked = PEEKED_NONE;
+
+        switch(token)
+        {
+            case STRING:
+                return readString();
+            case NUMBER:
+                int start = position;
+                skipNumber();
+                return new String(data, start, position - start, UTF_8);
+            case BOOLEAN:
+                return peekedLiteral == PEEKED_TRUE ? "true" : "false";
+            default:
+                throw syntaxError("Expected a string but was " + token);
+        }
+    }
+
+    /**
+     * This method returns the next value as an int, accepting both numbers and
+     * strings holding a number, without creating a String.
+     * @return returns the next value as an int.
+     * @throws IOException if the value is not a whole number.
+     */
+    public int nextInt() throws IOException
+    {
+        int token = peek();
+
+        if(token != NUMBER && token != STRING)
+        {
+            throw syntaxError("Expected an int but was " + token);
+        }
+
+        peeked = PEEKED_NONE;
+
+        boolean negative = false;
+        long value = 0;
+        int digits = 0;
+
+        if(position < limit && data[position] == '-')
+        {
+            negative = true;
+            position++;
+        }
+
+        while(position < limit && data[position] >= '0' && data[position] <= '9')
+        {
+            value = value * 10 + (data[position++] - '0');
+            digits++;
+
+            if(value > Integer.MAX_VALUE + 1L)
+            {
+                throw syntaxError("Number too large for an int");
+            }
+        }
+
+        if(digits == 0 || (!negative && value > Integer.MAX_VALUE))
+        {
+            throw syntaxError("Expected an int");
+        }
+
+        if(token == STRING)
+        {
+            if(position >= limit || data[position] != '"')
+            {
+                throw syntaxError("Expected an int");
+            }
+            position++;
+        }
+        else if(position < limit && (data[position] == '.' || data[position] == 'e' || data[position] == 'E'))
+        {
+            throw syntaxError("Expected an int");
+        }
+
+        return (int) (negative ? -value : value);
+    }
+
+    public boolean nextBoolean() throws IOException
+    {
+        peek();
+
+        if(peeked == PEEKED_TRUE)
+        {
+            peeked = PEEKED_NONE;
+            return true;
+        }
+        else if(peeked == PEEKED_FALSE)
+        {
+            peeked = PEEKED_NONE;
+            return false;
+        }
+
+        throw syntaxError("Expected a boolean but was " + peeked);
+    }
+
+    public void nextNull() throws IOException
+    {
+        expect(NULL);
+    }
+
+    /**
+     * This method skips the next value, including any nested arrays and objects.
+     * @throws IOException if the document is not valid JSON.
+     */
+    public void skipValue() throws IOException
+    {
+        int nesting = 0;
+
+        do
+        {
+            int token = peek();
+            peeked = PEEKED_NONE;
+
+            switch(token)
+            {
+                case BEGIN_OBJECT:
+                    push(SCOPE_EMPTY_OBJECT);
+                    nesting++;
+                    break;
+                case BEGIN_ARRAY:
+                    push(SCOPE_EMPTY_ARRAY);
+                    nesting++;
+                    break;
+                case END_OBJECT:
+                case END_ARRAY:
+                    depth--;
+                    nesting--;
+                    break;
+                case NAME:
+                case STRING:
+                    skipString();
+                    break;
+                case NUMBER:
+                    skipNumber();
+                    break;
+                case END_DOCUMENT:
+                    throw syntaxError("Unexpected end of document");
+                default:
+                    break;
+            }
+        }
+        while(nesting > 0);
+    }
+
+    /**
+     * This method skips the next object or array and returns a copy of its bytes, so it can be
+     * handed to a parser of its own.
+     * @return returns the UTF-8 bytes of the value.
+     * @throws IOException if the next value is not an object or array, or the document is not valid JSON.
+     */
+    public byte[] nextRawValue() throws IOException
+    {
+        int token = peek();
+
+        if(token != BEGIN_OBJECT && token != BEGIN_ARRAY)
+        {
+            throw syntaxError("Expected an object or array but was " + token);
+        }
+
+        // peek has consumed the opening bracket.
+        int start = position - 1;
+        skipValue();
+        return Arrays.copyOfRange(data, start, position);
+    }
+
+    private void expect(int expected) throws IOException
+    {
+        int token = peek();
+
+        if(token != expected)
+        {
+            throw syntaxError("Expected " + expected + " but was " + token);
+        }
+
+        peeked = PEEKED_NONE;
+    }
+
+    private void push(int scope)
+    {
+        if(depth == scopes.length)
+        {
+            scopes = Arrays.copyOf(scopes, depth * 2);
+        }
+
+        scopes[depth++] = scope;
+    }
+
+    private int doPeek() throws IOException
+    {
+        int scope = scopes[depth - 1];
+        int c;
+
+        if(scope == SCOPE_EMPTY_ARRAY)
+        {
+            scopes[depth - 1] = SCOPE_NONEMPTY_ARRAY;
+            c = nextNonWhitespace();
+
+            if(c == ']')
+            {
+                return END_ARRAY;
+            }
+            position--;
+        }
+        else if(scope == SCOPE_NONEMPTY_ARRAY)
+        {
+            c = nextNonWhitespace();
+
+            if(c == ']')
+            {
+                return END_ARRAY;
+            }
+            else if(c != ',')
+            {
+                throw syntaxError("Unterminated array");
+            }
+        }
+        else if(scope == SCOPE_EMPTY_OBJECT || scope == SCOPE_NONEMPTY_OBJECT)
+        {
+            scopes[depth - 1] = SCOPE_DANGLING_NAME;
+            c = nextNonWhitespace();
+
+            if(c == '}')
+            {
+                return END_OBJECT;
+            }
+
+            if(scope == SCOPE_NONEMPTY_OBJECT)
+            {
+                if(c != ',')
+                {
+                    throw syntaxError("Unterminated object");
+                }
+                c = nextNonWhitespace();
+            }
+
+            if(c != '"')
+            {
+                throw syntaxError("Expected a name");
+            }
+
+            return NAME;
+        }
+        else if(scope == SCOPE_DANGLING_NAME)
+        {
+            scopes[depth - 1] = SCOPE_NONEMPTY_OBJECT;
+
+            if(nextNonWhitespace() != ':')
+            {
+                throw syntaxError("Expected ':'");
+            }
+        }
+        else if(scope == SCOPE_EMPTY_DOCUMENT)
+        {
+            scopes[depth - 1] = SCOPE_NONEMPTY_DOCUMENT;
+        }
+        else if(scope == SCOPE_NONEMPTY_DOCUMENT)
+        {
+            if(nextNonWhitespaceOrEnd() == -1)
+            {
+                return END_DOCUMENT;
+            }
+            throw syntaxError("Unexpected data after the document");
+        }
+
+        c = nextNonWhitespace();
+
+        switch(c)
+        {
+            case '{':
+                return BEGIN_OBJECT;
+            case '[':
+                return BEGIN_ARRAY;
+            case '"':
+                return STRING;
+            case 't':
+                consumeLiteral("rue");
+                return PEEKED_TRUE;
+            case 'f':
+                consumeLiteral("alse");
+                return PEEKED_FALSE;
+            case 'n':
+                consumeLiteral("ull");
+                return NULL;
+            default:
+                if(c == '-' || (c >= '0' && c <= '9'))
+                {
+                    position--;
+                    return NUMBER;
+                }
+                throw syntaxError("Unexpected character '" + (char) c + "'");
+        }
+    }
+
+    private void consumeLiteral(String rest) throws IOException
+    {
+        for(int i = 0; i < rest.length(); i++)
+        {
+            if(position >= limit || data[position++] != rest.charAt(i))
+            {
+                throw syntaxError("Invalid literal");
+            }
+        }
+    }
+
+    private int nextNonWhitespace() throws IOException
+    {
+        int c = nextNonWhitespaceOrEnd();
+
+        if(c == -1)
+        {
+            throw syntaxError("Unexpected end of document");
+        }
+
+        return c;
+    }
+
+    private int nextNonWhitespaceOrEnd()
+    {
+        while(position < limit)
+        {
+            int c = data[position++] & 0xFF;
+
+            if(c != ' ' && c != '\n' && c != '\r' && c != '\t')
+            {
+                return c;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Reads a string whose opening quote has been consumed. Strings without escapes are
+     * decoded straight from the byte array.
+     */
+    private String readString() throws IOException
+    {
+        int start = position;
+
+        while(position < limit)
+        {
+            byte b = data[position];
+
+            if(b == '"')
+            {
+                position++;
+                return new String(data, start, position - 1 - start, UTF_8);
+            }
+            else if(b == '\\')
+            {
+                return readEscapedString(start);
+            }
+
+            position++;
+        }
+
+        throw syntaxError("Unterminated string");
+    }
+
+    private String readEscapedString(int start) throws IOException
+    {
+        builder.setLength(0);
+        int segmentStart = start;
+
+        while(position < limit)
+        {
+            byte b = data[position];
+
+            if(b == '"')
+            {
+                builder.append(new String(data, segmentStart, position - segmentStart, UTF_8));
+                position++;
+                return builder.toString();
+            }
+            else if(b == '\\')
+            {
+                builder.append(new String(data, segmentStart, position - segmentStart, UTF_8));
+                position++;
+
+                if(position >= limit)
+                {
+                    break;
+                }
+
+                byte escaped = data[position++];
+
+                switch(escaped)
+                {
+                    case 'n':
+                        builder.append('\n');
+                        break;
+                    case 't':
+                        builder.append('\t');
+                        break;
+                    case 'r':
+                        builder.append('\r');
+                        break;
+                    case 'b':
+                        builder.append('\b');
+                        break;
+                    case 'f':
+                        builder.append('\f');
+                        break;
+                    case 'u':
+                        if(position + 4 > limit)
+                        {
+                            throw syntaxError("Invalid unicode escape");
+                        }
+                        builder.append((char) Integer.parseInt(new String(data, position, 4, UTF_8), 16));
+                        position += 4;
+                        break;
+                    default:
+                        builder.append((char) escaped);
+                }
+
+                segmentStart = position;
+            }
+            else
+            {
+                position++;
+            }
+        }
+
+        throw syntaxError("Unterminated string");
+    }
+
+    private void skipString() throws IOException
+    {
+        while(position < limit)
+        {
+            byte b = data[position++];
+
+            if(b == '"')
+            {
+                return;
+            }
+            else if(b == '\\')
+            {
+                position++;
+            }
+        }
+
+        throw syntaxError("Unterminated string");
+    }
+
+    private void skipNumber()
+    {
+        while(position < limit)
+        {
+            byte b = data[position];
+
+            if((b >= '0' && b <= '9') || b == '-' || b == '+' || b == '.' || b == 'e' || b == 'E')
+            {
+                position++;
+            }
+            else
+            {
+                return;
+            }
+        }
+    }
+
+    private IOException syntaxError(String message)
+    {
+        return new IOException(message + " at byte " + position);
+    }
+}
@@ -0,0 +1,290 @@
+/**
+ * The LogBatcher class collects log events in a ring buffer and ships them to the
+ * Database as a single JSON array, rather than sending one POST request per event.
+ *
+ * A batch is flushed when the buffer holds maxBatchSize events, when flushWindowMillis
+ * has passed since the first waiting event was added, or when flush() is called
+ * (the App does this when it moves to the background).
+ *
+ * Events built by a LogEvent.Builder also carry a JSON object of typed fields, which is
+ * sent as the event's fields member.
+ *
+ * Batches are written with a RequestBodyWriter straight into UTF-8 bytes in a buffer the
+ * LogBatcher keeps, so adding an event allocates nothing and a batch allocates only the body
+ * handed to the Transport. Descriptions are shortened to LogEvent.MAX_DESCRIPTION_LENGTH as
+ * they are written, so plain descriptions need no LogEvent.
+ *
+ * This class has no Android dependencies so that it can be tested on the development machine.
+ *
+ * @author  J.Woodhouse, D.B.Dawson, I.J.Atienza, M.J.T.Makunda
+ * @version 1.03
+ */
+
+package msds.group.project.msds;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+public class LogBatcher
+{
+    /**
+     * The Transport interface is used to deliver a finished batch to the Database.
+     */
+    public interface Transport
+    {
+        /**
+         * Sends one batch of log events. Called on the thread that filled the batch, which may be
+         * the main thread, so it must hand any disk or network work to another thread.
+         * @param batchBody UTF-8 JSON array holding every event in the batch.
+         */
+        void send(byte[] batchBody);
+    }
+
+    private final Transport transport;
+    private final ScheduledExecutorService scheduler;
+    private final int maxBatchSize;
+    private final long flushWindowMillis;
+
+    private final String[] usernames;
+    private final String[] authTokens;
+    private final String[] descriptions;
+    private final String[] fields;
+    private final long[] timeStamps;
+    private int head;
+    private int size;
+
+    private static final RequestBodyWriter.Schema EVENT =
+            new RequestBodyWriter.Schema("username", "authToken", "activityDescription", "fields", "timestamp");
+
+    private final RequestBodyWriter batchWriter;
+    private ScheduledFuture<?> pendingFlush;
+
+    private final Runnable flushTask = new Runnable()
+    {
+        @Override
+        public void run()
+        {
+            flush();
+        }
+    };
+
+    public LogBatcher(Transport transport, ScheduledExecutorService scheduler, int maxBatchSize, long flushWindowMillis)
+    {
+        this(transport, scheduler, maxBatchSize, flushWindowMillis, new BufferPool(64 * 1024, 1));
+    }
+
+    /**
+     * @param transport the transport finished batches are sent with.
+     * @param scheduler the executor flushes are scheduled on.
+     * @param maxBatchSize the number of events that fills a batch.
+     * @param flushWindowMillis the longest an event waits before its batch is sent.
+     * @param bufferPool the pool the batch buffer is taken from.
+     */
+    public LogBatcher(Transport transport, ScheduledExecutorService scheduler, int maxBatchSize, long flushWindowMillis,
+                      BufferPool bufferPool)
+    {
+        if(maxBatchSize < 1)
+        {
+            throw new IllegalArgumentException("maxBatchSize must be at least 1");
+        }
+
+        this.transport = transport;
+        this.scheduler = scheduler;
+        this.maxBatchSize = maxBatchSize;
+        this.flushWindowMillis = flushWindowMillis;
+
+        usernames = new String[maxBatchSize];
+        authTokens = new String[maxBatchSize];
+        descriptions = new String[maxBatchSize];
+        fields = new String[maxBatchSize];
+        timeStamps = new long[maxBatchSize];
+        batchWriter = new RequestBodyWriter(bufferPool);
+    }
+
+    /**
+     * This method adds a log event to the buffer.
+     * If the buffer is now full the batch is sent straight away, otherwise a flush is
+     * scheduled for the end of the current time window.
+     *
+     * @param username the username of the user that caused the event.
+     * @param authToken the authToken of the current session.
+     * @param activityDescription String of meaningful text to describe the logged event.
+     * @param timeStamp the time of the event in UNIX epoch time format.
+     */
+    public void add(String username, String authToken, String activityDescription, long timeStamp)
+    {
+        add(username, authToken, activityDescription, null, timeStamp);
+    }
+
+    /**
+     * This method adds a structured log event to the buffer, as add does.
+     *
+     * @param username the username of the user that caused the event.
+     * @param authToken the authToken of the current session.
+     * @param event the description and typed fields of the event.
+     * @param timeStamp the time of the event in UNIX epoch time format.
+     */
+    public void add(String username, String authToken, LogEvent event, long timeStamp)
+    {
+        add(username, authToken, event.getDescription(), event.getFields(), timeStamp);
+    }
+
+    private void add(String username, String authToken, String activityDescription, String eventFields, long timeStamp)
+    {
+        byte[] batchBody = null;
+
+        synchronized(this)
+        {
+            int index = (head + size) % maxBatchSize;
+            usernames[index] = username;
+            authTokens[index] = authToken;
+            descriptions[index] = activityDescription;
+            fields[index] = eventFields;
+            timeStamps[index] = timeStamp;
+            size++;
+
+            if(size == maxBatchSize)
+            {
+                batchBody = drain();
+            }
+            else if(pendingFlush == null)
+            {
+                pendingFlush = scheduler.schedule(flushTask, flushWindowMillis, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        if(batchBody != null)
+        {
+            transport.send(batchBody);
+        }
+    }
+
+    /**
+     * This method sends every buffered event immediately.
+     * Nothing is sent if the buffer is empty.
+     */
+    public void flush()
+    {
+        byte[] batchBody;
+
+        synchronized(this)
+        {
+            if(size == 0)
+            {
+                return;
+            }
+            batchBody = drain();
+        }
+
+        transport.send(batchBody);
+    }
+
+    /**
+     * Getter method for the number of events waiting to be sent.
+     * @return returns the number of buffered events.
+     */
+    public synchronized int getBufferedCount()
+    {
+        return size;
+    }
+
+    /**
+     * Empties the buffer into a JSON array. Must be called while holding the lock.
+     * @return returns the UTF-8 bytes of the JSON array.
+     */
+    private byte[] drain()
+    {
+        if(pendingFlush != null)
+        {
+            pendingFlush.cancel(false);
+            pendingFlush = null;
+        }
+
+        batchWriter.reset().beginArray();
+
+        for(int i = 0; i < size; i++)
+        {
+            int index = (head + i) % maxBatchSize;
+
+            batchWriter.beginObject(EVENT)
+                    .field(usernames[index])
+                    .field(authTokens[index])
+                    .field(descriptions[index], LogEvent.MAX_DESCRIPTION_LENGTH);
+
+            if(fields[index] != null)
+            {
+                batchWriter.rawField(fields[index]);
+            }
+            else
+            {
+                batchWriter.skipField();
+            }
+
+            batchWriter.field(timeStamps[index]).endObject();
+
+            usernames[index] = null;
+            authTokens[index] = null;
+            descriptions[index] = null;
+            fields[index] = null;
+        }
+
+        batchWriter.endArray();
+
+        head = (head + size) % maxBatchSize;
+        size = 0;
+
+        return batchWriter.toByteArray();
+    }
+
+    /**
+     * Appends a String to the builder as a quoted and escaped JSON string, or null.
+     * @param builder the builder to append to.
+     * @param value the String to append.
+     */
+    static void appendJsonString(StringBuilder builder, String value)
+    {
+        if(value == null)
+        {
+            builder.append("null");
+            return;
+        }
+
+        builder.append('"');
+
+        for(int i = 0; i < value.length(); i++)
+        {
+            char c = value.charAt(i);
+
+            switch(c)
+            {
+                case '"':
+                    builder.append("\\\"");
+                    break;
+                case '\\':
+                    builder.append("\\\\");
+                    break;
+                case '\n':
+                    builder.append("\\n");
+                    break;
+                case '\r':
+                    builder.append("\\r");
+                    break;
+                case '\t':
+                    builder.append("\\t");
+                    break;
+                default:
+                    if(c < 0x20)
+                    {
+                        builder.append(String.format("\\u%04x", (int) c));
+                    }
+                    else
+                    {
+                        builder.append(c);
+                    }
+            }
+        }
+
+        builder.append('"');
+    }
+}
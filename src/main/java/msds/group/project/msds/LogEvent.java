@@ -0,0 +1,201 @@
+/**
+ * The LogEvent class is one event sent to SubmitLog.php, made up of a description and
+ * optional typed fields.
+ *
+ * The description is what SubmitLog.php stores as the activityDescription, so the fields are
+ * also written into it in a short name=value form. The fields are sent again as a JSON object,
+ * keeping numbers as numbers, for anything reading the logs that understands them.
+ *
+ * Every part of an event has a fixed maximum length, so logging a large inventory costs the
+ * same as logging a small one:
+ *
+ * description : at most MAX_DESCRIPTION_LENGTH characters.
+ * field values : at most MAX_VALUE_LENGTH characters each.
+ * fields : at most MAX_FIELDS_LENGTH characters of JSON, later fields are dropped and truncated is set.
+ *
+ * This class has no Android dependencies so that it can be tested on the development machine.
+ *
+ * @author  J.Woodhouse, D.B.Dawson, I.J.Atienza, M.J.T.Makunda
+ * @version 1.00
+ */
+
+package msds.group.project.msds;
+
+public class LogEvent
+{
+    public static final int MAX_DESCRIPTION_LENGTH = 256;
+    public static final int MAX_VALUE_LENGTH = 128;
+    public static final int MAX_FIELDS_LENGTH = 512;
+
+    private static final String ELLIPSIS = "...";
+
+    private final String description;
+    private final String fields;
+
+    private LogEvent(String description, String fields)
+    {
+        this.description = description;
+        this.fields = fields;
+    }
+
+    /**
+     * Creates an event with only a description, shortened if it is too long.
+     * @param description String of meaningful text to describe the logged event.
+     * @return returns the event.
+     */
+    public static LogEvent of(String description)
+    {
+        return new LogEvent(truncate(String.valueOf(description), MAX_DESCRIPTION_LENGTH), null);
+    }
+
+    /**
+     * Getter method for the description variable
+     * @return String sent as the activityDescription
+     */
+    public String getDescription()
+    {
+        return description;
+    }
+
+    /**
+     * Getter method for the fields variable
+     * @return String holding the fields as a JSON object, or null if there are none
+     */
+    public String getFields()
+    {
+        return fields;
+    }
+
+    static String truncate(String text, int maxLength)
+    {
+        if(text.length() <= maxLength)
+        {
+            return text;
+        }
+
+        return text.substring(0, maxLength - ELLIPSIS.length()) + ELLIPSIS;
+    }
+
+    /**
+     * The Builder class creates LogEvents. It can be reused for any number of events, but
+     * it is not thread safe, so each Builder should only be used from one thread.
+     */
+    public static class Builder
+    {
+        private final StringBuilder description = new StringBuilder(MAX_DESCRIPTION_LENGTH);
+        private final StringBuilder fields = new StringBuilder(MAX_FIELDS_LENGTH);
+        private final StringBuilder value = new StringBuilder(MAX_VALUE_LENGTH + 16);
+        private int fieldCount;
+        private boolean truncated;
+
+        /**
+         * Starts a new event, discarding anything added since the last build.
+         * @param message short text describing the event.
+         * @return returns this Builder.
+         */
+        public Builder begin(String message)
+        {
+            description.setLength(0);
+            fields.setLength(0);
+            fieldCount = 0;
+            truncated = false;
+
+            description.append(truncate(String.valueOf(message), MAX_DESCRIPTION_LENGTH));
+            fields.append('{');
+
+            return this;
+        }
+
+        /**
+         * Adds a number field.
+         * @param name the field name.
+         * @param number the field value.
+         * @return returns this Builder.
+         */
+        public Builder add(String name, long number)
+        {
+            value.setLength(0);
+            value.append(number);
+            return addField(name, false);
+        }
+
+        /**
+         * Adds a text field, shortened to MAX_VALUE_LENGTH characters.
+         * @param name the field name.
+         * @param text the field value.
+         * @return returns this Builder.
+         */
+        public Builder add(String name, CharSequence text)
+        {
+            value.setLength(0);
+
+            if(text.length() <= MAX_VALUE_LENGTH)
+            {
+                value.append(text);
+            }
+            else
+            {
+                value.append(text, 0, MAX_VALUE_LENGTH - ELLIPSIS.length()).append(ELLIPSIS);
+            }
+
+            return addField(name, true);
+        }
+
+        /**
+         * Creates the event from everything added since begin.
+         * @return returns the event.
+         */
+        public LogEvent build()
+        {
+            if(truncated)
+            {
+                fields.append(fieldCount == 0 ? "" : ",").append("\"truncated\":true");
+            }
+
+            fields.append('}');
+
+            if(fieldCount > 0)
+            {
+                description.append(')');
+            }
+
+            return new LogEvent(truncate(description.toString(), MAX_DESCRIPTION_LENGTH), fieldCount == 0 && !truncated ? null : fields.toString());
+        }
+
+        private Builder addField(String name, boolean quoted)
+        {
+            int fieldsLength = fields.length();
+
+            fields.append(fieldCount == 0 ? "" : ",");
+            LogBatcher.appendJsonString(fields, name);
+            fields.append(':');
+
+            if(quoted)
+            {
+                LogBatcher.appendJsonString(fields, value.toString());
+            }
+            else
+            {
+                fields.append(value);
+            }
+
+            // Leave room for the truncated marker and closing brace.
+            if(fields.length() > MAX_FIELDS_LENGTH - 20)
+            {
+                fields.setLength(fieldsLength);
+                truncated = true;
+                return this;
+            }
+
+            fieldCount++;
+
+            // Once the description is full it will be cut short, so later fields only go in the JSON.
+            if(description.length() <= MAX_DESCRIPTION_LENGTH)
+            {
+                description.append(fieldCount == 1 ? " (" : ", ").append(name).append('=').append(value);
+            }
+
+            return this;
+        }
+    }
+}
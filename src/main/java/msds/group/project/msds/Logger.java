@@ -1,64 +1,102 @@
 /**
  * The Logger class handles the sending of logs to be stored in a Database.
  *
+ * Logs are not sent one at a time, each event is added to the App's shared LogBatcher
+ * and sent to SubmitLog.php as part of a batched JSON array. Batches are written to the
+ * WriteAheadQueue first, so logs that fail to send are retried rather than lost.
+ *
+ * Every event is capped in size by LogEvent, events with typed fields can be built
+ * with a LogEvent.Builder.
+ *
+ * Each event is sent with the credentials of the session current when it is logged, so a
+ * Logger created before the user logged in, or kept across a renewal, sends the right ones.
+ *
  * @author  J.Woodhouse, D.B.Dawson, I.J.Atienza, M.J.T.Makunda
- * @version 1.04
+ * @version 1.12
  */
 
 
 package msds.group.project.msds;
 
-import android.app.Application;
-import android.content.Context;
-
-import com.android.volley.Request;
-import com.android.volley.RequestQueue;
-import com.android.volley.Response;
-import com.android.volley.VolleyError;
-import com.android.volley.toolbox.JsonObjectRequest;
-import com.android.volley.toolbox.Volley;
+import android.util.Log;
 
-import org.json.JSONObject;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
 
-import java.util.HashMap;
-
-public class Logger extends Application
+public class Logger
 {
     private SharedVariables sharedVariables;
-    private String username;
-    private String authToken;
-    private RequestQueue volleyQueue;
+    private LogBatcher logBatcher;
 
-    public Logger(RequestQueue volleyQueue)
+    public Logger(LogBatcher logBatcher)
     {
         sharedVariables = SharedVariables.getInstance();
-        username = sharedVariables.getUsername();
-        authToken = sharedVariables.getToken();
-        this.volleyQueue = volleyQueue;
+        this.logBatcher = logBatcher;
     }
 
     /**
-     * This function is used to send a POST request containing the log data to be
-     * inserted into the Database.
+     * This function is used to queue log data to be inserted into the Database.
+     * The log is sent with the next batch.
      * @param activityDescription String of meaningful text to describe the logged event.
      */
     public void sendLog(String activityDescription)
     {
-        HashMap<String, String> postData = new HashMap<>();
-        postData.put("username", username);
-        postData.put("authToken", authToken);
-        postData.put("activityDescription", activityDescription);
+        // The LogBatcher shortens the description as it writes it, so no LogEvent is needed.
+        long uTimeStamp = TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis());
+        SessionSnapshot session = sharedVariables.getSession();
+        logBatcher.add(session.getUsername(), session.getAuthToken(), String.valueOf(activityDescription), uTimeStamp);
+    }
+
+    /**
+     * This function is used to queue a structured log event to be inserted into the Database.
+     * It may be called from any thread.
+     * @param event the event, built with LogEvent.of or a LogEvent.Builder.
+     */
+    public void sendLog(LogEvent event)
+    {
+        long uTimeStamp = TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis());
+        SessionSnapshot session = sharedVariables.getSession();
+        logBatcher.add(session.getUsername(), session.getAuthToken(), event, uTimeStamp);
+    }
 
-        String postURL = "https://msdsdb.000webhostapp.com/android_webservice/SubmitLog.php";
+    /**
+     * The SubmitLogTransport class hands batches built by the LogBatcher to the
+     * WriteAheadQueue, which sends them to SubmitLog.php and retries them if the send fails.
+     * The WriteAheadQueue is only asked for when the first batch is sent, so the LogBatcher can
+     * be created before the queue has been opened.
+     *
+     * The LogBatcher sends a full batch on the thread that logged the last event, often the main
+     * thread, so the batch is written to the queue on the background executor instead. Opening
+     * the queue may have to recover it from disk, and a queue that cannot be opened loses the
+     * batch rather than the App.
+     */
+    public static class SubmitLogTransport implements LogBatcher.Transport
+    {
+        private final MsdsApplication application;
 
-        JsonObjectRequest request = new JsonObjectRequest(Request.Method.POST, postURL, new JSONObject(postData), new Response.Listener<JSONObject>() {
-            @Override
-            public void onResponse(JSONObject response) {}
-        }, new Response.ErrorListener() {
-            @Override
-            public void onErrorResponse(VolleyError error) {}
-        });
+        public SubmitLogTransport(MsdsApplication application)
+        {
+            this.application = application;
+        }
 
-        volleyQueue.add(request);
+        @Override
+        public void send(final byte[] batchBody)
+        {
+            application.getBackgroundExecutor().execute(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    try
+                    {
+                        application.getWriteAheadQueue().enqueue(WriteAheadQueue.KIND_LOG_BATCH, batchBody, null);
+                    }
+                    catch (IOException | IllegalStateException ex)
+                    {
+                        Log.e("Logger", "Unable to queue log batch", ex);
+                    }
+                }
+            });
+        }
     }
 }
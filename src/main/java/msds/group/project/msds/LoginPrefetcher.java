@@ -0,0 +1,189 @@
+/**
+ * The LoginPrefetcher class fetches the user's account details and inventory as soon as they
+ * have logged in, while they are still on the Home Page, and keeps them in the SessionCache.
+ *
+ * GetUserInfo.php is sent straight away. GetInventory.php is sent once the saved snapshot has
+ * been read on the background thread. If there is one only the changes since its version are
+ * asked for, using GetInventoryDelta. Both requests are in flight at the same time.
+ *
+ * Both are sent as prefetches, so the RequestScheduler sends them after any call a page is
+ * waiting on and gives up on them if they wait too long.
+ *
+ * If a page is opened before its prefetch has finished, the page's own identical request joins
+ * the prefetch through the MsdsApi's RequestCoalescer instead of being sent again. In the same
+ * way the prefetch joins a GetUserInfo.php call that MainActivity sent in a Batch with the login.
+ *
+ * Nothing is prefetched on a metered connection, with Data Saver on, or on a 2G connection,
+ * where the user may never open either page and the data would be wasted.
+ *
+ * @author  J.Woodhouse, D.B.Dawson, I.J.Atienza, M.J.T.Makunda
+ * @version 1.03
+ */
+
+package msds.group.project.msds;
+
+import android.content.Context;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
+import android.os.Build;
+import android.telephony.TelephonyManager;
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.concurrent.Executor;
+
+public class LoginPrefetcher
+{
+    private final ConnectivityManager connectivityManager;
+    private final MsdsApi msdsApi;
+    private final InventoryStore inventoryStore;
+    private final SessionCache sessionCache;
+    private final Executor backgroundExecutor;
+
+    public LoginPrefetcher(MsdsApplication application)
+    {
+        connectivityManager = (ConnectivityManager) application.getSystemService(Context.CONNECTIVITY_SERVICE);
+        msdsApi = application.getMsdsApi();
+        inventoryStore = application.getInventoryStore();
+        sessionCache = application.getSessionCache();
+        backgroundExecutor = application.getBackgroundExecutor();
+    }
+
+    /**
+     * This method starts a new session in the SessionCache and, if the network allows it,
+     * prefetches the account details and inventory for it. It must be called on the main thread.
+     * @param username the user that logged in.
+     * @param authToken the token the user logged in with.
+     * @return returns true if the prefetch was started, false if it was skipped.
+     */
+    public boolean prefetch(final String username, final String authToken)
+    {
+        sessionCache.startSession(username, authToken);
+
+        if(!isNetworkSuitable())
+        {
+            return false;
+        }
+
+        msdsApi.getUserInfo().prefetch(username, authToken).subscribe(new RequestCoalescer.Callback<MsdsApi.UserInfo>()
+        {
+            @Override
+            public void onSuccess(MsdsApi.UserInfo result)
+            {
+                if(result.isSuccess())
+                {
+                    sessionCache.putUserInfo(username, authToken, result);
+                }
+            }
+
+            @Override
+            public void onFailure(Exception error)
+            {
+                // The Account Page asks again when it is opened.
+            }
+        });
+
+        backgroundExecutor.execute(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                final InventorySnapshot saved = inventoryStore.load(username);
+
+                if(saved != null)
+                {
+                    sessionCache.putInventory(username, authToken, saved);
+                }
+
+                if(inventoryStore.isFresh(saved, System.currentTimeMillis()))
+                {
+                    return;
+                }
+
+                RequestCoalescer.Call<InventoryResponseParser.Result> inventoryCall = saved == null
+                        ? msdsApi.getInventory().prefetch(username, authToken)
+                        : msdsApi.getInventoryDelta().prefetch(username, authToken, saved);
+
+                inventoryCall.subscribe(new RequestCoalescer.Callback<InventoryResponseParser.Result>()
+                {
+                    @Override
+                    public void onSuccess(InventoryResponseParser.Result result)
+                    {
+                        if(!result.isSuccess() || (saved == null && result.isNotModified()))
+                        {
+                            return;
+                        }
+
+                        long now = System.currentTimeMillis();
+                        InventorySnapshot snapshot = result.isNotModified() ? saved.confirmedAt(now) : result.getItems().confirmedAt(now);
+
+                        sessionCache.putInventory(username, authToken, snapshot);
+                        saveSnapshot(username, snapshot);
+                    }
+
+                    @Override
+                    public void onFailure(Exception error)
+                    {
+                        // The Inventory Page asks again when it is opened.
+                    }
+                });
+            }
+        });
+
+        return true;
+    }
+
+    /**
+     * This method checks whether the active network is worth prefetching on.
+     * @return returns false if there is no connection, or it is metered, restricted by Data Saver or 2G.
+     */
+    public boolean isNetworkSuitable()
+    {
+        NetworkInfo networkInfo = connectivityManager.getActiveNetworkInfo();
+
+        if(networkInfo == null || !networkInfo.isConnected() || connectivityManager.isActiveNetworkMetered())
+        {
+            return false;
+        }
+
+        if(Build.VERSION.SDK_INT >= Build.VERSION_CODES.N
+                && connectivityManager.getRestrictBackgroundStatus() == ConnectivityManager.RESTRICT_BACKGROUND_STATUS_ENABLED)
+        {
+            return false;
+        }
+
+        if(networkInfo.getType() == ConnectivityManager.TYPE_MOBILE)
+        {
+            switch(networkInfo.getSubtype())
+            {
+                case TelephonyManager.NETWORK_TYPE_GPRS:
+                case TelephonyManager.NETWORK_TYPE_EDGE:
+                case TelephonyManager.NETWORK_TYPE_CDMA:
+                case TelephonyManager.NETWORK_TYPE_1xRTT:
+                case TelephonyManager.NETWORK_TYPE_IDEN:
+                    return false;
+            }
+        }
+
+        return true;
+    }
+
+    private void saveSnapshot(final String username, final InventorySnapshot snapshot)
+    {
+        backgroundExecutor.execute(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    inventoryStore.save(username, snapshot);
+                }
+                catch (IOException ex)
+                {
+                    Log.e("LoginPrefetcher", "Unable to save prefetched inventory", ex);
+                }
+            }
+        });
+    }
+}
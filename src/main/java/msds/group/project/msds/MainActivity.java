@@ -2,8 +2,19 @@
  * The MainActivity class is used to represent the initial
  * login page for the MSDS Android app.
  *
+ * Pressing the login button again while a login is in flight joins that login instead
+ * of sending another, and the login survives the device being rotated.
+ *
+ * Once the login succeeds a LoginPrefetcher starts fetching the account details and inventory.
+ * When the network is good enough to prefetch, GetUserInfo.php is sent in the same Batch as
+ * Login.php, so the account details arrive with the login result.
+ *
+ * If the last process left a session that has not expired, it is resumed and the page goes
+ * straight to the Home Page without the user logging in again. The session is loaded on the
+ * background thread, and the login page is shown until it has been.
+ *
  * @author  J.Woodhouse, D.B.Dawson, I.J.Atienza, M.J.T.Makunda
- * @version 1.13
+ * @version 1.24
  */
 
 package msds.group.project.msds;
@@ -16,17 +27,7 @@ import android.view.inputmethod.InputMethodManager;
 import android.widget.EditText;
 import android.widget.Toast;
 
-import com.android.volley.Request;
-import com.android.volley.RequestQueue;
-import com.android.volley.Response;
-import com.android.volley.VolleyError;
-import com.android.volley.toolbox.JsonObjectRequest;
-import com.android.volley.toolbox.Volley;
-
-import org.json.JSONException;
-import org.json.JSONObject;
-
-import java.util.HashMap;
+import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.TimeUnit;
 
@@ -34,10 +35,13 @@ public class MainActivity extends AppCompatActivity
 {
     private EditText editText_Username;
     private EditText editText_Password;
-    private RequestQueue volleyQueue;
+    private MsdsApi msdsApi;
     private SharedVariables sharedVariables;
     private Logger logger;
+    private RequestCoalescer.Call<Boolean> loginCall;
+
     @Override
+    @SuppressWarnings("unchecked")
     protected void onCreate(Bundle savedInstanceState)
     {
         super.onCreate(savedInstanceState);
@@ -46,10 +50,82 @@ public class MainActivity extends AppCompatActivity
         editText_Username = findViewById(R.id.editText3);
         editText_Password = findViewById(R.id.editText4);
 
-        volleyQueue = Volley.newRequestQueue(this);
+        msdsApi = MsdsApplication.getInstance().getMsdsApi();
 
         sharedVariables = SharedVariables.getInstance();
 
+        loginCall = (RequestCoalescer.Call<Boolean>) getLastCustomNonConfigurationInstance();
+
+        if(loginCall != null)
+        {
+            loginCall.subscribe(loginCallback);
+        }
+        else
+        {
+            MsdsApplication.getInstance().whenSessionLoaded(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    showResumedSession();
+                }
+            });
+        }
+    }
+
+    /**
+     * Goes straight to the Home Page if the session saved by the last process was resumed, unless
+     * the user has started logging in or left the page while it was being loaded.
+     */
+    private void showResumedSession()
+    {
+        SessionSnapshot session = sharedVariables.getSession();
+
+        if(isFinishing() || loginCall != null || !session.isLoggedIn())
+        {
+            return;
+        }
+
+        new LoginPrefetcher(MsdsApplication.getInstance()).prefetch(session.getUsername(), session.getAuthToken());
+
+        Intent intent = new Intent(MainActivity.this, HomePage.class);
+        intent.setFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
+        startActivity(intent);
+        finish();
+    }
+
+    /**
+     * Keeps a login that has not been handled yet for the instance that replaces this one after a configuration change.
+     * @return returns the login call, or null.
+     */
+    @Override
+    public Object onRetainCustomNonConfigurationInstance()
+    {
+        return loginCall;
+    }
+
+    /**
+     * Stops waiting for the login. It is only cancelled if the page is closing, while it is being
+     * recreated the new instance takes over the call.
+     */
+    @Override
+    protected void onDestroy()
+    {
+        super.onDestroy();
+
+        if(loginCall == null)
+        {
+            return;
+        }
+
+        if(isChangingConfigurations())
+        {
+            loginCall.detach(loginCallback);
+        }
+        else
+        {
+            loginCall.unsubscribe(loginCallback);
+        }
     }
 
     /**
@@ -61,7 +137,8 @@ public class MainActivity extends AppCompatActivity
      * authToken - created during execution using the android randomUUID function
      * timestamp - the current timestamp in UNIX epoch time format
      *
-     * The above JSON object is sent in a POST request to the postURL URL.
+     * The above JSON object is sent in a POST request to Login.php using the MsdsApi. If the
+     * LoginPrefetcher would prefetch on this network, it is sent in a Batch with GetUserInfo.php.
      *
      * The return from the POST request is a JSON object with a single field:
      *
@@ -69,9 +146,8 @@ public class MainActivity extends AppCompatActivity
      *
      * Upon receiving a TRUE loginSuccessful response, the following is executed:
      *
-     * the Token field of sharedVariables is set to the authToken.
-     * The Username field of sharedVariables is set to the Username.
-     * the SessionTimeStamp field of sharedVariables is set to the timestamp.
+     * the SessionManager publishes a SessionSnapshot of the Username, authToken and timestamp through
+     * sharedVariables, and starts renewing the session before it expires.
      *
      * The above is done to allow other App pages to easily access the data,
      * for later use.
@@ -82,70 +158,83 @@ public class MainActivity extends AppCompatActivity
      */
     public void sendLoginRequest(View view)
     {
+        //Make sure user has input data before continuing.
+        if(isEmpty(editText_Username) || isEmpty(editText_Password))
+        {
+            showToast("Please provide a Username and Password");
+            return;
+        }
+
         final String uniqueID = UUID.randomUUID().toString();
         final Long uTimeStamp = TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis());
 
-        HashMap<String, String> postData = new HashMap<>();
-        postData.put("username", editText_Username.getText().toString());
-        postData.put("password", editText_Password.getText().toString());
-        postData.put("authToken", uniqueID);
-        postData.put("timestamp", String.valueOf(uTimeStamp));
+        hideKeyboard();
 
-        String postURL = "https://msdsdb.000webhostapp.com/android_webservice/Login.php";
+        MsdsApi.Batch batch = msdsApi.batch(editText_Username.getText().toString(), uniqueID);
 
-        JsonObjectRequest request = new JsonObjectRequest(Request.Method.POST, postURL, new JSONObject(postData), new Response.Listener<JSONObject>()
+        // A second press joins the login already in flight, which was sent with its own authToken and timestamp.
+        loginCall = batch.login(editText_Password.getText().toString(), uTimeStamp);
+
+        // The LoginPrefetcher joins this call once the login succeeds. A press that joined an
+        // earlier login leaves it out, as that login started a session with a different authToken.
+        if(uniqueID.equals(loginCall.getParams().get("authToken"))
+                && new LoginPrefetcher(MsdsApplication.getInstance()).isNetworkSuitable())
+        {
+            batch.getUserInfo();
+        }
+
+        batch.send();
+        loginCall.subscribe(loginCallback);
+    }
+
+    /**
+     * Receives the Login.php response. The authToken, username and timestamp are read from the
+     * call, as they are the ones that were actually sent to the server.
+     */
+    private final RequestCoalescer.Callback<Boolean> loginCallback = new RequestCoalescer.Callback<Boolean>()
+    {
+        @Override
+        public void onSuccess(Boolean loginSuccessful)
         {
-            @Override
-            public void onResponse(JSONObject response)
+            Map<String, String> sentData = loginCall.getParams();
+            loginCall = null;
+
+            if(loginSuccessful)
             {
-                try
-                {
-                    Boolean loginSuccessful = response.getBoolean("loginSuccessful");
-
-                    if(loginSuccessful)
-                    {
-                            showToast("Login Successful!");
-
-                            sharedVariables.setToken(uniqueID);
-                            sharedVariables.setUsername(editText_Username.getText().toString());
-                            sharedVariables.setSessionTimeStamp(uTimeStamp);
-
-                            logger = new Logger(volleyQueue);
-                            logger.sendLog("Logged In");
-
-                            Intent intent = new Intent(MainActivity.this, HomePage.class);
-                            intent.setFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
-                            startActivity(intent);
-                    }
-                    else
-                    {
-                        showToast("Invalid Credentials");
-                    }
-                }
-                catch (JSONException ex)
-                {
-                    showToast("JSON Exception: " + ex.getMessage());
-                }
+                    showToast("Login Successful!");
+
+                    MsdsApplication.getInstance().getSessionManager().startSession(sentData.get("username"), sentData.get("authToken"),
+                            Long.valueOf(sentData.get("timestamp")));
+
+                    logger = new Logger(MsdsApplication.getInstance().getLogBatcher());
+                    logger.sendLog("Logged In");
+
+                    new LoginPrefetcher(MsdsApplication.getInstance()).prefetch(sentData.get("username"), sentData.get("authToken"));
+
+                    Intent intent = new Intent(MainActivity.this, HomePage.class);
+                    intent.setFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
+                    startActivity(intent);
             }
-        }, new Response.ErrorListener()
-        {
-            @Override
-            public void onErrorResponse(VolleyError error)
+            else
             {
-                showToast("Volley error: " + error.toString());
+                showToast("Invalid Credentials");
             }
-        });
+        }
 
-        //Make sure user has input data before continuing.
-        if(isEmpty(editText_Username) || isEmpty(editText_Password))
+        @Override
+        public void onFailure(Exception error)
         {
-            showToast("Please provide a Username and Password");
-            return;
-        }
+            loginCall = null;
 
-        hideKeyboard();
-        volleyQueue.add(request);
-    }
+            if(error instanceof ApiException && ((ApiException) error).isParseError())
+            {
+                showToast("JSON Exception: " + error.getMessage());
+                return;
+            }
+
+            showToast("Volley error: " + error.toString());
+        }
+    };
 
     /**
      * Method used to validate that a text input field is not empty.
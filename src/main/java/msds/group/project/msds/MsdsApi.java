@@ -0,0 +1,1707 @@
+/**
+ * The MsdsApi class is the App's typed client for the MSDS web service.
+ *
+ * Each PHP endpoint has an interface taking typed arguments and giving a typed result, so
+ * App pages never build URLs, JSON request bodies or Volley requests themselves. The base URL
+ * is held in one place, request bodies are written straight to bytes, and responses are parsed
+ * with a JsonStreamReader on the HttpEngine's thread before the result is handed to the
+ * callback executor, which is the main thread in the App.
+ *
+ * GetInventoryDelta is the delta variant of GetInventory. It sends the version of the snapshot
+ * the caller holds and merges the changes the server returns into it, so a large inventory
+ * that rarely changes is not downloaded and parsed again on every visit.
+ *
+ * Login, GetUserInfo, GetInventory and GetInventoryDelta calls are coalesced by a RequestCoalescer. NewRequest and
+ * SubmitLog are only sent by the WriteAheadQueue, which already gives each record its own
+ * idempotency key, so they are sent directly.
+ *
+ * Login, GetUserInfo and GetInventory calls for one session can also be sent together in a
+ * Batch, one Batch.php request instead of one round trip each. If the server does not have
+ * Batch.php, the operations are sent on their own and batching is not tried again. The
+ * BatchingListener is told, so that a new process can be started with setBatchingSupported(false)
+ * rather than finding out again with a Batch.php round trip before its first login.
+ *
+ * GetInventory and GetInventoryDelta ask for the InventoryBinaryCodec's encoding as well as JSON,
+ * and parse whichever the server answers with, so a server without it is unaffected. Request
+ * bodies of GZIP_MIN_BYTES or more, such as batches of log events, are sent gzipped once a
+ * response has listed gzip in its Accept-Encoding header, the way a server says which request
+ * encodings it takes. A 415 response to a gzipped body turns this off and sends the body again
+ * as it is. Responses are decompressed by the HttpEngine.
+ *
+ * Request bodies are written with a RequestBodyWriter into buffers from a shared BufferPool,
+ * so building one allocates only the finished byte array the HttpEngine sends. NewRequest and
+ * SubmitLog bodies arrive from the WriteAheadQueue already as UTF-8 and are sent as they are.
+ *
+ * Requests are handed to the HttpEngine by a RequestScheduler. SubmitLog is sent at BACKGROUND
+ * priority and every other call at INTERACTIVE, apart from the prefetch variants of GetUserInfo,
+ * GetInventory and GetInventoryDelta, which are sent at PREFETCH. A page's call that joins a
+ * prefetch raises it to INTERACTIVE.
+ *
+ * A session call answered with 401, as one sent with an expired authToken is, is sent once more
+ * with a fresh authToken from the Authenticator, normally the SessionManager, which renews the
+ * session with RefreshSession.php. A second 401 is given to the caller. A Batch.php request
+ * answered with 401 is sent again in the same way, and an operation of a Batch answered with 401
+ * inside the envelope is sent again on its own.
+ *
+ * Records from the WriteAheadQueue hold the authToken they were written with, which may have been
+ * renewed before they are sent. Each is given the current authToken of its user's session when it
+ * is sent, and a record refused with 401 is renewed and sent again once, as a call is.
+ *
+ * Every call that is not cancelled is recorded in the ApiMetrics: its status, the bytes sent
+ * and received, and the connect, first byte and total times. The total time includes any time
+ * the request waited in the RequestScheduler.
+ *
+ * This class has no Android dependencies so that it can be load tested on the development machine.
+ *
+ * @author  J.Woodhouse, D.B.Dawson, I.J.Atienza, M.J.T.Makunda
+ * @version 1.11
+ */
+
+package msds.group.project.msds;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.zip.GZIPOutputStream;
+
+public class MsdsApi
+{
+    public static final String BASE_URL = "https://msdsdb.000webhostapp.com/android_webservice/";
+
+    public static final String LOGIN = "Login.php";
+    public static final String GET_USER_INFO = "GetUserInfo.php";
+    public static final String GET_INVENTORY = "GetInventory.php";
+    public static final String NEW_REQUEST = "NewRequest.php";
+    public static final String SUBMIT_LOG = "SubmitLog.php";
+    public static final String BATCH = "Batch.php";
+    public static final String REFRESH_SESSION = "RefreshSession.php";
+
+    /**
+     * The smallest request body worth compressing, below it the gzip header and trailer outweigh the saving.
+     */
+    public static final int GZIP_MIN_BYTES = 1024;
+
+    private static final String JSON_CONTENT_TYPE = "application/json; charset=utf-8";
+    private static final Map<String, String> ACCEPT_INVENTORY =
+            Collections.singletonMap("Accept", InventoryBinaryCodec.CONTENT_TYPE + ", application/json;q=0.9");
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final BufferPool BODY_BUFFERS = new BufferPool(64 * 1024, 4);
+
+    /**
+     * The Login interface checks a user's credentials and starts a session for the authToken.
+     */
+    public interface Login
+    {
+        /**
+         * @param username the username entered.
+         * @param password the password entered.
+         * @param authToken the token the session will use, not part of the coalescing key.
+         * @param timestamp the session start in UNIX seconds, not part of the coalescing key.
+         * @return returns the call, its result is the loginSuccessful field.
+         */
+        RequestCoalescer.Call<Boolean> call(String username, String password, String authToken, long timestamp);
+    }
+
+    /**
+     * The GetUserInfo interface reads the logged in user's personnel record.
+     */
+    public interface GetUserInfo
+    {
+        RequestCoalescer.Call<UserInfo> call(String username, String authToken);
+
+        /**
+         * Sends the call at PREFETCH priority.
+         * @param username the logged in user.
+         * @param authToken the session token.
+         * @return returns the call, which an identical call joins and raises to INTERACTIVE.
+         */
+        RequestCoalescer.Call<UserInfo> prefetch(String username, String authToken);
+    }
+
+    /**
+     * The GetInventory interface reads the user's inventory.
+     */
+    public interface GetInventory
+    {
+        /**
+         * @param username the logged in user.
+         * @param authToken the session token.
+         * @param version version of the snapshot the caller holds, or null.
+         * @param seed the snapshot currently shown, its names keep their name IDs, may be null.
+         * @param chunkListener listener for groups of rows, called on the callback executor, may be null.
+         * @return returns the call.
+         */
+        RequestCoalescer.Call<InventoryResponseParser.Result> call(String username, String authToken, String version,
+                                                                   InventorySnapshot seed, InventoryResponseParser.ChunkListener chunkListener);
+
+        /**
+         * Sends the call for the whole inventory at PREFETCH priority.
+         * @param username the logged in user.
+         * @param authToken the session token.
+         * @return returns the call, which an identical call joins and raises to INTERACTIVE.
+         */
+        RequestCoalescer.Call<InventoryResponseParser.Result> prefetch(String username, String authToken);
+    }
+
+    /**
+     * The GetInventoryDelta interface asks for the changes to an inventory snapshot the caller holds.
+     */
+    public interface GetInventoryDelta
+    {
+        /**
+         * @param username the logged in user.
+         * @param authToken the session token.
+         * @param base the snapshot the caller holds, its version is sent as the cursor.
+         * @return returns the call, its items are the whole inventory with the changes merged into base.
+         */
+        RequestCoalescer.Call<InventoryResponseParser.Result> call(String username, String authToken, InventorySnapshot base);
+
+        /**
+         * Sends the call at PREFETCH priority.
+         * @param username the logged in user.
+         * @param authToken the session token.
+         * @param base the snapshot the caller holds.
+         * @return returns the call, which an identical call joins and raises to INTERACTIVE.
+         */
+        RequestCoalescer.Call<InventoryResponseParser.Result> prefetch(String username, String authToken, InventorySnapshot base);
+    }
+
+    /**
+     * The NewRequest interface sends an equipment request written by the WriteAheadQueue.
+     */
+    public interface NewRequest
+    {
+        /**
+         * @param idempotencyKey the key the server uses to ignore repeats of the same record.
+         * @param payload the UTF-8 JSON request body.
+         * @param callback the callback for the response body.
+         */
+        void send(String idempotencyKey, byte[] payload, RequestCoalescer.Callback<String> callback);
+    }
+
+    /**
+     * The SubmitLog interface sends a batch of log events written by the WriteAheadQueue.
+     */
+    public interface SubmitLog
+    {
+        /**
+         * @param idempotencyKey the key the server uses to ignore repeats of the same record.
+         * @param payload the UTF-8 JSON batch body.
+         * @param callback the callback for the response body.
+         */
+        void send(String idempotencyKey, byte[] payload, RequestCoalescer.Callback<String> callback);
+    }
+
+    /**
+     * The RefreshSession interface renews a session before its authToken expires.
+     */
+    public interface RefreshSession
+    {
+        /**
+         * @param username the logged in user.
+         * @param authToken the token of the session being renewed.
+         * @param newAuthToken the token the session will use from now on, not part of the coalescing key.
+         * @param timestamp the new session start in UNIX seconds, not part of the coalescing key.
+         * @return returns the call, its result is the refreshSuccessful field.
+         */
+        RequestCoalescer.Call<Boolean> call(String username, String authToken, String newAuthToken, long timestamp);
+    }
+
+    /**
+     * The Authenticator interface gives the MsdsApi a fresh authToken for a call the server
+     * refused because its authToken had expired.
+     */
+    public interface Authenticator
+    {
+        /**
+         * @param username the user the call was made for.
+         * @param staleAuthToken the authToken the server refused.
+         * @param callback given the authToken to send the call with again, or an error if there is none.
+         */
+        void renew(String username, String staleAuthToken, RequestCoalescer.Callback<String> callback);
+
+        /**
+         * @param username the user a queued record was written for.
+         * @return returns the authToken the user's session has now, or null if they are not logged in.
+         */
+        String getAuthToken(String username);
+    }
+
+    /**
+     * The BatchingListener interface is told when the server is found not to support Batch.php.
+     */
+    public interface BatchingListener
+    {
+        /**
+         * This method is called on the callback executor, once for each Batch that found out.
+         */
+        void onBatchingUnsupported();
+    }
+
+    /**
+     * The ResponseParser interface turns a response body into a typed result.
+     */
+    private interface ResponseParser<T>
+    {
+        /**
+         * @param body the response body.
+         * @param contentType the Content-Type of the response, may be null.
+         */
+        T parse(byte[] body, String contentType) throws IOException;
+    }
+
+    private final String baseUrl;
+    private final RequestScheduler requestScheduler;
+    private final Executor callbackExecutor;
+    private final ApiMetrics apiMetrics;
+    private final RequestCoalescer requestCoalescer = new RequestCoalescer();
+    private volatile boolean batchingSupported = true;
+    private volatile boolean gzipRequestsAccepted;
+    private volatile Authenticator authenticator;
+    private volatile BatchingListener batchingListener;
+
+    private final ResponseParser<Boolean> loginParser = new ResponseParser<Boolean>()
+    {
+        @Override
+        public Boolean parse(byte[] body, String contentType) throws IOException
+        {
+            return readBoolean(body, "loginSuccessful");
+        }
+    };
+
+    private final ResponseParser<Boolean> refreshSessionParser = new ResponseParser<Boolean>()
+    {
+        @Override
+        public Boolean parse(byte[] body, String contentType) throws IOException
+        {
+            return readBoolean(body, "refreshSuccessful");
+        }
+    };
+
+    private final ResponseParser<UserInfo> userInfoParser = new ResponseParser<UserInfo>()
+    {
+        @Override
+        public UserInfo parse(byte[] body, String contentType) throws IOException
+        {
+            return UserInfo.parse(body);
+        }
+    };
+
+    private final Login login = new Login()
+    {
+        @Override
+        public RequestCoalescer.Call<Boolean> call(String username, String password, String authToken, long timestamp)
+        {
+            LinkedHashMap<String, String> params = loginParams(username, password, authToken, timestamp);
+
+            // A second press joins the login already in flight, which was sent with its own authToken and timestamp.
+            return coalesced(LOGIN, params, loginParser, "authToken", "timestamp");
+        }
+    };
+
+    private final RefreshSession refreshSession = new RefreshSession()
+    {
+        @Override
+        public RequestCoalescer.Call<Boolean> call(String username, String authToken, String newAuthToken, long timestamp)
+        {
+            LinkedHashMap<String, String> params = sessionParams(username, authToken);
+            params.put("newAuthToken", newAuthToken);
+            params.put("timestamp", String.valueOf(timestamp));
+
+            // Renewals of the same session share one request, whichever new authToken each would have sent.
+            return coalesced(REFRESH_SESSION, params, refreshSessionParser, "newAuthToken", "timestamp");
+        }
+    };
+
+    private final GetUserInfo getUserInfo = new GetUserInfo()
+    {
+        @Override
+        public RequestCoalescer.Call<UserInfo> call(String username, String authToken)
+        {
+            return coalesced(GET_USER_INFO, sessionParams(username, authToken), userInfoParser);
+        }
+
+        @Override
+        public RequestCoalescer.Call<UserInfo> prefetch(String username, String authToken)
+        {
+            Map<String, String> params = sessionParams(username, authToken);
+            ApiExchange<UserInfo> exchange = new ApiExchange<>(GET_USER_INFO, Collections.<String, String>emptyMap(), params);
+            exchange.parser = userInfoParser;
+            exchange.priority = RequestScheduler.PREFETCH;
+
+            return requestCoalescer.call(baseUrl + GET_USER_INFO, params, exchange);
+        }
+    };
+
+    private final GetInventory getInventory = new GetInventory()
+    {
+        @Override
+        public RequestCoalescer.Call<InventoryResponseParser.Result> call(String username, String authToken, String version,
+                                                                          InventorySnapshot seed, InventoryResponseParser.ChunkListener chunkListener)
+        {
+            Map<String, String> params = inventoryParams(username, authToken, version);
+
+            return requestCoalescer.call(baseUrl + GET_INVENTORY, params, inventoryExchange(params, seed, chunkListener));
+        }
+
+        @Override
+        public RequestCoalescer.Call<InventoryResponseParser.Result> prefetch(String username, String authToken)
+        {
+            Map<String, String> params = inventoryParams(username, authToken, null);
+            ApiExchange<InventoryResponseParser.Result> exchange = inventoryExchange(params, null, null);
+            exchange.priority = RequestScheduler.PREFETCH;
+
+            return requestCoalescer.call(baseUrl + GET_INVENTORY, params, exchange);
+        }
+    };
+
+    private final GetInventoryDelta getInventoryDelta = new GetInventoryDelta()
+    {
+        @Override
+        public RequestCoalescer.Call<InventoryResponseParser.Result> call(String username, String authToken, InventorySnapshot base)
+        {
+            return deltaCall(username, authToken, base, RequestScheduler.INTERACTIVE);
+        }
+
+        @Override
+        public RequestCoalescer.Call<InventoryResponseParser.Result> prefetch(String username, String authToken, InventorySnapshot base)
+        {
+            return deltaCall(username, authToken, base, RequestScheduler.PREFETCH);
+        }
+
+        private RequestCoalescer.Call<InventoryResponseParser.Result> deltaCall(String username, String authToken, final InventorySnapshot base,
+                                                                               int priority)
+        {
+            Map<String, String> params = inventoryParams(username, authToken, base.getVersion());
+            params.put("delta", "true");
+
+            ApiExchange<InventoryResponseParser.Result> exchange = new ApiExchange<>(GET_INVENTORY, ACCEPT_INVENTORY, params);
+            exchange.priority = priority;
+
+            exchange.parser = new ResponseParser<InventoryResponseParser.Result>()
+            {
+                @Override
+                public InventoryResponseParser.Result parse(byte[] body, String contentType) throws IOException
+                {
+                    if(InventoryBinaryCodec.isBinary(contentType))
+                    {
+                        return InventoryResponseParser.applyDelta(InventoryBinaryCodec.decode(body, 0, body.length, base, null,
+                                InventoryResponseParser.DEFAULT_CHUNK_SIZE), base);
+                    }
+
+                    return InventoryResponseParser.parseDelta(body, base);
+                }
+            };
+
+            return requestCoalescer.call(baseUrl + GET_INVENTORY, params, exchange);
+        }
+    };
+
+    private final NewRequest newRequest = new NewRequest()
+    {
+        @Override
+        public void send(String idempotencyKey, byte[] payload, RequestCoalescer.Callback<String> callback)
+        {
+            sendRecord(NEW_REQUEST, idempotencyKey, payload, callback);
+        }
+    };
+
+    private final SubmitLog submitLog = new SubmitLog()
+    {
+        @Override
+        public void send(String idempotencyKey, byte[] payload, RequestCoalescer.Callback<String> callback)
+        {
+            sendRecord(SUBMIT_LOG, idempotencyKey, payload, callback);
+        }
+    };
+
+    /**
+     * Creates an MsdsApi whose requests are scheduled with the RequestScheduler's usual limits.
+     * @param baseUrl the URL the endpoint names are appended to, normally BASE_URL.
+     * @param httpEngine the engine that sends the requests.
+     * @param callbackExecutor the executor results are delivered on.
+     * @param apiMetrics the metrics every call is recorded in.
+     */
+    public MsdsApi(String baseUrl, HttpEngine httpEngine, Executor callbackExecutor, ApiMetrics apiMetrics)
+    {
+        this(baseUrl, new RequestScheduler(httpEngine), callbackExecutor, apiMetrics);
+    }
+
+    /**
+     * @param baseUrl the URL the endpoint names are appended to, normally BASE_URL.
+     * @param requestScheduler the scheduler that hands the requests to the HttpEngine.
+     * @param callbackExecutor the executor results are delivered on.
+     * @param apiMetrics the metrics every call is recorded in.
+     */
+    public MsdsApi(String baseUrl, RequestScheduler requestScheduler, Executor callbackExecutor, ApiMetrics apiMetrics)
+    {
+        this.baseUrl = baseUrl;
+        this.requestScheduler = requestScheduler;
+        this.callbackExecutor = callbackExecutor;
+        this.apiMetrics = apiMetrics;
+    }
+
+    public Login login()
+    {
+        return login;
+    }
+
+    public RefreshSession refreshSession()
+    {
+        return refreshSession;
+    }
+
+    public GetUserInfo getUserInfo()
+    {
+        return getUserInfo;
+    }
+
+    public GetInventory getInventory()
+    {
+        return getInventory;
+    }
+
+    public GetInventoryDelta getInventoryDelta()
+    {
+        return getInventoryDelta;
+    }
+
+    public NewRequest newRequest()
+    {
+        return newRequest;
+    }
+
+    public SubmitLog submitLog()
+    {
+        return submitLog;
+    }
+
+    /**
+     * This method starts a Batch of calls for one session.
+     * @param username the user the calls are made for.
+     * @param authToken the session token.
+     * @return returns an empty Batch, add calls to it and then send it.
+     */
+    public Batch batch(String username, String authToken)
+    {
+        return new Batch(username, authToken);
+    }
+
+    /**
+     * Setter method for the authenticator variable
+     * @param authenticator renews the authToken of a call refused with 401, or null to give the 401 to the caller.
+     */
+    public void setAuthenticator(Authenticator authenticator)
+    {
+        this.authenticator = authenticator;
+    }
+
+    /**
+     * Setter method for the batchingSupported variable
+     * @param batchingSupported false to send every Batch as individual requests, as when an earlier
+     *                          process found that the server does not support Batch.php.
+     */
+    public void setBatchingSupported(boolean batchingSupported)
+    {
+        this.batchingSupported = batchingSupported;
+    }
+
+    /**
+     * Setter method for the batchingListener variable
+     * @param batchingListener told when the server is found not to support Batch.php, may be null.
+     */
+    public void setBatchingListener(BatchingListener batchingListener)
+    {
+        this.batchingListener = batchingListener;
+    }
+
+    /**
+     * Getter method for the requestScheduler variable
+     * @return returns the scheduler, whose queue depths show how far behind the requests are.
+     */
+    public RequestScheduler getRequestScheduler()
+    {
+        return requestScheduler;
+    }
+
+    /**
+     * Getter method for the number of coalesced calls waiting for a response.
+     * @return returns the number of calls in flight.
+     */
+    public int getInFlightCount()
+    {
+        return requestCoalescer.getInFlightCount();
+    }
+
+    private <T> RequestCoalescer.Call<T> coalesced(String endpoint, Map<String, String> params, ResponseParser<T> parser, String... volatileParams)
+    {
+        ApiExchange<T> exchange = new ApiExchange<>(endpoint, Collections.<String, String>emptyMap(), params);
+        exchange.parser = parser;
+        return requestCoalescer.call(baseUrl + endpoint, params, exchange, volatileParams);
+    }
+
+    /**
+     * Builds the exchange for a GetInventory.php call, whose parser posts chunks to the callback executor.
+     * Inside a Batch the Accept header is not sent and the response is always JSON.
+     */
+    private ApiExchange<InventoryResponseParser.Result> inventoryExchange(Map<String, String> params, final InventorySnapshot seed,
+                                                                          final InventoryResponseParser.ChunkListener chunkListener)
+    {
+        final ApiExchange<InventoryResponseParser.Result> exchange = new ApiExchange<>(GET_INVENTORY, ACCEPT_INVENTORY, params);
+
+        exchange.parser = new ResponseParser<InventoryResponseParser.Result>()
+        {
+            @Override
+            public InventoryResponseParser.Result parse(byte[] body, String contentType) throws IOException
+            {
+                InventoryResponseParser.ChunkListener postingListener = null;
+
+                if(chunkListener != null)
+                {
+                    postingListener = new InventoryResponseParser.ChunkListener()
+                    {
+                        @Override
+                        public void onChunk(final InventorySnapshot items, final int from, final int to)
+                        {
+                            callbackExecutor.execute(new Runnable()
+                            {
+                                @Override
+                                public void run()
+                                {
+                                    if(!exchange.cancelled)
+                                    {
+                                        chunkListener.onChunk(items, from, to);
+                                    }
+                                }
+                            });
+                        }
+                    };
+                }
+
+                if(InventoryBinaryCodec.isBinary(contentType))
+                {
+                    return InventoryBinaryCodec.decode(body, 0, body.length, seed, postingListener, InventoryResponseParser.DEFAULT_CHUNK_SIZE);
+                }
+
+                return InventoryResponseParser.parse(body, seed, postingListener, InventoryResponseParser.DEFAULT_CHUNK_SIZE);
+            }
+        };
+
+        return exchange;
+    }
+
+    private static LinkedHashMap<String, String> sessionParams(String username, String authToken)
+    {
+        LinkedHashMap<String, String> params = new LinkedHashMap<>();
+        params.put("username", username);
+        params.put("authToken", authToken);
+        return params;
+    }
+
+    private static LinkedHashMap<String, String> loginParams(String username, String password, String authToken, long timestamp)
+    {
+        LinkedHashMap<String, String> params = new LinkedHashMap<>();
+        params.put("username", username);
+        params.put("password", password);
+        params.put("authToken", authToken);
+        params.put("timestamp", String.valueOf(timestamp));
+        return params;
+    }
+
+    private static LinkedHashMap<String, String> inventoryParams(String username, String authToken, String version)
+    {
+        LinkedHashMap<String, String> params = sessionParams(username, authToken);
+
+        if(version != null)
+        {
+            params.put("version", version);
+        }
+
+        return params;
+    }
+
+    /**
+     * Sends a record from the WriteAheadQueue with the current authToken of each session it was written for.
+     * The payload itself is never changed, so the same record can be stamped again after a renewal.
+     */
+    private void sendRecord(String endpoint, String idempotencyKey, final byte[] payload, RequestCoalescer.Callback<String> callback)
+    {
+        byte[] stamped = stampAuthTokens(payload);
+        LinkedHashMap<String, String> session = null;
+
+        try
+        {
+            // The first session in the record is the one renewed if the server answers 401.
+            for(Map.Entry<String, String> recordSession : recordSessions(stamped).entrySet())
+            {
+                session = sessionParams(recordSession.getValue(), recordSession.getKey());
+                break;
+            }
+        }
+        catch (IOException ex)
+        {
+            // A record that is not valid JSON is sent as it is, and the server answers it.
+        }
+
+        ApiExchange<String> exchange = new ApiExchange<String>(endpoint, Collections.singletonMap("Idempotency-Key", idempotencyKey),
+                session, stamped)
+        {
+            @Override
+            byte[] renewedBody(String authToken)
+            {
+                return stampAuthTokens(payload);
+            }
+        };
+
+        exchange.parser = new ResponseParser<String>()
+        {
+            @Override
+            public String parse(byte[] body, String contentType)
+            {
+                return new String(body, UTF_8);
+            }
+        };
+
+        exchange.start(callback);
+    }
+
+    /**
+     * Replaces each authToken in a record whose session has been renewed since the record was written.
+     * @param payload the record as the WriteAheadQueue holds it.
+     * @return returns the record to send, the payload itself if no authToken has changed.
+     */
+    private byte[] stampAuthTokens(byte[] payload)
+    {
+        Authenticator renewer = authenticator;
+        LinkedHashMap<String, String> sessions;
+
+        if(renewer == null)
+        {
+            return payload;
+        }
+
+        try
+        {
+            sessions = recordSessions(payload);
+        }
+        catch (IOException ex)
+        {
+            return payload;
+        }
+
+        String stamped = null;
+
+        for(Map.Entry<String, String> session : sessions.entrySet())
+        {
+            String authToken = renewer.getAuthToken(session.getValue());
+
+            if(authToken != null && !authToken.equals(session.getKey()))
+            {
+                stamped = (stamped == null ? new String(payload, UTF_8) : stamped)
+                        .replace("\"authToken\":\"" + session.getKey() + "\"", "\"authToken\":\"" + authToken + "\"");
+            }
+        }
+
+        return stamped == null ? payload : stamped.getBytes(UTF_8);
+    }
+
+    /**
+     * This method reads which sessions a queued record was written for: the record itself if it is
+     * an object, or each of its elements if it is an array, as a batch of log events is.
+     * @param payload the UTF-8 JSON record.
+     * @return returns the username of each authToken in the record, in the order they first appear.
+     * @throws IOException if the record is not valid JSON.
+     */
+    static LinkedHashMap<String, String> recordSessions(byte[] payload) throws IOException
+    {
+        LinkedHashMap<String, String> sessions = new LinkedHashMap<>();
+        JsonStreamReader reader = new JsonStreamReader(payload);
+
+        if(reader.peek() != JsonStreamReader.BEGIN_ARRAY)
+        {
+            readRecordSession(reader, sessions);
+            return sessions;
+        }
+
+        reader.beginArray();
+
+        while(reader.hasNext())
+        {
+            if(reader.peek() == JsonStreamReader.BEGIN_OBJECT)
+            {
+                readRecordSession(reader, sessions);
+            }
+            else
+            {
+                reader.skipValue();
+            }
+        }
+
+        reader.endArray();
+        return sessions;
+    }
+
+    private static void readRecordSession(JsonStreamReader reader, Map<String, String> sessions) throws IOException
+    {
+        String username = null;
+        String authToken = null;
+
+        reader.beginObject();
+
+        while(reader.hasNext())
+        {
+            String name = reader.nextName();
+
+            if(reader.peek() != JsonStreamReader.STRING)
+            {
+                reader.skipValue();
+            }
+            else if(name.equals("username"))
+            {
+                username = reader.nextString();
+            }
+            else if(name.equals("authToken"))
+            {
+                authToken = reader.nextString();
+            }
+            else
+            {
+                reader.skipValue();
+            }
+        }
+
+        reader.endObject();
+
+        if(username != null && authToken != null && !sessions.containsKey(authToken))
+        {
+            sessions.put(authToken, username);
+        }
+    }
+
+    /**
+     * This method writes POST parameters as a JSON object of strings.
+     * @param params the parameters.
+     * @return returns the UTF-8 bytes of the JSON.
+     */
+    static byte[] jsonBody(Map<String, String> params)
+    {
+        RequestBodyWriter writer = new RequestBodyWriter(BODY_BUFFERS);
+        byte[] body = writeJsonObject(writer, params).toByteArray();
+
+        writer.release();
+        return body;
+    }
+
+    /**
+     * This method compresses a request body.
+     * @param body the body.
+     * @return returns the gzip encoding of the body.
+     */
+    static byte[] gzip(byte[] body)
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(body.length / 4 + 32);
+
+        try
+        {
+            GZIPOutputStream gzip = new GZIPOutputStream(out);
+            gzip.write(body);
+            gzip.close();
+        }
+        catch (IOException ex)
+        {
+            // A ByteArrayOutputStream does not throw.
+            throw new IllegalStateException(ex);
+        }
+
+        return out.toByteArray();
+    }
+
+    private static RequestBodyWriter writeJsonObject(RequestBodyWriter writer, Map<String, String> params)
+    {
+        writer.beginObject();
+
+        for(Map.Entry<String, String> param : params.entrySet())
+        {
+            writer.name(param.getKey()).value(param.getValue());
+        }
+
+        return writer.endObject();
+    }
+
+    /**
+     * Reads one boolean field from a JSON object, skipping every other field.
+     */
+    static boolean readBoolean(byte[] body, String field) throws IOException
+    {
+        JsonStreamReader reader = new JsonStreamReader(body);
+        Boolean value = null;
+
+        reader.beginObject();
+
+        while(reader.hasNext())
+        {
+            if(reader.nextName().equals(field))
+            {
+                value = reader.nextBoolean();
+            }
+            else
+            {
+                reader.skipValue();
+            }
+        }
+
+        reader.endObject();
+
+        if(value == null)
+        {
+            throw new IOException("No value for " + field);
+        }
+
+        return value;
+    }
+
+    /**
+     * The ApiExchange class is one request to an endpoint, sent through the HttpEngine.
+     */
+    private class ApiExchange<T> implements RequestCoalescer.Exchange<T>, RequestCoalescer.Prioritised, HttpEngine.Handler
+    {
+        private final String endpoint;
+        private final Map<String, String> headers;
+        private final Map<String, String> params;
+        private byte[] body;
+        private final ApiMetrics.Endpoint metrics;
+        private ResponseParser<T> parser;
+        private int priority;
+        private boolean renewed;
+
+        private RequestCoalescer.Callback<T> callback;
+        private volatile RequestScheduler.Ticket pending;
+        private byte[] sentBody;
+        private boolean compressed;
+        private long startNanos;
+        private volatile boolean cancelled;
+
+        private ApiExchange(String endpoint, Map<String, String> headers, byte[] body)
+        {
+            this(endpoint, headers, null, body);
+        }
+
+        /**
+         * Creates an exchange whose body is its parameters, which can be sent again with a renewed authToken.
+         */
+        private ApiExchange(String endpoint, Map<String, String> headers, Map<String, String> params)
+        {
+            this(endpoint, headers, params, jsonBody(params));
+        }
+
+        private ApiExchange(String endpoint, Map<String, String> headers, Map<String, String> params, byte[] body)
+        {
+            this.endpoint = endpoint;
+            this.headers = headers;
+            this.params = params;
+            this.body = body;
+            this.metrics = apiMetrics.forEndpoint(endpoint);
+            this.priority = endpoint.equals(SUBMIT_LOG) ? RequestScheduler.BACKGROUND : RequestScheduler.INTERACTIVE;
+        }
+
+        @Override
+        public void start(RequestCoalescer.Callback<T> callback)
+        {
+            this.callback = callback;
+            send(gzipRequestsAccepted && body.length >= GZIP_MIN_BYTES);
+        }
+
+        private void send(boolean compress)
+        {
+            Map<String, String> sentHeaders = headers;
+
+            compressed = compress;
+            sentBody = body;
+
+            if(compress)
+            {
+                sentHeaders = new HashMap<>(headers);
+                sentHeaders.put("Content-Encoding", "gzip");
+                sentBody = gzip(body);
+            }
+
+            startNanos = System.nanoTime();
+
+            // Locked so that a call joining the exchange while it is submitted cannot miss the ticket it promotes.
+            synchronized(this)
+            {
+                pending = requestScheduler.submit(priority, baseUrl + endpoint, JSON_CONTENT_TYPE, sentHeaders, sentBody, this);
+            }
+
+            // A body sent again after a 415 is sent from the HttpEngine's thread, and may cross a cancel.
+            if(cancelled)
+            {
+                pending.cancel();
+            }
+        }
+
+        @Override
+        public synchronized int getPriority()
+        {
+            return priority;
+        }
+
+        @Override
+        public void promote(int priority)
+        {
+            RequestScheduler.Ticket ticket;
+
+            synchronized(this)
+            {
+                if(priority >= this.priority)
+                {
+                    return;
+                }
+
+                this.priority = priority;
+                ticket = pending;
+            }
+
+            if(ticket != null)
+            {
+                ticket.promote(priority);
+            }
+        }
+
+        @Override
+        public void cancel()
+        {
+            cancelled = true;
+
+            // The operations of a Batch are not sent on their own unless the server cannot batch them.
+            if(pending != null)
+            {
+                pending.cancel();
+            }
+        }
+
+        @Override
+        public void onResponse(int statusCode, Map<String, String> responseHeaders, byte[] responseBody, long connectNanos, long firstByteNanos)
+        {
+            if(cancelled)
+            {
+                return;
+            }
+
+            metrics.record(statusCode, connectNanos, firstByteNanos, System.nanoTime() - startNanos, sentBody.length,
+                    responseBody == null ? 0 : responseBody.length);
+
+            String acceptEncoding = responseHeaders.get("accept-encoding");
+
+            if(acceptEncoding != null)
+            {
+                gzipRequestsAccepted = acceptEncoding.toLowerCase(Locale.US).contains("gzip");
+            }
+
+            if(statusCode == 415 && compressed)
+            {
+                gzipRequestsAccepted = false;
+                send(false);
+                return;
+            }
+
+            if(statusCode == 401 && renew())
+            {
+                return;
+            }
+
+            handleResponse(statusCode, responseHeaders.get("content-type"), responseBody);
+        }
+
+        /**
+         * Asks the Authenticator for a fresh authToken and sends the call again with it, once.
+         * Login.php and RefreshSession.php are never renewed, as their own authToken is what they set up.
+         * @return returns false if the call cannot be renewed and the 401 should be handled as it is.
+         */
+        private boolean renew()
+        {
+            final Authenticator renewer = authenticator;
+
+            if(renewed || renewer == null || params == null || params.get("authToken") == null
+                    || endpoint.equals(LOGIN) || endpoint.equals(REFRESH_SESSION))
+            {
+                return false;
+            }
+
+            renewed = true;
+            renewer.renew(params.get("username"), params.get("authToken"), new RequestCoalescer.Callback<String>()
+            {
+                @Override
+                public void onSuccess(String authToken)
+                {
+                    if(cancelled)
+                    {
+                        return;
+                    }
+
+                    body = renewedBody(authToken);
+                    send(gzipRequestsAccepted && body.length >= GZIP_MIN_BYTES);
+                }
+
+                @Override
+                public void onFailure(Exception error)
+                {
+                    handleResponse(401, null, new byte[0]);
+                }
+            });
+
+            return true;
+        }
+
+        /**
+         * Builds the body sent again once the call has been given a fresh authToken.
+         * @param authToken the token to send instead of the one refused.
+         * @return returns the new body.
+         */
+        byte[] renewedBody(String authToken)
+        {
+            LinkedHashMap<String, String> renewedParams = new LinkedHashMap<>(params);
+            renewedParams.put("authToken", authToken);
+            return jsonBody(renewedParams);
+        }
+
+        /**
+         * Parses a response and delivers the result. The operations of a Batch are given their
+         * part of the Batch.php response this way.
+         */
+        private void handleResponse(int statusCode, String contentType, byte[] responseBody)
+        {
+            if(cancelled)
+            {
+                return;
+            }
+
+            if(statusCode < 200 || statusCode > 299)
+            {
+                deliver(null, ApiException.httpError(statusCode));
+                return;
+            }
+
+            try
+            {
+                deliver(parser.parse(responseBody, contentType), null);
+            }
+            catch (IOException ex)
+            {
+                deliver(null, ApiException.parseError(statusCode, ex));
+            }
+        }
+
+        @Override
+        public void onFailure(IOException error)
+        {
+            if(!cancelled)
+            {
+                metrics.record(ApiException.NO_RESPONSE, ApiMetrics.NOT_MEASURED, ApiMetrics.NOT_MEASURED,
+                        System.nanoTime() - startNanos, sentBody.length, 0);
+                deliver(null, ApiException.noResponse(error));
+            }
+        }
+
+        private void fail(ApiException error)
+        {
+            deliver(null, error);
+        }
+
+        private void deliver(final T result, final ApiException error)
+        {
+            callbackExecutor.execute(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    if(cancelled)
+                    {
+                        return;
+                    }
+
+                    if(error == null)
+                    {
+                        callback.onSuccess(result);
+                    }
+                    else
+                    {
+                        callback.onFailure(error);
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * The Batch class sends several calls for one session in one Batch.php request.
+     *
+     * Calls are added with the same arguments as the individual endpoints, less the username and
+     * authToken, and give the same Calls, which identical individual calls join. Nothing is sent
+     * until send is called. The request body holds the username and authToken once, followed by
+     * each operation's endpoint and remaining parameters:
+     *
+     * {"username":"..","authToken":"..","operations":[{"id":0,"endpoint":"Login.php","params":{..}},..]}
+     *
+     * The server runs the operations in order, so the session started by a Login can be used by
+     * the operations after it, and answers with each operation's status and response body:
+     *
+     * {"responses":[{"id":0,"status":200,"body":{..}},..]}
+     *
+     * Each body is parsed on the HttpEngine's thread and delivered as if it had been a request of
+     * its own, in the order the operations were added. The request is recorded in the ApiMetrics
+     * as Batch.php.
+     *
+     * If Batch.php is not found, or does not answer with the envelope, every operation is sent on
+     * its own instead and no later Batch tries Batch.php again. The operations after a Login are
+     * then only sent once the Login has succeeded, as the server does not know their authToken
+     * until it has. If the Login fails or is cancelled, they fail with HTTP 401 without being sent.
+     */
+    public class Batch
+    {
+        private final String username;
+        private final String authToken;
+        private final ArrayList<BatchedExchange<?>> operations = new ArrayList<>();
+        private ApiExchange<Void> envelope;
+        private boolean sent;
+        private boolean waitingForLogin;
+
+        private Batch(String username, String authToken)
+        {
+            this.username = username;
+            this.authToken = authToken;
+        }
+
+        /**
+         * @param password the password entered.
+         * @param timestamp the session start in UNIX seconds.
+         * @return returns the call, its result is the loginSuccessful field.
+         */
+        public RequestCoalescer.Call<Boolean> login(String password, long timestamp)
+        {
+            LinkedHashMap<String, String> params = loginParams(username, password, authToken, timestamp);
+            ApiExchange<Boolean> exchange = new ApiExchange<>(LOGIN, Collections.<String, String>emptyMap(), params);
+            exchange.parser = loginParser;
+
+            return add(params, exchange, "authToken", "timestamp");
+        }
+
+        public RequestCoalescer.Call<UserInfo> getUserInfo()
+        {
+            LinkedHashMap<String, String> params = sessionParams(username, authToken);
+            ApiExchange<UserInfo> exchange = new ApiExchange<>(GET_USER_INFO, Collections.<String, String>emptyMap(), params);
+            exchange.parser = userInfoParser;
+
+            return add(params, exchange);
+        }
+
+        /**
+         * @param version version of the snapshot the caller holds, or null.
+         * @param seed the snapshot currently shown, its names keep their name IDs, may be null.
+         * @param chunkListener listener for groups of rows, called on the callback executor, may be null.
+         * @return returns the call.
+         */
+        public RequestCoalescer.Call<InventoryResponseParser.Result> getInventory(String version, InventorySnapshot seed,
+                                                                                  InventoryResponseParser.ChunkListener chunkListener)
+        {
+            Map<String, String> params = inventoryParams(username, authToken, version);
+
+            return add(params, inventoryExchange(params, seed, chunkListener));
+        }
+
+        private <T> RequestCoalescer.Call<T> add(Map<String, String> params, ApiExchange<T> exchange, String... volatileParams)
+        {
+            if(sent)
+            {
+                throw new IllegalStateException("The batch has already been sent");
+            }
+
+            return requestCoalescer.call(baseUrl + exchange.endpoint, params, new BatchedExchange<>(this, params, exchange), volatileParams);
+        }
+
+        /**
+         * This method sends the batch. A batch of one operation, or any batch once the server is
+         * known not to support Batch.php, is sent as individual requests.
+         */
+        public void send()
+        {
+            if(sent)
+            {
+                throw new IllegalStateException("The batch has already been sent");
+            }
+
+            sent = true;
+
+            if(operations.size() < 2 || !batchingSupported)
+            {
+                sendIndividually();
+                return;
+            }
+
+            // The envelope carries the session once, so a renewed authToken is written into a new envelope.
+            envelope = new ApiExchange<Void>(BATCH, Collections.<String, String>emptyMap(), sessionParams(username, authToken),
+                    envelopeBody(authToken))
+            {
+                @Override
+                byte[] renewedBody(String renewedAuthToken)
+                {
+                    return envelopeBody(renewedAuthToken);
+                }
+            };
+            envelope.parser = new ResponseParser<Void>()
+            {
+                @Override
+                public Void parse(byte[] body, String contentType) throws IOException
+                {
+                    route(body);
+                    return null;
+                }
+            };
+
+            envelope.start(new RequestCoalescer.Callback<Void>()
+            {
+                @Override
+                public void onSuccess(Void result)
+                {
+                }
+
+                @Override
+                public void onFailure(Exception error)
+                {
+                    ApiException apiError = (ApiException) error;
+                    int statusCode = apiError.getStatusCode();
+
+                    if(apiError.isParseError() || statusCode == 404 || statusCode == 405 || statusCode == 501)
+                    {
+                        batchingSupported = false;
+                        sendIndividually();
+
+                        BatchingListener listener = batchingListener;
+
+                        if(listener != null)
+                        {
+                            listener.onBatchingUnsupported();
+                        }
+                        return;
+                    }
+
+                    for(BatchedExchange<?> operation : operations)
+                    {
+                        operation.exchange.fail(apiError);
+                    }
+                }
+            });
+        }
+
+        private void sendIndividually()
+        {
+            if(operations.size() < 2 || !operations.get(0).exchange.endpoint.equals(LOGIN))
+            {
+                for(BatchedExchange<?> operation : operations)
+                {
+                    operation.startAlone();
+                }
+                return;
+            }
+
+            @SuppressWarnings("unchecked")
+            final ApiExchange<Boolean> login = (ApiExchange<Boolean>) operations.get(0).exchange;
+            final RequestCoalescer.Callback<Boolean> loginCallback = login.callback;
+
+            synchronized(this)
+            {
+                waitingForLogin = true;
+            }
+
+            if(login.cancelled)
+            {
+                sendAfterLogin(ApiException.httpError(401));
+                return;
+            }
+
+            login.start(new RequestCoalescer.Callback<Boolean>()
+            {
+                @Override
+                public void onSuccess(Boolean loginSuccessful)
+                {
+                    loginCallback.onSuccess(loginSuccessful);
+                    sendAfterLogin(loginSuccessful ? null : ApiException.httpError(401));
+                }
+
+                @Override
+                public void onFailure(Exception error)
+                {
+                    loginCallback.onFailure(error);
+                    sendAfterLogin(ApiException.httpError(401));
+                }
+            });
+        }
+
+        /**
+         * Sends the operations that were waiting for the Login, or fails them if it did not succeed.
+         * @param loginError the error to fail them with, or null if the Login succeeded.
+         */
+        private void sendAfterLogin(ApiException loginError)
+        {
+            synchronized(this)
+            {
+                if(!waitingForLogin)
+                {
+                    return;
+                }
+
+                waitingForLogin = false;
+            }
+
+            for(BatchedExchange<?> operation : operations.subList(1, operations.size()))
+            {
+                if(loginError == null)
+                {
+                    operation.startAlone();
+                }
+                else if(!operation.exchange.cancelled)
+                {
+                    operation.exchange.fail(loginError);
+                }
+            }
+        }
+
+        private byte[] envelopeBody(String authToken)
+        {
+            RequestBodyWriter writer = new RequestBodyWriter(BODY_BUFFERS);
+
+            writer.beginObject().name("username").value(username).name("authToken").value(authToken).name("operations").beginArray();
+
+            for(int i = 0; i < operations.size(); i++)
+            {
+                BatchedExchange<?> operation = operations.get(i);
+                LinkedHashMap<String, String> params = new LinkedHashMap<>(operation.params);
+                params.remove("username");
+                params.remove("authToken");
+
+                writer.beginObject().name("id").value(i).name("endpoint").value(operation.exchange.endpoint).name("params");
+                writeJsonObject(writer, params).endObject();
+            }
+
+            byte[] body = writer.endArray().endObject().toByteArray();
+
+            writer.release();
+            return body;
+        }
+
+        /**
+         * Reads the whole envelope first, so a malformed envelope delivers nothing, then gives
+         * each operation its response in order.
+         */
+        private void route(byte[] body) throws IOException
+        {
+            int[] statusCodes = new int[operations.size()];
+            byte[][] bodies = new byte[operations.size()][];
+            JsonStreamReader reader = new JsonStreamReader(body);
+            boolean hasResponses = false;
+
+            reader.beginObject();
+
+            while(reader.hasNext())
+            {
+                if(reader.nextName().equals("responses"))
+                {
+                    hasResponses = true;
+                    reader.beginArray();
+
+                    while(reader.hasNext())
+                    {
+                        readResponse(reader, statusCodes, bodies);
+                    }
+
+                    reader.endArray();
+                }
+                else
+                {
+                    reader.skipValue();
+                }
+            }
+
+            reader.endObject();
+
+            if(!hasResponses)
+            {
+                throw new IOException("No value for responses");
+            }
+
+            for(int i = 0; i < bodies.length; i++)
+            {
+                ApiExchange<?> exchange = operations.get(i).exchange;
+
+                if(bodies[i] == null)
+                {
+                    exchange.fail(ApiException.parseError(200, new IOException("No response for " + exchange.endpoint)));
+                }
+                else if(statusCodes[i] != 401 || !exchange.renew())
+                {
+                    exchange.handleResponse(statusCodes[i], null, bodies[i]);
+                }
+            }
+        }
+
+        private void readResponse(JsonStreamReader reader, int[] statusCodes, byte[][] bodies) throws IOException
+        {
+            int id = -1;
+            int statusCode = 0;
+            byte[] body = new byte[0];
+
+            reader.beginObject();
+
+            while(reader.hasNext())
+            {
+                String name = reader.nextName();
+
+                if(name.equals("id"))
+                {
+                    id = reader.nextInt();
+                }
+                else if(name.equals("status"))
+                {
+                    statusCode = reader.nextInt();
+                }
+                else if(name.equals("body") && (reader.peek() == JsonStreamReader.BEGIN_OBJECT || reader.peek() == JsonStreamReader.BEGIN_ARRAY))
+                {
+                    body = reader.nextRawValue();
+                }
+                else
+                {
+                    reader.skipValue();
+                }
+            }
+
+            reader.endObject();
+
+            if(id >= 0 && id < bodies.length)
+            {
+                statusCodes[id] = statusCode;
+                bodies[id] = body;
+            }
+        }
+
+        /**
+         * Cancels the Batch.php request once every operation in it has been cancelled. A Login
+         * cancelled while sent on its own never delivers, so the operations waiting for it are failed.
+         */
+        private void operationCancelled()
+        {
+            if(operations.get(0).exchange.cancelled)
+            {
+                sendAfterLogin(ApiException.httpError(401));
+            }
+
+            if(envelope == null)
+            {
+                return;
+            }
+
+            for(BatchedExchange<?> operation : operations)
+            {
+                if(!operation.exchange.cancelled)
+                {
+                    return;
+                }
+            }
+
+            envelope.cancel();
+        }
+    }
+
+    /**
+     * The BatchedExchange class is one operation of a Batch. It waits for the Batch to be sent,
+     * and holds the ApiExchange used to parse its response or to send it on its own.
+     */
+    private class BatchedExchange<T> implements RequestCoalescer.Exchange<T>
+    {
+        private final Batch batch;
+        private final Map<String, String> params;
+        private final ApiExchange<T> exchange;
+
+        private BatchedExchange(Batch batch, Map<String, String> params, ApiExchange<T> exchange)
+        {
+            this.batch = batch;
+            this.params = params;
+            this.exchange = exchange;
+        }
+
+        @Override
+        public void start(RequestCoalescer.Callback<T> callback)
+        {
+            exchange.callback = callback;
+            batch.operations.add(this);
+        }
+
+        @Override
+        public void cancel()
+        {
+            exchange.cancel();
+            batch.operationCancelled();
+        }
+
+        private void startAlone()
+        {
+            if(!exchange.cancelled)
+            {
+                exchange.start(exchange.callback);
+            }
+        }
+    }
+
+    /**
+     * The UserInfo class is the personnel record returned by GetUserInfo.php.
+     */
+    public static class UserInfo
+    {
+        private boolean success;
+        private String firstName;
+        private String lastName;
+        private String gender;
+        private String dob;
+        private String rank;
+        private String contact;
+        private String address;
+
+        private UserInfo()
+        {
+        }
+
+        /**
+         * This method parses a GetUserInfo.php response. Unknown fields are skipped.
+         * @param body the response body.
+         * @return returns the record.
+         * @throws IOException if the body is not valid JSON, or success is true and a field is missing.
+         */
+        static UserInfo parse(byte[] body) throws IOException
+        {
+            JsonStreamReader reader = new JsonStreamReader(body);
+            UserInfo userInfo = new UserInfo();
+            boolean hasSuccess = false;
+
+            reader.beginObject();
+
+            while(reader.hasNext())
+            {
+                String name = reader.nextName();
+
+                if(name.equals("success"))
+                {
+                    userInfo.success = reader.nextBoolean();
+                    hasSuccess = true;
+                }
+                else if(reader.peek() != JsonStreamReader.STRING)
+                {
+                    reader.skipValue();
+                }
+                else if(name.equals("firstName"))
+                {
+                    userInfo.firstName = reader.nextString();
+                }
+                else if(name.equals("lastName"))
+                {
+                    userInfo.lastName = reader.nextString();
+                }
+                else if(name.equals("gender"))
+                {
+                    userInfo.gender = reader.nextString();
+                }
+                else if(name.equals("DOB"))
+                {
+                    userInfo.dob = reader.nextString();
+                }
+                else if(name.equals("rank"))
+                {
+                    userInfo.rank = reader.nextString();
+                }
+                else if(name.equals("contact"))
+                {
+                    userInfo.contact = reader.nextString();
+                }
+                else if(name.equals("address"))
+                {
+                    userInfo.address = reader.nextString();
+                }
+                else
+                {
+                    reader.skipValue();
+                }
+            }
+
+            reader.endObject();
+
+            if(!hasSuccess)
+            {
+                throw new IOException("No value for success");
+            }
+
+            if(userInfo.success)
+            {
+                String[] fields = { userInfo.firstName, userInfo.lastName, userInfo.gender, userInfo.dob, userInfo.rank, userInfo.contact, userInfo.address };
+                String[] names = { "firstName", "lastName", "gender", "DOB", "rank", "contact", "address" };
+
+                for(int i = 0; i < fields.length; i++)
+                {
+                    if(fields[i] == null)
+                    {
+                        throw new IOException("No value for " + names[i]);
+                    }
+                }
+            }
+
+            return userInfo;
+        }
+
+        /**
+         * @return true if the record was found for the username and authToken
+         */
+        public boolean isSuccess()
+        {
+            return success;
+        }
+
+        public String getFirstName()
+        {
+            return firstName;
+        }
+
+        public String getLastName()
+        {
+            return lastName;
+        }
+
+        public String getGender()
+        {
+            return gender;
+        }
+
+        public String getDOB()
+        {
+            return dob;
+        }
+
+        public String getRank()
+        {
+            return rank;
+        }
+
+        public String getContact()
+        {
+            return contact;
+        }
+
+        public String getAddress()
+        {
+            return address;
+        }
+    }
+}
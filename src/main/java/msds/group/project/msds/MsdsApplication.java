@@ -0,0 +1,675 @@
+/**
+ * The MsdsApplication class is the Application object for the MSDS Android app.
+ * It owns the infrastructure that must outlive any single App page, such as the
+ * shared NetworkClient, MsdsApi, LogBatcher, WriteAheadQueue, InventoryStore and SessionCache.
+ *
+ * The SessionManager renews the logged in user's session in the background and is the
+ * MsdsApi's Authenticator. It publishes the session through SharedVariables, whose listener moves
+ * the SessionClock the pages show the remaining time from to each new expiry, and empties the
+ * SessionCache when the user logs out. The SessionCache is moved to each new authToken.
+ * The renewal timer stops while the device is in deep sleep, so the SessionManager checks for a
+ * missed renewal each time the App comes back to the foreground.
+ *
+ * The user is logged out here when the SessionClock's deadline passes, whichever page is showing,
+ * and sent back to the login page. A session that ended while the App was in the background is
+ * noticed when the App comes back to the foreground.
+ *
+ * The session is also kept in an encrypted SessionStore, whose key is held by the Android
+ * Keystore, so that it can be carried on after the process has been killed. The key and the
+ * store are loaded on the background thread at startup, then the session is resumed on the main
+ * thread, and whenSessionLoaded runs the pages' tasks that were waiting for it. A page restored
+ * after the process was killed is only sent to the login page once the saved session has been
+ * found to have ended, and is recreated if it was created before the session was resumed.
+ *
+ * Inventory update requests are sent by InventoryRequests through the WriteAheadQueue, so the
+ * Inventory Page Requests page returns as soon as a request is queued. Pages get the
+ * InventoryRequests through loadInventoryRequests, as creating it may open the WriteAheadQueue.
+ *
+ * A server found not to support Batch.php is remembered in SharedPreferences for
+ * BATCHING_RETRY_MILLIS, so a new process sends its first login on its own rather than finding
+ * out again with a failed Batch.php request. The preference is read on the background thread.
+ *
+ * The ApiMetrics recorded by the MsdsApi, and the queue depths of its RequestScheduler, are
+ * sent with the logs every few minutes, and when the App is no longer visible.
+ *
+ * onCreate runs before the first page is shown, so it does no disk or network work itself.
+ * The NetworkClient creates its RequestQueue on the first request, and the WriteAheadQueue is
+ * recovered from disk on the background thread, or by whoever first asks for it. The
+ * SessionStore is read on the background thread before it.
+ * A StartupTracer times the start of every page, see StartupTracer for how to switch it on.
+ *
+ * @author  J.Woodhouse, D.B.Dawson, I.J.Atienza, M.J.T.Makunda
+ * @version 1.20
+ */
+
+package msds.group.project.msds;
+
+import android.app.Activity;
+import android.app.Application;
+import android.content.Context;
+import android.content.Intent;
+import android.content.SharedPreferences;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.security.keystore.KeyGenParameterSpec;
+import android.security.keystore.KeyProperties;
+import android.util.Log;
+import android.widget.Toast;
+
+import java.io.File;
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.util.ArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+
+public class MsdsApplication extends Application
+{
+    private static final int LOG_BATCH_SIZE = 20;
+    private static final long LOG_FLUSH_WINDOW_MILLIS = 15000;
+    private static final String WRITE_AHEAD_DIRECTORY = "write-ahead";
+    private static final String INVENTORY_DIRECTORY = "inventory";
+    private static final long INVENTORY_TIME_TO_LIVE_MILLIS = 60 * 1000;
+    private static final long METRICS_EXPORT_INTERVAL_MILLIS = 5 * 60 * 1000;
+    private static final String SESSION_FILE = "session";
+    private static final String SESSION_KEY_ALIAS = "msds-session";
+    private static final String ANDROID_KEY_STORE = "AndroidKeyStore";
+    private static final String API_PREFERENCES = "msds-api";
+    private static final String BATCHING_UNSUPPORTED_AT = "batchingUnsupportedAt";
+    private static final long BATCHING_RETRY_MILLIS = 24 * 60 * 60 * 1000;
+
+    /**
+     * The Application class is loaded as soon as the process starts, so this is used as the
+     * start time of a cold start.
+     */
+    private static final long PROCESS_START_MILLIS = SystemClock.uptimeMillis();
+
+    private static MsdsApplication instance;
+
+    private NetworkClient networkClient;
+    private MsdsApi msdsApi;
+    private ApiMetrics apiMetrics;
+    private ScheduledExecutorService backgroundExecutor;
+    private WriteAheadQueue writeAheadQueue;
+    private InventoryRequests inventoryRequests;
+    private LogBatcher logBatcher;
+    private InventoryStore inventoryStore;
+    private SessionCache sessionCache;
+    private SessionManager sessionManager;
+    private SessionClock sessionClock;
+    private SessionStore sessionStore;
+    private StartupTracer startupTracer;
+    private int startedActivities;
+    private Handler mainHandler;
+    private boolean sessionLoaded;
+    private final ArrayList<Runnable> sessionLoadedTasks = new ArrayList<>();
+
+    @Override
+    public void onCreate()
+    {
+        super.onCreate();
+        instance = this;
+
+        networkClient = new NetworkClient(this);
+        backgroundExecutor = Executors.newSingleThreadScheduledExecutor();
+
+        startupTracer = new StartupTracer(new File(getFilesDir(), StartupTracer.TRACE_FILE), backgroundExecutor, PROCESS_START_MILLIS);
+        registerActivityLifecycleCallbacks(startupTracer);
+
+        mainHandler = new Handler(Looper.getMainLooper());
+        apiMetrics = new ApiMetrics(MsdsApi.SUBMIT_LOG);
+        msdsApi = new MsdsApi(MsdsApi.BASE_URL, new VolleyHttpEngine(networkClient), new Executor()
+        {
+            @Override
+            public void execute(Runnable runnable)
+            {
+                mainHandler.post(runnable);
+            }
+        }, apiMetrics);
+
+        logBatcher = new LogBatcher(new Logger.SubmitLogTransport(this), backgroundExecutor,
+                LOG_BATCH_SIZE, LOG_FLUSH_WINDOW_MILLIS);
+
+        inventoryStore = new InventoryStore(new File(getFilesDir(), INVENTORY_DIRECTORY), INVENTORY_TIME_TO_LIVE_MILLIS);
+        sessionCache = new SessionCache();
+
+        sessionClock = new SessionClock(new SessionClock.Clock()
+        {
+            @Override
+            public long elapsedRealtime()
+            {
+                return SystemClock.elapsedRealtime();
+            }
+        }, new SessionClock.Timer()
+        {
+            @Override
+            public void postDelayed(Runnable runnable, long delayMillis)
+            {
+                mainHandler.postDelayed(runnable, delayMillis);
+            }
+
+            @Override
+            public void removeCallbacks(Runnable runnable)
+            {
+                mainHandler.removeCallbacks(runnable);
+            }
+        });
+
+        sessionClock.setExpiryListener(new SessionClock.ExpiryListener()
+        {
+            @Override
+            public void onSessionExpired()
+            {
+                endExpiredSession();
+            }
+        });
+
+        sessionManager = new SessionManager(msdsApi, SharedVariables.getInstance(), backgroundExecutor);
+        sessionManager.addListener(new SessionManager.Listener()
+        {
+            @Override
+            public void onSessionRenewed(String username, String authToken, String newAuthToken, long timestamp)
+            {
+                sessionCache.renewSession(username, authToken, newAuthToken);
+            }
+        });
+
+        // The session is started, renewed and ended on the main thread, so the SessionClock is too.
+        SharedVariables.getInstance().addListener(new SharedVariables.Listener()
+        {
+            @Override
+            public void onSessionChanged(SessionSnapshot session)
+            {
+                if(session.isLoggedIn())
+                {
+                    sessionClock.start(sessionManager.getRemainingMillis());
+                }
+                else
+                {
+                    sessionCache.clear();
+                }
+            }
+        });
+        msdsApi.setAuthenticator(sessionManager);
+        msdsApi.setBatchingListener(new MsdsApi.BatchingListener()
+        {
+            @Override
+            public void onBatchingUnsupported()
+            {
+                getSharedPreferences(API_PREFERENCES, Context.MODE_PRIVATE).edit()
+                        .putLong(BATCHING_UNSUPPORTED_AT, System.currentTimeMillis()).apply();
+            }
+        });
+
+        registerActivityLifecycleCallbacks(new ActivityLifecycleCallbacks()
+        {
+            @Override
+            public void onActivityCreated(Activity activity, Bundle savedInstanceState)
+            {
+            }
+
+            @Override
+            public void onActivityStarted(final Activity activity)
+            {
+                // The first page started is the App coming back to the foreground, perhaps after the device slept.
+                boolean foreground = startedActivities++ == 0;
+
+                if(foreground)
+                {
+                    sessionManager.checkRenewal();
+                }
+
+                // A page left open when the session ended in the background goes back to the login page,
+                // and a page restored after the process was killed waits to see if its session is resumed.
+                if(!(activity instanceof MainActivity) && !SharedVariables.getInstance().getSession().isLoggedIn())
+                {
+                    final boolean restored = !sessionLoaded;
+
+                    whenSessionLoaded(new Runnable()
+                    {
+                        @Override
+                        public void run()
+                        {
+                            if(!SharedVariables.getInstance().getSession().isLoggedIn())
+                            {
+                                showLoginPage();
+                            }
+                            else if(restored && !activity.isFinishing())
+                            {
+                                // The page read the session before it was resumed.
+                                activity.recreate();
+                            }
+                        }
+                    });
+                }
+                else if(foreground)
+                {
+                    sessionClock.checkExpiry();
+                }
+            }
+
+            @Override
+            public void onActivityResumed(Activity activity)
+            {
+            }
+
+            @Override
+            public void onActivityPaused(Activity activity)
+            {
+            }
+
+            @Override
+            public void onActivityStopped(Activity activity)
+            {
+                startedActivities--;
+            }
+
+            @Override
+            public void onActivitySaveInstanceState(Activity activity, Bundle outState)
+            {
+            }
+
+            @Override
+            public void onActivityDestroyed(Activity activity)
+            {
+            }
+        });
+
+        // Loads the saved session off the main thread, then recovers the WriteAheadQueue so records left from the last run are resent.
+        backgroundExecutor.execute(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                restoreBatchingSupported();
+
+                SessionStore store = getSessionStore();
+
+                if(store != null)
+                {
+                    store.load();
+                }
+
+                mainHandler.post(new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        resumeSession();
+                    }
+                });
+
+                try
+                {
+                    getWriteAheadQueue();
+                }
+                catch (IllegalStateException ex)
+                {
+                    Log.w("MsdsApplication", "Unable to recover the write-ahead queue", ex);
+                }
+            }
+        });
+
+        backgroundExecutor.scheduleWithFixedDelay(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                exportMetrics();
+            }
+        }, METRICS_EXPORT_INTERVAL_MILLIS, METRICS_EXPORT_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Logs the user out when the session has ended without being renewed, and sends them back
+     * to the login page if the App is showing.
+     */
+    private void endExpiredSession()
+    {
+        new Logger(logBatcher).sendLog("Session timed out, Logged Out");
+        sessionManager.endSession();
+
+        if(startedActivities > 0)
+        {
+            Toast.makeText(this, "Session Ended", Toast.LENGTH_SHORT).show();
+            showLoginPage();
+        }
+    }
+
+    /**
+     * Clears the pages of the ended session and shows the login page.
+     */
+    private void showLoginPage()
+    {
+        Intent intent = new Intent(this, MainActivity.class);
+        intent.setFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_CLEAR_TASK);
+        startActivity(intent);
+    }
+
+    /**
+     * Adds the API metrics and request queue depths recorded since the last export to the log batch. Nothing is exported
+     * before a user has logged in, the metrics are kept until there is a session to send them with.
+     */
+    private void exportMetrics()
+    {
+        if(!SharedVariables.getInstance().getSession().isLoggedIn())
+        {
+            return;
+        }
+
+        final Logger logger = new Logger(logBatcher);
+        ApiMetrics.Sink sink = new ApiMetrics.Sink()
+        {
+            @Override
+            public void send(LogEvent event)
+            {
+                logger.sendLog(event);
+            }
+        };
+
+        apiMetrics.export(sink);
+        msdsApi.getRequestScheduler().export(sink);
+    }
+
+    /**
+     * Sends any buffered logs and metrics once the App is no longer visible, as the process
+     * may be killed before the next flush window ends. Once the App is in the background the
+     * SessionCache is emptied too, the pages can read the InventoryStore again when reopened.
+     * @param level the memory trim level reported by the Android framework.
+     */
+    @Override
+    public void onTrimMemory(int level)
+    {
+        super.onTrimMemory(level);
+
+        if(level >= TRIM_MEMORY_UI_HIDDEN)
+        {
+            exportMetrics();
+            logBatcher.flush();
+        }
+
+        if(level >= TRIM_MEMORY_BACKGROUND)
+        {
+            sessionCache.clear();
+        }
+    }
+
+    /**
+     * Getter function to get the running instance of the Application.
+     * @return returns the Application instance created by the Android framework.
+     */
+    public static MsdsApplication getInstance()
+    {
+        return instance;
+    }
+
+    /**
+     * Getter method for the process-wide NetworkClient.
+     * @return returns the NetworkClient the MsdsApi sends its requests through.
+     */
+    public NetworkClient getNetworkClient()
+    {
+        return networkClient;
+    }
+
+    /**
+     * Getter method for the process-wide MsdsApi.
+     * @return returns the MsdsApi every App page sends its requests through, results are delivered on the main thread.
+     */
+    public MsdsApi getMsdsApi()
+    {
+        return msdsApi;
+    }
+
+    /**
+     * Getter method for the process-wide ApiMetrics.
+     * @return returns the ApiMetrics every MsdsApi call is recorded in.
+     */
+    public ApiMetrics getApiMetrics()
+    {
+        return apiMetrics;
+    }
+
+    /**
+     * Getter method for the process-wide WriteAheadQueue, which is opened on first use.
+     * onCreate opens it on the background thread, so a page asking for it later does not normally wait.
+     * @return returns the WriteAheadQueue used for requests that must not be lost.
+     */
+    public synchronized WriteAheadQueue getWriteAheadQueue()
+    {
+        if(writeAheadQueue == null)
+        {
+            try
+            {
+                writeAheadQueue = new WriteAheadQueue(new File(getFilesDir(), WRITE_AHEAD_DIRECTORY),
+                        new WriteAheadSender(msdsApi), backgroundExecutor);
+            }
+            catch (IOException ex)
+            {
+                throw new IllegalStateException("Unable to open the write-ahead queue", ex);
+            }
+        }
+
+        return writeAheadQueue;
+    }
+
+    /**
+     * This method gets the process-wide InventoryRequests on the background thread, as the first call
+     * opens and recovers the WriteAheadQueue it sends through, which must not be done on the main thread.
+     * @param callback given the InventoryRequests on the main thread, or the error if the WriteAheadQueue could not be opened.
+     */
+    public void loadInventoryRequests(final RequestCoalescer.Callback<InventoryRequests> callback)
+    {
+        backgroundExecutor.execute(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    final InventoryRequests requests = getInventoryRequests();
+
+                    mainHandler.post(new Runnable()
+                    {
+                        @Override
+                        public void run()
+                        {
+                            callback.onSuccess(requests);
+                        }
+                    });
+                }
+                catch (final IllegalStateException ex)
+                {
+                    mainHandler.post(new Runnable()
+                    {
+                        @Override
+                        public void run()
+                        {
+                            callback.onFailure(ex);
+                        }
+                    });
+                }
+            }
+        });
+    }
+
+    /**
+     * Creates the process-wide InventoryRequests with the WriteAheadQueue it sends through, on the background thread.
+     */
+    private synchronized InventoryRequests getInventoryRequests()
+    {
+        if(inventoryRequests == null)
+        {
+            inventoryRequests = new InventoryRequests(getWriteAheadQueue(), sessionCache, inventoryStore, backgroundExecutor);
+        }
+
+        return inventoryRequests;
+    }
+
+    /**
+     * Opens the process-wide SessionStore and gives it to the SessionManager. Called on the background
+     * thread at startup, as the key is loaded, or created, by the Android Keystore.
+     * @return returns the SessionStore the session is kept in, or null if the Android Keystore could not give a key.
+     */
+    private synchronized SessionStore getSessionStore()
+    {
+        if(sessionStore == null)
+        {
+            try
+            {
+                sessionStore = new SessionStore(new File(getFilesDir(), SESSION_FILE), sessionKey(), backgroundExecutor);
+                sessionManager.setSessionStore(sessionStore);
+            }
+            catch (GeneralSecurityException | IOException ex)
+            {
+                // Without a key the session is not kept, and the user logs in after every process start, as before.
+                Log.w("MsdsApplication", "Unable to open the session store", ex);
+            }
+        }
+
+        return sessionStore;
+    }
+
+    /**
+     * This method starts the MsdsApi sending Batches as individual requests if an earlier process
+     * found, less than BATCHING_RETRY_MILLIS ago, that the server does not support Batch.php.
+     */
+    private void restoreBatchingSupported()
+    {
+        SharedPreferences preferences = getSharedPreferences(API_PREFERENCES, Context.MODE_PRIVATE);
+        long unsupportedAt = preferences.getLong(BATCHING_UNSUPPORTED_AT, 0);
+        long sinceMillis = System.currentTimeMillis() - unsupportedAt;
+
+        if(unsupportedAt > 0 && sinceMillis >= 0 && sinceMillis < BATCHING_RETRY_MILLIS)
+        {
+            msdsApi.setBatchingSupported(false);
+        }
+    }
+
+    /**
+     * This method runs a task on the main thread once the session saved by the last process has been
+     * loaded and, if it has not expired, resumed, so MainActivity can go straight to the Home Page
+     * without a Login.php round trip. Must be called on the main thread.
+     * @param task run straight away if the session has already been loaded.
+     */
+    public void whenSessionLoaded(Runnable task)
+    {
+        if(sessionLoaded)
+        {
+            task.run();
+        }
+        else
+        {
+            sessionLoadedTasks.add(task);
+        }
+    }
+
+    /**
+     * Carries on the session the SessionStore loaded on the background thread, then runs the tasks waiting for it.
+     */
+    private void resumeSession()
+    {
+        sessionManager.resume();
+        sessionLoaded = true;
+
+        Runnable[] tasks = sessionLoadedTasks.toArray(new Runnable[sessionLoadedTasks.size()]);
+        sessionLoadedTasks.clear();
+
+        for(Runnable task : tasks)
+        {
+            task.run();
+        }
+    }
+
+    /**
+     * Gets the AES key the SessionStore is encrypted with from the Android Keystore, creating it the first time.
+     */
+    private static SecretKey sessionKey() throws GeneralSecurityException, IOException
+    {
+        KeyStore keyStore = KeyStore.getInstance(ANDROID_KEY_STORE);
+        keyStore.load(null);
+
+        if(keyStore.containsAlias(SESSION_KEY_ALIAS))
+        {
+            return (SecretKey) keyStore.getKey(SESSION_KEY_ALIAS, null);
+        }
+
+        KeyGenerator keyGenerator = KeyGenerator.getInstance(KeyProperties.KEY_ALGORITHM_AES, ANDROID_KEY_STORE);
+        keyGenerator.init(new KeyGenParameterSpec.Builder(SESSION_KEY_ALIAS, KeyProperties.PURPOSE_ENCRYPT | KeyProperties.PURPOSE_DECRYPT)
+                .setBlockModes(KeyProperties.BLOCK_MODE_GCM)
+                .setEncryptionPaddings(KeyProperties.ENCRYPTION_PADDING_NONE)
+                .build());
+        return keyGenerator.generateKey();
+    }
+
+    /**
+     * Getter method for the process-wide LogBatcher.
+     * @return returns the LogBatcher that every Logger adds its events to.
+     */
+    public LogBatcher getLogBatcher()
+    {
+        return logBatcher;
+    }
+
+    /**
+     * Getter method for the process-wide InventoryStore.
+     * @return returns the InventoryStore holding each user's last downloaded inventory.
+     */
+    public InventoryStore getInventoryStore()
+    {
+        return inventoryStore;
+    }
+
+    /**
+     * Getter method for the process-wide SessionCache.
+     * @return returns the SessionCache holding the logged in user's prefetched data.
+     */
+    public SessionCache getSessionCache()
+    {
+        return sessionCache;
+    }
+
+    /**
+     * Getter method for the process-wide SessionManager.
+     * @return returns the SessionManager keeping the logged in user's session alive.
+     */
+    public SessionManager getSessionManager()
+    {
+        return sessionManager;
+    }
+
+    /**
+     * Getter method for the process-wide SessionClock.
+     * @return returns the SessionClock counting down the session, for the pages that show it.
+     */
+    public SessionClock getSessionClock()
+    {
+        return sessionClock;
+    }
+
+    /**
+     * Getter method for the process-wide StartupTracer.
+     * @return returns the StartupTracer pages report when their content is shown to.
+     */
+    public StartupTracer getStartupTracer()
+    {
+        return startupTracer;
+    }
+
+    /**
+     * Getter method for the single background thread used for disk access and batching.
+     * @return returns the background executor.
+     */
+    public ScheduledExecutorService getBackgroundExecutor()
+    {
+        return backgroundExecutor;
+    }
+}
@@ -0,0 +1,121 @@
+/**
+ * The NetworkClient class wraps the single Volley RequestQueue used by the whole App.
+ *
+ * Creating a RequestQueue starts a cache dispatcher, a pool of network dispatchers and
+ * a disk cache, so the App creates exactly one and shares it between every page.
+ *
+ * The MsdsApi sends its requests through the NetworkClient using a VolleyHttpEngine.
+ *
+ * The RequestQueue is not created until the first request is added, so starting the App
+ * does not wait for the disk cache or start any dispatcher threads before they are needed.
+ *
+ * The MsdsApi's RequestScheduler lets at most three prefetch and background requests be in
+ * flight at once, so with four network threads an interactive request always finds one free.
+ *
+ * Requests are cancelled one at a time through the HttpEngine's Pending, which the MsdsApi's
+ * calls use when every subscriber has gone, so they are not tagged.
+ *
+ * @author  J.Woodhouse, D.B.Dawson, I.J.Atienza, M.J.T.Makunda
+ * @version 1.05
+ */
+
+package msds.group.project.msds;
+
+import android.content.Context;
+
+import com.android.volley.Request;
+import com.android.volley.RequestQueue;
+import com.android.volley.toolbox.BasicNetwork;
+import com.android.volley.toolbox.DiskBasedCache;
+import com.android.volley.toolbox.HurlStack;
+
+import java.io.File;
+import java.util.ArrayDeque;
+
+public class NetworkClient
+{
+    private static final String CACHE_DIRECTORY = "volley";
+    private static final int DISK_CACHE_SIZE = 1024 * 1024;
+    private static final int NETWORK_THREAD_POOL_SIZE = 4;
+    private static final int MAX_IN_FLIGHT_REQUESTS = 8;
+
+    private final Context context;
+    private RequestQueue volleyQueue;
+    private final ArrayDeque<Request<?>> pendingRequests = new ArrayDeque<>();
+    private int inFlightRequests;
+
+    public NetworkClient(Context context)
+    {
+        this.context = context.getApplicationContext();
+    }
+
+    /**
+     * Creates and starts the RequestQueue the first time it is needed.
+     * @return returns the started RequestQueue.
+     */
+    private synchronized RequestQueue getVolleyQueue()
+    {
+        if(volleyQueue != null)
+        {
+            return volleyQueue;
+        }
+
+        File cacheDir = new File(context.getCacheDir(), CACHE_DIRECTORY);
+
+        volleyQueue = new RequestQueue(new DiskBasedCache(cacheDir, DISK_CACHE_SIZE), new BasicNetwork(new HurlStack()), NETWORK_THREAD_POOL_SIZE);
+        volleyQueue.addRequestFinishedListener(new RequestQueue.RequestFinishedListener<Object>()
+        {
+            @Override
+            public void onRequestFinished(Request<Object> request)
+            {
+                releaseSlot();
+            }
+        });
+        volleyQueue.start();
+        return volleyQueue;
+    }
+
+    /**
+     * This method is used to send a request through the shared RequestQueue.
+     *
+     * At most MAX_IN_FLIGHT_REQUESTS requests are handed to Volley at once, any further
+     * requests wait in order until an earlier request finishes.
+     *
+     * @param request the Volley request to be sent.
+     */
+    public synchronized void add(Request<?> request)
+    {
+        if(inFlightRequests < MAX_IN_FLIGHT_REQUESTS)
+        {
+            inFlightRequests++;
+            getVolleyQueue().add(request);
+        }
+        else
+        {
+            pendingRequests.add(request);
+        }
+    }
+
+    /**
+     * Called whenever Volley finishes a request, hands the freed slot to the next waiting request
+     * that has not been cancelled.
+     */
+    private synchronized void releaseSlot()
+    {
+        Request<?> next = pendingRequests.poll();
+
+        while(next != null && next.isCanceled())
+        {
+            next = pendingRequests.poll();
+        }
+
+        if(next != null)
+        {
+            volleyQueue.add(next);
+        }
+        else
+        {
+            inFlightRequests--;
+        }
+    }
+}
@@ -0,0 +1,262 @@
+/**
+ * The PooledHttpEngine class is an HttpEngine that sends requests with HttpURLConnection
+ * from a fixed pool of threads.
+ *
+ * Every response body is read to the end and closed, which hands the connection back to
+ * the JDK's keep-alive cache, so requests to the same host reuse a small set of connections
+ * rather than paying for a new TCP and TLS handshake each time. The pool has as many threads
+ * as the keep-alive cache keeps connections per host, so under load no connection is opened
+ * only to be thrown away.
+ *
+ * HttpURLConnection only speaks HTTP/1.1, so requests are not multiplexed over one connection.
+ * Its connect step covers DNS, TCP and TLS together, so they are reported as one connect time,
+ * which is close to nothing when a kept-alive connection is reused.
+ *
+ * Unlike Android's, the JDK's HttpURLConnection does not ask for gzip responses by itself, so
+ * the engine sends Accept-Encoding: gzip and decompresses gzip responses as they are read.
+ *
+ * This class has no Android dependencies so that it can be benchmarked on the development machine.
+ *
+ * @author  J.Woodhouse, D.B.Dawson, I.J.Atienza, M.J.T.Makunda
+ * @version 1.02
+ */
+
+package msds.group.project.msds;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+
+public class PooledHttpEngine implements HttpEngine
+{
+    /**
+     * The number of idle connections the JDK keeps per host, unless http.maxConnections is set.
+     */
+    public static final int DEFAULT_MAX_CONNECTIONS = Integer.getInteger("http.maxConnections", 5);
+
+    private final ExecutorService executor;
+    private final int connectTimeoutMillis;
+    private final int readTimeoutMillis;
+
+    /**
+     * @param maxConnections the number of requests sent at once.
+     * @param connectTimeoutMillis the connect timeout.
+     * @param readTimeoutMillis the read timeout.
+     */
+    public PooledHttpEngine(int maxConnections, int connectTimeoutMillis, int readTimeoutMillis)
+    {
+        this.connectTimeoutMillis = connectTimeoutMillis;
+        this.readTimeoutMillis = readTimeoutMillis;
+
+        executor = Executors.newFixedThreadPool(maxConnections, new ThreadFactory()
+        {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable runnable)
+            {
+                Thread thread = new Thread(runnable, "PooledHttpEngine-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    @Override
+    public Pending post(String url, String contentType, Map<String, String> headers, byte[] body, Handler handler)
+    {
+        Exchange exchange = new Exchange(url, contentType, headers, body, handler);
+        executor.execute(exchange);
+        return exchange;
+    }
+
+    /**
+     * This method stops the worker threads once the requests already sent have finished.
+     */
+    public void shutdown()
+    {
+        executor.shutdown();
+    }
+
+    /**
+     * The Exchange class is one request, run on a pool thread.
+     */
+    private class Exchange implements Runnable, Pending
+    {
+        private final String url;
+        private final String contentType;
+        private final Map<String, String> headers;
+        private final byte[] body;
+        private final Handler handler;
+
+        private volatile boolean cancelled;
+        private volatile HttpURLConnection connection;
+
+        private Exchange(String url, String contentType, Map<String, String> headers, byte[] body, Handler handler)
+        {
+            this.url = url;
+            this.contentType = contentType;
+            this.headers = headers;
+            this.body = body;
+            this.handler = handler;
+        }
+
+        @Override
+        public void run()
+        {
+            if(cancelled)
+            {
+                return;
+            }
+
+            int statusCode;
+            Map<String, String> responseHeaders;
+            byte[] responseBody;
+            long connectNanos;
+            long firstByteNanos;
+            long startNanos = System.nanoTime();
+
+            try
+            {
+                connection = (HttpURLConnection) new URL(url).openConnection();
+                connection.setConnectTimeout(connectTimeoutMillis);
+                connection.setReadTimeout(readTimeoutMillis);
+                connection.setRequestMethod("POST");
+                connection.setDoOutput(true);
+                connection.setFixedLengthStreamingMode(body.length);
+                connection.setRequestProperty("Content-Type", contentType);
+                connection.setRequestProperty("Accept-Encoding", "gzip");
+
+                for(Map.Entry<String, String> header : headers.entrySet())
+                {
+                    connection.setRequestProperty(header.getKey(), header.getValue());
+                }
+
+                connection.connect();
+                connectNanos = System.nanoTime() - startNanos;
+
+                OutputStream out = connection.getOutputStream();
+                try
+                {
+                    out.write(body);
+                }
+                finally
+                {
+                    out.close();
+                }
+
+                statusCode = connection.getResponseCode();
+                firstByteNanos = System.nanoTime() - startNanos;
+                responseHeaders = readHeaders(connection);
+
+                InputStream in = statusCode >= 400 ? connection.getErrorStream() : connection.getInputStream();
+
+                if(in != null && "gzip".equalsIgnoreCase(connection.getContentEncoding()))
+                {
+                    in = new GZIPInputStream(in);
+                }
+
+                responseBody = readFully(in);
+            }
+            catch (IOException ex)
+            {
+                if(!cancelled)
+                {
+                    handler.onFailure(ex);
+                }
+                return;
+            }
+
+            if(!cancelled)
+            {
+                handler.onResponse(statusCode, responseHeaders, responseBody, connectNanos, firstByteNanos);
+            }
+        }
+
+        /**
+         * Cancels the request. A request that is being sent has its connection closed, rather
+         * than returned to the keep-alive cache.
+         */
+        @Override
+        public void cancel()
+        {
+            cancelled = true;
+
+            HttpURLConnection sending = connection;
+
+            if(sending != null)
+            {
+                sending.disconnect();
+            }
+        }
+    }
+
+    /**
+     * Copies the response headers with their names in lower case.
+     */
+    private static Map<String, String> readHeaders(HttpURLConnection connection)
+    {
+        HashMap<String, String> headers = new HashMap<>();
+
+        for(Map.Entry<String, List<String>> header : connection.getHeaderFields().entrySet())
+        {
+            // The status line is returned under a null name.
+            if(header.getKey() == null)
+            {
+                continue;
+            }
+
+            StringBuilder value = new StringBuilder();
+
+            for(String part : header.getValue())
+            {
+                value.append(value.length() > 0 ? ", " : "").append(part);
+            }
+
+            headers.put(header.getKey().toLowerCase(Locale.US), value.toString());
+        }
+
+        return headers;
+    }
+
+    /**
+     * Reads a response body to the end and closes it, so the connection can be reused.
+     */
+    private static byte[] readFully(InputStream in) throws IOException
+    {
+        if(in == null)
+        {
+            return new byte[0];
+        }
+
+        try
+        {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+
+            while((read = in.read(buffer)) != -1)
+            {
+                out.write(buffer, 0, read);
+            }
+
+            return out.toByteArray();
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+}
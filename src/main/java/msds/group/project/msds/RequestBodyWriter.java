@@ -0,0 +1,489 @@
+/**
+ * The RequestBodyWriter class writes a JSON request body straight into UTF-8 bytes in a
+ * buffer from a BufferPool, without building a Map, a JSONObject or a String first.
+ *
+ * Names and values are written in order and the commas between them are added as needed.
+ * An object whose fields are always the same, such as a log event, can be written with a
+ * Schema, which encodes the field names once rather than for every object:
+ *
+ * writer.beginObject(EVENT).field(username).field(authToken).field(timestamp).endObject();
+ *
+ * A writer can be reused for any number of bodies with reset, and keeps its buffer between
+ * them, so once it has grown to the size of the usual body writing one allocates nothing but
+ * the finished byte array, if one is asked for.
+ *
+ * This class has no Android dependencies so that it can be tested on the development machine.
+ *
+ * @author  J.Woodhouse, D.B.Dawson, I.J.Atienza, M.J.T.Makunda
+ * @version 1.00
+ */
+
+package msds.group.project.msds;
+
+import java.util.Arrays;
+
+public class RequestBodyWriter
+{
+    private static final int MAX_DEPTH = 32;
+    private static final byte[] NULL = {'n', 'u', 'l', 'l'};
+    private static final byte[] ELLIPSIS = {'.', '.', '.'};
+    private static final byte[] HEX = {'0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'a', 'b', 'c', 'd', 'e', 'f'};
+
+    /**
+     * The Schema class is the fixed list of field names of one kind of object, encoded once
+     * as the bytes written before each field's value.
+     */
+    public static final class Schema
+    {
+        private final byte[][] names;
+
+        public Schema(String... names)
+        {
+            this.names = new byte[names.length][];
+
+            for(int i = 0; i < names.length; i++)
+            {
+                RequestBodyWriter writer = new RequestBodyWriter(new BufferPool(BufferPool.MIN_BUFFER_SIZE, 0));
+                writer.string(names[i], Integer.MAX_VALUE);
+                writer.writeByte(':');
+                this.names[i] = writer.toByteArray();
+            }
+        }
+    }
+
+    private final BufferPool bufferPool;
+    private byte[] buffer;
+    private int length;
+
+    private final boolean[] hasContent = new boolean[MAX_DEPTH];
+    private int depth;
+    private boolean afterName;
+    private Schema schema;
+    private int schemaField;
+
+    public RequestBodyWriter(BufferPool bufferPool)
+    {
+        this.bufferPool = bufferPool;
+    }
+
+    /**
+     * This method empties the writer so that the next body can be written, keeping its buffer.
+     * @return returns this writer.
+     */
+    public RequestBodyWriter reset()
+    {
+        length = 0;
+        depth = 0;
+        afterName = false;
+        schema = null;
+        return this;
+    }
+
+    public RequestBodyWriter beginObject()
+    {
+        return open('{');
+    }
+
+    /**
+     * Starts an object whose fields are written with field and skipField, in the order of the schema.
+     * @param schema the names of the fields.
+     * @return returns this writer.
+     */
+    public RequestBodyWriter beginObject(Schema schema)
+    {
+        if(this.schema != null)
+        {
+            throw new IllegalStateException("Objects with a schema cannot be nested");
+        }
+
+        open('{');
+        this.schema = schema;
+        schemaField = 0;
+        return this;
+    }
+
+    public RequestBodyWriter endObject()
+    {
+        schema = null;
+        return close('}');
+    }
+
+    public RequestBodyWriter beginArray()
+    {
+        return open('[');
+    }
+
+    public RequestBodyWriter endArray()
+    {
+        return close(']');
+    }
+
+    /**
+     * Writes the name of the next member of an object.
+     * @param name the name.
+     * @return returns this writer.
+     */
+    public RequestBodyWriter name(String name)
+    {
+        beforeValue();
+        string(name, Integer.MAX_VALUE);
+        writeByte(':');
+        afterName = true;
+        return this;
+    }
+
+    /**
+     * @param value the String, written as null if it is null.
+     * @return returns this writer.
+     */
+    public RequestBodyWriter value(String value)
+    {
+        return value(value, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Writes a String shortened to maxLength characters, ending in "..." if it was shortened,
+     * the same way LogEvent shortens text, without creating the shortened String.
+     * @param value the String, written as null if it is null.
+     * @param maxLength the most characters written.
+     * @return returns this writer.
+     */
+    public RequestBodyWriter value(String value, int maxLength)
+    {
+        beforeValue();
+        string(value, maxLength);
+        return this;
+    }
+
+    public RequestBodyWriter value(long value)
+    {
+        beforeValue();
+        writeLong(value);
+        return this;
+    }
+
+    /**
+     * Writes text that is already JSON, as it is.
+     * @param json the JSON value.
+     * @return returns this writer.
+     */
+    public RequestBodyWriter rawValue(String json)
+    {
+        beforeValue();
+        ensureCapacity(json.length() * 3);
+
+        for(int i = 0; i < json.length(); i++)
+        {
+            writeChar(json, i);
+
+            if(Character.isHighSurrogate(json.charAt(i)) && i + 1 < json.length() && Character.isLowSurrogate(json.charAt(i + 1)))
+            {
+                i++;
+            }
+        }
+
+        return this;
+    }
+
+    public RequestBodyWriter field(String value)
+    {
+        nextField();
+        return value(value);
+    }
+
+    public RequestBodyWriter field(String value, int maxLength)
+    {
+        nextField();
+        return value(value, maxLength);
+    }
+
+    public RequestBodyWriter field(long value)
+    {
+        nextField();
+        return value(value);
+    }
+
+    public RequestBodyWriter rawField(String json)
+    {
+        nextField();
+        return rawValue(json);
+    }
+
+    /**
+     * Leaves out the next field of the schema.
+     * @return returns this writer.
+     */
+    public RequestBodyWriter skipField()
+    {
+        schemaField++;
+        return this;
+    }
+
+    /**
+     * Getter method for the buffer variable
+     * @return returns the pooled buffer, whose first getLength bytes are the body.
+     */
+    public byte[] getBuffer()
+    {
+        return buffer;
+    }
+
+    public int getLength()
+    {
+        return length;
+    }
+
+    /**
+     * @return returns a copy of the body, sized exactly.
+     */
+    public byte[] toByteArray()
+    {
+        return buffer == null ? new byte[0] : Arrays.copyOf(buffer, length);
+    }
+
+    /**
+     * This method gives the buffer back to the pool. The writer takes a new one if it is used again.
+     */
+    public void release()
+    {
+        bufferPool.release(buffer);
+        buffer = null;
+        reset();
+    }
+
+    private RequestBodyWriter open(char bracket)
+    {
+        if(depth == MAX_DEPTH)
+        {
+            throw new IllegalStateException("Nested too deeply");
+        }
+
+        beforeValue();
+        writeByte(bracket);
+        hasContent[depth++] = false;
+        return this;
+    }
+
+    private RequestBodyWriter close(char bracket)
+    {
+        depth--;
+        writeByte(bracket);
+        return this;
+    }
+
+    private void nextField()
+    {
+        if(schema == null || schemaField >= schema.names.length)
+        {
+            throw new IllegalStateException("No field left in the schema");
+        }
+
+        byte[] name = schema.names[schemaField++];
+
+        beforeValue();
+        ensureCapacity(name.length);
+        System.arraycopy(name, 0, buffer, length, name.length);
+        length += name.length;
+        afterName = true;
+    }
+
+    /**
+     * Writes the comma before a value or name, unless it is the first in its container or follows a name.
+     */
+    private void beforeValue()
+    {
+        if(afterName)
+        {
+            afterName = false;
+        }
+        else if(depth > 0)
+        {
+            if(hasContent[depth - 1])
+            {
+                writeByte(',');
+            }
+
+            hasContent[depth - 1] = true;
+        }
+    }
+
+    private void string(String value, int maxLength)
+    {
+        if(value == null)
+        {
+            ensureCapacity(NULL.length);
+            System.arraycopy(NULL, 0, buffer, length, NULL.length);
+            length += NULL.length;
+            return;
+        }
+
+        boolean shortened = value.length() > maxLength;
+        int end = shortened ? maxLength - ELLIPSIS.length : value.length();
+
+        // Every char takes at most six bytes, as an escape or as half of a four byte code point.
+        ensureCapacity(end * 6 + ELLIPSIS.length + 2);
+        buffer[length++] = '"';
+
+        for(int i = 0; i < end; i++)
+        {
+            char c = value.charAt(i);
+
+            switch(c)
+            {
+                case '"':
+                case '\\':
+                    buffer[length++] = '\\';
+                    buffer[length++] = (byte) c;
+                    break;
+                case '\n':
+                    buffer[length++] = '\\';
+                    buffer[length++] = 'n';
+                    break;
+                case '\r':
+                    buffer[length++] = '\\';
+                    buffer[length++] = 'r';
+                    break;
+                case '\t':
+                    buffer[length++] = '\\';
+                    buffer[length++] = 't';
+                    break;
+                default:
+                    if(c < 0x20)
+                    {
+                        buffer[length++] = '\\';
+                        buffer[length++] = 'u';
+                        buffer[length++] = '0';
+                        buffer[length++] = '0';
+                        buffer[length++] = HEX[c >> 4];
+                        buffer[length++] = HEX[c & 0xF];
+                    }
+                    else
+                    {
+                        writeChar(value, i);
+
+                        if(Character.isHighSurrogate(c) && i + 1 < end && Character.isLowSurrogate(value.charAt(i + 1)))
+                        {
+                            i++;
+                        }
+                    }
+            }
+        }
+
+        if(shortened)
+        {
+            System.arraycopy(ELLIPSIS, 0, buffer, length, ELLIPSIS.length);
+            length += ELLIPSIS.length;
+        }
+
+        buffer[length++] = '"';
+    }
+
+    /**
+     * Writes the char at index as UTF-8, with the char after it if they are a surrogate pair.
+     * As with String.getBytes, an unpaired surrogate is written as '?'. The caller has made room.
+     */
+    private void writeChar(String value, int index)
+    {
+        char c = value.charAt(index);
+
+        if(c < 0x80)
+        {
+            buffer[length++] = (byte) c;
+        }
+        else if(c < 0x800)
+        {
+            buffer[length++] = (byte) (0xC0 | (c >> 6));
+            buffer[length++] = (byte) (0x80 | (c & 0x3F));
+        }
+        else if(Character.isSurrogate(c))
+        {
+            if(Character.isHighSurrogate(c) && index + 1 < value.length() && Character.isLowSurrogate(value.charAt(index + 1)))
+            {
+                int codePoint = Character.toCodePoint(c, value.charAt(index + 1));
+                buffer[length++] = (byte) (0xF0 | (codePoint >> 18));
+                buffer[length++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                buffer[length++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                buffer[length++] = (byte) (0x80 | (codePoint & 0x3F));
+            }
+            else
+            {
+                buffer[length++] = '?';
+            }
+        }
+        else
+        {
+            buffer[length++] = (byte) (0xE0 | (c >> 12));
+            buffer[length++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+            buffer[length++] = (byte) (0x80 | (c & 0x3F));
+        }
+    }
+
+    /**
+     * Writes a number's digits without going through Long.toString.
+     */
+    private void writeLong(long value)
+    {
+        ensureCapacity(20);
+
+        if(value == Long.MIN_VALUE)
+        {
+            String digits = String.valueOf(value);
+
+            for(int i = 0; i < digits.length(); i++)
+            {
+                buffer[length++] = (byte) digits.charAt(i);
+            }
+
+            return;
+        }
+
+        if(value < 0)
+        {
+            buffer[length++] = '-';
+            value = -value;
+        }
+
+        int start = length;
+
+        do
+        {
+            buffer[length++] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        while(value != 0);
+
+        for(int i = start, j = length - 1; i < j; i++, j--)
+        {
+            byte digit = buffer[i];
+            buffer[i] = buffer[j];
+            buffer[j] = digit;
+        }
+    }
+
+    private void writeByte(int b)
+    {
+        ensureCapacity(1);
+        buffer[length++] = (byte) b;
+    }
+
+    /**
+     * Moves the body into a pooled buffer at least twice the size when the next value may not fit.
+     */
+    private void ensureCapacity(int needed)
+    {
+        if(buffer == null)
+        {
+            buffer = bufferPool.acquire(Math.max(BufferPool.MIN_BUFFER_SIZE, needed));
+        }
+
+        if(length + needed <= buffer.length)
+        {
+            return;
+        }
+
+        byte[] larger = bufferPool.acquire(Math.max(buffer.length * 2, length + needed));
+        System.arraycopy(buffer, 0, larger, 0, length);
+        bufferPool.release(buffer);
+        buffer = larger;
+    }
+}
@@ -0,0 +1,318 @@
+/**
+ * The RequestCoalescer class makes identical requests share one network exchange.
+ *
+ * Each call is keyed by its URL and its POST parameters, sorted so that the order they were
+ * put into the map does not matter. Parameters that change on every attempt without changing
+ * the answer, such as a freshly generated authToken, can be left out of the key. While a call
+ * is in flight, any identical call joins it and every subscriber is given the same result.
+ *
+ * A Call also keeps its result once it has finished. An Activity can hand its Call to the
+ * instance that replaces it after a configuration change, using
+ * onRetainCustomNonConfigurationInstance, so rotating the device never sends the request again.
+ *
+ * An exchange sent at a priority implements Prioritised. When a more urgent identical call joins
+ * it, such as a page asking for what is still being prefetched, its priority is raised to match.
+ *
+ * This class has no Android dependencies so that it can be tested on the development machine.
+ *
+ * @author  J.Woodhouse, D.B.Dawson, I.J.Atienza, M.J.T.Makunda
+ * @version 1.01
+ */
+
+package msds.group.project.msds;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class RequestCoalescer
+{
+    /**
+     * The Callback interface receives the result of a call.
+     */
+    public interface Callback<T>
+    {
+        void onSuccess(T result);
+
+        void onFailure(Exception error);
+    }
+
+    /**
+     * The Exchange interface is one request/response with the server.
+     */
+    public interface Exchange<T>
+    {
+        /**
+         * Sends the request. The callback must be called exactly once, unless the exchange is cancelled.
+         * @param callback the callback for the response.
+         */
+        void start(Callback<T> callback);
+
+        /**
+         * Cancels the request, its callback need not be called.
+         */
+        void cancel();
+    }
+
+    /**
+     * The Prioritised interface is an Exchange sent at a priority, lower numbers being more urgent.
+     */
+    public interface Prioritised
+    {
+        int getPriority();
+
+        /**
+         * Raises the priority of the exchange, if the given priority is more urgent than its own.
+         * @param priority the priority of a call that joined the exchange.
+         */
+        void promote(int priority);
+    }
+
+    private final HashMap<String, Call<?>> inFlightCalls = new HashMap<>();
+
+    /**
+     * This method builds the key for a request. Parameters are sorted by name and every name and
+     * value is length prefixed, so different requests can never produce the same key.
+     * @param url the URL of the endpoint.
+     * @param params the POST parameters.
+     * @param volatileParams names of parameters that are not part of the key.
+     * @return returns the key.
+     */
+    public static String key(String url, Map<String, String> params, String... volatileParams)
+    {
+        List<String> names = new ArrayList<>(params.keySet());
+        names.removeAll(Arrays.asList(volatileParams));
+        Collections.sort(names);
+
+        StringBuilder key = new StringBuilder(url).append('?');
+
+        for(String name : names)
+        {
+            String value = String.valueOf(params.get(name));
+            key.append(name.length()).append(':').append(name).append('=');
+            key.append(value.length()).append(':').append(value).append(';');
+        }
+
+        return key.toString();
+    }
+
+    /**
+     * This method starts a call, or joins the identical call already in flight.
+     * @param url the URL of the endpoint.
+     * @param params the POST parameters sent by the exchange.
+     * @param exchange the exchange to start if there is no identical call in flight, otherwise only its priority is used.
+     * @param volatileParams names of parameters that are not part of the key.
+     * @return returns the call, subscribe to it for the result.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> Call<T> call(String url, Map<String, String> params, Exchange<T> exchange, String... volatileParams)
+    {
+        String key = key(url, params, volatileParams);
+        Call<T> call;
+        boolean joined;
+
+        synchronized(this)
+        {
+            call = (Call<T>) inFlightCalls.get(key);
+
+            if(call == null)
+            {
+                call = new Call<>(this, key, new HashMap<>(params), exchange);
+                inFlightCalls.put(key, call);
+                joined = false;
+            }
+            else
+            {
+                joined = true;
+            }
+        }
+
+        if(joined)
+        {
+            if(call.exchange instanceof Prioritised && exchange instanceof Prioritised)
+            {
+                ((Prioritised) call.exchange).promote(((Prioritised) exchange).getPriority());
+            }
+
+            return call;
+        }
+
+        exchange.start(call.completion);
+        return call;
+    }
+
+    /**
+     * Getter method for the number of calls waiting for a response.
+     * @return returns the number of calls in flight.
+     */
+    public synchronized int getInFlightCount()
+    {
+        return inFlightCalls.size();
+    }
+
+    /**
+     * The Call class is one shared exchange and the subscribers waiting for its result.
+     */
+    public static class Call<T>
+    {
+        private final RequestCoalescer coalescer;
+        private final String key;
+        private final Map<String, String> params;
+        private final Exchange<T> exchange;
+        private final ArrayList<Callback<T>> subscribers = new ArrayList<>();
+
+        private boolean done;
+        private boolean cancelled;
+        private T result;
+        private Exception error;
+
+        private final Callback<T> completion = new Callback<T>()
+        {
+            @Override
+            public void onSuccess(T result)
+            {
+                finish(result, null);
+            }
+
+            @Override
+            public void onFailure(Exception error)
+            {
+                finish(null, error);
+            }
+        };
+
+        private Call(RequestCoalescer coalescer, String key, Map<String, String> params, Exchange<T> exchange)
+        {
+            this.coalescer = coalescer;
+            this.key = key;
+            this.params = params;
+            this.exchange = exchange;
+        }
+
+        /**
+         * Getter method for the params variable
+         * @return the POST parameters that were actually sent, including volatile ones
+         */
+        public Map<String, String> getParams()
+        {
+            return params;
+        }
+
+        /**
+         * @return true once the result has been received
+         */
+        public boolean isDone()
+        {
+            synchronized(coalescer)
+            {
+                return done;
+            }
+        }
+
+        /**
+         * This method adds a subscriber. If the call has finished the result is given to it
+         * straight away. Subscribing the same callback twice has no effect.
+         * @param callback the callback for the result.
+         */
+        public void subscribe(Callback<T> callback)
+        {
+            synchronized(coalescer)
+            {
+                if(!done)
+                {
+                    if(!subscribers.contains(callback))
+                    {
+                        subscribers.add(callback);
+                    }
+                    return;
+                }
+            }
+
+            deliver(callback);
+        }
+
+        /**
+         * This method removes a subscriber. If no subscribers are left the exchange is cancelled.
+         * @param callback the callback to remove.
+         */
+        public void unsubscribe(Callback<T> callback)
+        {
+            synchronized(coalescer)
+            {
+                subscribers.remove(callback);
+
+                if(done || cancelled || !subscribers.isEmpty())
+                {
+                    return;
+                }
+
+                cancelled = true;
+                removeFromCoalescer();
+            }
+
+            exchange.cancel();
+        }
+
+        /**
+         * This method removes a subscriber without ever cancelling the exchange. It is used when an
+         * Activity is being recreated, as the new instance will subscribe again.
+         * @param callback the callback to remove.
+         */
+        public void detach(Callback<T> callback)
+        {
+            synchronized(coalescer)
+            {
+                subscribers.remove(callback);
+            }
+        }
+
+        private void finish(T result, Exception error)
+        {
+            List<Callback<T>> waiting;
+
+            synchronized(coalescer)
+            {
+                if(done || cancelled)
+                {
+                    return;
+                }
+
+                done = true;
+                this.result = result;
+                this.error = error;
+                removeFromCoalescer();
+
+                waiting = new ArrayList<>(subscribers);
+                subscribers.clear();
+            }
+
+            for(Callback<T> callback : waiting)
+            {
+                deliver(callback);
+            }
+        }
+
+        private void removeFromCoalescer()
+        {
+            if(coalescer.inFlightCalls.get(key) == this)
+            {
+                coalescer.inFlightCalls.remove(key);
+            }
+        }
+
+        private void deliver(Callback<T> callback)
+        {
+            if(error == null)
+            {
+                callback.onSuccess(result);
+            }
+            else
+            {
+                callback.onFailure(error);
+            }
+        }
+    }
+}
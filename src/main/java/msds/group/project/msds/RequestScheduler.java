@@ -0,0 +1,445 @@
+/**
+ * The RequestScheduler class decides when each request made by the MsdsApi is handed to the
+ * HttpEngine, so that logs sent in the background never hold up a call the user is waiting for.
+ *
+ * Every request is sent at one of three priorities:
+ *
+ * INTERACTIVE : a call a page is waiting on, such as Login.php or NewRequest.php
+ * PREFETCH : a call made in case a page needs it later, such as those of the LoginPrefetcher
+ * BACKGROUND : telemetry, the SubmitLog.php batches of log events and metrics
+ *
+ * Each priority has its own limit on the requests in flight at once. A request over its limit
+ * waits in its priority's queue, and a queue is only served while every queue above it is empty,
+ * so a flood of log events takes at most the background limit of connections and never gets
+ * ahead of an interactive call. The App keeps the limits below the number of requests the
+ * NetworkClient runs at once, so an interactive call never waits behind the others there either.
+ *
+ * A request that waits longer than its priority's maximum wait is not sent, and its handler
+ * is given a DeferredException instead. For a log batch this hands the record back to the
+ * WriteAheadQueue, which keeps it on disk and sends it again after its backoff, rather than
+ * holding it in memory while the user keeps the network busy. Waits are checked whenever a
+ * request is submitted or finishes, as a request can only be waiting while another is in flight.
+ *
+ * A waiting request can be promoted to a higher priority, as when a page's call joins a prefetch
+ * that has not been sent yet.
+ *
+ * The queue depth and requests in flight of each priority can be read at any time. export sends
+ * the peak depth, longest wait and deferred requests of each priority since the last export.
+ *
+ * This class has no Android dependencies so that it can be tested on the development machine.
+ *
+ * @author  J.Woodhouse, D.B.Dawson, I.J.Atienza, M.J.T.Makunda
+ * @version 1.01
+ */
+
+package msds.group.project.msds;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+public class RequestScheduler
+{
+    public static final int INTERACTIVE = 0;
+    public static final int PREFETCH = 1;
+    public static final int BACKGROUND = 2;
+
+    /**
+     * The maximum wait of a priority whose requests are never deferred.
+     */
+    public static final long NO_MAX_WAIT = Long.MAX_VALUE;
+
+    private static final int PRIORITY_COUNT = 3;
+    private static final String[] PRIORITY_NAMES = {"interactive", "prefetch", "background"};
+
+    private static final int QUEUED = 0;
+    private static final int SENT = 1;
+    private static final int DONE = 2;
+    private static final int CANCELLED = 3;
+
+    /**
+     * The DeferredException class is the error given to the handler of a request that waited
+     * longer than its priority's maximum wait and was never sent.
+     */
+    public static class DeferredException extends IOException
+    {
+        private static final long serialVersionUID = 1L;
+
+        private DeferredException(String message)
+        {
+            super(message);
+        }
+    }
+
+    private final HttpEngine httpEngine;
+    private final int[] maxInFlight = new int[PRIORITY_COUNT];
+    private final long[] maxWaitNanos = new long[PRIORITY_COUNT];
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private final ArrayDeque<Ticket>[] queues = new ArrayDeque[PRIORITY_COUNT];
+    private final int[] inFlight = new int[PRIORITY_COUNT];
+
+    // Counts since the last export.
+    private final long[] submitted = new long[PRIORITY_COUNT];
+    private final long[] waited = new long[PRIORITY_COUNT];
+    private final long[] deferred = new long[PRIORITY_COUNT];
+    private final int[] peakDepth = new int[PRIORITY_COUNT];
+    private final long[] longestWaitNanos = new long[PRIORITY_COUNT];
+    private final LogEvent.Builder eventBuilder = new LogEvent.Builder();
+
+    /**
+     * Creates a scheduler with the limits the App uses: four interactive requests in flight,
+     * two prefetches and one background request, with prefetch and background requests
+     * deferred after waiting ten seconds.
+     * @param httpEngine the engine that sends the requests.
+     */
+    public RequestScheduler(HttpEngine httpEngine)
+    {
+        this.httpEngine = httpEngine;
+
+        for(int i = 0; i < PRIORITY_COUNT; i++)
+        {
+            queues[i] = new ArrayDeque<>();
+        }
+
+        setLimit(INTERACTIVE, 4, NO_MAX_WAIT);
+        setLimit(PREFETCH, 2, 10000);
+        setLimit(BACKGROUND, 1, 10000);
+    }
+
+    /**
+     * Setter method for the limits of a priority, used by requests sent from then on.
+     * @param priority INTERACTIVE, PREFETCH or BACKGROUND.
+     * @param maxInFlight the most requests of the priority sent at once, at least 1.
+     * @param maxWaitMillis the longest a request may wait before it is deferred, or NO_MAX_WAIT.
+     */
+    public synchronized void setLimit(int priority, int maxInFlight, long maxWaitMillis)
+    {
+        this.maxInFlight[priority] = Math.max(1, maxInFlight);
+        this.maxWaitNanos[priority] = maxWaitMillis == NO_MAX_WAIT ? NO_MAX_WAIT : TimeUnit.MILLISECONDS.toNanos(maxWaitMillis);
+    }
+
+    /**
+     * This method sends a POST request once its priority allows it.
+     * @param priority INTERACTIVE, PREFETCH or BACKGROUND.
+     * @param url the URL of the endpoint.
+     * @param contentType the Content-Type of the body.
+     * @param headers any extra request headers, may be empty.
+     * @param body the request body.
+     * @param handler the handler for the response, or for a DeferredException.
+     * @return returns the ticket, used to cancel or promote the request.
+     */
+    public Ticket submit(int priority, String url, String contentType, Map<String, String> headers, byte[] body, HttpEngine.Handler handler)
+    {
+        Ticket ticket = new Ticket(priority, url, contentType, headers, body, handler);
+
+        synchronized(this)
+        {
+            ticket.queuedNanos = System.nanoTime();
+
+            boolean waiting = !canSend(priority);
+
+            queues[priority].add(ticket);
+            submitted[priority]++;
+
+            if(waiting)
+            {
+                waited[priority]++;
+                peakDepth[priority] = Math.max(peakDepth[priority], queues[priority].size());
+            }
+        }
+
+        dispatch();
+        return ticket;
+    }
+
+    /**
+     * Getter method for the number of requests of a priority waiting to be sent
+     * @param priority INTERACTIVE, PREFETCH or BACKGROUND.
+     * @return returns the queue depth.
+     */
+    public synchronized int getQueueDepth(int priority)
+    {
+        return queues[priority].size();
+    }
+
+    /**
+     * Getter method for the number of requests of a priority sent and not yet answered
+     * @param priority INTERACTIVE, PREFETCH or BACKGROUND.
+     * @return returns the number of requests in flight.
+     */
+    public synchronized int getInFlightCount(int priority)
+    {
+        return inFlight[priority];
+    }
+
+    /**
+     * This method sends one LogEvent for every priority with requests submitted since the last
+     * export, giving how many were submitted, had to wait and were deferred, the peak queue depth
+     * and the longest wait. Nothing is sent unless some request had to wait, so an App whose
+     * requests are never held up, such as an idle one sending only its logs, exports nothing.
+     * @param sink receives the events.
+     * @return returns the number of events sent.
+     */
+    public int export(ApiMetrics.Sink sink)
+    {
+        ArrayList<LogEvent> events = new ArrayList<>();
+
+        synchronized(this)
+        {
+            boolean anyWaited = false;
+
+            for(int i = 0; i < PRIORITY_COUNT; i++)
+            {
+                anyWaited |= waited[i] > 0 || deferred[i] > 0;
+            }
+
+            if(!anyWaited)
+            {
+                return 0;
+            }
+
+            for(int i = 0; i < PRIORITY_COUNT; i++)
+            {
+                if(submitted[i] > 0)
+                {
+                    events.add(eventBuilder.begin("Request queue").add("priority", PRIORITY_NAMES[i])
+                            .add("submitted", submitted[i]).add("waited", waited[i]).add("deferred", deferred[i])
+                            .add("peakDepth", peakDepth[i]).add("longestWaitMs", TimeUnit.NANOSECONDS.toMillis(longestWaitNanos[i]))
+                            .build());
+                }
+
+                submitted[i] = 0;
+                waited[i] = 0;
+                deferred[i] = 0;
+                peakDepth[i] = queues[i].size();
+                longestWaitNanos[i] = 0;
+            }
+        }
+
+        // The sink may submit requests of its own, so the events are sent once the counts are reset.
+        for(LogEvent event : events)
+        {
+            sink.send(event);
+        }
+
+        return events.size();
+    }
+
+    /**
+     * Checks whether a request submitted now could be sent straight away.
+     */
+    private boolean canSend(int priority)
+    {
+        for(int i = 0; i < priority; i++)
+        {
+            if(!queues[i].isEmpty())
+            {
+                return false;
+            }
+        }
+
+        return queues[priority].isEmpty() && inFlight[priority] < maxInFlight[priority];
+    }
+
+    /**
+     * Sends as many of the waiting requests as the limits allow, highest priority first, then
+     * defers those left that have waited too long. The engine is called without holding the lock,
+     * as an engine may answer straight away.
+     */
+    private void dispatch()
+    {
+        ArrayList<Ticket> sending = new ArrayList<>();
+        ArrayList<Ticket> deferring = new ArrayList<>();
+
+        synchronized(this)
+        {
+            long now = System.nanoTime();
+            boolean higherWaiting = false;
+
+            for(int priority = 0; priority < PRIORITY_COUNT; priority++)
+            {
+                ArrayDeque<Ticket> queue = queues[priority];
+
+                while(!higherWaiting && inFlight[priority] < maxInFlight[priority] && !queue.isEmpty())
+                {
+                    Ticket ticket = queue.pollFirst();
+                    ticket.state = SENT;
+                    inFlight[priority]++;
+                    longestWaitNanos[priority] = Math.max(longestWaitNanos[priority], now - ticket.queuedNanos);
+                    sending.add(ticket);
+                }
+
+                // Only requests still without room are deferred. The oldest are at the head, apart from
+                // the odd promoted one, which is deferred a little late.
+                while(!queue.isEmpty() && now - queue.peekFirst().queuedNanos > maxWaitNanos[priority])
+                {
+                    Ticket ticket = queue.pollFirst();
+                    ticket.state = DONE;
+                    deferred[priority]++;
+                    longestWaitNanos[priority] = Math.max(longestWaitNanos[priority], now - ticket.queuedNanos);
+                    deferring.add(ticket);
+                }
+
+                higherWaiting |= !queue.isEmpty();
+            }
+        }
+
+        for(Ticket ticket : deferring)
+        {
+            ticket.handler.onFailure(new DeferredException("Deferred after waiting "
+                    + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - ticket.queuedNanos) + " ms behind other requests"));
+        }
+
+        for(Ticket ticket : sending)
+        {
+            ticket.send();
+        }
+    }
+
+    /**
+     * The Ticket class is one submitted request, waiting, in flight or done.
+     */
+    public class Ticket implements HttpEngine.Pending, HttpEngine.Handler
+    {
+        private final String url;
+        private final String contentType;
+        private final Map<String, String> headers;
+        private final byte[] body;
+        private final HttpEngine.Handler handler;
+
+        // Guarded by the scheduler.
+        private int priority;
+        private int state = QUEUED;
+        private long queuedNanos;
+        private HttpEngine.Pending pending;
+
+        private Ticket(int priority, String url, String contentType, Map<String, String> headers, byte[] body, HttpEngine.Handler handler)
+        {
+            this.priority = priority;
+            this.url = url;
+            this.contentType = contentType;
+            this.headers = headers;
+            this.body = body;
+            this.handler = handler;
+        }
+
+        /**
+         * This method moves a waiting request to a higher priority. A request that has been sent,
+         * or is already at that priority or higher, is left as it is.
+         * @param priority the new priority.
+         */
+        public void promote(int priority)
+        {
+            synchronized(RequestScheduler.this)
+            {
+                if(state != QUEUED || priority >= this.priority)
+                {
+                    return;
+                }
+
+                queues[this.priority].remove(this);
+                this.priority = priority;
+                queues[priority].add(this);
+                peakDepth[priority] = Math.max(peakDepth[priority], queues[priority].size());
+            }
+
+            dispatch();
+        }
+
+        /**
+         * Cancels the request. A waiting request is never sent, and a request in flight gives
+         * up its place at once, whether or not the engine ever calls back.
+         */
+        @Override
+        public void cancel()
+        {
+            HttpEngine.Pending sent;
+
+            synchronized(RequestScheduler.this)
+            {
+                if(state == QUEUED)
+                {
+                    queues[priority].remove(this);
+                    state = CANCELLED;
+                    return;
+                }
+
+                if(state != SENT)
+                {
+                    return;
+                }
+
+                state = CANCELLED;
+                inFlight[priority]--;
+                sent = pending;
+            }
+
+            // A request being handed to the engine is cancelled by send once the engine returns.
+            if(sent != null)
+            {
+                sent.cancel();
+            }
+
+            dispatch();
+        }
+
+        private void send()
+        {
+            HttpEngine.Pending sent = httpEngine.post(url, contentType, headers, body, this);
+            boolean cancelled;
+
+            synchronized(RequestScheduler.this)
+            {
+                pending = sent;
+                cancelled = state == CANCELLED;
+            }
+
+            if(cancelled)
+            {
+                sent.cancel();
+            }
+        }
+
+        /**
+         * Frees the request's place in flight.
+         * @return returns false if the request was cancelled, and the answer must not be passed on.
+         */
+        private boolean finish()
+        {
+            synchronized(RequestScheduler.this)
+            {
+                if(state != SENT)
+                {
+                    return false;
+                }
+
+                state = DONE;
+                inFlight[priority]--;
+            }
+
+            dispatch();
+            return true;
+        }
+
+        @Override
+        public void onResponse(int statusCode, Map<String, String> headers, byte[] body, long connectNanos, long firstByteNanos)
+        {
+            if(finish())
+            {
+                handler.onResponse(statusCode, headers, body, connectNanos, firstByteNanos);
+            }
+        }
+
+        @Override
+        public void onFailure(IOException error)
+        {
+            if(finish())
+            {
+                handler.onFailure(error);
+            }
+        }
+    }
+}
@@ -0,0 +1,156 @@
+/**
+ * The SessionCache class keeps the user's account details and inventory in memory for as
+ * long as they stay logged in, so the Account Page and Inventory Page can be drawn straight away.
+ *
+ * Everything in the cache belongs to one session, identified by the username and authToken
+ * it was fetched with. Starting a new session, or asking with a different session, never
+ * returns data from another one, and putting data for an old session is ignored.
+ *
+ * The cache is filled by the LoginPrefetcher after a successful login, and kept up to date
+ * by the pages whenever they receive newer data.
+ *
+ * A session renewed by the SessionManager keeps its data. Until the next renewal the token it
+ * had before still counts as the session, so a page that read it before the renewal is not
+ * treated as a stranger.
+ *
+ * This class has no Android dependencies so that it can be tested on the development machine.
+ *
+ * @author  J.Woodhouse, D.B.Dawson, I.J.Atienza, M.J.T.Makunda
+ * @version 1.03
+ */
+
+package msds.group.project.msds;
+
+public class SessionCache
+{
+    private String username;
+    private String authToken;
+    private String previousAuthToken;
+    private MsdsApi.UserInfo userInfo;
+    private InventorySnapshot inventory;
+
+    /**
+     * This method starts a new session, dropping everything cached for the previous one.
+     * @param username the user that logged in.
+     * @param authToken the token the session was started with.
+     */
+    public synchronized void startSession(String username, String authToken)
+    {
+        if(isSession(username, authToken))
+        {
+            return;
+        }
+
+        clear();
+        this.username = username;
+        this.authToken = authToken;
+        this.previousAuthToken = null;
+    }
+
+    /**
+     * This method moves the session to the authToken it was renewed with, keeping its data.
+     * @param username the logged in user.
+     * @param authToken the token the session had.
+     * @param newAuthToken the token the session was renewed with.
+     */
+    public synchronized void renewSession(String username, String authToken, String newAuthToken)
+    {
+        if(this.username != null && this.username.equals(username) && authToken.equals(this.authToken))
+        {
+            this.previousAuthToken = authToken;
+            this.authToken = newAuthToken;
+        }
+    }
+
+    /**
+     * This method drops everything cached, the session itself is kept.
+     */
+    public synchronized void clear()
+    {
+        userInfo = null;
+        inventory = null;
+    }
+
+    /**
+     * Getter method for the cached account details.
+     * @param username the user asking.
+     * @param authToken the token of the session asking.
+     * @return returns the account details, or null if none are cached for this session.
+     */
+    public synchronized MsdsApi.UserInfo getUserInfo(String username, String authToken)
+    {
+        return isSession(username, authToken) ? userInfo : null;
+    }
+
+    /**
+     * Setter method for the cached account details, ignored if the session has ended.
+     * @param username the user the details were fetched for.
+     * @param authToken the token they were fetched with.
+     * @param userInfo the account details.
+     */
+    public synchronized void putUserInfo(String username, String authToken, MsdsApi.UserInfo userInfo)
+    {
+        if(isSession(username, authToken))
+        {
+            this.userInfo = userInfo;
+        }
+    }
+
+    /**
+     * Getter method for the cached inventory.
+     * @param username the user asking.
+     * @param authToken the token of the session asking.
+     * @return returns the inventory snapshot, or null if none is cached for this session.
+     */
+    public synchronized InventorySnapshot getInventory(String username, String authToken)
+    {
+        return isSession(username, authToken) ? inventory : null;
+    }
+
+    /**
+     * Setter method for the cached inventory, ignored if the session has ended.
+     * @param username the user the inventory was fetched for.
+     * @param authToken the token it was fetched with.
+     * @param inventory the inventory snapshot.
+     */
+    public synchronized void putInventory(String username, String authToken, InventorySnapshot inventory)
+    {
+        if(isSession(username, authToken))
+        {
+            this.inventory = inventory;
+        }
+    }
+
+    /**
+     * This method adds an accepted request to the cached inventory, so it does not need to be fetched again.
+     * A request belongs to the user rather than to the authToken it was sent with, so it is applied
+     * to whichever session that user has now. An inventory fetched after the request was made may
+     * already hold it, so it is left as it is.
+     * @param username the user the request was made for.
+     * @param itemName the item requested.
+     * @param quantity the amount requested.
+     * @param requestedAt when the request was made, in milliseconds.
+     * @return returns the inventory, or null if none is cached for this user.
+     */
+    public synchronized InventorySnapshot addToInventory(String username, String itemName, int quantity, long requestedAt)
+    {
+        if(this.username == null || !this.username.equals(username) || inventory == null)
+        {
+            return null;
+        }
+
+        if(inventory.getFetchedAt() >= requestedAt)
+        {
+            return inventory;
+        }
+
+        inventory = inventory.withAddedQuantity(itemName, quantity);
+        return inventory;
+    }
+
+    private boolean isSession(String username, String authToken)
+    {
+        return this.username != null && this.username.equals(username)
+                && authToken != null && (authToken.equals(this.authToken) || authToken.equals(previousAuthToken));
+    }
+}
@@ -0,0 +1,252 @@
+/**
+ * The SessionClock class counts down the logged in user's session for every App page that
+ * shows it, in place of a CountDownTimer per page.
+ *
+ * There is one SessionClock for the process. A page subscribes while it is visible and
+ * unsubscribes when it is not, and the clock only ticks while it has a subscriber, so it costs
+ * no wakeups while no page is showing the countdown. Subscribing ticks straight away, so a page
+ * shows the right time as soon as it is visible.
+ *
+ * The end of the session does not depend on a subscriber. A single deadline is timed for it
+ * whenever a session starts, and the ExpiryListener, which the App sets, is told when it passes
+ * whichever page is showing. A timer may not run while the device sleeps, so checkExpiry compares
+ * the deadline with the elapsed realtime clock again, as when the App returns to the foreground.
+ *
+ * The end of the session is kept as a time on the elapsed realtime clock, which is monotonic
+ * and keeps counting while the device sleeps, so changing the device's time does not move it.
+ * Each tick is timed from that end to land on a whole second of the remaining time, so a late
+ * tick does not delay the ones after it.
+ *
+ * When the session ends the subscribers and the ExpiryListener are told once and the clock stops. A page that
+ * subscribes after that, or before any session has started, is told straight away.
+ *
+ * The SessionClock is used from the main thread only.
+ *
+ * This class has no Android dependencies so that it can be tested on the development machine.
+ *
+ * @author  J.Woodhouse, D.B.Dawson, I.J.Atienza, M.J.T.Makunda
+ * @version 1.01
+ */
+
+package msds.group.project.msds;
+
+import java.util.ArrayList;
+
+public class SessionClock
+{
+    public static final long TICK_MILLIS = 1000;
+
+    private static final long NO_SESSION = Long.MIN_VALUE;
+
+    /**
+     * The Clock interface reads the monotonic clock, SystemClock.elapsedRealtime on Android.
+     */
+    public interface Clock
+    {
+        long elapsedRealtime();
+    }
+
+    /**
+     * The Timer interface runs the ticks later on the main thread, as a Handler does.
+     */
+    public interface Timer
+    {
+        void postDelayed(Runnable runnable, long delayMillis);
+
+        void removeCallbacks(Runnable runnable);
+    }
+
+    /**
+     * The Listener interface is implemented by the pages that show the countdown.
+     */
+    public interface Listener
+    {
+        /**
+         * Called when subscribed, and then about once a second while the session lasts.
+         * @param remainingMillis the time left in the session.
+         */
+        void onTick(long remainingMillis);
+
+        /**
+         * Called once when the session has ended, or straight away if there is no session.
+         */
+        void onSessionEnded();
+    }
+
+    /**
+     * The ExpiryListener interface is implemented by the App, which logs the user out when the session ends.
+     */
+    public interface ExpiryListener
+    {
+        /**
+         * Called once when the session has ended, whether or not a page is subscribed.
+         */
+        void onSessionExpired();
+    }
+
+    private final Clock clock;
+    private final Timer timer;
+    private final ArrayList<Listener> listeners = new ArrayList<>();
+    private ExpiryListener expiryListener;
+
+    private long endsAtElapsed = NO_SESSION;
+
+    private final Runnable tick = new Runnable()
+    {
+        @Override
+        public void run()
+        {
+            tick();
+        }
+    };
+
+    private final Runnable deadline = new Runnable()
+    {
+        @Override
+        public void run()
+        {
+            checkExpiry();
+        }
+    };
+
+    public SessionClock(Clock clock, Timer timer)
+    {
+        this.clock = clock;
+        this.timer = timer;
+    }
+
+    /**
+     * @param expiryListener told when the session ends, whether or not a page is subscribed.
+     */
+    public void setExpiryListener(ExpiryListener expiryListener)
+    {
+        this.expiryListener = expiryListener;
+    }
+
+    /**
+     * This method starts counting down a session, or moves the end of the current one when it is renewed.
+     * @param remainingMillis the time left in the session.
+     */
+    public void start(long remainingMillis)
+    {
+        endsAtElapsed = clock.elapsedRealtime() + remainingMillis;
+        timer.removeCallbacks(deadline);
+        timer.postDelayed(deadline, remainingMillis);
+
+        if(!listeners.isEmpty())
+        {
+            timer.removeCallbacks(tick);
+            tick();
+        }
+    }
+
+    /**
+     * This method subscribes a page for as long as it is visible.
+     * @param listener given the remaining time straight away and then about once a second.
+     */
+    public void subscribe(Listener listener)
+    {
+        listeners.add(listener);
+
+        // The pages already subscribed were told when the session ended.
+        if(endsAtElapsed == NO_SESSION)
+        {
+            listener.onSessionEnded();
+            return;
+        }
+
+        timer.removeCallbacks(tick);
+        tick();
+    }
+
+    /**
+     * This method unsubscribes a page, and stops the clock if no other page is subscribed.
+     * @param listener the subscribed listener.
+     */
+    public void unsubscribe(Listener listener)
+    {
+        listeners.remove(listener);
+
+        if(listeners.isEmpty())
+        {
+            timer.removeCallbacks(tick);
+        }
+    }
+
+    /**
+     * This method ends the session if its end has passed, and otherwise times the deadline again
+     * from the time left, as the deadline may have been held up while the device slept.
+     */
+    public void checkExpiry()
+    {
+        if(endsAtElapsed == NO_SESSION)
+        {
+            return;
+        }
+
+        long remainingMillis = getRemainingMillis();
+
+        if(remainingMillis == 0)
+        {
+            end();
+            return;
+        }
+
+        timer.removeCallbacks(deadline);
+        timer.postDelayed(deadline, remainingMillis);
+    }
+
+    /**
+     * Getter method for the remaining time of the session
+     * @return returns the time left in the session, or 0 if there is none.
+     */
+    public long getRemainingMillis()
+    {
+        return endsAtElapsed == NO_SESSION ? 0 : Math.max(0, endsAtElapsed - clock.elapsedRealtime());
+    }
+
+    private void tick()
+    {
+        long remainingMillis = getRemainingMillis();
+
+        if(remainingMillis == 0)
+        {
+            end();
+            return;
+        }
+
+        for(Listener listener : listeners.toArray(new Listener[listeners.size()]))
+        {
+            listener.onTick(remainingMillis);
+        }
+
+        // A listener may have unsubscribed as it was told.
+        if(listeners.isEmpty())
+        {
+            return;
+        }
+
+        long delayMillis = remainingMillis % TICK_MILLIS;
+        timer.postDelayed(tick, delayMillis == 0 ? TICK_MILLIS : delayMillis);
+    }
+
+    /**
+     * Stops the clock and tells the subscribers, then the ExpiryListener, that the session has ended.
+     */
+    private void end()
+    {
+        endsAtElapsed = NO_SESSION;
+        timer.removeCallbacks(tick);
+        timer.removeCallbacks(deadline);
+
+        for(Listener listener : listeners.toArray(new Listener[listeners.size()]))
+        {
+            listener.onSessionEnded();
+        }
+
+        if(expiryListener != null)
+        {
+            expiryListener.onSessionExpired();
+        }
+    }
+}
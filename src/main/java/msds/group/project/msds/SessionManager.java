@@ -0,0 +1,446 @@
+/**
+ * The SessionManager class keeps the logged in user's session alive for as long as the App is
+ * used, instead of sending the user back to the login page when the authToken expires.
+ *
+ * A session lasts SESSION_LENGTH_SECONDS from its timestamp. REFRESH_MARGIN_SECONDS before it
+ * ends the session is renewed in the background with RefreshSession.php, which swaps the
+ * authToken for a new one and starts the session again from a new timestamp, so a long shift
+ * never pays for a cold login and the data fetched again after it. A renewal that fails without
+ * an answer from the server is tried again every RETRY_SECONDS until the session ends.
+ *
+ * The renewal timer does not count the time the device spends in deep sleep, so it can fire
+ * after the session has ended. checkRenewal compares the session with the wall clock instead,
+ * and is called whenever the App comes back to the foreground, so a renewal the timer missed is
+ * made then.
+ *
+ * The SessionManager is also the MsdsApi's Authenticator. A call refused with 401 is given the
+ * current authToken if the session has been renewed since the call was made, and otherwise
+ * waits for a renewal. A record queued in the WriteAheadQueue is given the current authToken
+ * each time it is sent.
+ *
+ * Renewals are single-flight. However many timers and refused calls ask at once, one
+ * RefreshSession.php request is sent for a session, joined through the MsdsApi's
+ * RequestCoalescer, and each of them is given its result.
+ *
+ * A server without RefreshSession.php answers 404, after which no renewal is tried again and
+ * a session ends at its expiry, as it did before.
+ *
+ * The session itself is the SessionSnapshot published through SharedVariables, which is the
+ * only copy of it. Starting, renewing and ending a session each publish a new snapshot, a
+ * renewal with a compare-and-set so that it never replaces a session that has changed since the
+ * renewal was sent. Listeners are told about every renewal, so that the SessionCache can follow
+ * the new authToken.
+ *
+ * With a SessionStore every session started or renewed is saved, and forgotten when it ends,
+ * so that resume can carry on a session that has not expired after the process was killed,
+ * without the user logging in again.
+ *
+ * This class has no Android dependencies so that it can be tested on the development machine.
+ *
+ * @author  J.Woodhouse, D.B.Dawson, I.J.Atienza, M.J.T.Makunda
+ * @version 1.06
+ */
+
+package msds.group.project.msds;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+public class SessionManager implements MsdsApi.Authenticator
+{
+    public static final long SESSION_LENGTH_SECONDS = 30 * 60;
+    public static final long REFRESH_MARGIN_SECONDS = 5 * 60;
+    public static final long RETRY_SECONDS = 60;
+
+    /**
+     * The Listener interface is told when the session is renewed.
+     */
+    public interface Listener
+    {
+        /**
+         * Called on the MsdsApi's callback executor once the session has its new authToken.
+         * @param username the logged in user.
+         * @param authToken the token the session had.
+         * @param newAuthToken the token the session has now.
+         * @param timestamp the new session start in UNIX seconds.
+         */
+        void onSessionRenewed(String username, String authToken, String newAuthToken, long timestamp);
+    }
+
+    private final MsdsApi msdsApi;
+    private final SharedVariables sharedVariables;
+    private final ScheduledExecutorService scheduler;
+    private final long sessionLengthSeconds;
+    private final long refreshMarginSeconds;
+    private final CopyOnWriteArrayList<Listener> listeners = new CopyOnWriteArrayList<>();
+
+    private ScheduledFuture<?> renewal;
+    private volatile boolean refreshSupported = true;
+    private SessionStore sessionStore;
+
+    /**
+     * @param msdsApi the MsdsApi sessions are renewed through.
+     * @param sharedVariables the SharedVariables the session is published through.
+     * @param scheduler the executor the renewals are timed on.
+     */
+    public SessionManager(MsdsApi msdsApi, SharedVariables sharedVariables, ScheduledExecutorService scheduler)
+    {
+        this(msdsApi, sharedVariables, scheduler, SESSION_LENGTH_SECONDS, REFRESH_MARGIN_SECONDS);
+    }
+
+    /**
+     * @param msdsApi the MsdsApi sessions are renewed through.
+     * @param sharedVariables the SharedVariables the session is published through.
+     * @param scheduler the executor the renewals are timed on.
+     * @param sessionLengthSeconds how long the server keeps a session.
+     * @param refreshMarginSeconds how long before the end of a session it is renewed.
+     */
+    public SessionManager(MsdsApi msdsApi, SharedVariables sharedVariables, ScheduledExecutorService scheduler,
+                          long sessionLengthSeconds, long refreshMarginSeconds)
+    {
+        this.msdsApi = msdsApi;
+        this.sharedVariables = sharedVariables;
+        this.scheduler = scheduler;
+        this.sessionLengthSeconds = sessionLengthSeconds;
+        this.refreshMarginSeconds = refreshMarginSeconds;
+    }
+
+    public void addListener(Listener listener)
+    {
+        listeners.add(listener);
+    }
+
+    /**
+     * @param sessionStore the store sessions are saved in, so that they can be resumed.
+     */
+    public synchronized void setSessionStore(SessionStore sessionStore)
+    {
+        this.sessionStore = sessionStore;
+    }
+
+    /**
+     * This method carries on the session saved in the SessionStore, if it has not expired.
+     * @return returns true if a session was resumed.
+     */
+    public synchronized boolean resume()
+    {
+        if(sessionStore == null || getSession().isLoggedIn())
+        {
+            return getSession().isLoggedIn();
+        }
+
+        String savedUsername = sessionStore.get("username");
+        String savedAuthToken = sessionStore.get("authToken");
+        String savedTimestamp = sessionStore.get("timestamp");
+
+        if(savedUsername == null || savedAuthToken == null || savedTimestamp == null)
+        {
+            return false;
+        }
+
+        long savedTimestampSeconds = Long.parseLong(savedTimestamp);
+
+        if(TimeUnit.SECONDS.toMillis(savedTimestampSeconds + sessionLengthSeconds) <= System.currentTimeMillis())
+        {
+            sessionStore.clear();
+            return false;
+        }
+
+        startSession(savedUsername, savedAuthToken, savedTimestampSeconds);
+        return true;
+    }
+
+    /**
+     * This method publishes the session of a user who has just logged in and starts managing it.
+     * @param username the user that logged in.
+     * @param authToken the token the user logged in with.
+     * @param timestamp the session start in UNIX seconds, as sent to Login.php.
+     */
+    public synchronized void startSession(String username, String authToken, long timestamp)
+    {
+        SessionSnapshot session = new SessionSnapshot(username, authToken, timestamp);
+
+        sharedVariables.setSession(session);
+        save(session);
+        scheduleRenewal(renewAtMillis(session));
+    }
+
+    /**
+     * This method logs the user out, publishing SessionSnapshot.LOGGED_OUT, and stops renewing the session.
+     */
+    public synchronized void endSession()
+    {
+        if(renewal != null)
+        {
+            renewal.cancel(false);
+            renewal = null;
+        }
+
+        sharedVariables.setSession(SessionSnapshot.LOGGED_OUT);
+
+        if(sessionStore != null)
+        {
+            sessionStore.clear();
+        }
+    }
+
+    /**
+     * Gives a record queued before the session was renewed the authToken to be sent with.
+     * @param username the user the record was written for.
+     * @return returns the current authToken, or null if the user is not logged in.
+     */
+    @Override
+    public String getAuthToken(String username)
+    {
+        SessionSnapshot session = getSession();
+        return session.isLoggedIn() && session.getUsername().equals(username) ? session.getAuthToken() : null;
+    }
+
+    /**
+     * @return returns the session published through SharedVariables, SessionSnapshot.LOGGED_OUT if there is none.
+     */
+    public SessionSnapshot getSession()
+    {
+        return sharedVariables.getSession();
+    }
+
+    /**
+     * Getter method for the end of the session
+     * @return returns the time the session ends in UNIX milliseconds, or 0 if there is no session.
+     */
+    public long getExpiresAtMillis()
+    {
+        return expiresAtMillis(getSession());
+    }
+
+    /**
+     * @return returns the time left in the session, or 0 if there is no session or it has ended.
+     */
+    public long getRemainingMillis()
+    {
+        return Math.max(0, getExpiresAtMillis() - System.currentTimeMillis());
+    }
+
+    /**
+     * This method renews the session now, or joins the renewal already in flight.
+     * @return returns the RefreshSession.php call, or null if there is no session or the server cannot renew one.
+     */
+    public RequestCoalescer.Call<Boolean> refresh()
+    {
+        final SessionSnapshot session = getSession();
+
+        if(!session.isLoggedIn() || !refreshSupported)
+        {
+            return null;
+        }
+
+        final RequestCoalescer.Call<Boolean> call = msdsApi.refreshSession().call(session.getUsername(), session.getAuthToken(),
+                UUID.randomUUID().toString(), TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis()));
+
+        call.subscribe(new RequestCoalescer.Callback<Boolean>()
+        {
+            @Override
+            public void onSuccess(Boolean refreshSuccessful)
+            {
+                // A refused renewal leaves the session to end at its expiry.
+                if(refreshSuccessful)
+                {
+                    renewed(call.getParams());
+                }
+            }
+
+            @Override
+            public void onFailure(Exception error)
+            {
+                refreshFailed(session, error);
+            }
+        });
+
+        return call;
+    }
+
+    /**
+     * This method renews the session now if the time to renew it has passed, as when the device
+     * slept through the renewal timer.
+     * @return returns the RefreshSession.php call, or null if no renewal is due.
+     */
+    public RequestCoalescer.Call<Boolean> checkRenewal()
+    {
+        SessionSnapshot session = getSession();
+
+        if(!session.isLoggedIn() || System.currentTimeMillis() < renewAtMillis(session))
+        {
+            return null;
+        }
+
+        return refresh();
+    }
+
+    /**
+     * This method gives a call refused with 401 the authToken to send it again with.
+     * @param username the user the call was made for.
+     * @param staleAuthToken the authToken the server refused.
+     * @param callback given the current authToken once the session has been renewed.
+     */
+    @Override
+    public void renew(String username, final String staleAuthToken, final RequestCoalescer.Callback<String> callback)
+    {
+        SessionSnapshot session = getSession();
+
+        if(!session.isLoggedIn() || !session.getUsername().equals(username))
+        {
+            callback.onFailure(new IOException("No session for " + username));
+            return;
+        }
+
+        if(!staleAuthToken.equals(session.getAuthToken()))
+        {
+            callback.onSuccess(session.getAuthToken());
+            return;
+        }
+
+        RequestCoalescer.Call<Boolean> call = refresh();
+
+        if(call == null)
+        {
+            callback.onFailure(new IOException("The session cannot be renewed"));
+            return;
+        }
+
+        // Subscribed after the renewal itself, so the session has its new authToken by the time this is called.
+        call.subscribe(new RequestCoalescer.Callback<Boolean>()
+        {
+            @Override
+            public void onSuccess(Boolean refreshSuccessful)
+            {
+                String renewedAuthToken = getSession().getAuthToken();
+
+                if(renewedAuthToken != null && !staleAuthToken.equals(renewedAuthToken))
+                {
+                    callback.onSuccess(renewedAuthToken);
+                }
+                else
+                {
+                    callback.onFailure(new IOException("The session was not renewed"));
+                }
+            }
+
+            @Override
+            public void onFailure(Exception error)
+            {
+                callback.onFailure(error);
+            }
+        });
+    }
+
+    /**
+     * Moves the session to the authToken a RefreshSession.php call sent. Every subscriber of
+     * the call gets here, so only the first, whose compare-and-set finds the session still on the
+     * old authToken, changes it.
+     */
+    private void renewed(Map<String, String> sent)
+    {
+        String oldAuthToken = sent.get("authToken");
+        String newAuthToken = sent.get("newAuthToken");
+        long newTimestamp = Long.parseLong(sent.get("timestamp"));
+
+        synchronized(this)
+        {
+            if(!sharedVariables.renewSession(oldAuthToken, newAuthToken, newTimestamp))
+            {
+                return;
+            }
+
+            SessionSnapshot session = getSession();
+            save(session);
+            scheduleRenewal(renewAtMillis(session));
+        }
+
+        for(Listener listener : listeners)
+        {
+            listener.onSessionRenewed(sent.get("username"), oldAuthToken, newAuthToken, newTimestamp);
+        }
+    }
+
+    /**
+     * Stops renewing if the server has no RefreshSession.php, and otherwise tries again later
+     * if the server never answered and the session has not ended.
+     */
+    private void refreshFailed(SessionSnapshot session, Exception error)
+    {
+        if(error instanceof ApiException && ((ApiException) error).isRejected())
+        {
+            int statusCode = ((ApiException) error).getStatusCode();
+
+            if(statusCode == 404 || statusCode == 405)
+            {
+                refreshSupported = false;
+            }
+
+            return;
+        }
+
+        synchronized(this)
+        {
+            long retryAtMillis = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(RETRY_SECONDS);
+
+            if(session == getSession() && retryAtMillis < expiresAtMillis(session))
+            {
+                scheduleRenewal(retryAtMillis);
+            }
+        }
+    }
+
+    private long expiresAtMillis(SessionSnapshot session)
+    {
+        return session.isLoggedIn() ? TimeUnit.SECONDS.toMillis(session.getTimestamp() + sessionLengthSeconds) : 0;
+    }
+
+    private long renewAtMillis(SessionSnapshot session)
+    {
+        return TimeUnit.SECONDS.toMillis(session.getTimestamp() + sessionLengthSeconds - refreshMarginSeconds);
+    }
+
+    /**
+     * Saves the session in the SessionStore, which writes it in the background.
+     */
+    private void save(SessionSnapshot session)
+    {
+        if(sessionStore == null)
+        {
+            return;
+        }
+
+        LinkedHashMap<String, String> saved = new LinkedHashMap<>();
+        saved.put("username", session.getUsername());
+        saved.put("authToken", session.getAuthToken());
+        saved.put("timestamp", String.valueOf(session.getTimestamp()));
+        sessionStore.putAll(saved);
+    }
+
+    /**
+     * Replaces any renewal already timed with one at the given time, or straight away if that has passed.
+     */
+    private void scheduleRenewal(long atMillis)
+    {
+        if(renewal != null)
+        {
+            renewal.cancel(false);
+        }
+
+        renewal = scheduler.schedule(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                refresh();
+            }
+        }, Math.max(0, atMillis - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+    }
+}
@@ -0,0 +1,92 @@
+/**
+ * The SessionSnapshot class is the logged in user's session at one moment: the username, the
+ * authToken and the timestamp the session started at.
+ *
+ * A snapshot never changes. Logging in, renewing the session and logging out each publish a
+ * new one through SharedVariables, so a page or thread holding a snapshot always sees a
+ * username and authToken that belong together.
+ *
+ * This class has no Android dependencies so that it can be tested on the development machine.
+ *
+ * @author  J.Woodhouse, D.B.Dawson, I.J.Atienza, M.J.T.Makunda
+ * @version 1.00
+ */
+
+package msds.group.project.msds;
+
+public final class SessionSnapshot
+{
+    /**
+     * The snapshot published while nobody is logged in.
+     */
+    public static final SessionSnapshot LOGGED_OUT = new SessionSnapshot(null, null, 0);
+
+    private final String username;
+    private final String authToken;
+    private final long timestamp;
+
+    /**
+     * @param username the logged in user.
+     * @param authToken the token the session is known by.
+     * @param timestamp the session start in UNIX seconds.
+     */
+    public SessionSnapshot(String username, String authToken, long timestamp)
+    {
+        this.username = username;
+        this.authToken = authToken;
+        this.timestamp = timestamp;
+    }
+
+    /**
+     * This method gives the same session under the authToken it was renewed with.
+     * @param newAuthToken the token the session is known by now.
+     * @param newTimestamp the new session start in UNIX seconds.
+     * @return returns a new snapshot for the same user.
+     */
+    public SessionSnapshot renewed(String newAuthToken, long newTimestamp)
+    {
+        return new SessionSnapshot(username, newAuthToken, newTimestamp);
+    }
+
+    /**
+     * @return true if a user is logged in
+     */
+    public boolean isLoggedIn()
+    {
+        return username != null && authToken != null;
+    }
+
+    /**
+     * Getter method for the username variable
+     * @return returns the username, or null if nobody is logged in.
+     */
+    public String getUsername()
+    {
+        return username;
+    }
+
+    /**
+     * Getter method for the authToken variable
+     * @return returns the authToken, or null if nobody is logged in.
+     */
+    public String getAuthToken()
+    {
+        return authToken;
+    }
+
+    /**
+     * Getter method for the timestamp variable
+     * @return returns the session start in UNIX seconds, or 0 if nobody is logged in.
+     */
+    public long getTimestamp()
+    {
+        return timestamp;
+    }
+
+    @Override
+    public String toString()
+    {
+        // The authToken is left out, so a snapshot can be logged.
+        return "SessionSnapshot{username=" + username + ", timestamp=" + timestamp + "}";
+    }
+}
@@ -0,0 +1,284 @@
+/**
+ * The SessionStore class keeps a few small values, such as the logged in user's session, in an
+ * encrypted file, so that a session outlives the process being killed.
+ *
+ * The file is read once, the first time a value is asked for, by mapping it into memory and
+ * decrypting it in one step, and the values are kept in memory from then on. Changes are made
+ * in memory at once and written on the writer executor, with any changes made before the write
+ * starts written together. The file is written to a temporary file first so a failed write
+ * never corrupts the old values.
+ *
+ * The file holds:
+ *
+ * format : FILE_FORMAT.
+ * iv : the length of the GCM nonce, then the nonce.
+ * values : the rest of the file, encrypted with AES-GCM, holding the number of values and then each name and value.
+ *
+ * GCM authenticates the values, so a file that has been changed, or was written with another
+ * key, is thrown away and the store starts empty. On Android the key is held by the Android
+ * Keystore and never leaves it.
+ *
+ * This class has no Android dependencies so that it can be tested on the development machine.
+ *
+ * @author  J.Woodhouse, D.B.Dawson, I.J.Atienza, M.J.T.Makunda
+ * @version 1.00
+ */
+
+package msds.group.project.msds;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.GeneralSecurityException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+
+public class SessionStore
+{
+    private static final int FILE_FORMAT = 1;
+    private static final String TRANSFORMATION = "AES/GCM/NoPadding";
+    private static final int TAG_BITS = 128;
+    private static final int MAX_IV_LENGTH = 32;
+
+    private final File file;
+    private final SecretKey key;
+    private final Executor writer;
+
+    private Map<String, String> values;
+    private boolean writeScheduled;
+
+    /**
+     * @param file the file the values are kept in.
+     * @param key the AES key the file is encrypted with.
+     * @param writer the executor the file is written on.
+     */
+    public SessionStore(File file, SecretKey key, Executor writer)
+    {
+        this.file = file;
+        this.key = key;
+        this.writer = writer;
+    }
+
+    /**
+     * This method reads the file if it has not been read yet. Calling it on a background thread
+     * at startup means the first get does not wait for the disk.
+     */
+    public synchronized void load()
+    {
+        if(values != null)
+        {
+            return;
+        }
+
+        values = new LinkedHashMap<>();
+
+        if(!file.isFile())
+        {
+            return;
+        }
+
+        try
+        {
+            values = read();
+        }
+        catch (IOException | GeneralSecurityException ex)
+        {
+            // A file that cannot be read or has been changed is no use, so it is not kept either.
+            file.delete();
+        }
+    }
+
+    /**
+     * @param name the name of the value.
+     * @return returns the value, or null if there is none.
+     */
+    public synchronized String get(String name)
+    {
+        load();
+        return values.get(name);
+    }
+
+    /**
+     * This method sets several values at once, and writes them to the file in the background.
+     * @param changes the values to set, a null value removes the value.
+     */
+    public synchronized void putAll(Map<String, String> changes)
+    {
+        load();
+
+        for(Map.Entry<String, String> change : changes.entrySet())
+        {
+            if(change.getValue() == null)
+            {
+                values.remove(change.getKey());
+            }
+            else
+            {
+                values.put(change.getKey(), change.getValue());
+            }
+        }
+
+        scheduleWrite();
+    }
+
+    /**
+     * This method removes every value, and deletes the file in the background.
+     */
+    public synchronized void clear()
+    {
+        load();
+        values.clear();
+        scheduleWrite();
+    }
+
+    private void scheduleWrite()
+    {
+        if(writeScheduled)
+        {
+            return;
+        }
+
+        writeScheduled = true;
+        writer.execute(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                write();
+            }
+        });
+    }
+
+    /**
+     * Writes the values as they are when the write starts, so every change made while it was waiting is included.
+     */
+    private void write()
+    {
+        Map<String, String> written;
+
+        synchronized(this)
+        {
+            writeScheduled = false;
+            written = new LinkedHashMap<>(values);
+        }
+
+        try
+        {
+            if(written.isEmpty())
+            {
+                file.delete();
+                return;
+            }
+
+            File temporaryFile = new File(file.getPath() + ".tmp");
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporaryFile)));
+
+            try
+            {
+                Cipher cipher = Cipher.getInstance(TRANSFORMATION);
+                cipher.init(Cipher.ENCRYPT_MODE, key);
+                byte[] iv = cipher.getIV();
+
+                out.writeInt(FILE_FORMAT);
+                out.writeInt(iv.length);
+                out.write(iv);
+                out.write(cipher.doFinal(encode(written)));
+            }
+            finally
+            {
+                out.close();
+            }
+
+            if(!temporaryFile.renameTo(file))
+            {
+                temporaryFile.delete();
+            }
+        }
+        catch (IOException | GeneralSecurityException ex)
+        {
+            // The values are still in memory, the session is only lost if the process is killed too.
+        }
+    }
+
+    private Map<String, String> read() throws IOException, GeneralSecurityException
+    {
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+
+        try
+        {
+            FileChannel channel = randomAccessFile.getChannel();
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+            if(mapped.remaining() < 8 || mapped.getInt() != FILE_FORMAT)
+            {
+                throw new IOException("Unknown session file format");
+            }
+
+            int ivLength = mapped.getInt();
+
+            if(ivLength <= 0 || ivLength > MAX_IV_LENGTH || ivLength > mapped.remaining())
+            {
+                throw new IOException("Corrupt session file");
+            }
+
+            byte[] iv = new byte[ivLength];
+            mapped.get(iv);
+
+            Cipher cipher = Cipher.getInstance(TRANSFORMATION);
+            cipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(TAG_BITS, iv));
+
+            ByteBuffer plain = ByteBuffer.allocate(cipher.getOutputSize(mapped.remaining()));
+            cipher.doFinal(mapped, plain);
+            return decode(plain.array(), plain.position());
+        }
+        finally
+        {
+            randomAccessFile.close();
+        }
+    }
+
+    private static byte[] encode(Map<String, String> values) throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+
+        out.writeInt(values.size());
+
+        for(Map.Entry<String, String> value : values.entrySet())
+        {
+            out.writeUTF(value.getKey());
+            out.writeUTF(value.getValue());
+        }
+
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    private static Map<String, String> decode(byte[] plain, int length) throws IOException
+    {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(plain, 0, length));
+        Map<String, String> values = new LinkedHashMap<>();
+        int count = in.readInt();
+
+        for(int i = 0; i < count; i++)
+        {
+            values.put(in.readUTF(), in.readUTF());
+        }
+
+        return values;
+    }
+}
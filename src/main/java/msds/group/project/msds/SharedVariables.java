@@ -2,18 +2,39 @@
  * This class holds variables that need to be accessed by multiple App pages.
  * Uses a static instance to ensure that each Class that calls it receives the same object.
  *
+ * The session is held as an immutable SessionSnapshot. Reading it takes no lock and always
+ * gives a username and authToken that belong together, whichever thread last changed it.
+ * Components that live longer than a session, such as a Logger, read it each time they need
+ * it rather than keeping a copy, so they always use the current credentials. The SessionManager
+ * is the only component that changes it.
+ *
+ * Listeners are told about every change on the thread that made it.
+ *
+ * This class has no Android dependencies so that it can be tested on the development machine.
+ *
  * @author  J.Woodhouse, D.B.Dawson, I.J.Atienza, M.J.T.Makunda
- * @version 1.03
+ * @version 1.05
  */
 package msds.group.project.msds;
 
-import android.app.Application;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicReference;
 
-public class SharedVariables extends Application {
+public class SharedVariables
+{
+    /**
+     * The Listener interface is told when the session changes.
+     */
+    public interface Listener
+    {
+        /**
+         * @param session the session now published, SessionSnapshot.LOGGED_OUT after a logout.
+         */
+        void onSessionChanged(SessionSnapshot session);
+    }
 
-    private String token;
-    private String username;
-    private Long sessionTimeStamp;
+    private final AtomicReference<SessionSnapshot> session = new AtomicReference<>(SessionSnapshot.LOGGED_OUT);
+    private final CopyOnWriteArrayList<Listener> listeners = new CopyOnWriteArrayList<>();
 
     /**
      * This line ensures that each class that creates an instance of SharedVariables is able to reference the same SharedVariables object.
@@ -30,56 +51,70 @@ public class SharedVariables extends Application {
     }
 
     /**
-     * Setter method for the token field.
-     * @param token string to be set as the token field.
+     * Getter method for the session field.
+     * @return returns the current session, SessionSnapshot.LOGGED_OUT if nobody is logged in.
      */
-    public void setToken(String token)
+    public SessionSnapshot getSession()
     {
-        this.token = token;
+        return session.get();
     }
 
     /**
-     * Getter method for the token field.
-     * @return returns the token as a String.
+     * Setter method for the session field, used when a user logs in or out.
+     * @param session the new session, SessionSnapshot.LOGGED_OUT for a logout.
      */
-    public String getToken()
+    public void setSession(SessionSnapshot session)
     {
-        return token;
+        if(this.session.getAndSet(session) != session)
+        {
+            notifyListeners(session);
+        }
     }
 
     /**
-     * Setter method for the username field.
-     * @param username string to set as the username field.
+     * This method moves the session to the authToken it was renewed with, unless it has changed
+     * since, for example because the user has logged out.
+     * @param authToken the token the renewed session had.
+     * @param newAuthToken the token the session has now.
+     * @param timestamp the new session start in UNIX seconds.
+     * @return returns true if the session was renewed.
      */
-    public void setUsername (String username)
+    public boolean renewSession(String authToken, String newAuthToken, long timestamp)
     {
-        this.username = username;
+        while(true)
+        {
+            SessionSnapshot current = session.get();
+
+            if(!current.isLoggedIn() || !current.getAuthToken().equals(authToken))
+            {
+                return false;
+            }
+
+            SessionSnapshot renewed = current.renewed(newAuthToken, timestamp);
+
+            if(session.compareAndSet(current, renewed))
+            {
+                notifyListeners(renewed);
+                return true;
+            }
+        }
     }
 
-    /**
-     * Getter method for the username field.
-     * @return returns the username as a String.
-     */
-    public String getUsername()
+    public void addListener(Listener listener)
     {
-        return username;
+        listeners.add(listener);
     }
 
-    /**
-     * Setter method for the SessionTimeStamp field.
-     * @param sessionTimeStamp Long to be set as the sessionTimeStamp field.
-     */
-    public void setSessionTimeStamp(Long sessionTimeStamp)
+    public void removeListener(Listener listener)
     {
-        this.sessionTimeStamp = sessionTimeStamp;
+        listeners.remove(listener);
     }
 
-    /**
-     * Getter method for the SessionTimeStamp field.
-     * @return returns the SessionTimeStamp as a Long.
-     */
-    public Long getSessionTimeStamp()
+    private void notifyListeners(SessionSnapshot session)
     {
-        return sessionTimeStamp;
+        for(Listener listener : listeners)
+        {
+            listener.onSessionChanged(session);
+        }
     }
 }
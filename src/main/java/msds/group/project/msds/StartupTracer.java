@@ -0,0 +1,235 @@
+/**
+ * The StartupTracer class measures how long each App page takes to start.
+ *
+ * For every Activity it records two times:
+ *
+ * firstFrame : from the start until the Activity's first frame is drawn.
+ * interactive : from the start until the Activity's content is shown. Activities that load
+ *               their content in the background implement ReportsInteractive and call
+ *               reportInteractive, for every other Activity it is the same as firstFrame.
+ *
+ * The first Activity of a process is a cold start and is timed from when the process started.
+ * Any later Activity is a warm start, timed from its onCreate.
+ *
+ * Tracing is off unless the trace file exists. It is switched on with
+ * adb shell run-as msds.group.project.msds touch files/startup-trace.csv
+ * after which one CSV line is appended per Activity start. The file is only checked and
+ * written on the background executor, so tracing costs the main thread nothing.
+ *
+ * @author  J.Woodhouse, D.B.Dawson, I.J.Atienza, M.J.T.Makunda
+ * @version 1.00
+ */
+
+package msds.group.project.msds;
+
+import android.app.Activity;
+import android.app.Application;
+import android.os.Build;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+import android.view.View;
+import android.view.ViewTreeObserver;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.WeakHashMap;
+import java.util.concurrent.Executor;
+
+public class StartupTracer implements Application.ActivityLifecycleCallbacks
+{
+    public static final String TRACE_FILE = "startup-trace.csv";
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /**
+     * The ReportsInteractive interface marks an Activity that calls reportInteractive once its
+     * content has been loaded.
+     */
+    public interface ReportsInteractive
+    {
+    }
+
+    private final File traceFile;
+    private final Executor writeExecutor;
+    private final long processStartMillis;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final WeakHashMap<Activity, Trace> traces = new WeakHashMap<>();
+    private boolean coldStartTraced;
+
+    /**
+     * @param traceFile the file lines are appended to, tracing is off while it does not exist.
+     * @param writeExecutor the executor the file is written on.
+     * @param processStartMillis the uptimeMillis when the process started.
+     */
+    public StartupTracer(File traceFile, Executor writeExecutor, long processStartMillis)
+    {
+        this.traceFile = traceFile;
+        this.writeExecutor = writeExecutor;
+        this.processStartMillis = processStartMillis;
+    }
+
+    @Override
+    public void onActivityCreated(final Activity activity, Bundle savedInstanceState)
+    {
+        final Trace trace = new Trace(activity.getClass().getSimpleName(), !coldStartTraced,
+                coldStartTraced ? SystemClock.uptimeMillis() : processStartMillis);
+        coldStartTraced = true;
+        traces.put(activity, trace);
+
+        final View decorView = activity.getWindow().getDecorView();
+        decorView.getViewTreeObserver().addOnDrawListener(new ViewTreeObserver.OnDrawListener()
+        {
+            @Override
+            public void onDraw()
+            {
+                if(trace.firstFrameMillis != 0)
+                {
+                    return;
+                }
+
+                trace.firstFrameMillis = SystemClock.uptimeMillis() - trace.startMillis;
+
+                final ViewTreeObserver.OnDrawListener listener = this;
+
+                // A draw listener cannot be removed while the tree is being drawn.
+                mainHandler.post(new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        decorView.getViewTreeObserver().removeOnDrawListener(listener);
+                    }
+                });
+
+                if(!(activity instanceof ReportsInteractive))
+                {
+                    trace.interactiveMillis = trace.firstFrameMillis;
+                }
+
+                writeIfComplete(trace);
+            }
+        });
+    }
+
+    /**
+     * This method is called by a ReportsInteractive Activity once its content is shown.
+     * Only the first call for each Activity is recorded. It must be called on the main thread.
+     * @param activity the Activity that is now interactive.
+     */
+    public void reportInteractive(Activity activity)
+    {
+        Trace trace = traces.get(activity);
+
+        if(trace == null || trace.interactiveMillis != 0)
+        {
+            return;
+        }
+
+        trace.interactiveMillis = Math.max(1, SystemClock.uptimeMillis() - trace.startMillis);
+
+        if(Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT)
+        {
+            activity.reportFullyDrawn();
+        }
+
+        writeIfComplete(trace);
+    }
+
+    private void writeIfComplete(Trace trace)
+    {
+        if(trace.firstFrameMillis == 0 || trace.interactiveMillis == 0 || trace.written)
+        {
+            return;
+        }
+
+        trace.written = true;
+
+        final String line = System.currentTimeMillis() + "," + trace.activityName + "," + (trace.coldStart ? "cold" : "warm")
+                + "," + trace.firstFrameMillis + "," + Math.max(trace.firstFrameMillis, trace.interactiveMillis) + "\n";
+
+        writeExecutor.execute(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                if(!traceFile.exists())
+                {
+                    return;
+                }
+
+                try
+                {
+                    FileOutputStream out = new FileOutputStream(traceFile, true);
+                    try
+                    {
+                        out.write(line.getBytes(UTF_8));
+                    }
+                    finally
+                    {
+                        out.close();
+                    }
+                }
+                catch (IOException ex)
+                {
+                    Log.e("StartupTracer", "Unable to write startup trace", ex);
+                }
+            }
+        });
+    }
+
+    @Override
+    public void onActivityStarted(Activity activity)
+    {
+    }
+
+    @Override
+    public void onActivityResumed(Activity activity)
+    {
+    }
+
+    @Override
+    public void onActivityPaused(Activity activity)
+    {
+    }
+
+    @Override
+    public void onActivityStopped(Activity activity)
+    {
+    }
+
+    @Override
+    public void onActivitySaveInstanceState(Activity activity, Bundle outState)
+    {
+    }
+
+    @Override
+    public void onActivityDestroyed(Activity activity)
+    {
+        traces.remove(activity);
+    }
+
+    /**
+     * The Trace class holds the times of one Activity start, all on the main thread.
+     */
+    private static class Trace
+    {
+        private final String activityName;
+        private final boolean coldStart;
+        private final long startMillis;
+        private long firstFrameMillis;
+        private long interactiveMillis;
+        private boolean written;
+
+        private Trace(String activityName, boolean coldStart, long startMillis)
+        {
+            this.activityName = activityName;
+            this.coldStart = coldStart;
+            this.startMillis = startMillis;
+        }
+    }
+}
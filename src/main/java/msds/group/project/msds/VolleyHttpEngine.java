@@ -0,0 +1,147 @@
+/**
+ * The VolleyHttpEngine class is the HttpEngine used by the App, sending each request
+ * through the shared NetworkClient.
+ *
+ * Successful response bodies are handed to the Handler on Volley's network thread, so the
+ * MsdsApi parses them there rather than on the main thread.
+ *
+ * Volley does not expose the connect and first byte times of a request, so they are
+ * reported as not measured.
+ *
+ * Volley sends requests with Android's HttpURLConnection, which asks for gzip responses and
+ * decompresses them without being told to, so bodies arrive decompressed.
+ *
+ * @author  J.Woodhouse, D.B.Dawson, I.J.Atienza, M.J.T.Makunda
+ * @version 1.03
+ */
+
+package msds.group.project.msds;
+
+import com.android.volley.NetworkResponse;
+import com.android.volley.Request;
+import com.android.volley.Response;
+import com.android.volley.VolleyError;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+public class VolleyHttpEngine implements HttpEngine
+{
+    private final NetworkClient networkClient;
+
+    public VolleyHttpEngine(NetworkClient networkClient)
+    {
+        this.networkClient = networkClient;
+    }
+
+    @Override
+    public Pending post(String url, String contentType, Map<String, String> headers, byte[] body, Handler handler)
+    {
+        final BodyRequest request = new BodyRequest(url, contentType, headers, body, handler);
+
+        networkClient.add(request);
+
+        return new Pending()
+        {
+            @Override
+            public void cancel()
+            {
+                request.cancel();
+            }
+        };
+    }
+
+    /**
+     * The BodyRequest class is a POST request that passes the raw response to a Handler.
+     */
+    private static class BodyRequest extends Request<Void>
+    {
+        private final String contentType;
+        private final Map<String, String> headers;
+        private final byte[] body;
+        private final Handler handler;
+
+        private BodyRequest(String url, String contentType, Map<String, String> headers, byte[] body, final Handler handler)
+        {
+            super(Method.POST, url, new Response.ErrorListener()
+            {
+                @Override
+                public void onErrorResponse(VolleyError error)
+                {
+                    if(error.networkResponse != null)
+                    {
+                        handler.onResponse(error.networkResponse.statusCode, lowerCase(error.networkResponse.headers), error.networkResponse.data,
+                                ApiMetrics.NOT_MEASURED, ApiMetrics.NOT_MEASURED);
+                    }
+                    else
+                    {
+                        handler.onFailure(new IOException(error.toString(), error));
+                    }
+                }
+            });
+
+            this.contentType = contentType;
+            this.headers = headers;
+            this.body = body;
+            this.handler = handler;
+        }
+
+        @Override
+        public String getBodyContentType()
+        {
+            return contentType;
+        }
+
+        @Override
+        public byte[] getBody()
+        {
+            return body;
+        }
+
+        @Override
+        public Map<String, String> getHeaders()
+        {
+            return headers;
+        }
+
+        @Override
+        protected Response<Void> parseNetworkResponse(NetworkResponse response)
+        {
+            if(!isCanceled())
+            {
+                handler.onResponse(response.statusCode, lowerCase(response.headers), response.data,
+                        ApiMetrics.NOT_MEASURED, ApiMetrics.NOT_MEASURED);
+            }
+
+            return Response.success(null, null);
+        }
+
+        @Override
+        protected void deliverResponse(Void response)
+        {
+        }
+    }
+
+    /**
+     * Copies Volley's response headers with their names in lower case, as the Handler expects.
+     */
+    private static Map<String, String> lowerCase(Map<String, String> headers)
+    {
+        if(headers == null)
+        {
+            return Collections.emptyMap();
+        }
+
+        HashMap<String, String> lowerCased = new HashMap<>();
+
+        for(Map.Entry<String, String> header : headers.entrySet())
+        {
+            lowerCased.put(header.getKey().toLowerCase(Locale.US), header.getValue());
+        }
+
+        return lowerCased;
+    }
+}
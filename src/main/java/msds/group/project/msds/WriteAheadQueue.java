@@ -0,0 +1,861 @@
+/**
+ * The WriteAheadQueue class makes sure that logs and inventory requests are not lost
+ * when the network is unavailable.
+ *
+ * Every payload is appended to a memory-mapped segment file before it is sent. If the
+ * send fails the record stays in the file and a background drainer replays it with
+ * exponential backoff, sending the same Idempotency-Key each time so that the server
+ * can ignore duplicates. The key is built from the install id and the record's segment
+ * number and offset. Segment numbers are kept in a sequence file next to the install id and
+ * never reused, even once every segment has been deleted, so no two records share a key. Records still in the file when the App is restarted are
+ * replayed in the same way. A segment file is deleted once every record in it has
+ * been acknowledged.
+ *
+ * Record layout within a segment:
+ *
+ * length : int, total record length including this header, written last so that a torn write reads as 0.
+ * status : byte, IN_FLIGHT, PENDING or ACKED.
+ * kind : byte, identifies the endpoint the payload belongs to.
+ * payload : UTF-8 bytes.
+ *
+ * The append path encodes straight into the mapped buffer and does not allocate,
+ * so it is safe to call from the UI thread. Payloads already written as UTF-8, such as the
+ * batches of the LogBatcher, are copied in and sent as they are.
+ *
+ * A listener given to enqueue is kept while its record waits for the drainer, so it also hears
+ * whether the record was finally delivered or rejected. Listeners are only held in memory, a record
+ * replayed after a restart has none.
+ *
+ * A record refused with 401 is set aside for the rest of the drainer's pass through the queue, so
+ * the records behind it are still sent while its session cannot be renewed, as when its user has
+ * logged out. Records set aside are tried again after the backoff at the end of the pass.
+ *
+ * The ids of the PENDING records are kept in memory in order, and rebuilt from the segments when
+ * the queue is recovered, so the drainer finds the next record without reading the segments.
+ * A record id holds its segment number in the high 32 bits and its offset in the low 32 bits.
+ *
+ * This class has no Android dependencies so that it can be tested on the development machine.
+ *
+ * @author  J.Woodhouse, D.B.Dawson, I.J.Atienza, M.J.T.Makunda
+ * @version 1.05
+ */
+
+package msds.group.project.msds;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+public class WriteAheadQueue
+{
+    public static final int KIND_LOG_BATCH = 1;
+    public static final int KIND_NEW_REQUEST = 2;
+
+    /**
+     * The Sender interface delivers a single record to the server.
+     */
+    public interface Sender
+    {
+        /**
+         * Sends a record, the result must be reported through the callback exactly once.
+         * @param kind the kind of record, used to pick the endpoint.
+         * @param idempotencyKey key that is identical every time the same record is sent.
+         * @param payload the UTF-8 record body, which the Sender must not change.
+         * @param callback callback to report the result to.
+         */
+        void send(int kind, String idempotencyKey, byte[] payload, Callback callback);
+    }
+
+    /**
+     * The Callback interface reports the result of sending a record.
+     */
+    public interface Callback
+    {
+        /**
+         * Called when the server accepted the record.
+         * @param response the body returned by the server.
+         */
+        void onDelivered(String response);
+
+        /**
+         * Called when the record could not be delivered.
+         * @param error the reason the send failed.
+         * @param retryable true if the record should be sent again later, false if the server rejected it.
+         */
+        void onFailed(Exception error, boolean retryable);
+    }
+
+    static final byte STATUS_IN_FLIGHT = 1;
+    static final byte STATUS_PENDING = 2;
+    static final byte STATUS_ACKED = 3;
+
+    private static final int HEADER_SIZE = 6;
+    private static final int DEFAULT_SEGMENT_SIZE = 256 * 1024;
+    private static final long BASE_BACKOFF_MILLIS = 2000;
+    private static final long MAX_BACKOFF_MILLIS = 5 * 60 * 1000;
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".wal";
+    private static final String INSTALL_ID_FILE = "install-id";
+    private static final String SEGMENT_SEQUENCE_FILE = "segment-sequence";
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final File directory;
+    private final Sender sender;
+    private final ScheduledExecutorService drainExecutor;
+    private final int segmentSize;
+    private final String installId;
+    private final Random jitter = new Random();
+
+    private final TreeMap<Integer, Segment> segments = new TreeMap<>();
+    private int nextSegmentNumber;
+    private final HashMap<Long, Callback> drainListeners = new HashMap<>();
+    private final TreeSet<Long> pendingRecords = new TreeSet<>();
+    private Segment activeSegment;
+
+    private boolean draining;
+    private int failedAttempts;
+    private long drainCursor = -1;
+
+    private final Runnable drainTask = new Runnable()
+    {
+        @Override
+        public void run()
+        {
+            drainNext();
+        }
+    };
+
+    public WriteAheadQueue(File directory, Sender sender, ScheduledExecutorService drainExecutor) throws IOException
+    {
+        this(directory, sender, drainExecutor, DEFAULT_SEGMENT_SIZE);
+    }
+
+    WriteAheadQueue(File directory, Sender sender, ScheduledExecutorService drainExecutor, int segmentSize) throws IOException
+    {
+        this.directory = directory;
+        this.sender = sender;
+        this.drainExecutor = drainExecutor;
+        this.segmentSize = segmentSize;
+
+        if(!directory.isDirectory() && !directory.mkdirs())
+        {
+            throw new IOException("Unable to create " + directory);
+        }
+
+        installId = readInstallId();
+        nextSegmentNumber = readSegmentSequence();
+        recover();
+    }
+
+    /**
+     * This method writes a payload to the queue and sends it straight away.
+     *
+     * If the send fails with a retryable error the record is handed to the background drainer,
+     * otherwise it is acknowledged and removed. The listener is told about the first attempt, and
+     * after a retryable failure once more when the drainer delivers the record or the server rejects it.
+     *
+     * @param kind the kind of record, KIND_LOG_BATCH or KIND_NEW_REQUEST.
+     * @param payload the body to send.
+     * @param listener callback for the first attempt and the final result, may be null.
+     * @throws IOException if the record could not be written to disk.
+     */
+    public void enqueue(int kind, String payload, Callback listener) throws IOException
+    {
+        long recordId = append(kind, payload);
+        send(kind, recordId, readPayload(recordId), listener);
+    }
+
+    /**
+     * This method writes a payload that is already UTF-8 to the queue and sends it straight away, as enqueue does.
+     * @param kind the kind of record, KIND_LOG_BATCH or KIND_NEW_REQUEST.
+     * @param payload the UTF-8 body to send, which must not be changed afterwards.
+     * @param listener callback for the first attempt and the final result, may be null.
+     * @throws IOException if the record could not be written to disk.
+     */
+    public void enqueue(int kind, byte[] payload, Callback listener) throws IOException
+    {
+        send(kind, append(kind, payload), payload, listener);
+    }
+
+    private void send(int kind, final long recordId, byte[] payload, final Callback listener)
+    {
+        sender.send(kind, idempotencyKey(recordId), payload, new Callback()
+        {
+            @Override
+            public void onDelivered(String response)
+            {
+                ack(recordId);
+
+                if(listener != null)
+                {
+                    listener.onDelivered(response);
+                }
+            }
+
+            @Override
+            public void onFailed(Exception error, boolean retryable)
+            {
+                if(retryable)
+                {
+                    release(recordId, listener);
+                }
+                else
+                {
+                    ack(recordId);
+                }
+
+                if(listener != null)
+                {
+                    listener.onFailed(error, retryable);
+                }
+            }
+        });
+    }
+
+    /**
+     * This method appends a record in the IN_FLIGHT state, nothing is sent.
+     * @param kind the kind of record.
+     * @param payload the body to store.
+     * @return returns the id of the record, which encodes its segment and offset.
+     * @throws IOException if a new segment file could not be created.
+     */
+    synchronized long append(int kind, String payload) throws IOException
+    {
+        int recordLength = HEADER_SIZE + utf8Length(payload);
+        int offset = reserve(kind, recordLength);
+
+        writeUtf8(activeSegment.buffer, offset + HEADER_SIZE, payload);
+        return commit(offset, recordLength);
+    }
+
+    /**
+     * This method appends a record that is already UTF-8 in the IN_FLIGHT state, nothing is sent.
+     * @param kind the kind of record.
+     * @param payload the UTF-8 body to store.
+     * @return returns the id of the record, which encodes its segment and offset.
+     * @throws IOException if a new segment file could not be created.
+     */
+    synchronized long append(int kind, byte[] payload) throws IOException
+    {
+        int recordLength = HEADER_SIZE + payload.length;
+        int offset = reserve(kind, recordLength);
+        MappedByteBuffer buffer = activeSegment.buffer;
+
+        for(int i = 0; i < payload.length; i++)
+        {
+            buffer.put(offset + HEADER_SIZE + i, payload[i]);
+        }
+
+        return commit(offset, recordLength);
+    }
+
+    /**
+     * Makes room for a record in the active segment and writes its status and kind.
+     * Must be called while holding the lock.
+     * @return returns the offset of the record.
+     */
+    private int reserve(int kind, int recordLength) throws IOException
+    {
+        if(activeSegment == null || activeSegment.writePosition + recordLength > activeSegment.capacity)
+        {
+            rollSegment(recordLength);
+        }
+
+        int offset = activeSegment.writePosition;
+
+        activeSegment.buffer.put(offset + 4, STATUS_IN_FLIGHT);
+        activeSegment.buffer.put(offset + 5, (byte) kind);
+        return offset;
+    }
+
+    /**
+     * Writes the length of a record last, once its payload is in place. Must be called while holding the lock.
+     * @return returns the id of the record.
+     */
+    private long commit(int offset, int recordLength)
+    {
+        Segment segment = activeSegment;
+
+        segment.buffer.putInt(offset, recordLength);
+        segment.writePosition = offset + recordLength;
+        segment.liveRecords++;
+
+        return ((long) segment.number << 32) | offset;
+    }
+
+    /**
+     * Reads the payload of a record back out of its segment.
+     * @param recordId the id returned by append.
+     * @return returns a copy of the UTF-8 body.
+     */
+    private synchronized byte[] readPayload(long recordId)
+    {
+        Segment segment = segments.get((int) (recordId >>> 32));
+        int offset = (int) recordId;
+
+        return readBytes(segment.buffer, offset + HEADER_SIZE, segment.buffer.getInt(offset) - HEADER_SIZE);
+    }
+
+    /**
+     * Marks a record as delivered, deleting its segment once every record in it is acknowledged.
+     * @param recordId the id returned by append.
+     */
+    synchronized void ack(long recordId)
+    {
+        Segment segment = segments.get((int) (recordId >>> 32));
+        int offset = (int) recordId;
+
+        if(segment == null || segment.buffer.get(offset + 4) == STATUS_ACKED)
+        {
+            return;
+        }
+
+        segment.buffer.put(offset + 4, STATUS_ACKED);
+        segment.liveRecords--;
+        pendingRecords.remove(recordId);
+
+        if(segment.liveRecords == 0 && segment != activeSegment)
+        {
+            deleteSegment(segment);
+        }
+    }
+
+    /**
+     * Hands an IN_FLIGHT record over to the background drainer, which reports its final result to the listener.
+     * @param recordId the id returned by append.
+     * @param listener callback for the final result, may be null.
+     */
+    synchronized void release(long recordId, Callback listener)
+    {
+        Segment segment = segments.get((int) (recordId >>> 32));
+
+        if(segment != null)
+        {
+            if(listener != null)
+            {
+                drainListeners.put(recordId, listener);
+            }
+
+            segment.buffer.put((int) recordId + 4, STATUS_PENDING);
+            pendingRecords.add(recordId);
+            startDrain(0);
+        }
+    }
+
+    /**
+     * Getter method for the number of records not yet acknowledged.
+     * @return returns the number of live records across all segments.
+     */
+    synchronized int getLiveRecordCount()
+    {
+        int count = 0;
+
+        for(Segment segment : segments.values())
+        {
+            count += segment.liveRecords;
+        }
+
+        return count;
+    }
+
+    /**
+     * Getter method for the number of segment files on disk.
+     * @return returns the number of segments.
+     */
+    synchronized int getSegmentCount()
+    {
+        return segments.size();
+    }
+
+    /**
+     * Builds the key sent with every attempt of a record.
+     * @param recordId the id returned by append.
+     * @return returns a key unique to this installation and record.
+     */
+    String idempotencyKey(long recordId)
+    {
+        return installId + "-" + Long.toHexString(recordId);
+    }
+
+    /**
+     * Schedules the drainer unless it is already working through the queue.
+     * Must be called while holding the lock.
+     * @param delayMillis how long to wait before the next attempt.
+     */
+    private void startDrain(long delayMillis)
+    {
+        if(!draining)
+        {
+            draining = true;
+            drainExecutor.schedule(drainTask, delayMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Sends the oldest PENDING record, the callback schedules the next one.
+     */
+    private void drainNext()
+    {
+        final long recordId;
+        final int kind;
+        final byte[] payload;
+
+        synchronized(this)
+        {
+            recordId = findPending(drainCursor);
+
+            if(recordId == -1 && drainCursor != -1)
+            {
+                // The end of a pass that set records aside, they are tried again after the backoff.
+                drainCursor = -1;
+                drainExecutor.schedule(drainTask, nextBackoff(), TimeUnit.MILLISECONDS);
+                return;
+            }
+
+            if(recordId == -1)
+            {
+                draining = false;
+                return;
+            }
+
+            draining = true;
+            Segment segment = segments.get((int) (recordId >>> 32));
+            int offset = (int) recordId;
+            kind = segment.buffer.get(offset + 5);
+            payload = readBytes(segment.buffer, offset + HEADER_SIZE, segment.buffer.getInt(offset) - HEADER_SIZE);
+            segment.buffer.put(offset + 4, STATUS_IN_FLIGHT);
+            pendingRecords.remove(recordId);
+        }
+
+        sender.send(kind, idempotencyKey(recordId), payload, new Callback()
+        {
+            @Override
+            public void onDelivered(String response)
+            {
+                Callback listener;
+
+                synchronized(WriteAheadQueue.this)
+                {
+                    failedAttempts = 0;
+                    ack(recordId);
+                    listener = drainListeners.remove(recordId);
+                }
+
+                if(listener != null)
+                {
+                    listener.onDelivered(response);
+                }
+                drainExecutor.execute(drainTask);
+            }
+
+            @Override
+            public void onFailed(Exception error, boolean retryable)
+            {
+                long backoff = 0;
+                Callback listener = null;
+
+                synchronized(WriteAheadQueue.this)
+                {
+                    if(retryable)
+                    {
+                        Segment segment = segments.get((int) (recordId >>> 32));
+                        segment.buffer.put((int) recordId + 4, STATUS_PENDING);
+                        pendingRecords.add(recordId);
+
+                        if(error instanceof ApiException && ((ApiException) error).isAuthFailure())
+                        {
+                            drainCursor = recordId;
+                        }
+                        else
+                        {
+                            backoff = nextBackoff();
+                        }
+                    }
+                    else
+                    {
+                        ack(recordId);
+                        listener = drainListeners.remove(recordId);
+                    }
+                }
+
+                if(listener != null)
+                {
+                    listener.onFailed(error, false);
+                }
+                drainExecutor.schedule(drainTask, backoff, TimeUnit.MILLISECONDS);
+            }
+        });
+    }
+
+    /**
+     * Calculates the delay before the next retry, doubling with each consecutive failure.
+     * Must be called while holding the lock.
+     * @return returns the delay in milliseconds, including up to 50% random jitter.
+     */
+    private long nextBackoff()
+    {
+        long backoff = BASE_BACKOFF_MILLIS << Math.min(failedAttempts, 16);
+        failedAttempts++;
+        backoff = Math.min(backoff, MAX_BACKOFF_MILLIS);
+
+        return backoff + (long) (jitter.nextDouble() * backoff / 2);
+    }
+
+    /**
+     * Finds the oldest PENDING record after the given one. Must be called while holding the lock.
+     * @param after the id of the last record set aside in this pass, or -1 to search the whole queue.
+     * @return returns the record id, or -1 if there is none.
+     */
+    private long findPending(long after)
+    {
+        Long recordId = pendingRecords.higher(after);
+        return recordId == null ? -1 : recordId;
+    }
+
+    /**
+     * Maps every segment file left on disk and indexes its PENDING records. Records that were
+     * IN_FLIGHT when the App stopped are treated as PENDING and replayed.
+     * @throws IOException if a segment could not be mapped.
+     */
+    private synchronized void recover() throws IOException
+    {
+        File[] files = directory.listFiles();
+
+        if(files == null)
+        {
+            return;
+        }
+
+        for(File file : files)
+        {
+            String name = file.getName();
+
+            if(!name.startsWith(SEGMENT_PREFIX) || !name.endsWith(SEGMENT_SUFFIX))
+            {
+                continue;
+            }
+
+            int number = Integer.parseInt(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+            Segment segment = mapSegment(number, (int) file.length());
+
+            int offset = 0;
+
+            while(offset + HEADER_SIZE <= segment.capacity)
+            {
+                int length = segment.buffer.getInt(offset);
+
+                if(length < HEADER_SIZE || offset + length > segment.capacity)
+                {
+                    break;
+                }
+
+                byte status = segment.buffer.get(offset + 4);
+
+                if(status == STATUS_IN_FLIGHT)
+                {
+                    segment.buffer.put(offset + 4, STATUS_PENDING);
+                    status = STATUS_PENDING;
+                }
+
+                if(status == STATUS_PENDING)
+                {
+                    segment.liveRecords++;
+                    pendingRecords.add(((long) number << 32) | offset);
+                }
+
+                offset += length;
+            }
+
+            segment.writePosition = offset;
+
+            if(segment.liveRecords == 0)
+            {
+                deleteSegment(segment);
+            }
+        }
+
+        if(!segments.isEmpty())
+        {
+            nextSegmentNumber = Math.max(nextSegmentNumber, segments.lastKey() + 1);
+            activeSegment = segments.lastEntry().getValue();
+            startDrain(0);
+        }
+    }
+
+    /**
+     * Starts a new segment file, deleting the old active segment if it has no live records.
+     * The sequence file is moved on before the segment is created, so its number is never used again.
+     * Must be called while holding the lock.
+     * @param minimumCapacity space needed by the record about to be written.
+     * @throws IOException if the file could not be created.
+     */
+    private void rollSegment(int minimumCapacity) throws IOException
+    {
+        int number = nextSegmentNumber;
+        writeSegmentSequence(number + 1);
+        nextSegmentNumber = number + 1;
+        Segment previous = activeSegment;
+
+        activeSegment = mapSegment(number, Math.max(segmentSize, minimumCapacity));
+
+        if(previous != null && previous.liveRecords == 0)
+        {
+            deleteSegment(previous);
+        }
+    }
+
+    private Segment mapSegment(int number, int capacity) throws IOException
+    {
+        File file = new File(directory, SEGMENT_PREFIX + String.format("%010d", number) + SEGMENT_SUFFIX);
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+
+        try
+        {
+            FileChannel channel = randomAccessFile.getChannel();
+            Segment segment = new Segment(number, file, channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity), capacity);
+            segments.put(number, segment);
+            return segment;
+        }
+        finally
+        {
+            randomAccessFile.close();
+        }
+    }
+
+    private void deleteSegment(Segment segment)
+    {
+        segments.remove(segment.number);
+        segment.file.delete();
+    }
+
+    private String readInstallId() throws IOException
+    {
+        File file = new File(directory, INSTALL_ID_FILE);
+
+        if(file.isFile())
+        {
+            FileInputStream in = new FileInputStream(file);
+
+            try
+            {
+                byte[] bytes = new byte[(int) file.length()];
+                int read = 0;
+
+                while(read < bytes.length)
+                {
+                    int count = in.read(bytes, read, bytes.length - read);
+                    if(count == -1)
+                    {
+                        break;
+                    }
+                    read += count;
+                }
+
+                return new String(bytes, 0, read, UTF_8);
+            }
+            finally
+            {
+                in.close();
+            }
+        }
+
+        String id = UUID.randomUUID().toString();
+        FileOutputStream out = new FileOutputStream(file);
+
+        try
+        {
+            out.write(id.getBytes(UTF_8));
+        }
+        finally
+        {
+            out.close();
+        }
+
+        return id;
+    }
+
+    /**
+     * Reads the number the next segment will be given.
+     * @return returns the number, or 0 if no segment has been created yet.
+     */
+    private int readSegmentSequence() throws IOException
+    {
+        File file = new File(directory, SEGMENT_SEQUENCE_FILE);
+
+        if(!file.isFile())
+        {
+            return 0;
+        }
+
+        DataInputStream in = new DataInputStream(new FileInputStream(file));
+
+        try
+        {
+            return in.readInt();
+        }
+        catch (EOFException ex)
+        {
+            // A write cut short, the segments still on disk give the next number.
+            return 0;
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+
+    /**
+     * Saves the number the next segment will be given, replacing the sequence file in one step.
+     */
+    private void writeSegmentSequence(int number) throws IOException
+    {
+        File file = new File(directory, SEGMENT_SEQUENCE_FILE);
+        File temporaryFile = new File(directory, SEGMENT_SEQUENCE_FILE + ".tmp");
+        DataOutputStream out = new DataOutputStream(new FileOutputStream(temporaryFile));
+
+        try
+        {
+            out.writeInt(number);
+        }
+        finally
+        {
+            out.close();
+        }
+
+        if(!temporaryFile.renameTo(file))
+        {
+            temporaryFile.delete();
+            throw new IOException("Unable to replace " + file);
+        }
+    }
+
+    /**
+     * Counts the bytes needed to store a String as UTF-8 without encoding it.
+     * @param value the String to measure.
+     * @return returns the encoded length in bytes.
+     */
+    static int utf8Length(String value)
+    {
+        int length = 0;
+
+        for(int i = 0; i < value.length(); i++)
+        {
+            char c = value.charAt(i);
+
+            if(c < 0x80)
+            {
+                length += 1;
+            }
+            else if(c < 0x800)
+            {
+                length += 2;
+            }
+            else if(Character.isHighSurrogate(c) && i + 1 < value.length() && Character.isLowSurrogate(value.charAt(i + 1)))
+            {
+                length += 4;
+                i++;
+            }
+            else
+            {
+                length += 3;
+            }
+        }
+
+        return length;
+    }
+
+    /**
+     * Encodes a String as UTF-8 directly into the buffer. Unpaired surrogates are written as
+     * U+FFFD, the replacement character, which takes the three bytes utf8Length counts for them.
+     * @param buffer the buffer to write to.
+     * @param offset the absolute position to start writing at.
+     * @param value the String to encode.
+     */
+    static void writeUtf8(MappedByteBuffer buffer, int offset, String value)
+    {
+        int position = offset;
+
+        for(int i = 0; i < value.length(); i++)
+        {
+            char c = value.charAt(i);
+
+            if(c < 0x80)
+            {
+                buffer.put(position++, (byte) c);
+            }
+            else if(c < 0x800)
+            {
+                buffer.put(position++, (byte) (0xC0 | (c >> 6)));
+                buffer.put(position++, (byte) (0x80 | (c & 0x3F)));
+            }
+            else if(Character.isHighSurrogate(c) && i + 1 < value.length() && Character.isLowSurrogate(value.charAt(i + 1)))
+            {
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                buffer.put(position++, (byte) (0xF0 | (codePoint >> 18)));
+                buffer.put(position++, (byte) (0x80 | ((codePoint >> 12) & 0x3F)));
+                buffer.put(position++, (byte) (0x80 | ((codePoint >> 6) & 0x3F)));
+                buffer.put(position++, (byte) (0x80 | (codePoint & 0x3F)));
+            }
+            else if(Character.isSurrogate(c))
+            {
+                buffer.put(position++, (byte) 0xEF);
+                buffer.put(position++, (byte) 0xBF);
+                buffer.put(position++, (byte) 0xBD);
+            }
+            else
+            {
+                buffer.put(position++, (byte) (0xE0 | (c >> 12)));
+                buffer.put(position++, (byte) (0x80 | ((c >> 6) & 0x3F)));
+                buffer.put(position++, (byte) (0x80 | (c & 0x3F)));
+            }
+        }
+    }
+
+    private static byte[] readBytes(MappedByteBuffer buffer, int offset, int length)
+    {
+        byte[] bytes = new byte[length];
+
+        for(int i = 0; i < length; i++)
+        {
+            bytes[i] = buffer.get(offset + i);
+        }
+
+        return bytes;
+    }
+
+    /**
+     * The Segment class holds the mapped buffer and bookkeeping for one segment file.
+     */
+    private static class Segment
+    {
+        private final int number;
+        private final File file;
+        private final MappedByteBuffer buffer;
+        private final int capacity;
+        private int writePosition;
+        private int liveRecords;
+
+        private Segment(int number, File file, MappedByteBuffer buffer, int capacity)
+        {
+            this.number = number;
+            this.file = file;
+            this.buffer = buffer;
+            this.capacity = capacity;
+        }
+    }
+}
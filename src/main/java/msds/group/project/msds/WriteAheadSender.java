@@ -0,0 +1,54 @@
+/**
+ * The WriteAheadSender class sends records from the WriteAheadQueue to their
+ * endpoint using the shared MsdsApi.
+ *
+ * Network errors and server errors are reported as retryable. A 4xx response means the
+ * server will never accept the record, so it is reported as not retryable, except for 401.
+ * A 401 that the MsdsApi could not renew means the record's session cannot be used now, not
+ * that the record is wrong, so it is kept and sent again once its user has a session.
+ *
+ * @author  J.Woodhouse, D.B.Dawson, I.J.Atienza, M.J.T.Makunda
+ * @version 1.03
+ */
+
+package msds.group.project.msds;
+
+public class WriteAheadSender implements WriteAheadQueue.Sender
+{
+    private final MsdsApi msdsApi;
+
+    public WriteAheadSender(MsdsApi msdsApi)
+    {
+        this.msdsApi = msdsApi;
+    }
+
+    @Override
+    public void send(int kind, String idempotencyKey, byte[] payload, final WriteAheadQueue.Callback callback)
+    {
+        RequestCoalescer.Callback<String> responseCallback = new RequestCoalescer.Callback<String>()
+        {
+            @Override
+            public void onSuccess(String response)
+            {
+                callback.onDelivered(response);
+            }
+
+            @Override
+            public void onFailure(Exception error)
+            {
+                boolean rejected = error instanceof ApiException && ((ApiException) error).isRejected()
+                        && !((ApiException) error).isAuthFailure();
+                callback.onFailed(error, !rejected);
+            }
+        };
+
+        if(kind == WriteAheadQueue.KIND_NEW_REQUEST)
+        {
+            msdsApi.newRequest().send(idempotencyKey, payload, responseCallback);
+        }
+        else
+        {
+            msdsApi.submitLog().send(idempotencyKey, payload, responseCallback);
+        }
+    }
+}
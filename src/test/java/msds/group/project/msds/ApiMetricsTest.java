@@ -0,0 +1,147 @@
+package msds.group.project.msds;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the ApiMetrics histograms and interval export.
+ */
+public class ApiMetricsTest
+{
+    private final ApiMetrics metrics = new ApiMetrics(MsdsApi.SUBMIT_LOG);
+
+    private final List<LogEvent> events = new ArrayList<>();
+    private final ApiMetrics.Sink sink = new ApiMetrics.Sink()
+    {
+        @Override
+        public void send(LogEvent event)
+        {
+            events.add(event);
+        }
+    };
+
+    @Test
+    public void buckets_coverEveryValueInOrderWithinOneEighth()
+    {
+        int previous = -1;
+
+        for(long micros = 0; micros < 5000000; micros += 1 + micros / 64)
+        {
+            int bucket = ApiMetrics.bucketOf(micros);
+            long highest = ApiMetrics.highestValueOf(bucket);
+
+            assertTrue(bucket >= previous);
+            assertTrue(micros + " in " + highest, highest >= micros);
+            assertTrue(micros + " in " + highest, highest - micros <= micros / 8);
+            assertEquals(bucket, ApiMetrics.bucketOf(highest));
+            assertEquals(bucket + 1, ApiMetrics.bucketOf(highest + 1));
+            previous = bucket;
+        }
+
+        assertEquals(ApiMetrics.BUCKET_COUNT - 1, ApiMetrics.bucketOf(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void percentiles_matchSortedValues()
+    {
+        Random random = new Random(42);
+        long[] counts = new long[ApiMetrics.BUCKET_COUNT];
+        long[] values = new long[10000];
+
+        for(int i = 0; i < values.length; i++)
+        {
+            values[i] = (long) Math.exp(random.nextDouble() * 14);
+            counts[ApiMetrics.bucketOf(values[i])]++;
+        }
+
+        Arrays.sort(values);
+
+        for(double percentile : new double[] {50, 90, 99, 100})
+        {
+            long exact = values[(int) Math.ceil(values.length * percentile / 100) - 1];
+            long reported = ApiMetrics.percentile(counts, percentile);
+
+            assertTrue(percentile + ": " + exact + " vs " + reported, reported >= exact && reported - exact <= exact / 8);
+        }
+
+        assertEquals(ApiMetrics.NOT_MEASURED, ApiMetrics.percentile(new long[ApiMetrics.BUCKET_COUNT], 50));
+    }
+
+    @Test
+    public void export_sendsOnlyTheInterval()
+    {
+        ApiMetrics.Endpoint login = metrics.forEndpoint(MsdsApi.LOGIN);
+
+        login.record(200, 1000000, 40000000, 50000000, 100, 20);
+        login.record(0, ApiMetrics.NOT_MEASURED, ApiMetrics.NOT_MEASURED, 3000000, 100, 0);
+        assertEquals(1, metrics.export(sink));
+
+        login.record(404, ApiMetrics.NOT_MEASURED, ApiMetrics.NOT_MEASURED, 10000000, 100, 5);
+        assertEquals(1, metrics.export(sink));
+        assertEquals(0, metrics.export(sink));
+
+        assertEquals("{\"endpoint\":\"Login.php\",\"calls\":2,\"errors\":1,\"noResponse\":1,\"p50Us\":3071,\"p90Us\":53247,"
+                + "\"p99Us\":53247,\"maxUs\":53247,\"ttfbP50Us\":40959,\"ttfbP99Us\":40959,\"connectP50Us\":1023,"
+                + "\"connectP99Us\":1023,\"bytesOut\":200,\"bytesIn\":20}", events.get(0).getFields());
+        assertTrue(events.get(1).getFields(), events.get(1).getFields().startsWith("{\"endpoint\":\"Login.php\",\"calls\":1,\"errors\":1,\"noResponse\":0,\"p50Us\":10239,"));
+        assertTrue(events.get(1).getFields(), events.get(1).getFields().contains("\"ttfbP50Us\":-1"));
+        assertEquals(3, login.getCallCount());
+    }
+
+    @Test
+    public void export_carriesSubmitLogOnlyIntervals()
+    {
+        metrics.forEndpoint(MsdsApi.SUBMIT_LOG).record(200, 0, 0, 1000, 10, 10);
+        assertEquals(0, metrics.export(sink));
+
+        metrics.forEndpoint(MsdsApi.SUBMIT_LOG).record(200, 0, 0, 1000, 10, 10);
+        metrics.forEndpoint(MsdsApi.GET_USER_INFO).record(200, 0, 0, 1000, 10, 10);
+        assertEquals(2, metrics.export(sink));
+
+        for(LogEvent event : events)
+        {
+            if(event.getFields().contains(MsdsApi.SUBMIT_LOG))
+            {
+                assertTrue(event.getFields(), event.getFields().contains("\"calls\":2"));
+            }
+        }
+    }
+
+    @Test
+    public void record_isSafeFromManyThreads() throws InterruptedException
+    {
+        final ApiMetrics.Endpoint endpoint = metrics.forEndpoint(MsdsApi.GET_INVENTORY);
+        Thread[] threads = new Thread[8];
+
+        for(int i = 0; i < threads.length; i++)
+        {
+            threads[i] = new Thread(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    for(int j = 0; j < 10000; j++)
+                    {
+                        endpoint.record(200, j, j, j * 1000L, 1, 1);
+                    }
+                }
+            });
+            threads[i].start();
+        }
+
+        for(Thread thread : threads)
+        {
+            thread.join();
+        }
+
+        assertEquals(80000, endpoint.getCallCount());
+        assertEquals(ApiMetrics.highestValueOf(ApiMetrics.bucketOf(9999)), endpoint.totalPercentile(100));
+    }
+}
@@ -0,0 +1,54 @@
+package msds.group.project.msds;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Local unit tests for the BufferPool.
+ */
+public class BufferPoolTest
+{
+    @Test
+    public void acquire_roundsUpToPowerOfTwo()
+    {
+        BufferPool pool = new BufferPool(1 << 16, 2);
+
+        assertEquals(BufferPool.MIN_BUFFER_SIZE, pool.acquire(1).length);
+        assertEquals(4096, pool.acquire(4096).length);
+        assertEquals(8192, pool.acquire(4097).length);
+        assertEquals(100000, pool.acquire(100000).length);
+    }
+
+    @Test
+    public void releasedBuffer_isReused()
+    {
+        BufferPool pool = new BufferPool(1 << 16, 2);
+        byte[] buffer = pool.acquire(3000);
+
+        pool.release(buffer);
+
+        assertSame(buffer, pool.acquire(2049));
+        assertEquals(0, pool.getFreeCount());
+    }
+
+    @Test
+    public void pool_keepsOnlyBuffersItCanHandOut()
+    {
+        BufferPool pool = new BufferPool(1 << 16, 2);
+
+        for(int i = 0; i < 5; i++)
+        {
+            pool.release(new byte[2048]);
+        }
+
+        pool.release(new byte[3000]);
+        pool.release(new byte[1 << 17]);
+        pool.release(null);
+
+        assertEquals(2, pool.getFreeCount());
+        assertTrue(pool.acquire(1 << 17) != null);
+    }
+}
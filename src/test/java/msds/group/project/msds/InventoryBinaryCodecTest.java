@@ -0,0 +1,132 @@
+package msds.group.project.msds;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Local unit tests for the binary inventory encoding.
+ */
+public class InventoryBinaryCodecTest
+{
+    private final BufferPool bufferPool = new BufferPool(1 << 16, 2);
+
+    private byte[] encode(boolean delta, String version, String baseVersion, String[] removed, Object... rows)
+    {
+        InventoryBinaryCodec.Encoder encoder = new InventoryBinaryCodec.Encoder(bufferPool)
+                .writeHeader(true, false, delta, version, baseVersion)
+                .writeItemCount(rows.length / 2);
+
+        for(int i = 0; i < rows.length; i += 2)
+        {
+            encoder.writeItem((String) rows[i], (Integer) rows[i + 1]);
+        }
+
+        byte[] encoded = encoder.writeRemoved(removed).toByteArray();
+        encoder.release();
+        return encoded;
+    }
+
+    private static InventoryResponseParser.Result decode(byte[] data) throws IOException
+    {
+        return InventoryBinaryCodec.decode(data, 0, data.length, null, null, InventoryResponseParser.DEFAULT_CHUNK_SIZE);
+    }
+
+    @Test
+    public void roundTrip_keepsNamesQuantitiesAndFlags() throws Exception
+    {
+        String emoji = new String(Character.toChars(0x1F9EF));
+        InventoryResponseParser.Result result = decode(encode(false, "v7", null, new String[0],
+                "torch", 4, "caf\u00e9 ration", 0, "\u6c34 bottle " + emoji, 300, "overdrawn", -2));
+
+        assertTrue(result.isSuccess());
+        assertFalse(result.isNotModified());
+        assertFalse(result.isDelta());
+        assertEquals("v7", result.getVersion());
+        assertEquals(null, result.getBaseVersion());
+        assertEquals(4, result.getItems().size());
+        assertEquals("caf\u00e9 ration", result.getItems().getName(1));
+        assertEquals("\u6c34 bottle " + emoji, result.getItems().getName(2));
+        assertEquals(300, result.getItems().getQuantity(2));
+        assertEquals(-2, result.getItems().getQuantity(3));
+    }
+
+    @Test
+    public void encoding_isSmallerThanJson() throws Exception
+    {
+        String json = StubMsdsServer.inventoryResponse(1000);
+        InventoryResponseParser.Result parsed = InventoryResponseParser.parse(json.getBytes("UTF-8"), null, null,
+                InventoryResponseParser.DEFAULT_CHUNK_SIZE);
+        InventoryBinaryCodec.Encoder encoder = new InventoryBinaryCodec.Encoder(bufferPool).writeResult(parsed);
+
+        assertTrue(encoder.getLength() < json.length() * 3 / 4);
+        assertEquals(parsed.getItems().contentHash(), decode(encoder.toByteArray()).getItems().contentHash());
+        encoder.release();
+    }
+
+    @Test
+    public void delta_isMergedWithApplyDelta() throws Exception
+    {
+        InventorySnapshot base = new InventorySnapshot.Builder().setVersion("v1").add("torch", 4).add("radio", 20).build();
+        byte[] data = encode(true, "v2", "v1", new String[] {"torch"}, "radio", 15, "compass", 1);
+
+        InventoryResponseParser.Result result = InventoryResponseParser.applyDelta(
+                InventoryBinaryCodec.decode(data, 0, data.length, base, null, InventoryResponseParser.DEFAULT_CHUNK_SIZE), base);
+
+        assertTrue(result.isDelta());
+        assertArrayEquals(new String[] {"torch"}, result.getRemoved());
+        assertEquals(2, result.getItems().size());
+        assertEquals("radio", result.getItems().getName(0));
+        assertEquals(15, result.getItems().getQuantity(0));
+        assertEquals("compass", result.getItems().getName(1));
+        assertEquals("v2", result.getItems().getVersion());
+    }
+
+    @Test
+    public void decode_readsFromAnOffsetInAPooledBuffer() throws Exception
+    {
+        byte[] data = encode(false, "v1", null, new String[0], "torch", 4);
+        byte[] pooled = bufferPool.acquire(data.length + 10);
+        System.arraycopy(data, 0, pooled, 10, data.length);
+
+        InventoryResponseParser.Result result = InventoryBinaryCodec.decode(pooled, 10, data.length, null, null, 1);
+
+        assertEquals("torch", result.getItems().getName(0));
+        bufferPool.release(pooled);
+    }
+
+    @Test
+    public void truncatedOrForeignData_isIOException()
+    {
+        byte[] data = encode(false, "v1", null, new String[0], "torch", 4, "radio", 20);
+        byte[][] broken = { Arrays.copyOf(data, data.length - 3), "{\"success\":true}".getBytes() };
+
+        for(byte[] bytes : broken)
+        {
+            try
+            {
+                decode(bytes);
+                fail();
+            }
+            catch (IOException ex)
+            {
+                // expected
+            }
+        }
+    }
+
+    @Test
+    public void isBinary_ignoresParametersAndCase()
+    {
+        assertTrue(InventoryBinaryCodec.isBinary("Application/X-MSDS-Inventory; v=1"));
+        assertFalse(InventoryBinaryCodec.isBinary("application/json"));
+        assertFalse(InventoryBinaryCodec.isBinary(null));
+    }
+}
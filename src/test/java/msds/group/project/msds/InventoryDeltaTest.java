@@ -0,0 +1,101 @@
+package msds.group.project.msds;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Local unit tests for merging inventory deltas into a snapshot.
+ */
+public class InventoryDeltaTest
+{
+    private static final InventorySnapshot BASE = new InventorySnapshot.Builder()
+            .setVersion("v1")
+            .add("torch", 4)
+            .add("radio", 20)
+            .add("ration pack", 0)
+            .add("helmet", 9)
+            .build();
+
+    private static InventoryDelta delta(String[] removed, Object... changes)
+    {
+        InventorySnapshot.Builder builder = new InventorySnapshot.Builder(BASE).setVersion("v2");
+
+        for(int i = 0; i < changes.length; i += 2)
+        {
+            builder.add((String) changes[i], (Integer) changes[i + 1]);
+        }
+
+        return new InventoryDelta(builder.build(), removed);
+    }
+
+    private static String rows(InventorySnapshot snapshot)
+    {
+        StringBuilder rows = new StringBuilder();
+
+        for(int i = 0; i < snapshot.size(); i++)
+        {
+            rows.append(i > 0 ? ", " : "").append(snapshot.getName(i)).append('=').append(snapshot.getQuantity(i));
+        }
+
+        return rows.toString();
+    }
+
+    @Test
+    public void emptyDelta_keepsEveryRowAndTakesNewVersion()
+    {
+        InventorySnapshot merged = delta(new String[0]).applyTo(BASE);
+
+        assertEquals("torch=4, radio=20, ration pack=0, helmet=9", rows(merged));
+        assertEquals("v2", merged.getVersion());
+        assertEquals(BASE.contentHash(), merged.contentHash());
+    }
+
+    @Test
+    public void quantityUpdates_keepTheirRowAndNameId()
+    {
+        InventorySnapshot merged = delta(new String[0], "radio", 15, "helmet", 0).applyTo(BASE);
+
+        assertEquals("torch=4, radio=15, ration pack=0, helmet=0", rows(merged));
+
+        for(int i = 0; i < BASE.size(); i++)
+        {
+            assertEquals(BASE.getNameId(i), merged.getNameId(i));
+        }
+    }
+
+    @Test
+    public void additions_areAppendedInServerOrder()
+    {
+        InventorySnapshot merged = delta(new String[0], "water bottle", 2, "torch", 5, "field dressing", 30).applyTo(BASE);
+
+        assertEquals("torch=5, radio=20, ration pack=0, helmet=9, water bottle=2, field dressing=30", rows(merged));
+    }
+
+    @Test
+    public void removals_dropTheirRows()
+    {
+        InventorySnapshot merged = delta(new String[] {"torch", "ration pack", "not held"}).applyTo(BASE);
+
+        assertEquals("radio=20, helmet=9", rows(merged));
+        assertEquals(BASE.getNameId(1), merged.getNameId(0));
+    }
+
+    @Test
+    public void mixedDelta_appliesAddsUpdatesAndRemovals()
+    {
+        InventorySnapshot merged = delta(new String[] {"radio", "helmet"}, "helmet", 1, "torch", 3, "compass", 1, "torch", 6)
+                .applyTo(BASE);
+
+        // helmet is in both lists, so it is kept as changed, and the last row for torch wins.
+        assertEquals("torch=6, ration pack=0, helmet=1, compass=1", rows(merged));
+    }
+
+    @Test
+    public void deltaIntoEmptySnapshot_addsEveryChange()
+    {
+        InventorySnapshot merged = delta(new String[] {"torch"}, "radio", 1, "compass", 2).applyTo(InventorySnapshot.EMPTY);
+
+        assertEquals("radio=1, compass=2", rows(merged));
+    }
+}
@@ -0,0 +1,225 @@
+package msds.group.project.msds;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Local unit tests for InventoryRequests, sending through a WriteAheadQueue to a recording Sender.
+ */
+public class InventoryRequestsTest
+{
+    private final Executor inline = new Executor()
+    {
+        @Override
+        public void execute(Runnable runnable)
+        {
+            runnable.run();
+        }
+    };
+
+    private File directory;
+    private ScheduledExecutorService drainExecutor;
+    private RecordingSender sender;
+    private SessionCache sessionCache;
+    private InventoryStore inventoryStore;
+    private InventoryRequests inventoryRequests;
+    private final List<String> events = new ArrayList<>();
+
+    @Before
+    public void setUp() throws Exception
+    {
+        directory = Files.createTempDirectory("inventory-requests").toFile();
+        drainExecutor = Executors.newSingleThreadScheduledExecutor();
+        sender = new RecordingSender();
+        sessionCache = new SessionCache();
+        inventoryStore = new InventoryStore(new File(directory, "inventory"), 60000);
+
+        InventorySnapshot inventory = new InventorySnapshot.Builder()
+                .setVersion("v1")
+                .add("torch", 4)
+                .add("radio battery", 20)
+                .build();
+
+        sessionCache.startSession("alice", "token-1");
+        sessionCache.putInventory("alice", "token-1", inventory);
+        inventoryStore.save("alice", inventory);
+
+        WriteAheadQueue writeAheadQueue = new WriteAheadQueue(new File(directory, "write-ahead"), sender, drainExecutor);
+        inventoryRequests = new InventoryRequests(writeAheadQueue, sessionCache, inventoryStore, inline);
+        inventoryRequests.addListener(new InventoryRequests.Listener()
+        {
+            @Override
+            public synchronized void onRequestQueued(String username, String itemName, int quantity)
+            {
+                events.add("queued " + itemName + ":" + quantity);
+            }
+
+            @Override
+            public synchronized void onRequestConfirmed(String username, String itemName, int quantity, InventorySnapshot inventory)
+            {
+                events.add("confirmed " + itemName + ":" + quantity);
+            }
+
+            @Override
+            public synchronized void onRequestRolledBack(String username, String itemName, int quantity, Exception error)
+            {
+                events.add("rolled back " + itemName + ":" + quantity);
+            }
+        });
+    }
+
+    @After
+    public void tearDown()
+    {
+        drainExecutor.shutdownNow();
+        deleteRecursively(directory);
+    }
+
+    private static void deleteRecursively(File file)
+    {
+        File[] children = file.listFiles();
+
+        if(children != null)
+        {
+            for(File child : children)
+            {
+                deleteRecursively(child);
+            }
+        }
+
+        file.delete();
+    }
+
+    @Test
+    public void request_isPendingUntilAcceptedThenPatchesTheInventory() throws Exception
+    {
+        inventoryRequests.submit("alice", "token-1", "torch", 3);
+
+        assertEquals(1, sender.payloads.size());
+        assertTrue(sender.payloads.get(0), sender.payloads.get(0).contains("\"itemName\":\"torch\""));
+        assertTrue(sender.payloads.get(0), sender.payloads.get(0).contains("\"quantity\":\"3\""));
+        assertEquals(Integer.valueOf(3), inventoryRequests.getPendingQuantities("alice").get("torch"));
+        assertEquals(4, sessionCache.getInventory("alice", "token-1").getQuantity(0));
+
+        sender.takeCallbacks().get(0).onDelivered("{\"success\":true}");
+
+        assertTrue(inventoryRequests.getPendingQuantities("alice").isEmpty());
+        assertEquals(7, sessionCache.getInventory("alice", "token-1").getQuantity(0));
+        assertEquals(7, inventoryStore.load("alice").getQuantity(0));
+        assertNull(inventoryStore.load("alice").getVersion());
+        assertNull(sessionCache.getInventory("alice", "token-1").getVersion());
+        assertEquals(2, events.size());
+        assertEquals("queued torch:3", events.get(0));
+        assertEquals("confirmed torch:3", events.get(1));
+    }
+
+    @Test
+    public void inventoryDownloadedAfterTheRequest_isNotPatchedAgain() throws Exception
+    {
+        inventoryRequests.submit("alice", "token-1", "torch", 3);
+
+        // A revalidation that already holds the request arrives before the server's answer.
+        InventorySnapshot downloaded = new InventorySnapshot.Builder()
+                .setVersion("v2")
+                .add("torch", 7)
+                .add("radio battery", 20)
+                .build()
+                .confirmedAt(System.currentTimeMillis());
+        sessionCache.putInventory("alice", "token-1", downloaded);
+        inventoryStore.save("alice", downloaded);
+
+        sender.takeCallbacks().get(0).onDelivered("{\"success\":true}");
+
+        assertTrue(inventoryRequests.getPendingQuantities("alice").isEmpty());
+        assertEquals(7, sessionCache.getInventory("alice", "token-1").getQuantity(0));
+        assertEquals("v2", sessionCache.getInventory("alice", "token-1").getVersion());
+        assertNull(inventoryStore.load("alice"));
+        assertEquals("confirmed torch:3", events.get(1));
+    }
+
+    @Test
+    public void refusedRequest_isRolledBack() throws Exception
+    {
+        inventoryRequests.submit("alice", "token-1", "torch", 2);
+        inventoryRequests.submit("alice", "token-1", "torch", 5);
+        assertEquals(Integer.valueOf(7), inventoryRequests.getPendingQuantities("alice").get("torch"));
+
+        List<WriteAheadQueue.Callback> callbacks = sender.takeCallbacks();
+        callbacks.get(0).onDelivered("{\"success\":false}");
+        callbacks.get(1).onFailed(new Exception("400"), false);
+
+        assertTrue(inventoryRequests.getPendingQuantities("alice").isEmpty());
+        assertEquals(4, sessionCache.getInventory("alice", "token-1").getQuantity(0));
+        assertEquals(4, inventoryStore.load("alice").getQuantity(0));
+        assertEquals("rolled back torch:2", events.get(2));
+        assertEquals("rolled back torch:5", events.get(3));
+    }
+
+    @Test
+    public void requestRetriedInTheBackground_isConfirmedWhenDelivered() throws Exception
+    {
+        inventoryRequests.submit("alice", "token-1", "signal flare", 1);
+        sender.takeCallbacks().get(0).onFailed(new Exception("timeout"), true);
+
+        assertEquals(Integer.valueOf(1), inventoryRequests.getPendingQuantities("alice").get("signal flare"));
+        assertEquals(1, events.size());
+
+        sender.awaitSends(2);
+        sender.takeCallbacks().get(0).onDelivered("{\"success\":true}");
+
+        InventorySnapshot inventory = sessionCache.getInventory("alice", "token-1");
+        assertNotNull(inventory);
+        assertEquals(3, inventory.size());
+        assertEquals(1, inventory.getQuantity(inventory.indexOf("signal flare")));
+        assertTrue(inventoryRequests.getPendingQuantities("alice").isEmpty());
+        assertEquals("confirmed signal flare:1", events.get(1));
+    }
+
+    private static class RecordingSender implements WriteAheadQueue.Sender
+    {
+        private final List<String> payloads = new ArrayList<>();
+        private final List<WriteAheadQueue.Callback> callbacks = new ArrayList<>();
+
+        @Override
+        public synchronized void send(int kind, String idempotencyKey, byte[] payload, WriteAheadQueue.Callback callback)
+        {
+            payloads.add(new String(payload, Charset.forName("UTF-8")));
+            callbacks.add(callback);
+            notifyAll();
+        }
+
+        private synchronized List<WriteAheadQueue.Callback> takeCallbacks()
+        {
+            List<WriteAheadQueue.Callback> taken = new ArrayList<>(callbacks);
+            callbacks.clear();
+            return taken;
+        }
+
+        private synchronized void awaitSends(int count) throws InterruptedException
+        {
+            long deadline = System.currentTimeMillis() + 10000;
+
+            while(payloads.size() < count && System.currentTimeMillis() < deadline)
+            {
+                wait(100);
+            }
+
+            assertTrue("expected " + count + " sends", payloads.size() >= count);
+        }
+    }
+}
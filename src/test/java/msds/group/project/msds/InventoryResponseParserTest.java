@@ -0,0 +1,174 @@
+package msds.group.project.msds;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for the streaming GetInventory.php parser.
+ */
+public class InventoryResponseParserTest
+{
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    @Test
+    public void parse_readsItemsAndVersion() throws IOException
+    {
+        String body = "{\"success\": true, \"version\": \"v7\", \"itemName\": [\"Torch\", \"Radio \\\"B\\\"\", \"Fl\\u00e4sche\"],"
+                + " \"quantity\": [\"3\", 12, \"0\"], \"extra\": {\"nested\": [1, {\"a\": null}]}}";
+
+        InventoryResponseParser.Result result = InventoryResponseParser.parse(body.getBytes(UTF_8), null, null, 2);
+
+        assertTrue(result.isSuccess());
+        assertFalse(result.isNotModified());
+        assertEquals("v7", result.getVersion());
+        InventorySnapshot items = result.getItems();
+        assertEquals(3, items.size());
+        assertEquals("v7", items.getVersion());
+        assertEquals("Torch", items.getName(0));
+        assertEquals("Radio \"B\"", items.getName(1));
+        assertEquals("Fl\u00E4sche", items.getName(2));
+        assertEquals(3, items.getQuantity(0));
+        assertEquals(12, items.getQuantity(1));
+        assertEquals(0, items.getQuantity(2));
+    }
+
+    @Test
+    public void parse_deliversChunksInOrderWhicheverArrayComesFirst() throws IOException
+    {
+        String[] bodies = {
+                "{\"success\":true,\"itemName\":[\"a\",\"b\",\"c\",\"d\",\"e\"],\"quantity\":[\"1\",\"2\",\"3\",\"4\",\"5\"]}",
+                "{\"quantity\":[\"1\",\"2\",\"3\",\"4\",\"5\"],\"itemName\":[\"a\",\"b\",\"c\",\"d\",\"e\"],\"success\":true}"
+        };
+
+        for(String body : bodies)
+        {
+            final List<String> names = new ArrayList<>();
+            final List<Integer> quantities = new ArrayList<>();
+            final List<Integer> chunkSizes = new ArrayList<>();
+
+            InventoryResponseParser.parse(body.getBytes(UTF_8), null, new InventoryResponseParser.ChunkListener()
+            {
+                @Override
+                public void onChunk(InventorySnapshot items, int from, int to)
+                {
+                    assertEquals(to, items.size());
+
+                    for(int i = from; i < to; i++)
+                    {
+                        names.add(items.getName(i));
+                        quantities.add(items.getQuantity(i));
+                    }
+                    chunkSizes.add(to - from);
+                }
+            }, 2);
+
+            assertEquals(Arrays.asList("a", "b", "c", "d", "e"), names);
+            assertEquals(Arrays.asList(1, 2, 3, 4, 5), quantities);
+            assertEquals(Arrays.asList(2, 2, 1), chunkSizes);
+        }
+    }
+
+    @Test
+    public void parse_notModifiedResponseHasNoItems() throws IOException
+    {
+        InventoryResponseParser.Result result = InventoryResponseParser.parse(
+                "{\"success\":true,\"notModified\":true,\"version\":null}".getBytes(UTF_8), null, null, 10);
+
+        assertTrue(result.isNotModified());
+        assertNull(result.getVersion());
+        assertEquals(0, result.getItems().size());
+    }
+
+    @Test(expected = IOException.class)
+    public void parse_rejectsTruncatedBody() throws IOException
+    {
+        InventoryResponseParser.parse("{\"success\":true,\"itemName\":[\"a\"".getBytes(UTF_8), null, null, 10);
+    }
+
+    @Test(expected = IOException.class)
+    public void parse_requiresSuccess() throws IOException
+    {
+        InventoryResponseParser.parse("{\"itemName\":[]}".getBytes(UTF_8), null, null, 10);
+    }
+
+    @Test(expected = IOException.class)
+    public void parse_rejectsNonNumericQuantity() throws IOException
+    {
+        InventoryResponseParser.parse("{\"success\":true,\"quantity\":[\"many\"]}".getBytes(UTF_8), null, null, 10);
+    }
+
+    @Test
+    public void parse_seededNamesKeepTheirIds() throws IOException
+    {
+        InventorySnapshot seed = new InventorySnapshot.Builder().add("x", 1).add("y", 2).build();
+
+        InventorySnapshot items = InventoryResponseParser.parse(
+                "{\"success\":true,\"itemName\":[\"z\",\"y\"],\"quantity\":[5,6]}".getBytes(UTF_8), seed, null, 10).getItems();
+
+        assertEquals(seed.getNameId(1), items.getNameId(1));
+        assertEquals(2, items.getNameId(0));
+    }
+
+    @Test
+    public void parseDelta_mergesDeltaAndKeepsWholeResponses() throws IOException
+    {
+        InventorySnapshot base = new InventorySnapshot.Builder().setVersion("v1").add("x", 1).add("y", 2).build();
+
+        InventoryResponseParser.Result delta = InventoryResponseParser.parseDelta(("{\"success\":true,\"delta\":true,\"baseVersion\":\"v1\","
+                + "\"version\":\"v2\",\"itemName\":[\"y\"],\"quantity\":[9],\"removed\":[\"x\"]}").getBytes(UTF_8), base);
+
+        assertTrue(delta.isDelta());
+        assertArrayEquals(new String[] {"x"}, delta.getRemoved());
+        assertEquals(1, delta.getItems().size());
+        assertEquals(9, delta.getItems().getQuantity(0));
+        assertEquals(base.getNameId(1), delta.getItems().getNameId(0));
+
+        InventoryResponseParser.Result whole = InventoryResponseParser.parseDelta(
+                "{\"success\":true,\"version\":\"v3\",\"itemName\":[\"z\"],\"quantity\":[4]}".getBytes(UTF_8), base);
+
+        assertFalse(whole.isDelta());
+        assertEquals(1, whole.getItems().size());
+        assertEquals("z", whole.getItems().getName(0));
+    }
+
+    @Test(expected = IOException.class)
+    public void parseDelta_rejectsDeltaFromAnotherVersion() throws IOException
+    {
+        InventorySnapshot base = new InventorySnapshot.Builder().setVersion("v1").add("x", 1).build();
+
+        InventoryResponseParser.parseDelta("{\"success\":true,\"delta\":true,\"baseVersion\":\"v0\",\"itemName\":[],\"quantity\":[]}".getBytes(UTF_8), base);
+    }
+
+    @Test
+    public void nextRawValue_copiesNestedValue() throws IOException
+    {
+        JsonStreamReader reader = new JsonStreamReader("{\"a\": {\"b\": [1, \"}\"]} , \"c\": true}".getBytes(UTF_8));
+
+        reader.beginObject();
+        assertEquals("a", reader.nextName());
+        assertEquals("{\"b\": [1, \"}\"]}", new String(reader.nextRawValue(), UTF_8));
+        assertEquals("c", reader.nextName());
+        assertTrue(reader.nextBoolean());
+        reader.endObject();
+    }
+
+    @Test
+    public void nextInt_acceptsNumbersAndNumericStrings() throws IOException
+    {
+        JsonStreamReader reader = new JsonStreamReader("[12, \"-7\", 0]".getBytes(UTF_8));
+
+        reader.beginArray();
+        assertEquals(12, reader.nextInt());
+        assertEquals(-7, reader.nextInt());
+        assertEquals(0, reader.nextInt());
+        reader.endArray();
+        assertEquals(JsonStreamReader.END_DOCUMENT, reader.peek());
+    }
+}
@@ -0,0 +1,123 @@
+package msds.group.project.msds;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for the inventory search index, checked against a scan of every row.
+ */
+public class InventorySearchIndexTest
+{
+    private static InventorySnapshot sample(int itemCount)
+    {
+        String[] kinds = {"Field Dressing", "Radio Battery", "Ration Pack", "helmet-cover", "Water Bottle", "TORCH"};
+        InventorySnapshot.Builder builder = new InventorySnapshot.Builder();
+
+        for(int i = 0; i < itemCount; i++)
+        {
+            builder.add(kinds[i % kinds.length] + " Mk" + (i / kinds.length), i);
+        }
+
+        return builder.build();
+    }
+
+    private static List<Integer> scan(InventorySnapshot snapshot, String query)
+    {
+        List<Integer> rows = new ArrayList<>();
+        String lowerQuery = query.toLowerCase();
+
+        for(int row = 0; row < snapshot.size(); row++)
+        {
+            String name = snapshot.getName(row).toLowerCase();
+            boolean matches = false;
+
+            if(lowerQuery.length() >= 3)
+            {
+                matches = name.contains(lowerQuery);
+            }
+            else
+            {
+                for(int i = 0; i + lowerQuery.length() <= name.length() && !matches; i++)
+                {
+                    matches = InventorySearchIndex.isWordStart(name, i) && name.startsWith(lowerQuery, i);
+                }
+            }
+
+            if(matches)
+            {
+                rows.add(row);
+            }
+        }
+
+        return rows;
+    }
+
+    private static List<Integer> rowsOf(InventorySearchIndex.Result result)
+    {
+        List<Integer> rows = new ArrayList<>();
+
+        for(int i = 0; i < result.size(); i++)
+        {
+            rows.add(result.getRows()[i]);
+        }
+
+        return rows;
+    }
+
+    @Test
+    public void search_matchesAScanOfEveryRow()
+    {
+        InventorySnapshot snapshot = sample(20000);
+        InventorySearchIndex index = InventorySearchIndex.build(snapshot);
+        String[] queries = {"r", "RA", "mk", "c", "co", "cov", "-co", "ttery", "Mk1", "mk99", "torch mk9", "zz", "x", "k 1"};
+
+        for(String query : queries)
+        {
+            assertEquals(query, scan(snapshot, query), rowsOf(index.search(query, null)));
+        }
+    }
+
+    @Test
+    public void search_narrowsThePreviousResultWhileTyping()
+    {
+        InventorySnapshot snapshot = sample(600);
+        InventorySearchIndex index = InventorySearchIndex.build(snapshot);
+        String typed = "radio battery mk4";
+        InventorySearchIndex.Result result = null;
+
+        for(int i = 1; i <= typed.length(); i++)
+        {
+            String query = typed.substring(0, i);
+            result = index.search(query, result);
+            assertEquals(query, scan(snapshot, query), rowsOf(result));
+        }
+
+        result = index.search("radio battery mk", result);
+        assertEquals(scan(snapshot, "radio battery mk"), rowsOf(result));
+    }
+
+    @Test
+    public void search_ignoresResultsFromAnotherIndex()
+    {
+        InventorySearchIndex oldIndex = InventorySearchIndex.build(sample(10));
+        InventorySnapshot snapshot = sample(100);
+        InventorySearchIndex index = InventorySearchIndex.build(snapshot);
+
+        InventorySearchIndex.Result previous = oldIndex.search("torch", null);
+
+        assertEquals(scan(snapshot, "torch mk"), rowsOf(index.search("torch mk", previous)));
+    }
+
+    @Test
+    public void search_handlesAnEmptySnapshot()
+    {
+        InventorySearchIndex index = InventorySearchIndex.build(InventorySnapshot.EMPTY);
+
+        assertEquals(0, index.search("a", null).size());
+        assertEquals(0, index.search("abc", null).size());
+    }
+}
@@ -0,0 +1,154 @@
+package msds.group.project.msds;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for the columnar inventory model.
+ */
+public class InventorySnapshotTest
+{
+    private static InventorySnapshot sample()
+    {
+        return new InventorySnapshot.Builder()
+                .setVersion("v1")
+                .add("torch", 4)
+                .add("Radio Battery", 20)
+                .add("ration pack", 0)
+                .add("Torch Cover", 9)
+                .build();
+    }
+
+    @Test
+    public void builder_storesEachNameOnce()
+    {
+        InventorySnapshot snapshot = new InventorySnapshot.Builder()
+                .add("a", 1)
+                .add(new String("a"), 2)
+                .add("b", 3)
+                .build();
+
+        assertEquals(3, snapshot.size());
+        assertEquals(snapshot.getNameId(0), snapshot.getNameId(1));
+        assertSame(snapshot.getName(0), snapshot.getName(1));
+        assertEquals(2, snapshot.getQuantity(1));
+    }
+
+    @Test
+    public void sortByName_ignoresCase()
+    {
+        InventorySnapshot snapshot = sample();
+        int[] order = new int[snapshot.size()];
+
+        snapshot.sortByName(order);
+
+        assertArrayEquals(new int[] {1, 2, 0, 3}, order);
+    }
+
+    @Test
+    public void sortByQuantity_handlesLargeInventories()
+    {
+        InventorySnapshot.Builder builder = new InventorySnapshot.Builder();
+
+        for(int i = 0; i < 5000; i++)
+        {
+            builder.add("item" + i, (i * 7919) % 1000);
+        }
+
+        InventorySnapshot snapshot = builder.build();
+        int[] order = new int[snapshot.size()];
+        snapshot.sortByQuantity(order);
+
+        boolean[] seen = new boolean[order.length];
+
+        for(int i = 0; i < order.length; i++)
+        {
+            assertFalse(seen[order[i]]);
+            seen[order[i]] = true;
+
+            if(i > 0)
+            {
+                assertTrue(snapshot.getQuantity(order[i - 1]) <= snapshot.getQuantity(order[i]));
+            }
+        }
+    }
+
+    @Test
+    public void filterAndTotal()
+    {
+        InventorySnapshot snapshot = sample();
+        int[] matches = new int[snapshot.size()];
+
+        assertEquals(2, snapshot.filterByName("TORCH", matches));
+        assertEquals(0, matches[0]);
+        assertEquals(3, matches[1]);
+
+        assertEquals(2, snapshot.filterByMinimumQuantity(5, matches));
+        assertEquals(1, matches[0]);
+        assertEquals(3, matches[1]);
+
+        assertEquals(33, snapshot.totalQuantity());
+        assertEquals(2, snapshot.indexOf("ration pack"));
+        assertEquals(-1, snapshot.indexOf("Ration Pack"));
+    }
+
+    @Test
+    public void snapshot_isUnchangedByLaterAppends()
+    {
+        InventorySnapshot.Builder builder = new InventorySnapshot.Builder();
+        builder.add("first", 1);
+        InventorySnapshot early = builder.build();
+
+        for(int i = 0; i < 100; i++)
+        {
+            builder.add("later" + i, i);
+        }
+
+        assertEquals(1, early.size());
+        assertEquals("first", early.getName(0));
+        assertEquals(101, builder.build().size());
+    }
+
+    @Test
+    public void withQuantity_copiesOnlyTheQuantities()
+    {
+        InventorySnapshot snapshot = sample();
+        InventorySnapshot changed = snapshot.withQuantity(2, 7);
+
+        assertEquals(0, snapshot.getQuantity(2));
+        assertEquals(7, changed.getQuantity(2));
+        assertEquals(snapshot.getNameId(2), changed.getNameId(2));
+        assertEquals("v1", changed.getVersion());
+    }
+
+    @Test
+    public void withAddedQuantity_addsToTheRowOrAppendsOne()
+    {
+        InventorySnapshot snapshot = sample();
+        InventorySnapshot topped = snapshot.withAddedQuantity("Radio Battery", 5);
+
+        assertEquals(20, snapshot.getQuantity(1));
+        assertEquals(25, topped.getQuantity(1));
+        assertEquals(4, topped.size());
+        assertNull(topped.getVersion());
+
+        InventorySnapshot added = topped.withAddedQuantity("signal flare", 3);
+
+        assertEquals(5, added.size());
+        assertEquals("signal flare", added.getName(4));
+        assertEquals(3, added.getQuantity(4));
+        assertEquals(25, added.getQuantity(1));
+        assertEquals(topped.getNameId(3), added.getNameId(3));
+        assertNull(added.getVersion());
+        assertEquals(4, topped.size());
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void getName_rejectsRowsPastTheEnd()
+    {
+        InventorySnapshot.Builder builder = new InventorySnapshot.Builder();
+        builder.appendName("only a name");
+        builder.build().getName(0);
+    }
+}
@@ -0,0 +1,231 @@
+package msds.group.project.msds;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for LogBatcher, run against a stub SubmitLog endpoint on the development machine.
+ */
+public class LogBatcherTest
+{
+    private HttpServer stubServer;
+    private ScheduledExecutorService scheduler;
+    private final AtomicInteger requestCount = new AtomicInteger();
+    private final AtomicInteger eventCount = new AtomicInteger();
+    private LogBatcher.Transport stubTransport;
+
+    @Before
+    public void startStubServer() throws IOException
+    {
+        stubServer = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        stubServer.createContext("/android_webservice/SubmitLog.php", new HttpHandler()
+        {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException
+            {
+                String body = readFully(exchange.getRequestBody());
+                requestCount.incrementAndGet();
+                eventCount.addAndGet(countOccurrences(body, "\"activityDescription\""));
+
+                byte[] response = "{\"success\":true}".getBytes("UTF-8");
+                exchange.sendResponseHeaders(200, response.length);
+                exchange.getResponseBody().write(response);
+                exchange.close();
+            }
+        });
+        stubServer.start();
+
+        final String postURL = "http://127.0.0.1:" + stubServer.getAddress().getPort() + "/android_webservice/SubmitLog.php";
+        stubTransport = new LogBatcher.Transport()
+        {
+            @Override
+            public void send(byte[] batchBody)
+            {
+                post(postURL, new String(batchBody, Charset.forName("UTF-8")));
+            }
+        };
+
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+    }
+
+    @After
+    public void stopStubServer()
+    {
+        scheduler.shutdownNow();
+        stubServer.stop(0);
+    }
+
+    @Test
+    public void sizeThresholdAndFlush_sendCeilOfEventsOverBatchSize()
+    {
+        int[][] cases = {{1, 10}, {10, 10}, {11, 10}, {47, 10}, {100, 7}, {5, 1}};
+
+        for(int[] testCase : cases)
+        {
+            int events = testCase[0];
+            int batchSize = testCase[1];
+            requestCount.set(0);
+            eventCount.set(0);
+
+            LogBatcher logBatcher = new LogBatcher(stubTransport, scheduler, batchSize, 60000);
+
+            for(int i = 0; i < events; i++)
+            {
+                logBatcher.add("user", "token", "event " + i, i);
+            }
+            logBatcher.flush();
+
+            int expectedRequests = (events + batchSize - 1) / batchSize;
+            assertEquals("requests for " + events + "/" + batchSize, expectedRequests, requestCount.get());
+            assertEquals("events for " + events + "/" + batchSize, events, eventCount.get());
+            assertEquals(0, logBatcher.getBufferedCount());
+        }
+    }
+
+    @Test
+    public void timeWindow_flushesPartialBatch() throws InterruptedException
+    {
+        LogBatcher logBatcher = new LogBatcher(stubTransport, scheduler, 50, 50);
+
+        logBatcher.add("user", "token", "first", 1);
+        logBatcher.add("user", "token", "second", 2);
+        logBatcher.add("user", "token", "third", 3);
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while(requestCount.get() == 0 && System.currentTimeMillis() < deadline)
+        {
+            Thread.sleep(10);
+        }
+
+        assertEquals(1, requestCount.get());
+        assertEquals(3, eventCount.get());
+        assertEquals(0, logBatcher.getBufferedCount());
+    }
+
+    @Test
+    public void flush_withNoEventsSendsNothing()
+    {
+        LogBatcher logBatcher = new LogBatcher(stubTransport, scheduler, 10, 60000);
+        logBatcher.flush();
+
+        assertEquals(0, requestCount.get());
+    }
+
+    @Test
+    public void batchBody_isEscapedJsonArray()
+    {
+        final StringBuilder sent = new StringBuilder();
+        LogBatcher logBatcher = new LogBatcher(new LogBatcher.Transport()
+        {
+            @Override
+            public void send(byte[] batchBody)
+            {
+                sent.append(new String(batchBody, Charset.forName("UTF-8")));
+            }
+        }, scheduler, 10, 60000);
+
+        logBatcher.add("user", null, "said \"hi\"\n", 42);
+        logBatcher.flush();
+
+        assertEquals("[{\"username\":\"user\",\"authToken\":null,\"activityDescription\":\"said \\\"hi\\\"\\n\",\"timestamp\":42}]",
+                sent.toString());
+    }
+
+    @Test
+    public void longDescription_isShortenedLikeLogEvent()
+    {
+        final StringBuilder sent = new StringBuilder();
+        LogBatcher logBatcher = new LogBatcher(new LogBatcher.Transport()
+        {
+            @Override
+            public void send(byte[] batchBody)
+            {
+                sent.append(new String(batchBody, Charset.forName("UTF-8")));
+            }
+        }, scheduler, 10, 60000);
+
+        StringBuilder description = new StringBuilder();
+
+        while(description.length() <= LogEvent.MAX_DESCRIPTION_LENGTH)
+        {
+            description.append("Inventory page loaded ");
+        }
+
+        logBatcher.add("user", "token", description.toString(), 42);
+        logBatcher.flush();
+
+        assertTrue(sent.toString(), sent.toString().contains(
+                "\"activityDescription\":\"" + LogEvent.of(description.toString()).getDescription() + "\","));
+    }
+
+    private static void post(String postURL, String body)
+    {
+        try
+        {
+            HttpURLConnection connection = (HttpURLConnection) new URL(postURL).openConnection();
+            connection.setRequestMethod("POST");
+            connection.setDoOutput(true);
+            connection.setRequestProperty("Content-Type", "application/json; charset=utf-8");
+
+            OutputStream out = connection.getOutputStream();
+            out.write(body.getBytes("UTF-8"));
+            out.close();
+
+            assertEquals(200, connection.getResponseCode());
+            readFully(connection.getInputStream());
+            connection.disconnect();
+        }
+        catch (IOException ex)
+        {
+            throw new AssertionError(ex);
+        }
+    }
+
+    private static String readFully(InputStream in) throws IOException
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int read;
+
+        while((read = in.read(buffer)) != -1)
+        {
+            out.write(buffer, 0, read);
+        }
+        in.close();
+
+        return out.toString("UTF-8");
+    }
+
+    private static int countOccurrences(String text, String token)
+    {
+        int count = 0;
+        int index = text.indexOf(token);
+
+        while(index != -1)
+        {
+            count++;
+            index = text.indexOf(token, index + token.length());
+        }
+
+        return count;
+    }
+}
@@ -0,0 +1,118 @@
+package msds.group.project.msds;
+
+import org.junit.Test;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for bounded, structured log events.
+ */
+public class LogEventTest
+{
+    private static String repeat(char c, int count)
+    {
+        StringBuilder text = new StringBuilder();
+
+        for(int i = 0; i < count; i++)
+        {
+            text.append(c);
+        }
+
+        return text.toString();
+    }
+
+    @Test
+    public void builder_writesTypedFieldsAndDescription()
+    {
+        LogEvent event = new LogEvent.Builder().begin("Inventory page loaded")
+                .add("itemCount", 3)
+                .add("sample", "Torch:4, \"Radio\":2")
+                .build();
+
+        assertEquals("Inventory page loaded (itemCount=3, sample=Torch:4, \"Radio\":2)", event.getDescription());
+        assertEquals("{\"itemCount\":3,\"sample\":\"Torch:4, \\\"Radio\\\":2\"}", event.getFields());
+    }
+
+    @Test
+    public void builder_isReusable()
+    {
+        LogEvent.Builder builder = new LogEvent.Builder();
+        builder.begin("first").add("a", 1).build();
+
+        LogEvent event = builder.begin("second").build();
+
+        assertEquals("second", event.getDescription());
+        assertNull(event.getFields());
+    }
+
+    @Test
+    public void builder_capsEverySize()
+    {
+        LogEvent.Builder builder = new LogEvent.Builder().begin(repeat('m', 1000));
+
+        for(int i = 0; i < 100; i++)
+        {
+            builder.add("field" + i, repeat('v', 10000));
+        }
+
+        LogEvent event = builder.build();
+
+        assertEquals(LogEvent.MAX_DESCRIPTION_LENGTH, event.getDescription().length());
+        assertTrue(event.getFields().length() <= LogEvent.MAX_FIELDS_LENGTH);
+        assertTrue(event.getFields().endsWith(",\"truncated\":true}"));
+    }
+
+    @Test
+    public void of_capsThePlainDescription()
+    {
+        assertEquals("short", LogEvent.of("short").getDescription());
+        assertEquals(LogEvent.MAX_DESCRIPTION_LENGTH, LogEvent.of(repeat('x', 100000)).getDescription().length());
+    }
+
+    @Test
+    public void logBatcher_sendsFieldsWithTheEvent()
+    {
+        final List<String> batches = new ArrayList<>();
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+
+        try
+        {
+            LogBatcher logBatcher = new LogBatcher(new LogBatcher.Transport()
+            {
+                @Override
+                public void send(byte[] batchBody)
+                {
+                    batches.add(new String(batchBody, Charset.forName("UTF-8")));
+                }
+            }, scheduler, 2, 60000);
+
+            logBatcher.add("user", "token", "plain", 1);
+            logBatcher.add("user", "token", new LogEvent.Builder().begin("typed").add("itemCount", 5).build(), 2);
+        }
+        finally
+        {
+            scheduler.shutdownNow();
+        }
+
+        assertEquals(1, batches.size());
+        assertEquals("[{\"username\":\"user\",\"authToken\":\"token\",\"activityDescription\":\"plain\",\"timestamp\":1},"
+                + "{\"username\":\"user\",\"authToken\":\"token\",\"activityDescription\":\"typed (itemCount=5)\","
+                + "\"fields\":{\"itemCount\":5},\"timestamp\":2}]", batches.get(0));
+    }
+
+    @Test
+    public void contentHash_changesWithAnyRow()
+    {
+        InventorySnapshot snapshot = new InventorySnapshot.Builder().add("Torch", 4).add("Radio", 2).build();
+
+        assertEquals(snapshot.contentHash(), new InventorySnapshot.Builder().add("Torch", 4).add("Radio", 2).build().contentHash());
+        assertFalse(snapshot.contentHash() == snapshot.withQuantity(1, 3).contentHash());
+        assertFalse(snapshot.contentHash() == new InventorySnapshot.Builder().add("Radio", 2).add("Torch", 4).build().contentHash());
+    }
+}
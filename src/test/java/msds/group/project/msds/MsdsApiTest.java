@@ -0,0 +1,530 @@
+package msds.group.project.msds;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests the MsdsApi against the StubMsdsServer using the PooledHttpEngine.
+ */
+public class MsdsApiTest
+{
+    private static final int MAX_CONNECTIONS = 4;
+
+    private StubMsdsServer stubServer;
+    private PooledHttpEngine httpEngine;
+    private MsdsApi api;
+    private ApiMetrics apiMetrics;
+
+    @Before
+    public void startStubServer() throws IOException
+    {
+        stubServer = new StubMsdsServer(1000, MAX_CONNECTIONS);
+        apiMetrics = new ApiMetrics(MsdsApi.SUBMIT_LOG);
+        httpEngine = new PooledHttpEngine(MAX_CONNECTIONS, 5000, 5000);
+        api = new MsdsApi(stubServer.baseUrl(), httpEngine, new Executor()
+        {
+            @Override
+            public void execute(Runnable runnable)
+            {
+                runnable.run();
+            }
+        }, apiMetrics);
+    }
+
+    @After
+    public void stopStubServer()
+    {
+        httpEngine.shutdown();
+        stubServer.stop();
+    }
+
+    @Test
+    public void login_sendsJsonBodyAndParsesResult() throws Exception
+    {
+        RequestCoalescer.Call<Boolean> call = api.login().call("alice", "p\"w", "token-1", 1500000000L);
+
+        assertTrue(await(call));
+        assertEquals("{\"username\":\"alice\",\"password\":\"p\\\"w\",\"authToken\":\"token-1\",\"timestamp\":\"1500000000\"}", stubServer.lastBody());
+        assertEquals("token-1", call.getParams().get("authToken"));
+    }
+
+    @Test
+    public void getUserInfo_parsesTypedFields() throws Exception
+    {
+        MsdsApi.UserInfo userInfo = await(api.getUserInfo().call("alice", "token-1"));
+
+        assertTrue(userInfo.isSuccess());
+        assertEquals("Ada", userInfo.getFirstName());
+        assertEquals("1815-12-10", userInfo.getDOB());
+        assertEquals("London", userInfo.getAddress());
+    }
+
+    @Test
+    public void userInfo_missingFieldIsParseError()
+    {
+        try
+        {
+            MsdsApi.UserInfo.parse("{\"success\":true,\"firstName\":\"Ada\"}".getBytes(Charset.forName("UTF-8")));
+            fail();
+        }
+        catch (IOException ex)
+        {
+            assertEquals("No value for lastName", ex.getMessage());
+        }
+    }
+
+    @Test
+    public void getInventory_parsesItemsAndDeliversChunks() throws Exception
+    {
+        final AtomicInteger chunkedRows = new AtomicInteger();
+
+        InventoryResponseParser.Result result = await(api.getInventory().call("alice", "token-1", null, null,
+                new InventoryResponseParser.ChunkListener()
+                {
+                    @Override
+                    public void onChunk(InventorySnapshot items, int from, int to)
+                    {
+                        chunkedRows.addAndGet(to - from);
+                    }
+                }));
+
+        assertTrue(result.isSuccess());
+        assertEquals(1000, result.getItems().size());
+        assertEquals("Item 999", result.getItems().getName(999));
+        assertEquals(1000, chunkedRows.get());
+        assertFalse(stubServer.lastBody().contains("version"));
+    }
+
+    @Test
+    public void getInventoryDelta_mergesChangesIntoBase() throws Exception
+    {
+        InventorySnapshot base = new InventorySnapshot.Builder()
+                .setVersion("v1")
+                .add("Item 0", 1)
+                .add("Item 1", 2)
+                .build();
+        stubServer.setInventoryDelta("{\"success\":true,\"delta\":true,\"baseVersion\":\"v1\",\"version\":\"v2\","
+                + "\"itemName\":[\"Item 2\"],\"quantity\":[7],\"removed\":[\"Item 0\"]}");
+
+        InventoryResponseParser.Result result = await(api.getInventoryDelta().call("alice", "token-1", base));
+
+        assertTrue(result.isDelta());
+        assertEquals("v2", result.getItems().getVersion());
+        assertEquals(2, result.getItems().size());
+        assertEquals("Item 1", result.getItems().getName(0));
+        assertEquals(7, result.getItems().getQuantity(1));
+        assertTrue(stubServer.lastBody(), stubServer.lastBody().endsWith("\"version\":\"v1\",\"delta\":\"true\"}"));
+    }
+
+    @Test
+    public void identicalCalls_shareOneRequest() throws Exception
+    {
+        stubServer.setLatencyMillis(200);
+
+        RequestCoalescer.Call<MsdsApi.UserInfo> first = api.getUserInfo().call("alice", "token-1");
+        RequestCoalescer.Call<MsdsApi.UserInfo> second = api.getUserInfo().call("alice", "token-1");
+
+        assertSame(first, second);
+        assertNotNull(await(second));
+        assertEquals(1, stubServer.requestCount());
+        assertEquals(0, api.getInFlightCount());
+    }
+
+    @Test
+    public void errorStatus_isApiException() throws Exception
+    {
+        stubServer.setStatusCode(404);
+        ApiException rejected = awaitFailure(api.login().call("alice", "pw", "token-1", 1L));
+
+        assertEquals(404, rejected.getStatusCode());
+        assertTrue(rejected.isRejected());
+        assertFalse(rejected.isParseError());
+
+        stubServer.setStatusCode(503);
+        assertFalse(awaitFailure(api.login().call("alice", "pw", "token-2", 2L)).isRejected());
+    }
+
+    @Test
+    public void calls_areRecordedInMetrics() throws Exception
+    {
+        await(api.getInventory().call("alice", "token-1", null, null, null));
+        stubServer.setStatusCode(500);
+        awaitFailure(api.getInventory().call("alice", "token-2", null, null, null));
+
+        final LinkedBlockingQueue<LogEvent> events = new LinkedBlockingQueue<>();
+        apiMetrics.export(new ApiMetrics.Sink()
+        {
+            @Override
+            public void send(LogEvent event)
+            {
+                events.add(event);
+            }
+        });
+
+        String fields = events.poll().getFields();
+        assertTrue(fields, fields.startsWith("{\"endpoint\":\"GetInventory.php\",\"calls\":2,\"errors\":1,\"noResponse\":0,"));
+        assertTrue(fields, fields.contains("\"bytesOut\":" + (2 * "{\"username\":\"alice\",\"authToken\":\"token-1\"}".length())));
+        assertEquals(2, apiMetrics.forEndpoint(MsdsApi.GET_INVENTORY).getCallCount());
+    }
+
+    @Test
+    public void submitLog_sendsIdempotencyKeyAndPayload() throws Exception
+    {
+        final LinkedBlockingQueue<String> responses = new LinkedBlockingQueue<>();
+
+        api.submitLog().send("key-1", "[{\"activityDescription\":\"x\"}]".getBytes(Charset.forName("UTF-8")), new RequestCoalescer.Callback<String>()
+        {
+            @Override
+            public void onSuccess(String result)
+            {
+                responses.add(result);
+            }
+
+            @Override
+            public void onFailure(Exception error)
+            {
+                responses.add(error.toString());
+            }
+        });
+
+        assertEquals("{\"success\":true}", responses.poll(5, TimeUnit.SECONDS));
+        assertEquals("key-1", stubServer.lastIdempotencyKey());
+        assertEquals("[{\"activityDescription\":\"x\"}]", stubServer.lastBody());
+    }
+
+    @Test
+    public void getInventory_decodesGzippedBinaryResponse() throws Exception
+    {
+        final AtomicInteger chunkedRows = new AtomicInteger();
+        stubServer.setBinaryInventory(true);
+        stubServer.setGzipResponses(true);
+
+        InventoryResponseParser.Result result = await(api.getInventory().call("alice", "token-1", null, null,
+                new InventoryResponseParser.ChunkListener()
+                {
+                    @Override
+                    public void onChunk(InventorySnapshot items, int from, int to)
+                    {
+                        chunkedRows.addAndGet(to - from);
+                    }
+                }));
+
+        assertTrue(result.isSuccess());
+        assertEquals("v1", result.getVersion());
+        assertEquals(1000, result.getItems().size());
+        assertEquals("Item 999", result.getItems().getName(999));
+        assertEquals(49, result.getItems().getQuantity(999));
+        assertEquals(1000, chunkedRows.get());
+    }
+
+    @Test
+    public void largeBodies_areGzippedOnceServerAcceptsGzip() throws Exception
+    {
+        String payload = largeLogPayload();
+
+        assertEquals("{\"success\":true}", submitLog("key-1", payload));
+        assertEquals(null, stubServer.lastContentEncoding());
+
+        stubServer.setAcceptGzipRequests(true);
+        assertEquals("{\"success\":true}", submitLog("key-2", payload));
+        assertEquals(null, stubServer.lastContentEncoding());
+
+        assertEquals("{\"success\":true}", submitLog("key-3", payload));
+        assertEquals("gzip", stubServer.lastContentEncoding());
+        assertEquals(payload, stubServer.lastBody());
+    }
+
+    @Test
+    public void refusedGzipBody_isSentAgainUncompressed() throws Exception
+    {
+        String payload = largeLogPayload();
+        stubServer.setAcceptGzipRequests(true);
+        assertTrue(await(api.login().call("alice", "pw", "token-1", 5L)));
+
+        stubServer.setAcceptGzipRequests(false);
+        assertEquals("{\"success\":true}", submitLog("key-1", payload));
+        assertEquals(3, stubServer.requestCount());
+        assertEquals(null, stubServer.lastContentEncoding());
+
+        assertEquals("{\"success\":true}", submitLog("key-2", payload));
+        assertEquals(4, stubServer.requestCount());
+    }
+
+    @Test
+    public void logFlood_doesNotDelayInteractiveCalls() throws Exception
+    {
+        stubServer.setLatencyMillis(50);
+        final AtomicInteger logsAnswered = new AtomicInteger();
+        final AtomicInteger logsDeferred = new AtomicInteger();
+        final CountDownLatch allLogsFinished = new CountDownLatch(100);
+        RequestCoalescer.Callback<String> logCallback = new RequestCoalescer.Callback<String>()
+        {
+            @Override
+            public void onSuccess(String result)
+            {
+                logsAnswered.incrementAndGet();
+                allLogsFinished.countDown();
+            }
+
+            @Override
+            public void onFailure(Exception error)
+            {
+                if(error.getCause() instanceof RequestScheduler.DeferredException)
+                {
+                    logsDeferred.incrementAndGet();
+                }
+
+                allLogsFinished.countDown();
+            }
+        };
+
+        // Sent in the order they arrive, the logs would hold the login up for 100 * 50 / MAX_CONNECTIONS ms.
+        for(int i = 0; i < 100; i++)
+        {
+            api.submitLog().send("key-" + i, "[]".getBytes(Charset.forName("UTF-8")), logCallback);
+        }
+
+        long startNanos = System.nanoTime();
+        assertTrue(await(api.login().call("alice", "pw", "token-1", 5L)));
+        long loginMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+
+        assertTrue(loginMillis + " ms", loginMillis < 500);
+        assertTrue(api.getRequestScheduler().getQueueDepth(RequestScheduler.BACKGROUND) > 80);
+        assertTrue(logsAnswered.get() < 20);
+
+        // Logs that have waited too long are handed back, for the WriteAheadQueue to send later.
+        api.getRequestScheduler().setLimit(RequestScheduler.BACKGROUND, 1, 0);
+        assertTrue(allLogsFinished.await(5, TimeUnit.SECONDS));
+        assertTrue(logsDeferred.get() > 80);
+    }
+
+    private static String largeLogPayload()
+    {
+        StringBuilder payload = new StringBuilder("[");
+
+        for(int i = 0; i < 40; i++)
+        {
+            payload.append(i > 0 ? "," : "").append("{\"activityDescription\":\"Inventory page loaded\",\"timestamp\":\"").append(i).append("\"}");
+        }
+
+        assertTrue(payload.length() >= MsdsApi.GZIP_MIN_BYTES);
+        return payload.append(']').toString();
+    }
+
+    private String submitLog(String idempotencyKey, String payload) throws InterruptedException
+    {
+        final LinkedBlockingQueue<String> responses = new LinkedBlockingQueue<>();
+
+        api.submitLog().send(idempotencyKey, payload.getBytes(Charset.forName("UTF-8")), new RequestCoalescer.Callback<String>()
+        {
+            @Override
+            public void onSuccess(String result)
+            {
+                responses.add(result);
+            }
+
+            @Override
+            public void onFailure(Exception error)
+            {
+                responses.add(error.toString());
+            }
+        });
+
+        return responses.poll(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void batch_sendsOneRequestAndRoutesResponses() throws Exception
+    {
+        MsdsApi.Batch batch = api.batch("alice", "token-1");
+        RequestCoalescer.Call<Boolean> login = batch.login("pw", 5L);
+        RequestCoalescer.Call<MsdsApi.UserInfo> userInfo = batch.getUserInfo();
+        RequestCoalescer.Call<InventoryResponseParser.Result> inventory = batch.getInventory("v0", null, null);
+
+        assertSame(userInfo, api.getUserInfo().call("alice", "token-1"));
+        batch.send();
+
+        assertTrue(await(login));
+        assertEquals("Ada", await(userInfo).getFirstName());
+        assertEquals(1000, await(inventory).getItems().size());
+        assertEquals(1, stubServer.requestCount());
+        assertEquals("{\"username\":\"alice\",\"authToken\":\"token-1\",\"operations\":["
+                + "{\"id\":0,\"endpoint\":\"Login.php\",\"params\":{\"password\":\"pw\",\"timestamp\":\"5\"}},"
+                + "{\"id\":1,\"endpoint\":\"GetUserInfo.php\",\"params\":{}},"
+                + "{\"id\":2,\"endpoint\":\"GetInventory.php\",\"params\":{\"version\":\"v0\"}}]}", stubServer.lastBody());
+        assertEquals(1, apiMetrics.forEndpoint(MsdsApi.BATCH).getCallCount());
+    }
+
+    @Test
+    public void batch_fallsBackToSeparateRequestsWhenUnsupported() throws Exception
+    {
+        stubServer.setBatchSupported(false);
+
+        MsdsApi.Batch batch = api.batch("alice", "token-1");
+        RequestCoalescer.Call<Boolean> login = batch.login("pw", 5L);
+        RequestCoalescer.Call<MsdsApi.UserInfo> userInfo = batch.getUserInfo();
+        batch.send();
+
+        assertTrue(await(login));
+        assertEquals("Ada", await(userInfo).getFirstName());
+        assertEquals(3, stubServer.requestCount());
+
+        batch = api.batch("alice", "token-2");
+        login = batch.login("pw", 6L);
+        userInfo = batch.getUserInfo();
+        batch.send();
+
+        assertTrue(await(login));
+        assertNotNull(await(userInfo));
+        assertEquals(5, stubServer.requestCount());
+    }
+
+    @Test
+    public void batchFallback_sendsTheRestOnlyAfterTheLoginSucceeds() throws Exception
+    {
+        stubServer.setBatchSupported(false);
+        stubServer.setLatencyMillis(100);
+
+        final AtomicInteger batchingUnsupported = new AtomicInteger();
+        api.setBatchingListener(new MsdsApi.BatchingListener()
+        {
+            @Override
+            public void onBatchingUnsupported()
+            {
+                batchingUnsupported.incrementAndGet();
+            }
+        });
+
+        MsdsApi.Batch batch = api.batch("alice", "token-1");
+        final RequestCoalescer.Call<Boolean> login = batch.login("pw", 5L);
+        RequestCoalescer.Call<MsdsApi.UserInfo> userInfo = batch.getUserInfo();
+        final LinkedBlockingQueue<Integer> userInfoRequestsAtLogin = new LinkedBlockingQueue<>();
+
+        login.subscribe(new RequestCoalescer.Callback<Boolean>()
+        {
+            @Override
+            public void onSuccess(Boolean result)
+            {
+                userInfoRequestsAtLogin.add(stubServer.requestCount(MsdsApi.GET_USER_INFO));
+            }
+
+            @Override
+            public void onFailure(Exception error)
+            {
+            }
+        });
+        batch.send();
+
+        assertEquals("Ada", await(userInfo).getFirstName());
+        assertEquals(Integer.valueOf(0), userInfoRequestsAtLogin.poll(5, TimeUnit.SECONDS));
+        assertEquals(1, batchingUnsupported.get());
+    }
+
+    @Test
+    public void batchingUnsupported_isNotTriedWhenRestored() throws Exception
+    {
+        stubServer.setBatchSupported(false);
+        api.setBatchingSupported(false);
+
+        MsdsApi.Batch batch = api.batch("alice", "token-1");
+        RequestCoalescer.Call<Boolean> login = batch.login("pw", 5L);
+        RequestCoalescer.Call<MsdsApi.UserInfo> userInfo = batch.getUserInfo();
+        batch.send();
+
+        assertTrue(await(login));
+        assertNotNull(await(userInfo));
+        assertEquals(0, stubServer.requestCount(MsdsApi.BATCH));
+        assertEquals(2, stubServer.requestCount());
+    }
+
+    @Test
+    public void pooledEngine_reusesConnections() throws Exception
+    {
+        int requests = 40;
+        final CountDownLatch done = new CountDownLatch(requests);
+
+        for(int i = 0; i < requests; i++)
+        {
+            // Distinct usernames so the calls are not coalesced.
+            api.login().call("user" + i, "pw", "token", i).subscribe(new RequestCoalescer.Callback<Boolean>()
+            {
+                @Override
+                public void onSuccess(Boolean result)
+                {
+                    done.countDown();
+                }
+
+                @Override
+                public void onFailure(Exception error)
+                {
+                }
+            });
+        }
+
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertEquals(requests, stubServer.requestCount());
+        assertTrue("connections: " + stubServer.connectionCount(), stubServer.connectionCount() <= MAX_CONNECTIONS);
+    }
+
+    private static <T> T await(RequestCoalescer.Call<T> call) throws Exception
+    {
+        final LinkedBlockingQueue<Object> outcome = new LinkedBlockingQueue<>();
+
+        call.subscribe(new RequestCoalescer.Callback<T>()
+        {
+            @Override
+            public void onSuccess(T result)
+            {
+                outcome.add(result);
+            }
+
+            @Override
+            public void onFailure(Exception error)
+            {
+                outcome.add(error);
+            }
+        });
+
+        Object result = outcome.poll(5, TimeUnit.SECONDS);
+
+        if(result instanceof Exception)
+        {
+            throw (Exception) result;
+        }
+
+        @SuppressWarnings("unchecked")
+        T typed = (T) result;
+        return typed;
+    }
+
+    private static ApiException awaitFailure(RequestCoalescer.Call<?> call) throws Exception
+    {
+        try
+        {
+            await(call);
+        }
+        catch (ApiException ex)
+        {
+            return ex;
+        }
+
+        fail("Expected an ApiException");
+        return null;
+    }
+}
@@ -0,0 +1,91 @@
+package msds.group.project.msds;
+
+import org.junit.Test;
+
+import java.nio.charset.Charset;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Local unit tests for writing request bodies with the RequestBodyWriter.
+ */
+public class RequestBodyWriterTest
+{
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final RequestBodyWriter.Schema EVENT = new RequestBodyWriter.Schema("username", "fields", "timestamp");
+
+    private final RequestBodyWriter writer = new RequestBodyWriter(new BufferPool(1 << 16, 2));
+
+    private String written()
+    {
+        return new String(writer.toByteArray(), UTF_8);
+    }
+
+    @Test
+    public void strings_areEscapedLikeAppendJsonString()
+    {
+        String[] samples = {"plain", "quote \" and \\ backslash", "tab\tnew\nline\r", "\u0001\u001f", "Fl\u00e4sche \uD83D\uDE80 \u6c34", "lone \uD800 surrogate", null};
+
+        for(String sample : samples)
+        {
+            StringBuilder expected = new StringBuilder();
+            LogBatcher.appendJsonString(expected, sample);
+
+            writer.reset().value(sample);
+
+            assertEquals(new String(expected.toString().getBytes(UTF_8), UTF_8), written());
+        }
+    }
+
+    @Test
+    public void containers_getCommasOnlyBetweenMembers()
+    {
+        writer.beginObject().name("a").value(1).name("b").beginArray().value(-20).value("x").beginObject().endObject().endArray()
+                .name("c").rawValue("{\"n\":1}").endObject();
+
+        assertEquals("{\"a\":1,\"b\":[-20,\"x\",{}],\"c\":{\"n\":1}}", written());
+    }
+
+    @Test
+    public void schemaFields_areWrittenInOrderAndCanBeSkipped()
+    {
+        writer.beginArray();
+        writer.beginObject(EVENT).field("ada").rawField("{\"count\":3}").field(Long.MIN_VALUE).endObject();
+        writer.beginObject(EVENT).field("bob").skipField().field(1500000000L).endObject();
+        writer.endArray();
+
+        assertEquals("[{\"username\":\"ada\",\"fields\":{\"count\":3},\"timestamp\":-9223372036854775808},"
+                + "{\"username\":\"bob\",\"timestamp\":1500000000}]", written());
+    }
+
+    @Test
+    public void longStrings_areShortenedLikeLogEvent()
+    {
+        StringBuilder text = new StringBuilder();
+
+        for(int i = 0; i < 40; i++)
+        {
+            text.append("event ").append(i).append(' ');
+        }
+
+        writer.value(text.toString(), LogEvent.MAX_DESCRIPTION_LENGTH);
+
+        assertEquals('"' + LogEvent.truncate(text.toString(), LogEvent.MAX_DESCRIPTION_LENGTH) + '"', written());
+    }
+
+    @Test
+    public void reset_keepsTheGrownBuffer()
+    {
+        for(int i = 0; i < 1000; i++)
+        {
+            writer.value("grow the buffer past one kilobyte");
+        }
+
+        byte[] grown = writer.getBuffer();
+        writer.reset().value("small");
+
+        assertSame(grown, writer.getBuffer());
+        assertEquals("\"small\"", written());
+    }
+}
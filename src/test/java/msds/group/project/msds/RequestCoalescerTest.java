@@ -0,0 +1,199 @@
+package msds.group.project.msds;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for RequestCoalescer, using a fake exchange that is completed by hand.
+ */
+public class RequestCoalescerTest
+{
+    private static final String URL = "https://example.invalid/GetInventory.php";
+
+    /**
+     * An exchange that records how often it was started and cancelled.
+     */
+    private static class FakeExchange implements RequestCoalescer.Exchange<String>
+    {
+        int starts;
+        int cancels;
+        RequestCoalescer.Callback<String> callback;
+
+        @Override
+        public void start(RequestCoalescer.Callback<String> callback)
+        {
+            starts++;
+            this.callback = callback;
+        }
+
+        @Override
+        public void cancel()
+        {
+            cancels++;
+        }
+    }
+
+    /**
+     * An exchange sent at a priority, recording any promotion.
+     */
+    private static class PrioritisedExchange extends FakeExchange implements RequestCoalescer.Prioritised
+    {
+        int priority;
+
+        PrioritisedExchange(int priority)
+        {
+            this.priority = priority;
+        }
+
+        @Override
+        public int getPriority()
+        {
+            return priority;
+        }
+
+        @Override
+        public void promote(int priority)
+        {
+            this.priority = Math.min(this.priority, priority);
+        }
+    }
+
+    /**
+     * A subscriber that records everything delivered to it.
+     */
+    private static class Recorder implements RequestCoalescer.Callback<String>
+    {
+        final List<String> results = new ArrayList<>();
+
+        @Override
+        public void onSuccess(String result)
+        {
+            results.add(result);
+        }
+
+        @Override
+        public void onFailure(Exception error)
+        {
+            results.add("error:" + error.getMessage());
+        }
+    }
+
+    private static Map<String, String> params(String... namesAndValues)
+    {
+        Map<String, String> params = new LinkedHashMap<>();
+
+        for(int i = 0; i < namesAndValues.length; i += 2)
+        {
+            params.put(namesAndValues[i], namesAndValues[i + 1]);
+        }
+
+        return params;
+    }
+
+    @Test
+    public void key_ignoresParameterOrderAndVolatileParameters()
+    {
+        assertEquals(RequestCoalescer.key(URL, params("a", "1", "b", "2")), RequestCoalescer.key(URL, params("b", "2", "a", "1")));
+        assertEquals(RequestCoalescer.key(URL, params("user", "x", "authToken", "1"), "authToken"),
+                RequestCoalescer.key(URL, params("user", "x", "authToken", "2"), "authToken"));
+        assertFalse(RequestCoalescer.key(URL, params("a", "1;b=2")).equals(RequestCoalescer.key(URL, params("a", "1", "b", "2"))));
+    }
+
+    @Test
+    public void joiningCall_promotesExchangeInFlight()
+    {
+        RequestCoalescer coalescer = new RequestCoalescer();
+        PrioritisedExchange prefetch = new PrioritisedExchange(RequestScheduler.PREFETCH);
+
+        coalescer.call(URL, params("user", "x"), prefetch);
+        coalescer.call(URL, params("user", "x"), new PrioritisedExchange(RequestScheduler.BACKGROUND));
+        assertEquals(RequestScheduler.PREFETCH, prefetch.priority);
+
+        coalescer.call(URL, params("user", "x"), new PrioritisedExchange(RequestScheduler.INTERACTIVE));
+        assertEquals(RequestScheduler.INTERACTIVE, prefetch.priority);
+        assertEquals(1, prefetch.starts);
+    }
+
+    @Test
+    public void identicalCalls_shareOneExchangeAndFanOut()
+    {
+        RequestCoalescer coalescer = new RequestCoalescer();
+        FakeExchange first = new FakeExchange();
+        FakeExchange second = new FakeExchange();
+        Recorder a = new Recorder();
+        Recorder b = new Recorder();
+
+        RequestCoalescer.Call<String> callA = coalescer.call(URL, params("user", "x", "authToken", "1"), first, "authToken");
+        RequestCoalescer.Call<String> callB = coalescer.call(URL, params("authToken", "2", "user", "x"), second, "authToken");
+        callA.subscribe(a);
+        callB.subscribe(b);
+        callB.subscribe(b);
+
+        assertSame(callA, callB);
+        assertEquals(1, first.starts);
+        assertEquals(0, second.starts);
+        assertEquals("1", callB.getParams().get("authToken"));
+
+        first.callback.onSuccess("inventory");
+
+        assertEquals(1, a.results.size());
+        assertEquals("inventory", b.results.get(0));
+        assertEquals(1, b.results.size());
+        assertEquals(0, coalescer.getInFlightCount());
+    }
+
+    @Test
+    public void finishedCall_deliversItsResultToLateSubscribers()
+    {
+        RequestCoalescer coalescer = new RequestCoalescer();
+        FakeExchange exchange = new FakeExchange();
+        Recorder beforeRotation = new Recorder();
+        Recorder afterRotation = new Recorder();
+
+        RequestCoalescer.Call<String> call = coalescer.call(URL, params("user", "x"), exchange);
+        call.subscribe(beforeRotation);
+        call.detach(beforeRotation);
+
+        exchange.callback.onFailure(new Exception("offline"));
+        call.subscribe(afterRotation);
+
+        assertTrue(call.isDone());
+        assertEquals(0, exchange.cancels);
+        assertEquals(0, beforeRotation.results.size());
+        assertEquals("error:offline", afterRotation.results.get(0));
+
+        FakeExchange retry = new FakeExchange();
+        coalescer.call(URL, params("user", "x"), retry);
+        assertEquals(1, retry.starts);
+    }
+
+    @Test
+    public void unsubscribingTheLastSubscriber_cancelsTheExchange()
+    {
+        RequestCoalescer coalescer = new RequestCoalescer();
+        FakeExchange exchange = new FakeExchange();
+        Recorder a = new Recorder();
+        Recorder b = new Recorder();
+
+        RequestCoalescer.Call<String> call = coalescer.call(URL, new HashMap<String, String>(), exchange);
+        call.subscribe(a);
+        call.subscribe(b);
+
+        call.unsubscribe(a);
+        assertEquals(0, exchange.cancels);
+
+        call.unsubscribe(b);
+        assertEquals(1, exchange.cancels);
+        assertEquals(0, coalescer.getInFlightCount());
+
+        exchange.callback.onSuccess("late");
+        assertEquals(0, a.results.size() + b.results.size());
+    }
+}
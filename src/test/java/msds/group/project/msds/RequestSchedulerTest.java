@@ -0,0 +1,190 @@
+package msds.group.project.msds;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for RequestScheduler, using a fake HttpEngine whose requests are answered by hand.
+ */
+public class RequestSchedulerTest
+{
+    /**
+     * An engine that keeps every request it is given until the test answers it.
+     */
+    private static class FakeEngine implements HttpEngine
+    {
+        final List<String> posted = new ArrayList<>();
+        final List<Handler> handlers = new ArrayList<>();
+        int cancels;
+
+        @Override
+        public Pending post(String url, String contentType, Map<String, String> headers, byte[] body, Handler handler)
+        {
+            posted.add(url);
+            handlers.add(handler);
+
+            return new Pending()
+            {
+                @Override
+                public void cancel()
+                {
+                    cancels++;
+                }
+            };
+        }
+
+        void answer(int index)
+        {
+            handlers.get(index).onResponse(200, Collections.<String, String>emptyMap(), new byte[0],
+                    ApiMetrics.NOT_MEASURED, ApiMetrics.NOT_MEASURED);
+        }
+    }
+
+    /**
+     * A handler that records how its request ended.
+     */
+    private static class Recorder implements HttpEngine.Handler
+    {
+        final List<String> outcomes = new ArrayList<>();
+
+        @Override
+        public void onResponse(int statusCode, Map<String, String> headers, byte[] body, long connectNanos, long firstByteNanos)
+        {
+            outcomes.add("status:" + statusCode);
+        }
+
+        @Override
+        public void onFailure(IOException error)
+        {
+            outcomes.add(error.getClass().getSimpleName());
+        }
+    }
+
+    private final FakeEngine engine = new FakeEngine();
+    private final RequestScheduler scheduler = new RequestScheduler(engine);
+    private final Recorder recorder = new Recorder();
+
+    private RequestScheduler.Ticket submit(int priority, String name)
+    {
+        return scheduler.submit(priority, name, "application/json", Collections.<String, String>emptyMap(), new byte[0], recorder);
+    }
+
+    @Test
+    public void interactiveRequest_isSentWhileBackgroundRequestsWait()
+    {
+        for(int i = 0; i < 20; i++)
+        {
+            submit(RequestScheduler.BACKGROUND, "log-" + i);
+        }
+
+        submit(RequestScheduler.INTERACTIVE, "login");
+
+        assertEquals(Arrays.asList("log-0", "login"), engine.posted);
+        assertEquals(19, scheduler.getQueueDepth(RequestScheduler.BACKGROUND));
+        assertEquals(1, scheduler.getInFlightCount(RequestScheduler.INTERACTIVE));
+
+        engine.answer(1);
+        assertEquals(Arrays.asList("status:200"), recorder.outcomes);
+        assertEquals(0, scheduler.getInFlightCount(RequestScheduler.INTERACTIVE));
+    }
+
+    @Test
+    public void lowerPriority_waitsWhileHigherPriorityIsQueued()
+    {
+        scheduler.setLimit(RequestScheduler.INTERACTIVE, 1, RequestScheduler.NO_MAX_WAIT);
+
+        submit(RequestScheduler.INTERACTIVE, "a");
+        submit(RequestScheduler.INTERACTIVE, "b");
+        submit(RequestScheduler.BACKGROUND, "log");
+        submit(RequestScheduler.PREFETCH, "prefetch");
+        assertEquals(Arrays.asList("a"), engine.posted);
+
+        engine.answer(0);
+        assertEquals(Arrays.asList("a", "b", "prefetch", "log"), engine.posted);
+    }
+
+    @Test
+    public void requestWaitingPastMaxWait_isDeferredAndNeverSent() throws Exception
+    {
+        scheduler.setLimit(RequestScheduler.BACKGROUND, 1, 0);
+
+        submit(RequestScheduler.BACKGROUND, "log-0");
+        submit(RequestScheduler.BACKGROUND, "log-1");
+        Thread.sleep(2);
+        engine.answer(0);
+
+        assertEquals(Arrays.asList("log-0"), engine.posted);
+        assertEquals(Arrays.asList("DeferredException", "status:200"), recorder.outcomes);
+        assertEquals(0, scheduler.getQueueDepth(RequestScheduler.BACKGROUND));
+    }
+
+    @Test
+    public void cancel_removesWaitingRequestAndFreesPlaceInFlight()
+    {
+        RequestScheduler.Ticket first = submit(RequestScheduler.BACKGROUND, "log-0");
+        RequestScheduler.Ticket second = submit(RequestScheduler.BACKGROUND, "log-1");
+        submit(RequestScheduler.BACKGROUND, "log-2");
+
+        second.cancel();
+        first.cancel();
+
+        assertEquals(Arrays.asList("log-0", "log-2"), engine.posted);
+        assertEquals(1, engine.cancels);
+
+        // An engine that answers after all must not free the place a second time.
+        engine.answer(0);
+        assertTrue(recorder.outcomes.isEmpty());
+        assertEquals(1, scheduler.getInFlightCount(RequestScheduler.BACKGROUND));
+    }
+
+    @Test
+    public void promote_movesWaitingRequestAheadOfItsOldQueue()
+    {
+        submit(RequestScheduler.PREFETCH, "user-info");
+        submit(RequestScheduler.PREFETCH, "inventory");
+        RequestScheduler.Ticket delta = submit(RequestScheduler.PREFETCH, "delta");
+        assertEquals(2, engine.posted.size());
+
+        delta.promote(RequestScheduler.INTERACTIVE);
+
+        assertEquals(Arrays.asList("user-info", "inventory", "delta"), engine.posted);
+        assertEquals(1, scheduler.getInFlightCount(RequestScheduler.INTERACTIVE));
+    }
+
+    @Test
+    public void export_reportsOnlyIntervalsWithWaiting()
+    {
+        final List<LogEvent> events = new ArrayList<>();
+        ApiMetrics.Sink sink = new ApiMetrics.Sink()
+        {
+            @Override
+            public void send(LogEvent event)
+            {
+                events.add(event);
+            }
+        };
+
+        // Nothing waited, so nothing is sent and the count is carried into the next export.
+        submit(RequestScheduler.BACKGROUND, "log-0");
+        engine.answer(0);
+        assertEquals(0, scheduler.export(sink));
+
+        for(int i = 1; i <= 3; i++)
+        {
+            submit(RequestScheduler.BACKGROUND, "log-" + i);
+        }
+
+        assertEquals(1, scheduler.export(sink));
+        assertTrue(events.get(0).getFields(), events.get(0).getFields().contains("\"priority\":\"background\""));
+        assertTrue(events.get(0).getFields(), events.get(0).getFields().contains("\"submitted\":4,\"waited\":2,\"deferred\":0,\"peakDepth\":2"));
+        assertEquals(0, scheduler.export(sink));
+    }
+}
@@ -0,0 +1,81 @@
+package msds.group.project.msds;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Tests that the SessionCache never hands data to a different session.
+ */
+public class SessionCacheTest
+{
+    private final SessionCache cache = new SessionCache();
+
+    private final InventorySnapshot inventory = new InventorySnapshot.Builder()
+            .setVersion("v1")
+            .add("torch", 4)
+            .build();
+
+    @Test
+    public void cachedData_isReturnedToTheSameSession() throws IOException
+    {
+        MsdsApi.UserInfo userInfo = MsdsApi.UserInfo.parse("{\"success\":false}".getBytes(Charset.forName("UTF-8")));
+
+        cache.startSession("alice", "token-1");
+        cache.putUserInfo("alice", "token-1", userInfo);
+        cache.putInventory("alice", "token-1", inventory);
+
+        assertSame(userInfo, cache.getUserInfo("alice", "token-1"));
+        assertSame(inventory, cache.getInventory("alice", "token-1"));
+        assertNull(cache.getInventory("alice", "token-2"));
+        assertNull(cache.getInventory("bob", "token-1"));
+    }
+
+    @Test
+    public void newSession_dropsPreviousData()
+    {
+        cache.startSession("alice", "token-1");
+        cache.putInventory("alice", "token-1", inventory);
+
+        cache.startSession("alice", "token-1");
+        assertSame(inventory, cache.getInventory("alice", "token-1"));
+
+        cache.startSession("alice", "token-2");
+        assertNull(cache.getInventory("alice", "token-2"));
+        assertNull(cache.getInventory("alice", "token-1"));
+    }
+
+    @Test
+    public void putForEndedSession_isIgnored()
+    {
+        cache.putInventory("alice", "token-1", inventory);
+        assertNull(cache.getInventory("alice", "token-1"));
+
+        cache.startSession("alice", "token-2");
+        cache.putInventory("alice", "token-1", inventory);
+        assertNull(cache.getInventory("alice", "token-1"));
+        assertNull(cache.getInventory("alice", "token-2"));
+    }
+
+    @Test
+    public void renewedSession_keepsItsDataUnderBothTokens()
+    {
+        cache.startSession("alice", "token-1");
+        cache.putInventory("alice", "token-1", inventory);
+
+        cache.renewSession("alice", "token-1", "token-2");
+        assertSame(inventory, cache.getInventory("alice", "token-2"));
+        assertSame(inventory, cache.getInventory("alice", "token-1"));
+
+        cache.renewSession("alice", "token-2", "token-3");
+        assertSame(inventory, cache.getInventory("alice", "token-3"));
+        assertNull(cache.getInventory("alice", "token-1"));
+
+        cache.renewSession("bob", "token-3", "token-4");
+        assertNull(cache.getInventory("alice", "token-4"));
+    }
+}
@@ -0,0 +1,243 @@
+package msds.group.project.msds;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Local unit tests for SessionClock, using a clock and timer moved by hand.
+ */
+public class SessionClockTest
+{
+    /**
+     * A clock and timer that only move when the test tells them to.
+     */
+    private static class FakeTime implements SessionClock.Clock, SessionClock.Timer
+    {
+        long now = 1000000;
+        final LinkedHashMap<Runnable, Long> posted = new LinkedHashMap<>();
+
+        @Override
+        public long elapsedRealtime()
+        {
+            return now;
+        }
+
+        @Override
+        public void postDelayed(Runnable runnable, long delayMillis)
+        {
+            assertFalse(posted.containsKey(runnable));
+            posted.put(runnable, now + delayMillis);
+        }
+
+        @Override
+        public void removeCallbacks(Runnable runnable)
+        {
+            posted.remove(runnable);
+        }
+
+        /**
+         * @return returns when the next waiting runnable is due.
+         */
+        long nextAt()
+        {
+            long at = Long.MAX_VALUE;
+
+            for(long postedAt : posted.values())
+            {
+                at = Math.min(at, postedAt);
+            }
+
+            return at;
+        }
+
+        /**
+         * Runs the next waiting runnable, lateMillis after it was due.
+         */
+        void runNext(long lateMillis)
+        {
+            long at = nextAt();
+
+            for(Map.Entry<Runnable, Long> entry : posted.entrySet())
+            {
+                if(entry.getValue() == at)
+                {
+                    Runnable runnable = entry.getKey();
+                    posted.remove(runnable);
+                    now = at + lateMillis;
+                    runnable.run();
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * A listener that records what it was told.
+     */
+    private static class Recorder implements SessionClock.Listener
+    {
+        final List<String> events = new ArrayList<>();
+
+        @Override
+        public void onTick(long remainingMillis)
+        {
+            events.add(String.valueOf(remainingMillis));
+        }
+
+        @Override
+        public void onSessionEnded()
+        {
+            events.add("ended");
+        }
+    }
+
+    private final FakeTime time = new FakeTime();
+    private final SessionClock sessionClock = new SessionClock(time, time);
+    private final Recorder recorder = new Recorder();
+    private int expiries;
+
+    public SessionClockTest()
+    {
+        sessionClock.setExpiryListener(new SessionClock.ExpiryListener()
+        {
+            @Override
+            public void onSessionExpired()
+            {
+                expiries++;
+            }
+        });
+    }
+
+    @Test
+    public void clock_onlyTicksWhileSubscribed()
+    {
+        sessionClock.start(60000);
+        assertEquals(1, time.posted.size());
+        assertEquals(time.now + 60000, time.nextAt());
+
+        sessionClock.subscribe(recorder);
+        assertEquals(Arrays.asList("60000"), recorder.events);
+        assertEquals(time.now + 1000, time.nextAt());
+
+        sessionClock.unsubscribe(recorder);
+        assertEquals(1, time.posted.size());
+        assertEquals(time.now + 60000, time.nextAt());
+
+        time.now += 5000;
+        assertEquals(55000, sessionClock.getRemainingMillis());
+    }
+
+    @Test
+    public void lateTick_doesNotDelayTheTicksAfterIt()
+    {
+        sessionClock.start(2500);
+        sessionClock.subscribe(recorder);
+        assertEquals(time.now + 500, time.nextAt());
+
+        time.runNext(120);
+        assertEquals(Arrays.asList("2500", "1880"), recorder.events);
+        assertEquals(time.now + 880, time.nextAt());
+
+        time.runNext(0);
+        assertEquals("1000", recorder.events.get(2));
+    }
+
+    @Test
+    public void sessionEnd_isToldOnceToEverySubscriber()
+    {
+        Recorder other = new Recorder();
+
+        sessionClock.start(1000);
+        sessionClock.subscribe(recorder);
+        sessionClock.subscribe(other);
+        time.runNext(0);
+
+        assertEquals(Arrays.asList("1000", "1000", "ended"), recorder.events);
+        assertEquals(Arrays.asList("1000", "ended"), other.events);
+        assertEquals(1, expiries);
+        assertTrue(time.posted.isEmpty());
+
+        // A page shown after the session ended is told straight away.
+        Recorder late = new Recorder();
+        sessionClock.subscribe(late);
+        assertEquals(Arrays.asList("ended"), late.events);
+        assertEquals(3, recorder.events.size());
+    }
+
+    @Test
+    public void renewedSession_movesTheEnd()
+    {
+        sessionClock.start(1000);
+        sessionClock.subscribe(recorder);
+
+        time.now += 400;
+        sessionClock.start(30000);
+
+        assertEquals(Arrays.asList("1000", "30000"), recorder.events);
+        assertEquals(time.now + 1000, time.nextAt());
+        assertEquals(Long.valueOf(time.now + 30000), time.posted.values().toArray()[0]);
+    }
+
+    @Test
+    public void listenerUnsubscribingAsItIsTold_leavesNoTickWaiting()
+    {
+        sessionClock.start(5000);
+        sessionClock.subscribe(new SessionClock.Listener()
+        {
+            @Override
+            public void onTick(long remainingMillis)
+            {
+                sessionClock.unsubscribe(this);
+            }
+
+            @Override
+            public void onSessionEnded()
+            {
+            }
+        });
+
+        assertEquals(1, time.posted.size());
+    }
+
+    @Test
+    public void sessionEnd_isNoticedWithoutSubscribers()
+    {
+        sessionClock.start(60000);
+        time.runNext(0);
+
+        assertEquals(1, expiries);
+        assertTrue(time.posted.isEmpty());
+
+        sessionClock.subscribe(recorder);
+        assertEquals(Arrays.asList("ended"), recorder.events);
+        assertEquals(1, expiries);
+    }
+
+    @Test
+    public void deadlineHeldUpBySleep_isCaughtByCheckExpiry()
+    {
+        sessionClock.start(60000);
+
+        time.now += 30000;
+        sessionClock.checkExpiry();
+        assertEquals(0, expiries);
+        assertEquals(time.now + 30000, time.nextAt());
+
+        // The device slept through the deadline and the timer has not run yet.
+        time.now += 90000;
+        sessionClock.checkExpiry();
+
+        assertEquals(1, expiries);
+        assertTrue(time.posted.isEmpty());
+        assertEquals(0, sessionClock.getRemainingMillis());
+    }
+}
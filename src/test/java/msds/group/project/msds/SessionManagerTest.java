@@ -0,0 +1,454 @@
+package msds.group.project.msds;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests renewing sessions through the SessionManager against the StubMsdsServer.
+ */
+public class SessionManagerTest
+{
+    private StubMsdsServer stubServer;
+    private PooledHttpEngine httpEngine;
+    private ScheduledExecutorService scheduler;
+    private MsdsApi api;
+    private SessionManager sessionManager;
+    private final SharedVariables sharedVariables = new SharedVariables();
+
+    @Before
+    public void startStubServer() throws IOException
+    {
+        stubServer = new StubMsdsServer(10, 4);
+        httpEngine = new PooledHttpEngine(4, 5000, 5000);
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+        api = new MsdsApi(stubServer.baseUrl(), httpEngine, new Executor()
+        {
+            @Override
+            public void execute(Runnable runnable)
+            {
+                runnable.run();
+            }
+        }, new ApiMetrics(MsdsApi.SUBMIT_LOG));
+
+        sessionManager = new SessionManager(api, sharedVariables, scheduler);
+        api.setAuthenticator(sessionManager);
+    }
+
+    @After
+    public void stopStubServer()
+    {
+        scheduler.shutdownNow();
+        httpEngine.shutdown();
+        stubServer.stop();
+    }
+
+    private static long now()
+    {
+        return TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis());
+    }
+
+    @Test
+    public void concurrentRefreshes_sendOneRequest() throws Exception
+    {
+        stubServer.setLatencyMillis(200);
+        sessionManager.startSession("alice", "token-1", now());
+
+        List<RequestCoalescer.Call<Boolean>> calls = new ArrayList<>();
+
+        for(int i = 0; i < 10; i++)
+        {
+            calls.add(sessionManager.refresh());
+        }
+
+        for(RequestCoalescer.Call<Boolean> call : calls)
+        {
+            assertSame(calls.get(0), call);
+            assertTrue(await(call));
+        }
+
+        assertEquals(1, stubServer.requestCount(MsdsApi.REFRESH_SESSION));
+        assertEquals(calls.get(0).getParams().get("newAuthToken"), sessionManager.getSession().getAuthToken());
+    }
+
+    @Test
+    public void session_isPublishedThroughSharedVariables() throws Exception
+    {
+        final List<SessionSnapshot> published = new ArrayList<>();
+        sharedVariables.addListener(new SharedVariables.Listener()
+        {
+            @Override
+            public void onSessionChanged(SessionSnapshot session)
+            {
+                published.add(session);
+            }
+        });
+
+        sessionManager.startSession("alice", "token-1", now());
+        assertSame(sharedVariables.getSession(), sessionManager.getSession());
+
+        RequestCoalescer.Call<Boolean> renewal = sessionManager.refresh();
+        assertTrue(await(renewal));
+        assertEquals(renewal.getParams().get("newAuthToken"), sharedVariables.getSession().getAuthToken());
+        assertEquals("alice", sharedVariables.getSession().getUsername());
+
+        // A renewal answered after the logout does not bring the session back.
+        stubServer.setLatencyMillis(200);
+        renewal = sessionManager.refresh();
+        sessionManager.endSession();
+        assertTrue(await(renewal));
+
+        assertSame(SessionSnapshot.LOGGED_OUT, sharedVariables.getSession());
+        assertEquals(3, published.size());
+        assertEquals("token-1", published.get(0).getAuthToken());
+        assertSame(SessionSnapshot.LOGGED_OUT, published.get(2));
+    }
+
+    @Test
+    public void expiredToken_isRenewedAndCallSentAgainOnce() throws Exception
+    {
+        final List<String> renewals = new ArrayList<>();
+        sessionManager.addListener(new SessionManager.Listener()
+        {
+            @Override
+            public void onSessionRenewed(String username, String authToken, String newAuthToken, long timestamp)
+            {
+                renewals.add(authToken + "->" + newAuthToken);
+            }
+        });
+
+        sessionManager.startSession("alice", "token-1", now());
+        stubServer.expireToken("token-1");
+
+        MsdsApi.UserInfo userInfo = await(api.getUserInfo().call("alice", "token-1"));
+        String renewedAuthToken = sessionManager.getSession().getAuthToken();
+
+        assertTrue(userInfo.isSuccess());
+        assertFalse(renewedAuthToken.equals("token-1"));
+        assertEquals(1, stubServer.requestCount(MsdsApi.REFRESH_SESSION));
+        assertEquals(2, stubServer.requestCount(MsdsApi.GET_USER_INFO));
+        assertTrue(stubServer.lastBody(), stubServer.lastBody().contains("\"authToken\":\"" + renewedAuthToken + "\""));
+        assertEquals(1, renewals.size());
+        assertEquals("token-1->" + renewedAuthToken, renewals.get(0));
+
+        // A call still holding the old authToken is given the new one without another renewal.
+        assertTrue(await(api.getUserInfo().call("alice", "token-1")).isSuccess());
+        assertEquals(1, stubServer.requestCount(MsdsApi.REFRESH_SESSION));
+    }
+
+    @Test
+    public void callRefusedAfterRenewal_deliversTheAuthFailure() throws Exception
+    {
+        sessionManager.addListener(new SessionManager.Listener()
+        {
+            @Override
+            public void onSessionRenewed(String username, String authToken, String newAuthToken, long timestamp)
+            {
+                stubServer.expireToken(newAuthToken);
+            }
+        });
+
+        sessionManager.startSession("alice", "token-1", now());
+        stubServer.expireToken("token-1");
+
+        try
+        {
+            await(api.getUserInfo().call("alice", "token-1"));
+            fail("Expected an ApiException");
+        }
+        catch (ApiException ex)
+        {
+            assertTrue(ex.isAuthFailure());
+        }
+
+        assertEquals(1, stubServer.requestCount(MsdsApi.REFRESH_SESSION));
+        assertEquals(2, stubServer.requestCount(MsdsApi.GET_USER_INFO));
+    }
+
+    @Test
+    public void batchRefusedWithExpiredToken_isSentAgainWithTheRenewedToken() throws Exception
+    {
+        sessionManager.startSession("alice", "token-1", now());
+        stubServer.expireToken("token-1");
+
+        MsdsApi.Batch batch = api.batch("alice", "token-1");
+        RequestCoalescer.Call<MsdsApi.UserInfo> userInfo = batch.getUserInfo();
+        RequestCoalescer.Call<InventoryResponseParser.Result> inventory = batch.getInventory(null, null, null);
+        batch.send();
+
+        assertTrue(await(userInfo).isSuccess());
+        assertTrue(await(inventory).isSuccess());
+        assertEquals(1, stubServer.requestCount(MsdsApi.REFRESH_SESSION));
+        assertEquals(2, stubServer.requestCount(MsdsApi.BATCH));
+        assertTrue(stubServer.lastBody(), stubServer.lastBody().contains("\"authToken\":\"" + sessionManager.getSession().getAuthToken() + "\""));
+    }
+
+    @Test
+    public void batchedOperationsRefusedInsideTheEnvelope_areSentAgainOnTheirOwn() throws Exception
+    {
+        stubServer.setBatchAuthInResponses(true);
+        sessionManager.startSession("alice", "token-1", now());
+        stubServer.expireToken("token-1");
+
+        MsdsApi.Batch batch = api.batch("alice", "token-1");
+        RequestCoalescer.Call<MsdsApi.UserInfo> userInfo = batch.getUserInfo();
+        RequestCoalescer.Call<InventoryResponseParser.Result> inventory = batch.getInventory(null, null, null);
+        batch.send();
+
+        assertTrue(await(userInfo).isSuccess());
+        assertTrue(await(inventory).isSuccess());
+        assertEquals(1, stubServer.requestCount(MsdsApi.REFRESH_SESSION));
+        assertEquals(1, stubServer.requestCount(MsdsApi.BATCH));
+        assertEquals(1, stubServer.requestCount(MsdsApi.GET_USER_INFO));
+        assertEquals(1, stubServer.requestCount(MsdsApi.GET_INVENTORY));
+    }
+
+    @Test
+    public void queuedRecord_isSentWithTheCurrentToken() throws Exception
+    {
+        sessionManager.startSession("alice", "token-1", now());
+        assertTrue(await(sessionManager.refresh()));
+        stubServer.expireToken("token-1");
+
+        String record = "[{\"username\":\"alice\",\"authToken\":\"token-1\",\"activityDescription\":\"Logged in\"},"
+                + "{\"username\":\"alice\",\"authToken\":\"token-1\",\"activityDescription\":\"Viewed inventory\"}]";
+
+        assertEquals("delivered", send(WriteAheadQueue.KIND_LOG_BATCH, record));
+        assertEquals(1, stubServer.requestCount(MsdsApi.SUBMIT_LOG));
+        assertEquals(1, stubServer.requestCount(MsdsApi.REFRESH_SESSION));
+        assertFalse(stubServer.lastBody(), stubServer.lastBody().contains("token-1"));
+        assertTrue(stubServer.lastBody(), stubServer.lastBody().contains("\"authToken\":\"" + sessionManager.getSession().getAuthToken() + "\""));
+    }
+
+    @Test
+    public void queuedRecordRefusedWith401_isRenewedAndSentAgain() throws Exception
+    {
+        sessionManager.startSession("alice", "token-1", now());
+        stubServer.expireToken("token-1");
+
+        String record = "{\"username\":\"alice\",\"authToken\":\"token-1\",\"itemName\":\"torch\",\"quantity\":\"3\"}";
+
+        assertEquals("delivered", send(WriteAheadQueue.KIND_NEW_REQUEST, record));
+        assertEquals(1, stubServer.requestCount(MsdsApi.REFRESH_SESSION));
+        assertEquals(2, stubServer.requestCount(MsdsApi.NEW_REQUEST));
+        assertTrue(stubServer.lastBody(), stubServer.lastBody().contains("\"authToken\":\"" + sessionManager.getSession().getAuthToken() + "\""));
+    }
+
+    @Test
+    public void queuedRecordOfUserNotLoggedIn_isKeptToBeSentLater() throws Exception
+    {
+        stubServer.expireToken("token-9");
+
+        String record = "{\"username\":\"bob\",\"authToken\":\"token-9\",\"itemName\":\"torch\",\"quantity\":\"3\"}";
+
+        assertEquals("retrying", send(WriteAheadQueue.KIND_NEW_REQUEST, record));
+        assertEquals(0, stubServer.requestCount(MsdsApi.REFRESH_SESSION));
+        assertEquals(1, stubServer.requestCount(MsdsApi.NEW_REQUEST));
+    }
+
+    /**
+     * Sends a record as the WriteAheadQueue would and waits for the result.
+     * @return returns "delivered", "retrying" or "rejected".
+     */
+    private String send(int kind, String record) throws Exception
+    {
+        final LinkedBlockingQueue<String> outcome = new LinkedBlockingQueue<>();
+
+        new WriteAheadSender(api).send(kind, "install-1-0", record.getBytes("UTF-8"), new WriteAheadQueue.Callback()
+        {
+            @Override
+            public void onDelivered(String response)
+            {
+                outcome.add("delivered");
+            }
+
+            @Override
+            public void onFailed(Exception error, boolean retryable)
+            {
+                outcome.add(retryable ? "retrying" : "rejected");
+            }
+        });
+
+        String result = outcome.poll(5, TimeUnit.SECONDS);
+        assertNotNull("No result within 5 seconds", result);
+        return result;
+    }
+
+    @Test
+    public void session_isRenewedBeforeItExpires() throws Exception
+    {
+        final CountDownLatch renewed = new CountDownLatch(1);
+        sessionManager = new SessionManager(api, sharedVariables, scheduler, 2, 1);
+        sessionManager.addListener(new SessionManager.Listener()
+        {
+            @Override
+            public void onSessionRenewed(String username, String authToken, String newAuthToken, long timestamp)
+            {
+                renewed.countDown();
+            }
+        });
+
+        long timestamp = now();
+        sessionManager.startSession("alice", "token-1", timestamp);
+
+        assertTrue(renewed.await(5, TimeUnit.SECONDS));
+        assertNotNull(sessionManager.getSession().getAuthToken());
+        assertFalse(sessionManager.getSession().getAuthToken().equals("token-1"));
+        assertTrue(sessionManager.getExpiresAtMillis() >= TimeUnit.SECONDS.toMillis(timestamp + 2));
+    }
+
+    @Test
+    public void renewalMissedByTheTimer_isMadeWhenChecked() throws Exception
+    {
+        // A timer thread that is held up stands in for one that does not run while the device sleeps.
+        final CountDownLatch wake = new CountDownLatch(1);
+        ScheduledExecutorService sleepingScheduler = Executors.newSingleThreadScheduledExecutor();
+        sleepingScheduler.execute(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    wake.await();
+                }
+                catch (InterruptedException ex)
+                {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+
+        try
+        {
+            sessionManager = new SessionManager(api, sharedVariables, sleepingScheduler);
+            sessionManager.startSession("alice", "token-1", now() - 60);
+            assertNull(sessionManager.checkRenewal());
+
+            sessionManager.startSession("alice", "token-1",
+                    now() - SessionManager.SESSION_LENGTH_SECONDS + SessionManager.REFRESH_MARGIN_SECONDS - 1);
+            assertTrue(await(sessionManager.checkRenewal()));
+
+            assertEquals(1, stubServer.requestCount(MsdsApi.REFRESH_SESSION));
+            assertFalse(sessionManager.getSession().getAuthToken().equals("token-1"));
+            assertTrue(sessionManager.getRemainingMillis() > TimeUnit.MINUTES.toMillis(29));
+        }
+        finally
+        {
+            wake.countDown();
+            sleepingScheduler.shutdownNow();
+        }
+    }
+
+    @Test
+    public void savedSession_isResumedWithoutLoggingIn() throws Exception
+    {
+        File file = Files.createTempFile("session", null).toFile();
+        SecretKey key = KeyGenerator.getInstance("AES").generateKey();
+        Executor inline = new Executor()
+        {
+            @Override
+            public void execute(Runnable runnable)
+            {
+                runnable.run();
+            }
+        };
+
+        try
+        {
+            sessionManager.setSessionStore(new SessionStore(file, key, inline));
+            sessionManager.startSession("alice", "token-1", now() - 60);
+
+            // A new process, with the file the last one left. The session is saved again in the background, not while resuming.
+            byte[] saved = Files.readAllBytes(file.toPath());
+            final List<Runnable> writes = new ArrayList<>();
+            SessionManager resumed = new SessionManager(api, new SharedVariables(), scheduler);
+            resumed.setSessionStore(new SessionStore(file, key, new Executor()
+            {
+                @Override
+                public void execute(Runnable runnable)
+                {
+                    writes.add(runnable);
+                }
+            }));
+            assertTrue(resumed.resume());
+            assertArrayEquals(saved, Files.readAllBytes(file.toPath()));
+            assertTrue(writes.size() <= 1);
+
+            assertEquals("alice", resumed.getSession().getUsername());
+            assertEquals("token-1", resumed.getSession().getAuthToken());
+            assertTrue(resumed.getRemainingMillis() > TimeUnit.MINUTES.toMillis(28));
+            assertEquals(0, stubServer.requestCount(MsdsApi.LOGIN));
+
+            // A session that has ended is not resumed, and is forgotten.
+            new SessionStore(file, key, inline).putAll(Collections.singletonMap("timestamp",
+                    String.valueOf(now() - SessionManager.SESSION_LENGTH_SECONDS)));
+            resumed = new SessionManager(api, new SharedVariables(), scheduler);
+            resumed.setSessionStore(new SessionStore(file, key, inline));
+            assertFalse(resumed.resume());
+            assertFalse(file.exists());
+        }
+        finally
+        {
+            file.delete();
+        }
+    }
+
+    private static <T> T await(RequestCoalescer.Call<T> call) throws Exception
+    {
+        final LinkedBlockingQueue<Object> outcome = new LinkedBlockingQueue<>();
+
+        call.subscribe(new RequestCoalescer.Callback<T>()
+        {
+            @Override
+            public void onSuccess(T result)
+            {
+                outcome.add(result);
+            }
+
+            @Override
+            public void onFailure(Exception error)
+            {
+                outcome.add(error);
+            }
+        });
+
+        Object result = outcome.poll(5, TimeUnit.SECONDS);
+
+        if(result instanceof Exception)
+        {
+            throw (Exception) result;
+        }
+
+        assertNotNull("No result within 5 seconds", result);
+
+        @SuppressWarnings("unchecked")
+        T typed = (T) result;
+        return typed;
+    }
+}
@@ -0,0 +1,201 @@
+package msds.group.project.msds;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Local unit tests for SessionStore, writing to a temporary directory.
+ */
+public class SessionStoreTest
+{
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final Executor inline = new Executor()
+    {
+        @Override
+        public void execute(Runnable runnable)
+        {
+            runnable.run();
+        }
+    };
+
+    private File directory;
+    private File file;
+    private SecretKey key;
+
+    @Before
+    public void createDirectory() throws Exception
+    {
+        directory = Files.createTempDirectory("session-store").toFile();
+        file = new File(directory, "session");
+        key = newKey();
+    }
+
+    @After
+    public void deleteDirectory()
+    {
+        for(File child : directory.listFiles())
+        {
+            child.delete();
+        }
+
+        directory.delete();
+    }
+
+    private static SecretKey newKey() throws Exception
+    {
+        KeyGenerator generator = KeyGenerator.getInstance("AES");
+        generator.init(128);
+        return generator.generateKey();
+    }
+
+    private static Map<String, String> session(String authToken)
+    {
+        Map<String, String> session = new LinkedHashMap<>();
+        session.put("username", "alice");
+        session.put("authToken", authToken);
+        session.put("timestamp", "1500000000");
+        return session;
+    }
+
+    @Test
+    public void values_areReadByTheNextProcess() throws Exception
+    {
+        new SessionStore(file, key, inline).putAll(session("token-1"));
+
+        SessionStore restored = new SessionStore(file, key, inline);
+        assertEquals("alice", restored.get("username"));
+        assertEquals("token-1", restored.get("authToken"));
+        assertEquals("1500000000", restored.get("timestamp"));
+    }
+
+    @Test
+    public void file_doesNotHoldTheValuesInTheClear() throws Exception
+    {
+        new SessionStore(file, key, inline).putAll(session("token-1"));
+
+        String contents = new String(Files.readAllBytes(file.toPath()), UTF_8);
+        assertFalse(contents.contains("token-1"));
+        assertFalse(contents.contains("alice"));
+    }
+
+    @Test
+    public void changedFile_isThrownAway() throws Exception
+    {
+        new SessionStore(file, key, inline).putAll(session("token-1"));
+        flipLastByte(file);
+
+        assertNull(new SessionStore(file, key, inline).get("authToken"));
+        assertFalse(file.exists());
+    }
+
+    @Test
+    public void fileWrittenWithAnotherKey_isThrownAway() throws Exception
+    {
+        new SessionStore(file, key, inline).putAll(session("token-1"));
+
+        assertNull(new SessionStore(file, newKey(), inline).get("authToken"));
+        assertFalse(file.exists());
+    }
+
+    @Test
+    public void clear_deletesTheFile() throws Exception
+    {
+        SessionStore sessionStore = new SessionStore(file, key, inline);
+        sessionStore.putAll(session("token-1"));
+        assertTrue(file.exists());
+
+        sessionStore.clear();
+        assertNull(sessionStore.get("authToken"));
+        assertFalse(file.exists());
+    }
+
+    @Test
+    public void changesMadeBeforeTheWrite_areWrittenTogether() throws Exception
+    {
+        final List<Runnable> writes = new ArrayList<>();
+        SessionStore sessionStore = new SessionStore(file, key, new Executor()
+        {
+            @Override
+            public void execute(Runnable runnable)
+            {
+                writes.add(runnable);
+            }
+        });
+
+        sessionStore.putAll(session("token-1"));
+        sessionStore.putAll(Collections.singletonMap("authToken", "token-2"));
+
+        // The change is seen at once, the file only when the writer runs.
+        assertEquals("token-2", sessionStore.get("authToken"));
+        assertFalse(file.exists());
+        assertEquals(1, writes.size());
+
+        writes.get(0).run();
+        SessionStore restored = new SessionStore(file, key, inline);
+        assertEquals("token-2", restored.get("authToken"));
+        assertEquals("alice", restored.get("username"));
+    }
+
+    @Test
+    public void restore_readsTheValuesWithoutWriting() throws Exception
+    {
+        new SessionStore(file, key, inline).putAll(session("token-1"));
+        byte[] saved = Files.readAllBytes(file.toPath());
+
+        final List<Runnable> writes = new ArrayList<>();
+        SessionStore restored = new SessionStore(file, key, new Executor()
+        {
+            @Override
+            public void execute(Runnable runnable)
+            {
+                writes.add(runnable);
+            }
+        });
+        restored.load();
+
+        assertEquals("token-1", restored.get("authToken"));
+        assertEquals("1500000000", restored.get("timestamp"));
+        assertTrue(writes.isEmpty());
+        assertArrayEquals(saved, Files.readAllBytes(file.toPath()));
+    }
+
+    private static void flipLastByte(File file) throws IOException
+    {
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+
+        try
+        {
+            randomAccessFile.seek(randomAccessFile.length() - 1);
+            int last = randomAccessFile.read();
+            randomAccessFile.seek(randomAccessFile.length() - 1);
+            randomAccessFile.write(last ^ 1);
+        }
+        finally
+        {
+            randomAccessFile.close();
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package msds.group.project.msds;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Local unit tests for SharedVariables and the SessionSnapshots it publishes.
+ */
+public class SharedVariablesTest
+{
+    private final SharedVariables sharedVariables = new SharedVariables();
+
+    @Test
+    public void listeners_areToldAboutEveryChange()
+    {
+        final List<String> changes = new ArrayList<>();
+        sharedVariables.addListener(new SharedVariables.Listener()
+        {
+            @Override
+            public void onSessionChanged(SessionSnapshot session)
+            {
+                changes.add(session.getUsername() + ":" + session.getAuthToken());
+            }
+        });
+
+        assertFalse(sharedVariables.getSession().isLoggedIn());
+
+        sharedVariables.setSession(new SessionSnapshot("alice", "token-1", 1500000000L));
+        assertTrue(sharedVariables.renewSession("token-1", "token-2", 1500001500L));
+        sharedVariables.setSession(SessionSnapshot.LOGGED_OUT);
+
+        assertEquals(3, changes.size());
+        assertEquals("alice:token-1", changes.get(0));
+        assertEquals("alice:token-2", changes.get(1));
+        assertEquals("null:null", changes.get(2));
+    }
+
+    @Test
+    public void renewal_isIgnoredOnceTheSessionHasChanged()
+    {
+        SessionSnapshot bob = new SessionSnapshot("bob", "token-9", 1500000000L);
+
+        sharedVariables.setSession(bob);
+        assertFalse(sharedVariables.renewSession("token-1", "token-2", 1500001500L));
+        assertSame(bob, sharedVariables.getSession());
+
+        sharedVariables.setSession(SessionSnapshot.LOGGED_OUT);
+        assertFalse(sharedVariables.renewSession("token-9", "token-10", 1500001500L));
+        assertFalse(sharedVariables.getSession().isLoggedIn());
+    }
+
+    @Test
+    public void readers_neverSeeAUsernameWithAnotherUsersToken() throws Exception
+    {
+        final AtomicBoolean running = new AtomicBoolean(true);
+        final AtomicInteger mismatches = new AtomicInteger();
+        final AtomicInteger reads = new AtomicInteger();
+        Thread[] readers = new Thread[4];
+
+        for(int i = 0; i < readers.length; i++)
+        {
+            readers[i] = new Thread(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    while(running.get())
+                    {
+                        SessionSnapshot session = sharedVariables.getSession();
+
+                        if(session.isLoggedIn() && !session.getAuthToken().startsWith(session.getUsername() + "-"))
+                        {
+                            mismatches.incrementAndGet();
+                        }
+
+                        reads.incrementAndGet();
+                    }
+                }
+            });
+            readers[i].start();
+        }
+
+        for(int i = 0; i < 100000; i++)
+        {
+            String username = "user" + (i % 7);
+            sharedVariables.setSession(new SessionSnapshot(username, username + "-token", i));
+            sharedVariables.renewSession(username + "-token", username + "-renewed", i + 1);
+        }
+
+        running.set(false);
+
+        for(Thread reader : readers)
+        {
+            reader.join();
+        }
+
+        assertTrue(reads.get() > 0);
+        assertEquals(0, mismatches.get());
+    }
+}
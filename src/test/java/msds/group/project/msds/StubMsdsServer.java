@@ -0,0 +1,423 @@
+package msds.group.project.msds;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.Charset;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * In-process stand-in for the MSDS web service, answering every endpoint on a local port
+ * so the MsdsApi and HttpEngines can be tested and load tested without the real server.
+ *
+ * Batch.php answers each operation of a batch envelope with that endpoint's response, or
+ * is not found at all after setBatchSupported(false).
+ *
+ * GetInventory.php answers requests for a delta with the response given to setInventoryDelta,
+ * if there is one, and with the whole inventory otherwise.
+ *
+ * Compression and the binary inventory encoding are off until turned on. setAcceptGzipRequests
+ * makes every response list gzip in Accept-Encoding and gzipped request bodies be read, which
+ * are otherwise refused with 415. setGzipResponses compresses responses for clients that ask,
+ * and setBinaryInventory answers GetInventory.php with the InventoryBinaryCodec when asked.
+ *
+ * RefreshSession.php renews any session. A request carrying an authToken given to expireToken
+ * is answered 401, as the real server answers a request whose session has expired. After
+ * setBatchAuthInResponses(true) a Batch.php envelope carrying one is answered 200, with a 401
+ * for each of its operations instead.
+ */
+final class StubMsdsServer
+{
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final byte[] inventoryResponse;
+    private final AtomicInteger requestCount = new AtomicInteger();
+    private final Set<Integer> clientPorts = Collections.synchronizedSet(new HashSet<Integer>());
+    private final Map<String, byte[]> responses = new HashMap<>();
+    private final Map<String, AtomicInteger> endpointCounts = new ConcurrentHashMap<>();
+    private final Set<String> expiredTokens = Collections.synchronizedSet(new HashSet<String>());
+
+    private volatile long latencyMillis;
+    private volatile int statusCode = 200;
+    private volatile boolean batchSupported = true;
+    private volatile boolean batchAuthInResponses;
+    private volatile byte[] inventoryDelta;
+    private volatile boolean acceptGzipRequests;
+    private volatile boolean gzipResponses;
+    private volatile boolean binaryInventory;
+    private volatile String lastBody;
+    private volatile String lastContentEncoding;
+    private volatile String lastIdempotencyKey;
+
+    /**
+     * @param inventorySize number of items GetInventory.php returns.
+     * @param threads number of threads answering requests.
+     */
+    StubMsdsServer(int inventorySize, int threads) throws IOException
+    {
+        inventoryResponse = inventoryResponse(inventorySize).getBytes(UTF_8);
+
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        executor = Executors.newFixedThreadPool(threads);
+        server.setExecutor(executor);
+
+        answer(MsdsApi.LOGIN, "{\"loginSuccessful\":true}".getBytes(UTF_8));
+        answer(MsdsApi.GET_USER_INFO, ("{\"success\":true,\"firstName\":\"Ada\",\"lastName\":\"Lovelace\",\"gender\":\"F\","
+                + "\"DOB\":\"1815-12-10\",\"rank\":\"Captain\",\"contact\":\"ada@example.com\",\"address\":\"London\"}").getBytes(UTF_8));
+        answer(MsdsApi.GET_INVENTORY, inventoryResponse);
+        answer(MsdsApi.NEW_REQUEST, "{\"success\":true}".getBytes(UTF_8));
+        answer(MsdsApi.SUBMIT_LOG, "{\"success\":true}".getBytes(UTF_8));
+        answer(MsdsApi.REFRESH_SESSION, "{\"refreshSuccessful\":true}".getBytes(UTF_8));
+        answer(MsdsApi.BATCH, null);
+
+        server.start();
+    }
+
+    static String inventoryResponse(int itemCount)
+    {
+        StringBuilder json = new StringBuilder("{\"success\":true,\"version\":\"v1\",\"itemName\":[");
+
+        for(int i = 0; i < itemCount; i++)
+        {
+            json.append(i > 0 ? "," : "").append("\"Item ").append(i).append('"');
+        }
+
+        json.append("],\"quantity\":[");
+
+        for(int i = 0; i < itemCount; i++)
+        {
+            json.append(i > 0 ? "," : "").append(i % 50);
+        }
+
+        return json.append("]}").toString();
+    }
+
+    private void answer(final String endpoint, final byte[] response)
+    {
+        responses.put(endpoint, response);
+        endpointCounts.put(endpoint, new AtomicInteger());
+        server.createContext("/android_webservice/" + endpoint, new HttpHandler()
+        {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException
+            {
+                requestCount.incrementAndGet();
+                endpointCounts.get(endpoint).incrementAndGet();
+                clientPorts.add(exchange.getRemoteAddress().getPort());
+                String contentEncoding = exchange.getRequestHeaders().getFirst("Content-Encoding");
+                byte[] requestBody = readFully(exchange.getRequestBody());
+                boolean gzipped = "gzip".equals(contentEncoding);
+
+                lastContentEncoding = contentEncoding;
+                lastBody = gzipped && acceptGzipRequests ? new String(readFully(new GZIPInputStream(new ByteArrayInputStream(requestBody))), UTF_8)
+                        : new String(requestBody, UTF_8);
+                lastIdempotencyKey = exchange.getRequestHeaders().getFirst("Idempotency-Key");
+
+                if(latencyMillis > 0)
+                {
+                    try
+                    {
+                        Thread.sleep(latencyMillis);
+                    }
+                    catch (InterruptedException ex)
+                    {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+
+                int status = statusCode;
+
+                if(endpoint.equals(MsdsApi.BATCH) && !batchSupported)
+                {
+                    status = 404;
+                }
+
+                boolean expiredBatch = false;
+
+                if(!endpoint.equals(MsdsApi.REFRESH_SESSION) && hasExpiredToken(lastBody))
+                {
+                    if(endpoint.equals(MsdsApi.BATCH) && batchAuthInResponses)
+                    {
+                        expiredBatch = true;
+                    }
+                    else
+                    {
+                        status = 401;
+                    }
+                }
+
+                if(gzipped && !acceptGzipRequests)
+                {
+                    status = 415;
+                }
+
+                byte[] body = status != 200 ? "{}".getBytes(UTF_8) : endpoint.equals(MsdsApi.BATCH) ? batchResponse(lastBody, expiredBatch) : response;
+
+                if(status == 200 && endpoint.equals(MsdsApi.GET_INVENTORY) && inventoryDelta != null && lastBody.contains("\"delta\":\"true\""))
+                {
+                    body = inventoryDelta;
+                }
+
+                String contentType = "application/json";
+                String accept = exchange.getRequestHeaders().getFirst("Accept");
+
+                if(status == 200 && endpoint.equals(MsdsApi.GET_INVENTORY) && binaryInventory
+                        && accept != null && accept.contains(InventoryBinaryCodec.CONTENT_TYPE))
+                {
+                    body = binaryInventory(body);
+                    contentType = InventoryBinaryCodec.CONTENT_TYPE;
+                }
+
+                String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+
+                if(gzipResponses && body.length > 0 && acceptEncoding != null && acceptEncoding.contains("gzip"))
+                {
+                    body = gzip(body);
+                    exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+                }
+
+                exchange.getResponseHeaders().set("Content-Type", contentType);
+                exchange.getResponseHeaders().set("Accept-Encoding", acceptGzipRequests ? "gzip" : "identity");
+                exchange.sendResponseHeaders(status, body.length == 0 ? -1 : body.length);
+
+                OutputStream out = exchange.getResponseBody();
+                out.write(body);
+                out.close();
+            }
+        });
+    }
+
+    /**
+     * Answers every operation in a batch envelope with the response of its endpoint.
+     * @param expired true to answer every operation 401 instead.
+     */
+    private byte[] batchResponse(String envelope, boolean expired) throws IOException
+    {
+        JsonStreamReader reader = new JsonStreamReader(envelope.getBytes(UTF_8));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        boolean first = true;
+
+        out.write("{\"responses\":[".getBytes(UTF_8));
+        reader.beginObject();
+
+        while(reader.hasNext())
+        {
+            if(!reader.nextName().equals("operations"))
+            {
+                reader.skipValue();
+                continue;
+            }
+
+            reader.beginArray();
+
+            while(reader.hasNext())
+            {
+                String id = null;
+                String endpoint = null;
+
+                reader.beginObject();
+
+                while(reader.hasNext())
+                {
+                    String name = reader.nextName();
+
+                    if(name.equals("id"))
+                    {
+                        id = reader.nextString();
+                    }
+                    else if(name.equals("endpoint"))
+                    {
+                        endpoint = reader.nextString();
+                    }
+                    else
+                    {
+                        reader.skipValue();
+                    }
+                }
+
+                reader.endObject();
+
+                byte[] response = responses.get(endpoint);
+                String status = expired ? "401" : response == null ? "404" : "200";
+
+                if(expired)
+                {
+                    response = null;
+                }
+
+                out.write(((first ? "" : ",") + "{\"id\":" + id + ",\"status\":" + status + ",\"body\":").getBytes(UTF_8));
+                out.write(response == null ? "{}".getBytes(UTF_8) : response);
+                out.write('}');
+                first = false;
+            }
+
+            reader.endArray();
+        }
+
+        reader.endObject();
+        out.write("]}".getBytes(UTF_8));
+        return out.toByteArray();
+    }
+
+    private boolean hasExpiredToken(String requestBody)
+    {
+        synchronized(expiredTokens)
+        {
+            for(String authToken : expiredTokens)
+            {
+                if(requestBody.contains("\"authToken\":\"" + authToken + "\""))
+                {
+                    return true;
+                }
+            }
+        }
+
+        return false;
+    }
+
+    private static byte[] binaryInventory(byte[] json) throws IOException
+    {
+        InventoryResponseParser.Result result = InventoryResponseParser.parse(json, null, null, InventoryResponseParser.DEFAULT_CHUNK_SIZE);
+        InventoryBinaryCodec.Encoder encoder = new InventoryBinaryCodec.Encoder(new BufferPool(1 << 20, 1));
+
+        byte[] binary = encoder.writeResult(result).toByteArray();
+        encoder.release();
+        return binary;
+    }
+
+    private static byte[] gzip(byte[] body) throws IOException
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        GZIPOutputStream gzip = new GZIPOutputStream(out);
+
+        gzip.write(body);
+        gzip.close();
+        return out.toByteArray();
+    }
+
+    private static byte[] readFully(InputStream in) throws IOException
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int read;
+
+        while((read = in.read(buffer)) != -1)
+        {
+            out.write(buffer, 0, read);
+        }
+
+        in.close();
+        return out.toByteArray();
+    }
+
+    String baseUrl()
+    {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/android_webservice/";
+    }
+
+    void setLatencyMillis(long latencyMillis)
+    {
+        this.latencyMillis = latencyMillis;
+    }
+
+    void setStatusCode(int statusCode)
+    {
+        this.statusCode = statusCode;
+    }
+
+    void setBatchSupported(boolean batchSupported)
+    {
+        this.batchSupported = batchSupported;
+    }
+
+    void setInventoryDelta(String inventoryDelta)
+    {
+        this.inventoryDelta = inventoryDelta == null ? null : inventoryDelta.getBytes(UTF_8);
+    }
+
+    void setAcceptGzipRequests(boolean acceptGzipRequests)
+    {
+        this.acceptGzipRequests = acceptGzipRequests;
+    }
+
+    void setGzipResponses(boolean gzipResponses)
+    {
+        this.gzipResponses = gzipResponses;
+    }
+
+    void setBinaryInventory(boolean binaryInventory)
+    {
+        this.binaryInventory = binaryInventory;
+    }
+
+    void setBatchAuthInResponses(boolean batchAuthInResponses)
+    {
+        this.batchAuthInResponses = batchAuthInResponses;
+    }
+
+    /**
+     * Makes every request carrying this authToken be answered 401, except RefreshSession.php.
+     */
+    void expireToken(String authToken)
+    {
+        expiredTokens.add(authToken);
+    }
+
+    int requestCount()
+    {
+        return requestCount.get();
+    }
+
+    int requestCount(String endpoint)
+    {
+        return endpointCounts.get(endpoint).get();
+    }
+
+    /**
+     * @return the number of distinct client ports seen, one per TCP connection opened
+     */
+    int connectionCount()
+    {
+        return clientPorts.size();
+    }
+
+    String lastBody()
+    {
+        return lastBody;
+    }
+
+    String lastContentEncoding()
+    {
+        return lastContentEncoding;
+    }
+
+    String lastIdempotencyKey()
+    {
+        return lastIdempotencyKey;
+    }
+
+    void stop()
+    {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+}
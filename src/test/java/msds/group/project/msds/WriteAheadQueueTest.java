@@ -0,0 +1,286 @@
+package msds.group.project.msds;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for WriteAheadQueue, using a temporary directory and a recording Sender.
+ */
+public class WriteAheadQueueTest
+{
+    private File directory;
+    private ScheduledExecutorService executor;
+    private RecordingSender sender;
+
+    @Before
+    public void setUp() throws IOException
+    {
+        directory = File.createTempFile("wal", "");
+        directory.delete();
+        executor = Executors.newSingleThreadScheduledExecutor();
+        sender = new RecordingSender();
+    }
+
+    @After
+    public void tearDown()
+    {
+        executor.shutdownNow();
+        File[] files = directory.listFiles();
+        if(files != null)
+        {
+            for(File file : files)
+            {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    @Test
+    public void deliveredRecords_areAcknowledgedAndCompacted() throws IOException
+    {
+        WriteAheadQueue queue = new WriteAheadQueue(directory, sender, executor, 64);
+
+        for(int i = 0; i < 10; i++)
+        {
+            queue.enqueue(WriteAheadQueue.KIND_LOG_BATCH, "[\"event " + i + "\"]", null);
+        }
+
+        assertEquals(10, sender.payloads.size());
+        for(WriteAheadQueue.Callback callback : sender.takeCallbacks())
+        {
+            callback.onDelivered("{}");
+        }
+
+        assertEquals(0, queue.getLiveRecordCount());
+        assertEquals(1, queue.getSegmentCount());
+    }
+
+    @Test
+    public void recordsLeftInFlight_areReplayedAfterRestartWithSameKey() throws Exception
+    {
+        WriteAheadQueue queue = new WriteAheadQueue(directory, sender, executor);
+        queue.enqueue(WriteAheadQueue.KIND_NEW_REQUEST, "{\"itemName\":\"Fl\u00E4sche \uD83D\uDE80\"}", null);
+        String firstKey = sender.keys.get(0);
+
+        RecordingSender restartedSender = new RecordingSender();
+        WriteAheadQueue restarted = new WriteAheadQueue(directory, restartedSender, executor);
+        restartedSender.awaitSends(1);
+
+        assertEquals(1, restarted.getLiveRecordCount());
+        assertEquals("{\"itemName\":\"Fl\u00E4sche \uD83D\uDE80\"}", restartedSender.payloads.get(0));
+        assertEquals(firstKey, restartedSender.keys.get(0));
+        assertEquals(WriteAheadQueue.KIND_NEW_REQUEST, (int) restartedSender.kinds.get(0));
+
+        restartedSender.takeCallbacks().get(0).onDelivered("{}");
+        assertEquals(0, restarted.getLiveRecordCount());
+    }
+
+    @Test
+    public void recordsInSeveralSegments_areReplayedInOrderAfterRestart() throws Exception
+    {
+        WriteAheadQueue queue = new WriteAheadQueue(directory, sender, executor, 64);
+
+        for(int i = 0; i < 6; i++)
+        {
+            queue.enqueue(WriteAheadQueue.KIND_LOG_BATCH, "[\"event " + i + "\"]", null);
+        }
+        assertTrue(queue.getSegmentCount() > 1);
+        sender.takeCallbacks().get(2).onDelivered("{}");
+
+        RecordingSender restartedSender = new RecordingSender();
+        WriteAheadQueue restarted = new WriteAheadQueue(directory, restartedSender, executor, 64);
+
+        for(int i = 0; i < 5; i++)
+        {
+            restartedSender.awaitSends(i + 1);
+            restartedSender.takeCallbacks().get(0).onDelivered("{}");
+        }
+
+        assertEquals("[\"event 0\"]", restartedSender.payloads.get(0));
+        assertEquals("[\"event 1\"]", restartedSender.payloads.get(1));
+        assertEquals("[\"event 3\"]", restartedSender.payloads.get(2));
+        assertEquals("[\"event 5\"]", restartedSender.payloads.get(4));
+        assertEquals(0, restarted.getLiveRecordCount());
+    }
+
+    @Test
+    public void recordsAfterRestart_neverReuseAnAcknowledgedKey() throws Exception
+    {
+        WriteAheadQueue queue = new WriteAheadQueue(directory, sender, executor);
+        queue.enqueue(WriteAheadQueue.KIND_NEW_REQUEST, "{\"quantity\":\"1\"}", null);
+        sender.takeCallbacks().get(0).onDelivered("{}");
+
+        WriteAheadQueue restarted = new WriteAheadQueue(directory, sender, executor);
+        assertEquals(0, restarted.getSegmentCount());
+        restarted.enqueue(WriteAheadQueue.KIND_NEW_REQUEST, "{\"quantity\":\"2\"}", null);
+
+        assertEquals(2, sender.keys.size());
+        assertFalse(sender.keys.get(0).equals(sender.keys.get(1)));
+    }
+
+    @Test
+    public void utf8Payload_isSentAsItIsAndReplayed() throws Exception
+    {
+        byte[] payload = "[{\"activityDescription\":\"Fl\u00E4sche\"}]".getBytes("UTF-8");
+        WriteAheadQueue queue = new WriteAheadQueue(directory, sender, executor);
+        queue.enqueue(WriteAheadQueue.KIND_LOG_BATCH, payload, null);
+
+        assertEquals("[{\"activityDescription\":\"Fl\u00E4sche\"}]", sender.payloads.get(0));
+
+        sender.takeCallbacks().get(0).onFailed(new Exception("timeout"), true);
+        sender.awaitSends(2);
+
+        assertEquals(sender.payloads.get(0), sender.payloads.get(1));
+        assertEquals(sender.keys.get(0), sender.keys.get(1));
+    }
+
+    @Test
+    public void nonRetryableFailure_dropsRecord() throws IOException
+    {
+        WriteAheadQueue queue = new WriteAheadQueue(directory, sender, executor);
+        queue.enqueue(WriteAheadQueue.KIND_NEW_REQUEST, "{}", null);
+
+        sender.takeCallbacks().get(0).onFailed(new Exception("400"), false);
+
+        assertEquals(0, queue.getLiveRecordCount());
+    }
+
+    @Test
+    public void retryableFailure_isReplayedByDrainer() throws Exception
+    {
+        WriteAheadQueue queue = new WriteAheadQueue(directory, sender, executor);
+        queue.enqueue(WriteAheadQueue.KIND_LOG_BATCH, "[]", null);
+
+        sender.takeCallbacks().get(0).onFailed(new Exception("timeout"), true);
+        sender.awaitSends(2);
+
+        assertEquals(sender.keys.get(0), sender.keys.get(1));
+        sender.takeCallbacks().get(0).onDelivered("{}");
+        assertEquals(0, queue.getLiveRecordCount());
+    }
+
+    @Test
+    public void recordRefusedWith401_isSetAsideSoTheNextIsStillSent() throws Exception
+    {
+        WriteAheadQueue queue = new WriteAheadQueue(directory, sender, executor);
+        queue.enqueue(WriteAheadQueue.KIND_NEW_REQUEST, "{\"username\":\"bob\"}", null);
+        queue.enqueue(WriteAheadQueue.KIND_NEW_REQUEST, "{\"username\":\"alice\"}", null);
+
+        RecordingSender restartedSender = new RecordingSender();
+        WriteAheadQueue restarted = new WriteAheadQueue(directory, restartedSender, executor);
+        restartedSender.awaitSends(1);
+        restartedSender.takeCallbacks().get(0).onFailed(ApiException.httpError(401), true);
+
+        restartedSender.awaitSends(2);
+        assertEquals("{\"username\":\"alice\"}", restartedSender.payloads.get(1));
+        restartedSender.takeCallbacks().get(0).onDelivered("{}");
+
+        restartedSender.awaitSends(3);
+        assertEquals("{\"username\":\"bob\"}", restartedSender.payloads.get(2));
+        assertEquals(restartedSender.keys.get(0), restartedSender.keys.get(2));
+        assertEquals(1, restarted.getLiveRecordCount());
+    }
+
+    @Test
+    public void listener_isToldTheResultOfTheReplay() throws Exception
+    {
+        final List<String> results = new ArrayList<>();
+        WriteAheadQueue queue = new WriteAheadQueue(directory, sender, executor);
+        WriteAheadQueue.Callback listener = new WriteAheadQueue.Callback()
+        {
+            @Override
+            public synchronized void onDelivered(String response)
+            {
+                results.add("delivered " + response);
+            }
+
+            @Override
+            public synchronized void onFailed(Exception error, boolean retryable)
+            {
+                results.add((retryable ? "retrying " : "rejected ") + error.getMessage());
+            }
+        };
+
+        queue.enqueue(WriteAheadQueue.KIND_NEW_REQUEST, "{\"quantity\":\"1\"}", listener);
+        queue.enqueue(WriteAheadQueue.KIND_NEW_REQUEST, "{\"quantity\":\"2\"}", listener);
+
+        List<WriteAheadQueue.Callback> firstAttempts = sender.takeCallbacks();
+        firstAttempts.get(0).onFailed(new Exception("timeout"), true);
+        firstAttempts.get(1).onFailed(new Exception("timeout"), true);
+
+        sender.awaitSends(3);
+        sender.takeCallbacks().get(0).onDelivered("{\"success\":true}");
+        sender.awaitSends(4);
+        sender.takeCallbacks().get(0).onFailed(new Exception("400"), false);
+
+        synchronized(listener)
+        {
+            assertEquals(4, results.size());
+            assertEquals("retrying timeout", results.get(0));
+            assertEquals("retrying timeout", results.get(1));
+            assertEquals("delivered {\"success\":true}", results.get(2));
+            assertEquals("rejected 400", results.get(3));
+        }
+        assertEquals(0, queue.getLiveRecordCount());
+    }
+
+    @Test
+    public void utf8Length_matchesStringEncoding() throws Exception
+    {
+        String[] samples = {"", "plain", "\u00E9\u00E8", "\u20AC", "\uD83D\uDE80", "mixed \u00E9 \u20AC \uD83D\uDE80 end"};
+
+        for(String sample : samples)
+        {
+            assertEquals(sample, sample.getBytes("UTF-8").length, WriteAheadQueue.utf8Length(sample));
+        }
+    }
+
+    private static class RecordingSender implements WriteAheadQueue.Sender
+    {
+        private final List<String> payloads = new ArrayList<>();
+        private final List<String> keys = new ArrayList<>();
+        private final List<Integer> kinds = new ArrayList<>();
+        private final List<WriteAheadQueue.Callback> callbacks = new ArrayList<>();
+
+        @Override
+        public synchronized void send(int kind, String idempotencyKey, byte[] payload, WriteAheadQueue.Callback callback)
+        {
+            kinds.add(kind);
+            keys.add(idempotencyKey);
+            payloads.add(new String(payload, Charset.forName("UTF-8")));
+            callbacks.add(callback);
+            notifyAll();
+        }
+
+        private synchronized List<WriteAheadQueue.Callback> takeCallbacks()
+        {
+            List<WriteAheadQueue.Callback> taken = new ArrayList<>(callbacks);
+            callbacks.clear();
+            return taken;
+        }
+
+        private synchronized void awaitSends(int count) throws InterruptedException
+        {
+            long deadline = System.currentTimeMillis() + 10000;
+
+            while(payloads.size() < count && System.currentTimeMillis() < deadline)
+            {
+                wait(100);
+            }
+
+            assertTrue("expected " + count + " sends", payloads.size() >= count);
+        }
+    }
+}